@@ -16,10 +16,10 @@
 package net.sf.jabref;
 
 import net.sf.jabref.export.layout.format.CreateDocBookAuthors;
+import net.sf.jabref.util.LruCache;
 import net.sf.jabref.util.Util;
 
 import java.util.Vector;
-import java.util.WeakHashMap;
 
 /**
  * This is an immutable class representing information of either <CODE>author</CODE>
@@ -213,7 +213,16 @@ public class AuthorList {
         AuthorList.tex_names.add("j");
     }
 
-    private static final WeakHashMap<String, AuthorList> authorCache = new WeakHashMap<String, AuthorList>();
+    /**
+     * The number of parsed author strings kept by default.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 100000;
+
+    // Thread safe, since entries are sorted, labelled and formatted from
+    // several threads. The parsed lists also keep the formatted strings
+    // computed from them.
+    private static final LruCache<String, AuthorList> authorCache = new LruCache<String, AuthorList>(
+            AuthorList.DEFAULT_CACHE_SIZE);
 
 
     /**
@@ -255,12 +264,21 @@ public class AuthorList {
     public static AuthorList getAuthorList(String authors) {
         AuthorList authorList = AuthorList.authorCache.get(authors);
         if (authorList == null) {
-            authorList = new AuthorList(authors);
-            AuthorList.authorCache.put(authors, authorList);
+            // Parse without holding a lock; if another thread parsed the
+            // same string meanwhile, use its result:
+            authorList = AuthorList.authorCache.putIfAbsent(authors, new AuthorList(authors));
         }
         return authorList;
     }
 
+    /**
+     * Returns the cache of parsed author strings, e.g. to read its counters
+     * or to change its size.
+     */
+    public static LruCache<String, AuthorList> getCache() {
+        return AuthorList.authorCache;
+    }
+
     /**
      * This is a convenience method for getAuthorsFirstFirst()
      * 
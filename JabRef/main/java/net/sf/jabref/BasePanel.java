@@ -97,7 +97,7 @@ import net.sf.jabref.imports.BibtexParser;
 import net.sf.jabref.imports.SPIRESFetcher;
 import net.sf.jabref.journals.AbbreviateAction;
 import net.sf.jabref.journals.UnabbreviateAction;
-import net.sf.jabref.labelPattern.LabelPatternUtil;
+import net.sf.jabref.labelPattern.KeyGenerator;
 import net.sf.jabref.labelPattern.SearchFixDuplicateLabels;
 import net.sf.jabref.search.matchers.NoSearchMatcher;
 import net.sf.jabref.search.matchers.SearchMatcher;
@@ -193,6 +193,8 @@ public class BasePanel extends JPanel implements ClipboardOwner, FileUpdateListe
     private boolean baseChanged = false;
     private boolean nonUndoableChange = false;
     // Used to track whether the base has changed since last save.
+    // Counts the calls of markBaseChanged():
+    private volatile int changeMarks = 0;
 
     //EntryTableModel tableModel = null;
     //public EntryTable entryTable = null;
@@ -296,6 +298,10 @@ public class BasePanel extends JPanel implements ClipboardOwner, FileUpdateListe
             } catch (IOException ex) {
                 LOGGER.warn("Could not register FileUpdateMonitor", ex);
             }
+            // Record the changes from now on, so that they can be recovered:
+            if (Globals.autoSaveManager != null) {
+                Globals.autoSaveManager.startJournal(this);
+            }
         }
 
     }
@@ -915,9 +921,9 @@ public class BasePanel extends JPanel implements ClipboardOwner, FileUpdateListe
                 }
 
                 // Finally, set the new keys:
+                new KeyGenerator(metaData, database).generateKeys(entries);
                 for (BibtexEntry entry : entries) {
                     bes = entry;
-                    bes = LabelPatternUtil.makeLabel(metaData, database, bes);
                     ce.addEdit(new UndoableKeyChange
                             (database, bes.getId(), (String) oldvals.get(bes),
                                     bes.getField(BibtexFields.KEY_FIELD)));
@@ -1958,28 +1964,39 @@ public class BasePanel extends JPanel implements ClipboardOwner, FileUpdateListe
 
     /**
      * Ensures that the search auto completer is up to date when entries are changed
-     * AKA Let the auto completer, if any, harvest words from the entry
+     * AKA Let the auto completer, if any, harvest words from the entry. Only
+     * the words of added and removed entries and of changed fields are
+     * counted, so that editing an entry does not count its words again.
      */
     private class SearchAutoCompleterUpdater implements DatabaseChangeListener {
 
         @Override
         public void databaseChanged(DatabaseChangeEvent e) {
-            if ((e.getType() == ChangeType.CHANGED_ENTRY) || (e.getType() == ChangeType.ADDED_ENTRY)) {
+            if (e.getType() == ChangeType.ADDED_ENTRY) {
                 searchAutoCompleter.addBibtexEntry(e.getEntry());
+            } else if (e.getType() == ChangeType.REMOVED_ENTRY) {
+                searchAutoCompleter.removeBibtexEntry(e.getEntry());
+            } else if (e.getType() == ChangeType.CHANGED_ENTRY) {
+                searchAutoCompleter.fieldChanged(e.getFieldName(), e.getOldValue(), e.getNewValue());
             }
         }
     }
 
     /**
      * Ensures that auto completers are up to date when entries are changed
-     * AKA Let the auto completer, if any, harvest words from the entry
+     * AKA Let the auto completer, if any, harvest words from the entry, in
+     * the same way as SearchAutoCompleterUpdater.
      */
     private class AutoCompletersUpdater implements DatabaseChangeListener {
 
         @Override
         public void databaseChanged(DatabaseChangeEvent e) {
-            if ((e.getType() == ChangeType.CHANGED_ENTRY) || (e.getType() == ChangeType.ADDED_ENTRY)) {
+            if (e.getType() == ChangeType.ADDED_ENTRY) {
                 BasePanel.this.autoCompleters.addEntry(e.getEntry());
+            } else if (e.getType() == ChangeType.REMOVED_ENTRY) {
+                BasePanel.this.autoCompleters.removeEntry(e.getEntry());
+            } else if (e.getType() == ChangeType.CHANGED_ENTRY) {
+                BasePanel.this.autoCompleters.fieldChanged(e.getFieldName(), e.getOldValue(), e.getNewValue());
             }
         }
     }
@@ -2597,6 +2614,7 @@ public class BasePanel extends JPanel implements ClipboardOwner, FileUpdateListe
 
     public void markBaseChanged() {
         baseChanged = true;
+        changeMarks++;
 
         // Put an asterix behind the file name to indicate the
         // database has changed.
@@ -2619,6 +2637,15 @@ public class BasePanel extends JPanel implements ClipboardOwner, FileUpdateListe
         markBaseChanged();
     }
 
+    /**
+     * Returns a number that changes whenever the user has changed the
+     * database, through an undoable edit or otherwise. It can be compared to
+     * an earlier value to find out whether something may have changed.
+     */
+    public int getModificationCount() {
+        return changeMarks + undoManager.getModificationCount();
+    }
+
     private synchronized void markChangedOrUnChanged() {
         if (undoManager.hasChanged()) {
             if (!baseChanged) {
@@ -2806,19 +2833,21 @@ public class BasePanel extends JPanel implements ClipboardOwner, FileUpdateListe
     public void autoGenerateKeysBeforeSaving() {
         if (Globals.prefs.isGenerateKeysBeforeSaving()) {
             NamedCompound ce = new NamedCompound(Globals.lang("autogenerate keys"));
-            boolean any = false;
+            List<BibtexEntry> withoutKey = new ArrayList<BibtexEntry>();
 
             for (BibtexEntry bes : database.getEntries()) {
                 String oldKey = bes.getCiteKey();
                 if ((oldKey == null) || (oldKey.isEmpty())) {
-                    LabelPatternUtil.makeLabel(metaData, database, bes);
-                    ce.addEdit(new UndoableKeyChange(database, bes.getId(), null,
-                            bes.getField(BibtexFields.KEY_FIELD)));
-                    any = true;
+                    withoutKey.add(bes);
                 }
             }
+            new KeyGenerator(metaData, database).generateKeys(withoutKey);
+            for (BibtexEntry bes : withoutKey) {
+                ce.addEdit(new UndoableKeyChange(database, bes.getId(), null,
+                        bes.getField(BibtexFields.KEY_FIELD)));
+            }
             // Store undo information, if any:
-            if (any) {
+            if (!withoutKey.isEmpty()) {
                 ce.end();
                 undoManager.addEdit(ce);
             }
@@ -2941,6 +2970,11 @@ public class BasePanel extends JPanel implements ClipboardOwner, FileUpdateListe
         //Util.pr("File '"+file.getPath()+"' has been modified.");
         updatedExternally = true;
 
+        // The autosave journal no longer applies to the file:
+        if (Globals.autoSaveManager != null) {
+            Globals.autoSaveManager.fileUpdated(this);
+        }
+
         final ChangeScanner scanner = new ChangeScanner(frame, BasePanel.this, BasePanel.this.getFile());
 
         // Adding the sidepane component is Swing work, so we must do this in the Swing
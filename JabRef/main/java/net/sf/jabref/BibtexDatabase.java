@@ -35,6 +35,10 @@ Modified for use in JabRef
 
 package net.sf.jabref;
 
+import net.sf.jabref.export.SaveCache;
+import net.sf.jabref.groups.GroupMembershipIndex;
+import net.sf.jabref.search.KeywordIndex;
+import net.sf.jabref.search.SearchIndex;
 import net.sf.jabref.util.MonthUtil;
 import net.sf.jabref.util.Util;
 
@@ -42,39 +46,81 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyVetoException;
 import java.beans.VetoableChangeListener;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-
-import javax.swing.JOptionPane;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+/**
+ * The entries and strings of one bibtex file.
+ *
+ * Reading does not lock: the entries are kept in a ConcurrentHashMap, and
+ * getEntries() hands out an immutable snapshot that is only rebuilt after
+ * the entries changed. Modifications are serialized on this object, so that
+ * DatabaseChangeEvents reach the listeners in the order of the changes.
+ */
 public class BibtexDatabase {
 
-    private final Map<String, BibtexEntry> _entries = new Hashtable<String, BibtexEntry>();
+    /**
+     * An unmodifiable list of all entries, as of the given version.
+     */
+    private static class Snapshot {
+
+        private final long version;
+
+        private final Collection<BibtexEntry> entries;
+
+
+        public Snapshot(long version, Collection<BibtexEntry> entries) {
+            this.version = version;
+            this.entries = entries;
+        }
+    }
+
+
+    private final Map<String, BibtexEntry> _entries = new ConcurrentHashMap<String, BibtexEntry>();
+
+    // Increased after each change of _entries, while holding the lock:
+    private volatile long version = 0;
 
-    private String _preamble = null;
+    private volatile Snapshot snapshot = new Snapshot(0, Collections.<BibtexEntry> emptyList());
 
-    private final HashMap<String, BibtexString> _strings = new HashMap<String, BibtexString>();
+    private volatile String _preamble = null;
 
-    private final Set<DatabaseChangeListener> changeListeners = new HashSet<DatabaseChangeListener>();
+    private final Map<String, BibtexString> _strings = new ConcurrentHashMap<String, BibtexString>();
+
+    private final Set<DatabaseChangeListener> changeListeners = new CopyOnWriteArraySet<DatabaseChangeListener>();
+
+    private volatile SearchIndex searchIndex = null;
+
+    private volatile DuplicateIndex duplicateIndex = null;
+
+    private volatile SaveCache saveCache = null;
+
+    private volatile GroupMembershipIndex groupMembershipIndex = null;
+
+    private volatile KeywordIndex keywordIndex = null;
 
     private boolean followCrossrefs = true;
     
     private static final Log LOGGER = LogFactory.getLog(BibtexDatabase.class);
 
     /**
-     * use a map instead of a set since i need to know how many of each key is
-     * inthere
+     * All entries by their bibtex key, so that keys are looked up and counted
+     * in constant time. Several entries can share a key; each array is
+     * replaced as a whole when it changes, so it can be read without locking.
+     * Entries without a key are not contained.
      */
-    private final HashMap<String, Integer> allKeys = new HashMap<String, Integer>();
+    private final Map<String, BibtexEntry[]> keyIndex = new ConcurrentHashMap<String, BibtexEntry[]>();
 
     /*
      * Entries are stored in a HashMap with the ID as key. What happens if
@@ -95,33 +141,47 @@ public class BibtexDatabase {
                         fireDatabaseChanged(new DatabaseChangeEvent(BibtexDatabase.this, DatabaseChangeEvent.ChangeType.CHANGING_ENTRY, (BibtexEntry) pce.getSource()));
                     } else if ("id".equals(pce.getPropertyName()))
                     {
-                        // locate the entry under its old key
-                        BibtexEntry oldEntry =
-                                _entries.remove(pce.getOldValue());
-
-                        if (oldEntry != pce.getSource())
-                        {
-                            // Something is very wrong!
-                            // The entry under the old key isn't
-                            // the one that sent this event.
-                            // Restore the old state.
-                            _entries.put((String) pce.getOldValue(), oldEntry);
-                            throw new PropertyVetoException("Wrong old ID", pce);
+                        synchronized (BibtexDatabase.this) {
+                            // locate the entry under its old key
+                            BibtexEntry oldEntry = _entries.get(pce.getOldValue());
+
+                            if (oldEntry != pce.getSource())
+                            {
+                                // Something is very wrong!
+                                // The entry under the old key isn't
+                                // the one that sent this event.
+                                throw new PropertyVetoException("Wrong old ID", pce);
+                            }
+
+                            if (_entries.get(pce.getNewValue()) != null)
+                            {
+                                throw new PropertyVetoException
+                                ("New ID already in use, please choose another",
+                                        pce);
+                            }
+
+                            // and re-file this entry. It is added under the
+                            // new key first, so that readers always find it.
+                            _entries.put((String) pce.getNewValue(), oldEntry);
+                            _entries.remove(pce.getOldValue());
+                            version++;
                         }
-
-                        if (_entries.get(pce.getNewValue()) != null)
-                        {
-                            _entries.put((String) pce.getOldValue(), oldEntry);
-                            throw new PropertyVetoException
-                            ("New ID already in use, please choose another",
-                                    pce);
-                        }
-
-                        // and re-file this entry
-                        _entries.put((String) pce.getNewValue(),
-                                (BibtexEntry) pce.getSource());
                     } else {
-                        fireDatabaseChanged(new DatabaseChangeEvent(BibtexDatabase.this, DatabaseChangeEvent.ChangeType.CHANGED_ENTRY, (BibtexEntry) pce.getSource()));
+                        // The lock is taken even when the key index is not
+                        // touched: an index that reads the entries and
+                        // registers itself as a listener while holding the
+                        // lock then either sees the new value or gets this
+                        // event. The listeners themselves are notified
+                        // without holding the lock, as they have their own.
+                        synchronized (BibtexDatabase.this) {
+                            if (BibtexFields.KEY_FIELD.equals(pce.getPropertyName())) {
+                                removeKeyFromIndex((String) pce.getOldValue(), (BibtexEntry) pce.getSource());
+                                addKeyToIndex((String) pce.getNewValue(), (BibtexEntry) pce.getSource());
+                            }
+                        }
+                        fireDatabaseChanged(new DatabaseChangeEvent(BibtexDatabase.this, DatabaseChangeEvent.ChangeType.CHANGED_ENTRY,
+                                (BibtexEntry) pce.getSource(), pce.getPropertyName(),
+                                (String) pce.getOldValue(), (String) pce.getNewValue()));
                         //Util.pr(pce.getSource().toString()+"\n"+pce.getPropertyName()
                         //    +"\n"+pce.getNewValue());
                     }
@@ -132,7 +192,7 @@ public class BibtexDatabase {
     /**
      * Returns the number of entries.
      */
-    public synchronized int getEntryCount()
+    public int getEntryCount()
     {
         return _entries.size();
     }
@@ -140,10 +200,13 @@ public class BibtexDatabase {
     /**
      * Returns a Set containing the keys to all entries.
      * Use getKeySet().iterator() to iterate over all entries.
+     *
+     * The set is a read-only view that reflects later changes; iterating it
+     * never throws a ConcurrentModificationException.
      */
-    public synchronized Set<String> getKeySet()
+    public Set<String> getKeySet()
     {
-        return _entries.keySet();
+        return Collections.unmodifiableSet(_entries.keySet());
     }
 
     /**
@@ -156,6 +219,93 @@ public class BibtexDatabase {
         return sorter;
     }
 
+    /**
+     * Returns the full-text index of this base. It is built on the first call
+     * and kept up to date afterwards.
+     */
+    public SearchIndex getSearchIndex() {
+        SearchIndex index = searchIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (this) {
+            if (searchIndex == null) {
+                searchIndex = new SearchIndex(this);
+            }
+            return searchIndex;
+        }
+    }
+
+    /**
+     * Returns the index used to find possible duplicates of entries. It is
+     * built on the first call and kept up to date afterwards.
+     */
+    public DuplicateIndex getDuplicateIndex() {
+        DuplicateIndex index = duplicateIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (this) {
+            if (duplicateIndex == null) {
+                duplicateIndex = new DuplicateIndex(this);
+            }
+            return duplicateIndex;
+        }
+    }
+
+    /**
+     * Returns where the entries were written by the last saves, so that
+     * unchanged entries can be copied on the next save. It is created on
+     * the first call and kept up to date afterwards.
+     */
+    public SaveCache getSaveCache() {
+        SaveCache cache = saveCache;
+        if (cache != null) {
+            return cache;
+        }
+        synchronized (this) {
+            if (saveCache == null) {
+                saveCache = new SaveCache(this);
+            }
+            return saveCache;
+        }
+    }
+
+    /**
+     * Returns the index of the keywords in the fields of this base. It is
+     * created on the first call, and each field is indexed when it is first
+     * asked for.
+     */
+    public KeywordIndex getKeywordIndex() {
+        KeywordIndex index = keywordIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (this) {
+            if (keywordIndex == null) {
+                keywordIndex = new KeywordIndex(this);
+            }
+            return keywordIndex;
+        }
+    }
+
+    /**
+     * Returns the index of which entries belong to which groups. It is
+     * created on the first call and kept up to date afterwards.
+     */
+    public GroupMembershipIndex getGroupMembershipIndex() {
+        GroupMembershipIndex index = groupMembershipIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (this) {
+            if (groupMembershipIndex == null) {
+                groupMembershipIndex = new GroupMembershipIndex(this);
+            }
+            return groupMembershipIndex;
+        }
+    }
+
     /**
      * Just temporary, for testing purposes....
      * @return
@@ -167,50 +317,52 @@ public class BibtexDatabase {
     /**
      * Returns the entry with the given ID (-> entry_type + hashcode).
      */
-    public synchronized BibtexEntry getEntryById(String id)
+    public BibtexEntry getEntryById(String id)
     {
         return _entries.get(id);
     }
 
-    public synchronized Collection<BibtexEntry> getEntries() {
-        return _entries.values();
+    /**
+     * Returns all entries. The collection is an unmodifiable snapshot, which
+     * is not affected by later changes to the database and can be iterated
+     * by any thread. It is shared between callers until the next change.
+     */
+    public Collection<BibtexEntry> getEntries() {
+        // Read the version first, so that the snapshot built below is at
+        // least as recent as the version it is stored with:
+        long currentVersion = version;
+        Snapshot current = snapshot;
+        if (current.version == currentVersion) {
+            return current.entries;
+        }
+        current = new Snapshot(currentVersion,
+                Collections.unmodifiableList(new ArrayList<BibtexEntry>(_entries.values())));
+        snapshot = current;
+        return current.entries;
     }
 
     /**
-     * Returns the entry with the given bibtex key.
+     * Returns the entry with the given bibtex key. If several entries have
+     * this key, the one that got it first is returned.
      */
-    public synchronized BibtexEntry getEntryByKey(String key)
+    public BibtexEntry getEntryByKey(String key)
     {
-        BibtexEntry back = null;
-
-        int keyHash = key.hashCode(); // key hash for better performance
-
-        Set<String> keySet = _entries.keySet();
-        for (String entrieID : keySet) {
-            BibtexEntry entry = getEntryById(entrieID);
-            if ((entry != null) && (entry.getCiteKey() != null)) {
-                String citeKey = entry.getCiteKey();
-                if (citeKey != null) {
-                    if (keyHash == citeKey.hashCode()) {
-                        back = entry;
-                    }
-                }
-            }
+        if ((key == null) || key.isEmpty()) {
+            return null; // empty keys are not indexed
         }
-        return back;
+        BibtexEntry[] entries = keyIndex.get(key);
+        return entries == null ? null : entries[0];
     }
 
-    public synchronized BibtexEntry[] getEntriesByKey(String key) {
-
-        ArrayList<BibtexEntry> entries = new ArrayList<BibtexEntry>();
-
-        for (BibtexEntry entry : _entries.values()) {
-            if (key.equals(entry.getCiteKey())) {
-                entries.add(entry);
-            }
+    /**
+     * Returns all entries with the given bibtex key.
+     */
+    public BibtexEntry[] getEntriesByKey(String key) {
+        if ((key == null) || key.isEmpty()) {
+            return new BibtexEntry[0];
         }
-
-        return entries.toArray(new BibtexEntry[entries.size()]);
+        BibtexEntry[] entries = keyIndex.get(key);
+        return entries == null ? new BibtexEntry[0] : entries.clone();
     }
 
     /**
@@ -230,10 +382,13 @@ public class BibtexDatabase {
         entry.addPropertyChangeListener(listener);
 
         _entries.put(id, entry);
+        version++;
+        String key = entry.getCiteKey();
+        addKeyToIndex(key, entry);
 
         fireDatabaseChanged(new DatabaseChangeEvent(this, DatabaseChangeEvent.ChangeType.ADDED_ENTRY, entry));
 
-        return checkForDuplicateKeyAndAdd(null, entry.getCiteKey(), false);
+        return getNumberOfKeyOccurences(key) > 1;
     }
 
     /**
@@ -248,14 +403,19 @@ public class BibtexDatabase {
         if (oldValue == null) {
             return null;
         }
+        version++;
 
-        removeKeyFromSet(oldValue.getCiteKey());
+        removeKeyFromIndex(oldValue.getCiteKey(), oldValue);
         oldValue.removePropertyChangeListener(listener);
         fireDatabaseChanged(new DatabaseChangeEvent(this, DatabaseChangeEvent.ChangeType.REMOVED_ENTRY, oldValue));
 
         return oldValue;
     }
 
+    /**
+     * Sets the bibtex key of the entry with the given ID. Returns true if
+     * the key was changed to one that another entry already has.
+     */
     public synchronized boolean setCiteKeyForEntry(String id, String key) {
         if (!_entries.containsKey(id))
          {
@@ -263,18 +423,20 @@ public class BibtexDatabase {
         }
         BibtexEntry entry = getEntryById(id);
         String oldKey = entry.getCiteKey();
+        // The key index is updated by the change listener:
         if (key != null) {
             entry.setField(BibtexFields.KEY_FIELD, key);
         } else {
             entry.clearField(BibtexFields.KEY_FIELD);
         }
-        return checkForDuplicateKeyAndAdd(oldKey, entry.getCiteKey(), false);
+        String newKey = entry.getCiteKey();
+        return (newKey != null) && !newKey.equals(oldKey) && (getNumberOfKeyOccurences(newKey) > 1);
     }
 
     /**
      * Sets the database's preamble.
      */
-    public synchronized void setPreamble(String preamble)
+    public void setPreamble(String preamble)
     {
         _preamble = preamble;
     }
@@ -282,7 +444,7 @@ public class BibtexDatabase {
     /**
      * Returns the database's preamble.
      */
-    public synchronized String getPreamble()
+    public String getPreamble()
     {
         return _preamble;
     }
@@ -330,21 +492,21 @@ public class BibtexDatabase {
     /**
      * Returns the string at the given index.
      */
-    public synchronized BibtexString getString(String o) {
+    public BibtexString getString(String o) {
         return _strings.get(o);
     }
 
     /**
      * Returns the number of strings.
      */
-    public synchronized int getStringCount() {
+    public int getStringCount() {
         return _strings.size();
     }
 
     /**
      * Returns true if a string with the given label already exists.
      */
-    public synchronized boolean hasStringLabel(String label) {
+    public boolean hasStringLabel(String label) {
         for (BibtexString value : _strings.values()) {
             if (value.getName().equals(label)) {
                 return true;
@@ -469,7 +631,7 @@ public class BibtexDatabase {
 
     private String resolveContent(String res, HashSet<String> usedIds) {
         //if (res.matches(".*#[-\\^\\:\\w]+#.*")) {
-        if (res.matches(".*#[^#]+#.*")) {
+        if (BibtexDatabase.containsStringReference(res)) {
             StringBuilder newRes = new StringBuilder();
             int piv = 0, next;
             while ((next = res.indexOf("#", piv)) >= 0) {
@@ -514,91 +676,85 @@ public class BibtexDatabase {
         return res;
     }
 
-    //##########################################
-    //  usage:
-    //  isDuplicate=checkForDuplicateKeyAndAdd( null, b.getKey() , issueDuplicateWarning);
-    //############################################
-    // if the newkey already exists and is not the same as oldkey it will give a warning
-    // else it will add the newkey to the to set and remove the oldkey
-    private boolean checkForDuplicateKeyAndAdd(String oldKey, String newKey, boolean issueWarning) {
-        // Globals.logger(" checkForDuplicateKeyAndAdd [oldKey = " + oldKey + "] [newKey = " + newKey + "]");
-
-        boolean duplicate;
-        if (oldKey == null) {// this is a new entry so don't bother removing oldKey
-            duplicate = addKeyToSet(newKey);
-        } else {
-            if (oldKey.equals(newKey)) {// were OK because the user did not change keys
-                duplicate = false;
-            } else {// user changed the key
-
-                // removed the oldkey
-                // But what if more than two have the same key?
-                // this means that user can add another key and would not get a warning!
-                // consider this: i add a key xxx, then i add another key xxx . I get a warning. I delete the key xxx. JBM
-                // removes this key from the allKey. then I add another key xxx. I don't get a warning!
-                // i need a way to count the number of keys of each type
-                // hashmap=>int (increment each time)
-
-                removeKeyFromSet(oldKey);
-                duplicate = addKeyToSet(newKey);
+    /**
+     * Does the same as res.matches(".*#[^#]+#.*") without a regular
+     * expression, since this is checked for every field that is resolved.
+     * As the dots do not match line terminators, the first # must come
+     * before the first line terminator, and the second after the last one.
+     */
+    private static boolean containsStringReference(String res) {
+        int hash = res.indexOf('#');
+        if (hash < 0) {
+            return false;
+        }
+        int firstBreak = res.length();
+        int lastBreak = -1;
+        for (int i = 0; i < res.length(); i++) {
+            char c = res.charAt(i);
+            if ((c == '\n') || (c == '\r') || (c == '\u0085') || (c == '\u2028') || (c == '\u2029')) {
+                firstBreak = Math.min(firstBreak, i);
+                lastBreak = i;
             }
         }
-        if (duplicate && issueWarning) {
-            JOptionPane.showMessageDialog(null, Globals.lang("Warning there is a duplicate key") + ':' + newKey,
-                    Globals.lang("Duplicate Key Warning"),
-                    JOptionPane.WARNING_MESSAGE);//, options);
-
+        while (hash < firstBreak) {
+            int next = res.indexOf('#', hash + 1);
+            if (next < 0) {
+                return false;
+            }
+            if ((next > (hash + 1)) && (next > lastBreak)) {
+                return true;
+            }
+            hash = next;
         }
-        return duplicate;
+        return false;
     }
 
     /**
      * Returns the number of occurences of the given key in this database.
      */
     public int getNumberOfKeyOccurences(String key) {
-        Object o = allKeys.get(key);
-        if (o == null) {
+        if ((key == null) || key.isEmpty()) {
             return 0;
-        } else {
-            return (Integer) o;
         }
-
+        BibtexEntry[] entries = keyIndex.get(key);
+        return entries == null ? 0 : entries.length;
     }
 
-    //========================================================
-    // keep track of all the keys to warn if there are duplicates
-    //========================================================
-    private boolean addKeyToSet(String key) {
-        boolean exists = false;
-        if ((key == null) || key.isEmpty())
-         {
-            return false;//don't put empty key
+    // Must be called while holding the lock:
+    private void addKeyToIndex(String key, BibtexEntry entry) {
+        if ((key == null) || key.isEmpty()) {
+            return; // don't index empty keys
         }
-        if (allKeys.containsKey(key)) {
-            // warning
-            exists = true;
-            allKeys.put(key, allKeys.get(key) + 1);// incrementInteger( allKeys.get(key)));
+        BibtexEntry[] entries = keyIndex.get(key);
+        if (entries == null) {
+            keyIndex.put(key, new BibtexEntry[] {entry});
         } else {
-            allKeys.put(key, 1);
+            BibtexEntry[] newEntries = Arrays.copyOf(entries, entries.length + 1);
+            newEntries[entries.length] = entry;
+            keyIndex.put(key, newEntries);
         }
-        return exists;
     }
 
-    //========================================================
-    // reduce the number of keys by 1. if this number goes to zero then remove from the set
-    // note: there is a good reason why we should not use a hashset but use hashmap instead
-    //========================================================
-    private void removeKeyFromSet(String key) {
+    // Must be called while holding the lock:
+    private void removeKeyFromIndex(String key, BibtexEntry entry) {
         if ((key == null) || key.isEmpty()) {
             return;
         }
-        if (allKeys.containsKey(key)) {
-            Integer tI = allKeys.get(key); // if(allKeys.get(key) instanceof Integer)
-            if (tI == 1) {
-                allKeys.remove(key);
-            }
-            else {
-                allKeys.put(key, tI - 1);//decrementInteger( tI ));
+        BibtexEntry[] entries = keyIndex.get(key);
+        if (entries == null) {
+            return;
+        }
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i] == entry) {
+                if (entries.length == 1) {
+                    keyIndex.remove(key);
+                } else {
+                    BibtexEntry[] newEntries = new BibtexEntry[entries.length - 1];
+                    System.arraycopy(entries, 0, newEntries, 0, i);
+                    System.arraycopy(entries, i + 1, newEntries, i, entries.length - i - 1);
+                    keyIndex.put(key, newEntries);
+                }
+                return;
             }
         }
     }
@@ -81,8 +81,12 @@ public class BibtexEntry
 
     private String _id;
     private BibtexEntryType _type;
-    private Map<String, String> _fields = new HashMap<String, String>();
-    private final VetoableChangeSupport _changeSupport = new VetoableChangeSupport(this);
+    private FieldStore _fields = new FieldStore();
+
+    // Almost every entry has exactly one listener (its database), which is
+    // kept here. Only a second listener makes us create a VetoableChangeSupport.
+    private VetoableChangeListener _changeListener = null;
+    private VetoableChangeSupport _changeSupport = null;
 
     // Search and grouping status is stored in boolean fields for quick reference:
     private boolean searchHit, groupHit;
@@ -148,7 +152,7 @@ public class BibtexEntry
      * set for this particular entry.
      */
     public Set<String> getAllFields() {
-        return new TreeSet<String>(_fields.keySet());
+        return _fields.getNames();
     }
 
     /**
@@ -388,7 +392,9 @@ public class BibtexEntry
      * does not check values for content, so e.g. empty strings will be set as such.
      */
     public void setField(Map<String, String> fields) {
-        _fields.putAll(fields);
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            _fields.put(field.getKey(), field.getValue());
+        }
     }
 
     /**
@@ -475,8 +481,15 @@ public class BibtexEntry
     private void firePropertyChangedEvent(String fieldName, Object oldValue,
             Object newValue) throws PropertyVetoException
     {
-        _changeSupport.fireVetoableChange(new PropertyChangeEvent(this,
-                fieldName, oldValue, newValue));
+        if (_changeSupport != null) {
+            _changeSupport.fireVetoableChange(new PropertyChangeEvent(this,
+                    fieldName, oldValue, newValue));
+        } else if ((_changeListener != null)
+                && ((oldValue == null) || (newValue == null) || !oldValue.equals(newValue))) {
+            // Same rules as VetoableChangeSupport: equal values are no change.
+            _changeListener.vetoableChange(new PropertyChangeEvent(this,
+                    fieldName, oldValue, newValue));
+        }
     }
 
     /**
@@ -486,7 +499,16 @@ public class BibtexEntry
      */
     public void addPropertyChangeListener(VetoableChangeListener listener)
     {
-        _changeSupport.addVetoableChangeListener(listener);
+        if (_changeSupport != null) {
+            _changeSupport.addVetoableChangeListener(listener);
+        } else if (_changeListener == null) {
+            _changeListener = listener;
+        } else {
+            _changeSupport = new VetoableChangeSupport(this);
+            _changeSupport.addVetoableChangeListener(_changeListener);
+            _changeSupport.addVetoableChangeListener(listener);
+            _changeListener = null;
+        }
     }
 
     /**
@@ -494,7 +516,11 @@ public class BibtexEntry
      */
     public void removePropertyChangeListener(VetoableChangeListener listener)
     {
-        _changeSupport.removeVetoableChangeListener(listener);
+        if (_changeSupport != null) {
+            _changeSupport.removeVetoableChangeListener(listener);
+        } else if (_changeListener == listener) {
+            _changeListener = null;
+        }
     }
 
     /**
@@ -514,7 +540,7 @@ public class BibtexEntry
     @Override
     public Object clone() {
         BibtexEntry clone = new BibtexEntry(_id, _type);
-        clone._fields = new HashMap<String, String>(_fields);
+        clone._fields = new FieldStore(_fields);
         return clone;
     }
 
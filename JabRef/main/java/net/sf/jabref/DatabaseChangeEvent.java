@@ -25,13 +25,29 @@ public class DatabaseChangeEvent {
     private final BibtexEntry entry;
     private final ChangeType type;
     private final BibtexDatabase source;
+    private final String fieldName;
+    private final String oldValue;
+    private final String newValue;
 
 
     public DatabaseChangeEvent(BibtexDatabase source, ChangeType type,
             BibtexEntry entry) {
+        this(source, type, entry, null, null, null);
+    }
+
+    /**
+     * Creates an event for a change of a single field (CHANGED_ENTRY). A
+     * change of the entry type is reported as a change of the field
+     * GUIGlobals.TYPE_HEADER, with the names of the old and new type.
+     */
+    public DatabaseChangeEvent(BibtexDatabase source, ChangeType type,
+            BibtexEntry entry, String fieldName, String oldValue, String newValue) {
         this.source = source;
         this.type = type;
         this.entry = entry;
+        this.fieldName = fieldName;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
     }
 
     public BibtexDatabase getSource() {
@@ -45,4 +61,25 @@ public class DatabaseChangeEvent {
     public ChangeType getType() {
         return type;
     }
+
+    /**
+     * Returns the name of the changed field, or null if it is not known.
+     */
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * Returns the value of the field before the change (null if it was not set).
+     */
+    public String getOldValue() {
+        return oldValue;
+    }
+
+    /**
+     * Returns the value of the field after the change (null if it was cleared).
+     */
+    public String getNewValue() {
+        return newValue;
+    }
 }
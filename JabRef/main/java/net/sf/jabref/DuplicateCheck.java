@@ -205,9 +205,10 @@ public class DuplicateCheck {
     }
 
     /**
-     * Goes through all entries in the given database, and if at least one of
-     * them is a duplicate of the given entry, as per
-     * Util.isDuplicate(BibtexEntry, BibtexEntry), the duplicate is returned.
+     * Goes through the entries in the given database that may be duplicates of
+     * the given entry according to the database's DuplicateIndex, and if at
+     * least one of them is a duplicate of the given entry, as per
+     * isDuplicate(BibtexEntry, BibtexEntry), the duplicate is returned.
      * The search is terminated when the first duplicate is found.
      *
      * @param database The database to search.
@@ -215,7 +216,7 @@ public class DuplicateCheck {
      * @return The first duplicate entry found. null if no duplicates are found.
      */
     public static BibtexEntry containsDuplicate(BibtexDatabase database, BibtexEntry entry) {
-        for (BibtexEntry other : database.getEntries()) {
+        for (BibtexEntry other : database.getDuplicateIndex().getCandidates(entry)) {
             if (DuplicateCheck.isDuplicate(entry, other)) {
                 return other; // Duplicate found.
             }
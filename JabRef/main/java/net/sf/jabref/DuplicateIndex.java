@@ -0,0 +1,313 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.sf.jabref.util.DOIUtil;
+
+/**
+ * Finds the entries that may be duplicates of a given entry, so that the
+ * expensive DuplicateCheck.isDuplicate() only has to be called for plausible
+ * pairs instead of all of them.
+ *
+ * Every entry is put into a number of blocks, and only entries sharing at
+ * least one block are candidates. The blocks are given by
+ * - the normalized DOI,
+ * - the last name of the first author (or editor) together with the year,
+ * - the bands of a MinHash signature of the character trigrams of the title,
+ *   so that titles differing only in a few characters (typos, braces,
+ *   punctuation) are very likely to share a band.
+ * All blocks include the entry type, since entries of different types are
+ * never duplicates. Entries without any of the above are put into one block
+ * per type.
+ *
+ * This trades a little recall for speed: pairs that DuplicateCheck would
+ * consider duplicates although they agree on none of the above are not found.
+ *
+ * Any number of threads may look up candidates at the same time; changes
+ * wait until they are done.
+ */
+public class DuplicateIndex implements DatabaseChangeListener {
+
+    private static final int BANDS = 10;
+
+    private static final int ROWS_PER_BAND = 4;
+
+    private static final int SHINGLE_LENGTH = 3;
+
+    private static final int[] SEEDS = new int[DuplicateIndex.BANDS * DuplicateIndex.ROWS_PER_BAND];
+
+    static {
+        // A fixed seed, so the blocks are the same in every run:
+        Random random = new Random(2015);
+        for (int i = 0; i < DuplicateIndex.SEEDS.length; i++) {
+            DuplicateIndex.SEEDS[i] = random.nextInt();
+        }
+    }
+
+    /**
+     * Blocking key -> entries in that block.
+     */
+    private final Map<String, Set<BibtexEntry>> blocks = new HashMap<String, Set<BibtexEntry>>();
+
+    /**
+     * Entry -> its blocking keys, needed to remove an entry.
+     */
+    private final Map<BibtexEntry, List<String>> entryKeys = new HashMap<BibtexEntry, List<String>>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+
+    /**
+     * Creates an index of the given entries.
+     */
+    public DuplicateIndex(Collection<BibtexEntry> entries) {
+        for (BibtexEntry entry : entries) {
+            addEntry(entry);
+        }
+    }
+
+    /**
+     * Creates an index of the entries of the given database, which is kept up
+     * to date as entries are added, changed or removed.
+     */
+    public DuplicateIndex(BibtexDatabase database) {
+        this(database.getEntries());
+        database.addDatabaseChangeListener(this);
+    }
+
+    @Override
+    public void databaseChanged(DatabaseChangeEvent e) {
+        switch (e.getType()) {
+        case ADDED_ENTRY:
+            addEntry(e.getEntry());
+            break;
+        case REMOVED_ENTRY:
+            removeEntry(e.getEntry());
+            break;
+        case CHANGED_ENTRY:
+            lock.writeLock().lock();
+            try {
+                if (entryKeys.containsKey(e.getEntry())) {
+                    remove(e.getEntry());
+                    add(e.getEntry());
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    public void addEntry(BibtexEntry entry) {
+        lock.writeLock().lock();
+        try {
+            if (!entryKeys.containsKey(entry)) {
+                add(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeEntry(BibtexEntry entry) {
+        lock.writeLock().lock();
+        try {
+            remove(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Must be called while holding the write lock:
+    private void add(BibtexEntry entry) {
+        List<String> keys = DuplicateIndex.getBlockingKeys(entry);
+        for (String key : keys) {
+            Set<BibtexEntry> block = blocks.get(key);
+            if (block == null) {
+                block = new HashSet<BibtexEntry>();
+                blocks.put(key, block);
+            }
+            block.add(entry);
+        }
+        entryKeys.put(entry, keys);
+    }
+
+    // Must be called while holding the write lock:
+    private void remove(BibtexEntry entry) {
+        List<String> keys = entryKeys.remove(entry);
+        if (keys == null) {
+            return;
+        }
+        for (String key : keys) {
+            Set<BibtexEntry> block = blocks.get(key);
+            block.remove(entry);
+            if (block.isEmpty()) {
+                blocks.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns all indexed entries sharing a block with the given entry, which
+     * does not have to be part of the index. If it is, it is contained in the
+     * result as well.
+     */
+    public Set<BibtexEntry> getCandidates(BibtexEntry entry) {
+        List<String> keys;
+        lock.readLock().lock();
+        try {
+            keys = entryKeys.get(entry);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (keys == null) {
+            keys = DuplicateIndex.getBlockingKeys(entry);
+        }
+        Set<BibtexEntry> result = new HashSet<BibtexEntry>();
+        lock.readLock().lock();
+        try {
+            for (String key : keys) {
+                Set<BibtexEntry> block = blocks.get(key);
+                if (block != null) {
+                    result.addAll(block);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Computes the keys of the blocks the given entry belongs to.
+     */
+    static List<String> getBlockingKeys(BibtexEntry entry) {
+        List<String> keys = new ArrayList<String>();
+        String prefix = entry.getType().getName().toLowerCase() + ':';
+
+        String doi = entry.getField("doi");
+        if ((doi != null) && DuplicateIndex.isNotBlank(doi)) {
+            keys.add(prefix + "doi:" + DuplicateIndex.normalize(DOIUtil.getDOI(doi.trim())));
+        }
+
+        String names = entry.getField("author");
+        if ((names == null) || !DuplicateIndex.isNotBlank(names)) {
+            names = entry.getField("editor");
+        }
+        if ((names != null) && DuplicateIndex.isNotBlank(names)) {
+            AuthorList authors = AuthorList.getAuthorList(names);
+            if (authors.size() > 0) {
+                String year = entry.getField("year");
+                keys.add(prefix + "author:" + DuplicateIndex.normalize(authors.getAuthor(0).getLastOnly())
+                        + ':' + (year == null ? "" : DuplicateIndex.normalize(year)));
+            }
+        }
+
+        String title = entry.getField("title");
+        if (title != null) {
+            String normalized = DuplicateIndex.normalize(title);
+            if (!normalized.isEmpty()) {
+                int[] signature = DuplicateIndex.getMinHashSignature(normalized);
+                for (int band = 0; band < DuplicateIndex.BANDS; band++) {
+                    StringBuilder sb = new StringBuilder(prefix).append("title:").append(band);
+                    for (int row = 0; row < DuplicateIndex.ROWS_PER_BAND; row++) {
+                        sb.append(':').append(signature[(band * DuplicateIndex.ROWS_PER_BAND) + row]);
+                    }
+                    keys.add(sb.toString());
+                }
+            }
+        }
+
+        if (keys.isEmpty()) {
+            keys.add(prefix);
+        }
+        return keys;
+    }
+
+    private static boolean isNotBlank(String s) {
+        return !s.trim().isEmpty();
+    }
+
+    /**
+     * Converts to lower case and reduces everything but letters and digits to
+     * single spaces.
+     */
+    static String normalize(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        boolean space = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (space && (sb.length() > 0)) {
+                    sb.append(' ');
+                }
+                sb.append(Character.toLowerCase(c));
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Computes the minimum hash values of the character trigrams of the given
+     * string, for each of the hash functions.
+     */
+    private static int[] getMinHashSignature(String s) {
+        int[] signature = new int[DuplicateIndex.SEEDS.length];
+        for (int i = 0; i < signature.length; i++) {
+            signature[i] = Integer.MAX_VALUE;
+        }
+        int shingles = Math.max(1, (s.length() - DuplicateIndex.SHINGLE_LENGTH) + 1);
+        for (int start = 0; start < shingles; start++) {
+            int hash = s.substring(start, Math.min(s.length(), start + DuplicateIndex.SHINGLE_LENGTH)).hashCode();
+            for (int i = 0; i < signature.length; i++) {
+                int value = DuplicateIndex.mix(hash ^ DuplicateIndex.SEEDS[i]);
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * The finalization step of MurmurHash3, giving a well distributed hash for
+     * every seed.
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -22,7 +22,18 @@
 package net.sf.jabref;
 
 import java.util.ArrayList;
-import java.util.Vector;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.swing.SwingUtilities;
 
@@ -32,9 +43,27 @@ import spin.Spin;
 
 public class DuplicateSearch implements Runnable {
 
+    /**
+     * The number of suspected pairs that may wait for the user's decision
+     * before the "Searcher" thread has to wait.
+     */
+    private static final int QUEUE_CAPACITY = 100;
+
+    /**
+     * Rows are split among the threads in ranges of at most this size.
+     */
+    private static final int ROWS_PER_TASK = 16;
+
+    /**
+     * Put into the queue after the last pair.
+     */
+    private static final BibtexEntry[] END_OF_SEARCH = new BibtexEntry[0];
+
     private final BasePanel panel;
     private BibtexEntry[] bes;
-    private final Vector<BibtexEntry[]> duplicates = new Vector<BibtexEntry[]>();
+    private final BlockingQueue<BibtexEntry[]> duplicates =
+            new ArrayBlockingQueue<BibtexEntry[]>(DuplicateSearch.QUEUE_CAPACITY);
+    private final AtomicInteger duplicatesFound = new AtomicInteger();
 
 
     public DuplicateSearch(BasePanel bp) {
@@ -59,66 +88,59 @@ public class DuplicateSearch implements Runnable {
 
         SearcherRunnable st = new SearcherRunnable();
         JabRefExecutorService.INSTANCE.executeWithLowPriorityInOwnThread(st, "Searcher");
-        int current = 0;
 
         final ArrayList<BibtexEntry> toRemove = new ArrayList<BibtexEntry>();
-        while (!st.finished() || (current < duplicates.size()))
-        {
+        while (true) {
+            BibtexEntry[] be;
+            try {
+                // wait until the search threads find something or finish their work
+                be = duplicates.take();
+            } catch (InterruptedException e) {
+                st.setFinished();
+                break;
+            }
+            if (be == DuplicateSearch.END_OF_SEARCH) {
+                break;
+            }
 
-            if (current >= duplicates.size())
-            {
-                // wait until the search thread puts something into duplicates vector
-                // or finish its work
-                synchronized (duplicates)
-                {
-                    try
-                    {
-                        duplicates.wait();
-                    } catch (Exception ignored) {
+            if (!toRemove.contains(be[0]) && !toRemove.contains(be[1])) {
+                // Check if they are exact duplicates:
+                boolean askAboutExact = false;
+                if (DuplicateCheck.compareEntriesStrictly(be[0], be[1]) > 1) {
+                    if (autoRemoveExactDuplicates) {
+                        toRemove.add(be[1]);
+                        duplicateCounter++;
+                        continue;
+                    } else {
+                        askAboutExact = true;
                     }
                 }
-            } else // duplicates found
-            {
-
-                BibtexEntry[] be = duplicates.get(current);
-                current++;
-                if (!toRemove.contains(be[0]) && !toRemove.contains(be[1])) {
-                    // Check if they are exact duplicates:
-                    boolean askAboutExact = false;
-                    if (DuplicateCheck.compareEntriesStrictly(be[0], be[1]) > 1) {
-                        if (autoRemoveExactDuplicates) {
-                            toRemove.add(be[1]);
-                            duplicateCounter++;
-                            continue;
-                        } else {
-                            askAboutExact = true;
-                        }
-                    }
-
-                    DuplicateCallBack cb = new DuplicateCallBack(panel.frame, be[0], be[1],
-                            askAboutExact ? DuplicateResolverDialog.DUPLICATE_SEARCH_WITH_EXACT :
-                                    DuplicateResolverDialog.DUPLICATE_SEARCH);
-                    ((CallBack) (Spin.over(cb))).update();
 
-                    duplicateCounter++;
-                    int answer = cb.getSelected();
-                    if ((answer == DuplicateResolverDialog.KEEP_UPPER)
-                            || (answer == DuplicateResolverDialog.AUTOREMOVE_EXACT)) {
-                        toRemove.add(be[1]);
-                        if (answer == DuplicateResolverDialog.AUTOREMOVE_EXACT)
-                         {
-                            autoRemoveExactDuplicates = true; // Remember choice
-                        }
-                    } else if (answer == DuplicateResolverDialog.KEEP_LOWER) {
-                        toRemove.add(be[0]);
-                    } else if (answer == DuplicateResolverDialog.BREAK) {
-                        st.setFinished(); // thread killing
-                        current = Integer.MAX_VALUE;
-                        duplicateCounter--; // correct counter
+                DuplicateCallBack cb = new DuplicateCallBack(panel.frame, be[0], be[1],
+                        askAboutExact ? DuplicateResolverDialog.DUPLICATE_SEARCH_WITH_EXACT :
+                                DuplicateResolverDialog.DUPLICATE_SEARCH);
+                ((CallBack) (Spin.over(cb))).update();
+
+                duplicateCounter++;
+                int answer = cb.getSelected();
+                if ((answer == DuplicateResolverDialog.KEEP_UPPER)
+                        || (answer == DuplicateResolverDialog.AUTOREMOVE_EXACT)) {
+                    toRemove.add(be[1]);
+                    if (answer == DuplicateResolverDialog.AUTOREMOVE_EXACT)
+                     {
+                        autoRemoveExactDuplicates = true; // Remember choice
                     }
+                } else if (answer == DuplicateResolverDialog.KEEP_LOWER) {
+                    toRemove.add(be[0]);
+                } else if (answer == DuplicateResolverDialog.BREAK) {
+                    st.setFinished(); // stops the searching threads
+                    duplicateCounter--; // correct counter
+                    break;
                 }
             }
         }
+        // Let searching threads waiting for space in the queue notice that we are done:
+        duplicates.clear();
 
         final int dupliC = duplicateCounter;
         SwingUtilities.invokeLater(new Runnable() {
@@ -133,7 +155,7 @@ public class DuplicateSearch implements Runnable {
                     }
                     panel.markBaseChanged();
                 }
-                panel.output(Globals.lang("Duplicate pairs found") + ": " + duplicates.size()
+                panel.output(Globals.lang("Duplicate pairs found") + ": " + duplicatesFound.get()
                         + ' ' + Globals.lang("pairs processed") + ": " + dupliC);
 
                 ce.end();
@@ -146,29 +168,127 @@ public class DuplicateSearch implements Runnable {
     }
 
 
+    /**
+     * Compares the entries on the fork-join pool of JabRefExecutorService and
+     * puts the suspected duplicates into the queue, followed by END_OF_SEARCH.
+     *
+     * The pool threads only record the pairs of each row they have searched,
+     * without waiting for anything. This thread passes them on in the order
+     * of the rows, so that the user is asked in the same order in every run,
+     * and is the only one to wait for space in the queue while the user
+     * decides. The pool is thus never blocked by an open dialog.
+     */
     class SearcherRunnable implements Runnable {
 
         private volatile boolean finished = false;
 
+        private DuplicateIndex index;
+
+        private Map<BibtexEntry, Integer> positions;
+
+        /**
+         * The pairs found in each row, or null while the row has not been
+         * searched yet.
+         */
+        private AtomicReferenceArray<List<BibtexEntry[]>> rowPairs;
+
+        // Notified whenever a row has been searched:
+        private final Object rowLock = new Object();
+
+
         @Override
         public void run() {
-            for (int i = 0; (i < (bes.length - 1)) && !finished; i++) {
-                for (int j = i + 1; (j < bes.length) && !finished; j++) {
-                    boolean eq = DuplicateCheck.isDuplicate(bes[i], bes[j]);
-
-                    // If (suspected) duplicates, add them to the duplicates vector.
-                    if (eq) {
-                        synchronized (duplicates) {
-                            duplicates.add(new BibtexEntry[] {bes[i], bes[j]});
-                            duplicates.notifyAll(); // send wake up all
-                        }
+            try {
+                // Only pairs sharing a block of the index are compared:
+                index = new DuplicateIndex(Arrays.asList(bes));
+                positions = new IdentityHashMap<BibtexEntry, Integer>();
+                for (int i = 0; i < bes.length; i++) {
+                    positions.put(bes[i], i);
+                }
+                rowPairs = new AtomicReferenceArray<List<BibtexEntry[]>>(bes.length);
+
+                ForkJoinTask<Void> search = JabRefExecutorService.INSTANCE.getForkJoinPool()
+                        .submit(new RowRangeTask(0, bes.length - 1));
+                for (int row = 0; (row < (bes.length - 1)) && !finished; row++) {
+                    List<BibtexEntry[]> pairs = waitForRow(row, search);
+                    if (pairs == null) {
+                        // Cancelled, or the search failed:
+                        break;
                     }
+                    for (BibtexEntry[] pair : pairs) {
+                        offer(pair);
+                    }
+                }
+                if (!finished) {
+                    // Passes on an exception of the search:
+                    search.join();
                 }
+            } finally {
+                // Wakes up the dialog thread, also if no duplicates were found:
+                offer(DuplicateSearch.END_OF_SEARCH);
             }
-            finished = true;
-            // if no duplicates found, the graphical thread will never wake up
-            synchronized (duplicates) {
-                duplicates.notifyAll();
+        }
+
+        /**
+         * Waits until the row has been searched, and returns its pairs, or
+         * null if the search has been cancelled or has ended without it.
+         */
+        private List<BibtexEntry[]> waitForRow(int row, ForkJoinTask<Void> search) {
+            synchronized (rowLock) {
+                List<BibtexEntry[]> pairs;
+                while (((pairs = rowPairs.get(row)) == null) && !finished && !search.isDone()) {
+                    try {
+                        rowLock.wait(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return null;
+                    }
+                }
+                return rowPairs.get(row);
+            }
+        }
+
+        /**
+         * Compares the given entry with all candidates further down in the list.
+         */
+        private void searchRow(int i) {
+            List<Integer> candidates = new ArrayList<Integer>();
+            for (BibtexEntry candidate : index.getCandidates(bes[i])) {
+                int j = positions.get(candidate);
+                if (j > i) {
+                    candidates.add(j);
+                }
+            }
+            Collections.sort(candidates);
+
+            List<BibtexEntry[]> pairs = new ArrayList<BibtexEntry[]>();
+            for (int c = 0; (c < candidates.size()) && !finished; c++) {
+                int j = candidates.get(c);
+                boolean eq = DuplicateCheck.isDuplicate(bes[i], bes[j]);
+
+                // If (suspected) duplicates, add them to the duplicates queue.
+                if (eq) {
+                    duplicatesFound.incrementAndGet();
+                    pairs.add(new BibtexEntry[] {bes[i], bes[j]});
+                }
+            }
+            rowPairs.set(i, pairs);
+            synchronized (rowLock) {
+                rowLock.notifyAll();
+            }
+        }
+
+        /**
+         * Waits for space in the queue. Once the search is cancelled, nobody
+         * takes from the queue any more, so the pair is dropped.
+         */
+        private void offer(BibtexEntry[] pair) {
+            try {
+                while (!finished && !duplicates.offer(pair, 100, TimeUnit.MILLISECONDS)) {
+                    // The dialog thread is still busy with earlier pairs.
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
 
@@ -177,11 +297,43 @@ public class DuplicateSearch implements Runnable {
         }
 
         // Thread cancel option
-        // no synchronized used because no "realy" critical situations expected
         public void setFinished()
         {
             finished = true;
         }
+
+
+        /**
+         * Searches the rows from (inclusive) to to (exclusive), splitting the
+         * range so that idle threads can steal parts of it.
+         */
+        private class RowRangeTask extends RecursiveAction {
+
+            private final int from;
+
+            private final int to;
+
+
+            public RowRangeTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (finished) {
+                    return;
+                }
+                if ((to - from) <= DuplicateSearch.ROWS_PER_TASK) {
+                    for (int i = from; (i < to) && !finished; i++) {
+                        searchRow(i);
+                    }
+                } else {
+                    int middle = (from + to) / 2;
+                    ForkJoinTask.invokeAll(new RowRangeTask(from, middle), new RowRangeTask(middle, to));
+                }
+            }
+        }
     }
 
     static class DuplicateCallBack implements CallBack {
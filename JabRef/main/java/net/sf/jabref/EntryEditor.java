@@ -1363,10 +1363,12 @@ public class EntryEditor extends JPanel implements VetoableChangeListener, Entry
 
                         fe.setValidBackgroundColor();
 
-                        // See if we need to update an AutoCompleter instance:
+                        // See if we need to update an AutoCompleter instance.
+                        // Entries of the database are taken care of by the
+                        // database change event:
                         AutoCompleter aComp = panel.getAutoCompleters().get(fe.getFieldName());
-                        if (aComp != null) {
-                            aComp.addBibtexEntry(entry);
+                        if ((aComp != null) && (panel.database().getEntryById(entry.getId()) != entry)) {
+                            aComp.fieldChanged(fe.getFieldName(), oldValue, toSet);
                         }
 
                         // Add an UndoableFieldChange to the baseframe's undoManager.
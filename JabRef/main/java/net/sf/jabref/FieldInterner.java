@@ -0,0 +1,151 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns small integer ids to field names, so that entries can store their
+ * fields in compact arrays instead of one HashMap each, and shares equal
+ * values of fields that typically repeat across entries (journal names,
+ * years, publishers, ...).
+ *
+ * This is kept apart from BibtexFields, because initializing that class
+ * requires the preferences, while entries are also created without them
+ * (e.g. by the command line import).
+ *
+ * All methods are thread safe. Lookups do not lock.
+ */
+public class FieldInterner {
+
+    /**
+     * Fields whose values are shared between entries.
+     */
+    private static final Set<String> DEDUPLICATED_FIELDS = new HashSet<String>(Arrays.asList(
+            "address", "booktitle", "edition", "howpublished", "institution", "journal", "journaltitle",
+            "language", "month", "organization", "publisher", "school", "series", "type", "year",
+            BibtexFields.OWNER));
+
+    /**
+     * Longer values are not shared, they hardly ever repeat.
+     */
+    private static final int MAX_DEDUPLICATED_LENGTH = 256;
+
+    /**
+     * The number of distinct values shared at most, so that the table cannot
+     * grow without bounds.
+     */
+    private static final int MAX_DEDUPLICATED_VALUES = 100000;
+
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+    private static final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<String, String>();
+
+    private static final Object lock = new Object();
+
+    // Indexed by id. Replaced as a whole when growing; id 0 is not used.
+    private static volatile String[] names = new String[64];
+
+    private static volatile boolean[] deduplicated = new boolean[64];
+
+    private static int nextId = 1;
+
+    private static volatile boolean valueDeduplication = true;
+
+
+    private FieldInterner() {
+    }
+
+    /**
+     * Returns the id of the given field name, assigning a new one if the name
+     * has not been seen before. Ids are always greater than 0.
+     */
+    public static int getId(String name) {
+        Integer id = FieldInterner.ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (FieldInterner.lock) {
+            id = FieldInterner.ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            int newId = FieldInterner.nextId++;
+            String[] newNames = FieldInterner.names;
+            boolean[] newDeduplicated = FieldInterner.deduplicated;
+            if (newId >= newNames.length) {
+                newNames = Arrays.copyOf(newNames, newNames.length * 2);
+                newDeduplicated = Arrays.copyOf(newDeduplicated, newDeduplicated.length * 2);
+            }
+            newNames[newId] = name;
+            newDeduplicated[newId] = FieldInterner.DEDUPLICATED_FIELDS.contains(name);
+            FieldInterner.deduplicated = newDeduplicated;
+            FieldInterner.names = newNames;
+            FieldInterner.ids.put(name, newId);
+            return newId;
+        }
+    }
+
+    /**
+     * Returns the id of the given field name, or 0 if it has none yet (in
+     * which case no entry can contain the field).
+     */
+    public static int findId(String name) {
+        Integer id = FieldInterner.ids.get(name);
+        return id == null ? 0 : id;
+    }
+
+    /**
+     * Returns the field name with the given id.
+     */
+    public static String getName(int id) {
+        return FieldInterner.names[id];
+    }
+
+    /**
+     * Returns a shared instance equal to the given value, if values of the
+     * given field are shared. Otherwise the value itself is returned.
+     */
+    public static String internValue(int id, String value) {
+        if (!FieldInterner.valueDeduplication || (value == null)
+                || (value.length() > FieldInterner.MAX_DEDUPLICATED_LENGTH) || !FieldInterner.deduplicated[id]) {
+            return value;
+        }
+        String shared = FieldInterner.values.get(value);
+        if (shared != null) {
+            return shared;
+        }
+        if (FieldInterner.values.size() >= FieldInterner.MAX_DEDUPLICATED_VALUES) {
+            return value;
+        }
+        shared = FieldInterner.values.putIfAbsent(value, value);
+        return shared == null ? value : shared;
+    }
+
+    public static boolean isValueDeduplication() {
+        return FieldInterner.valueDeduplication;
+    }
+
+    /**
+     * Turns sharing of equal field values on or off for values set from now on.
+     */
+    public static void setValueDeduplication(boolean valueDeduplication) {
+        FieldInterner.valueDeduplication = valueDeduplication;
+    }
+}
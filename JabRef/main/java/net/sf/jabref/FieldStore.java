@@ -0,0 +1,201 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The fields of one entry, stored as an open-addressing hash table of field
+ * ids (see FieldInterner) and values in two plain arrays. Compared to a
+ * HashMap, this needs no Entry object per field and no copy of the field
+ * name.
+ *
+ * Like the HashMap it replaces, a field can be present with a null value.
+ *
+ * The arrays are never changed once they are in use: a change copies them
+ * (an entry has few fields) and publishes the copies together through one
+ * volatile field. Reading is thus thread safe without locking, and always
+ * sees a consistent table; changes are serialized on the store.
+ */
+class FieldStore {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * An immutable hash table.
+     */
+    private static final class Table {
+
+        // 0 marks a free slot, field ids start at 1.
+        private final int[] ids;
+
+        private final String[] values;
+
+        private final int size;
+
+
+        private Table(int[] ids, String[] values, int size) {
+            this.ids = ids;
+            this.values = values;
+            this.size = size;
+        }
+
+        /**
+         * Returns the slot containing the given id, or the free slot where
+         * it would be inserted.
+         */
+        private int indexOf(int id) {
+            return FieldStore.indexOf(ids, id);
+        }
+    }
+
+
+    private volatile Table table;
+
+
+    public FieldStore() {
+        table = new Table(new int[FieldStore.INITIAL_CAPACITY], new String[FieldStore.INITIAL_CAPACITY], 0);
+    }
+
+    public FieldStore(FieldStore other) {
+        // The table is immutable, so it can be shared:
+        table = other.table;
+    }
+
+    public int size() {
+        return table.size;
+    }
+
+    public boolean containsKey(String name) {
+        int id = FieldInterner.findId(name);
+        Table t = table;
+        return (id != 0) && (t.ids[t.indexOf(id)] == id);
+    }
+
+    public String get(String name) {
+        int id = FieldInterner.findId(name);
+        if (id == 0) {
+            return null;
+        }
+        Table t = table;
+        int index = t.indexOf(id);
+        return t.ids[index] == id ? t.values[index] : null;
+    }
+
+    /**
+     * Sets the field and returns its previous value.
+     */
+    public synchronized String put(String name, String value) {
+        int id = FieldInterner.getId(name);
+        value = FieldInterner.internValue(id, value);
+        Table t = table;
+        int index = t.indexOf(id);
+        if (t.ids[index] == id) {
+            String[] values = t.values.clone();
+            values[index] = value;
+            table = new Table(t.ids, values, t.size);
+            return t.values[index];
+        }
+        int size = t.size + 1;
+        // Keep the load factor at most 3/4:
+        int capacity = (size * 4) > (t.ids.length * 3) ? t.ids.length * 2 : t.ids.length;
+        int[] ids = new int[capacity];
+        String[] values = new String[capacity];
+        FieldStore.copy(t, ids, values);
+        index = FieldStore.indexOf(ids, id);
+        ids[index] = id;
+        values[index] = value;
+        table = new Table(ids, values, size);
+        return null;
+    }
+
+    /**
+     * Removes the field and returns its previous value.
+     */
+    public synchronized String remove(String name) {
+        int id = FieldInterner.findId(name);
+        if (id == 0) {
+            return null;
+        }
+        Table t = table;
+        int index = t.indexOf(id);
+        if (t.ids[index] != id) {
+            return null;
+        }
+        // Rehashing the others into new arrays leaves no gap in a cluster:
+        int[] ids = new int[t.ids.length];
+        String[] values = new String[t.ids.length];
+        for (int i = 0; i < t.ids.length; i++) {
+            if ((t.ids[i] != 0) && (i != index)) {
+                int slot = FieldStore.indexOf(ids, t.ids[i]);
+                ids[slot] = t.ids[i];
+                values[slot] = t.values[i];
+            }
+        }
+        table = new Table(ids, values, t.size - 1);
+        return t.values[index];
+    }
+
+    /**
+     * Returns the names of all fields, sorted.
+     */
+    public Set<String> getNames() {
+        Set<String> names = new TreeSet<String>();
+        for (int id : table.ids) {
+            if (id != 0) {
+                names.add(FieldInterner.getName(id));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Returns the slot of the table containing the given id, or the free
+     * slot where it would be inserted.
+     */
+    private static int indexOf(int[] ids, int id) {
+        int mask = ids.length - 1;
+        int index = FieldStore.hash(id, mask);
+        while ((ids[index] != 0) && (ids[index] != id)) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private static int hash(int id, int mask) {
+        // Fibonacci hashing spreads consecutive ids over the table:
+        return ((id * 0x9E3779B9) >>> 16) & mask;
+    }
+
+    /**
+     * Inserts all fields of the table into the given (empty) arrays.
+     */
+    private static void copy(Table t, int[] ids, String[] values) {
+        if (ids.length == t.ids.length) {
+            System.arraycopy(t.ids, 0, ids, 0, ids.length);
+            System.arraycopy(t.values, 0, values, 0, values.length);
+            return;
+        }
+        for (int i = 0; i < t.ids.length; i++) {
+            if (t.ids[i] != 0) {
+                int index = FieldStore.indexOf(ids, t.ids[i]);
+                ids[index] = t.ids[i];
+                values[index] = t.values[i];
+            }
+        }
+    }
+}
@@ -259,6 +259,14 @@ public class JabRef {
         // Has to be done here as openBibFile requires an initialized icon theme (due to the implementation of special fields)
         GUIGlobals.setUpIconTheme();
 
+        // A plain conversion of one bib file into another one does not need the
+        // database in memory, so we stream it entry by entry:
+        boolean streamed = false;
+        if (JabRef.isStreamingConversion(cli)) {
+            JabRef.convertBibFile(cli.getFileImport().split(",")[0], cli.getFileExport());
+            streamed = true;
+        }
+
         // Vector to put imported/loaded database(s) in.
         Vector<ParserResult> loaded = new Vector<ParserResult>();
         Vector<String> toImport = new Vector<String>();
@@ -297,7 +305,7 @@ public class JabRef {
             }
         }
 
-        if (!cli.isBlank() && cli.isFileImport()) {
+        if (!cli.isBlank() && cli.isFileImport() && !streamed) {
             toImport.add(cli.getFileImport());
         }
 
@@ -378,7 +386,7 @@ public class JabRef {
             } //end if(loaded.size > 0)
         } //end exportMatches invoked 
 
-        if (cli.isFileExport()) {
+        if (cli.isFileExport() && !streamed) {
             if (loaded.size() > 0) {
                 String[] data = cli.getFileExport().split(",");
 
@@ -914,6 +922,57 @@ public class JabRef {
 
     }
 
+    /**
+     * Checks whether the command line asks for nothing but converting a single bib
+     * file into another bib file, which can be done without loading the database.
+     */
+    private static boolean isStreamingConversion(JabRefCLI cli) {
+        if (!cli.isDisableGui() || cli.isBlank() || !cli.isFileImport() || !cli.isFileExport()
+                || (cli.getLeftOver().length > 0) || cli.isImportToOpenBase() || cli.isFetcherEngine()
+                || cli.isExportMatches() || cli.isAuxImport()) {
+            return false;
+        }
+        String[] in = cli.getFileImport().split(",");
+        String[] out = cli.getFileExport().split(",");
+        return in[0].toLowerCase().endsWith(".bib")
+                && ((in.length == 1) || "*".equals(in[1]) || "bibtex".equals(in[1]))
+                && (out.length == 1) && Globals.prefs.isSaveInOriginalOrder();
+    }
+
+    /**
+     * Copies the given bib file to the output file in the default encoding,
+     * streaming the entries instead of building a database.
+     */
+    private static void convertBibFile(String source, String target) {
+        File file = new File(source);
+        if (!file.exists()) {
+            System.err.println(Globals.lang("Error") + ": " + Globals.lang("File not found"));
+            return;
+        }
+        try {
+            String encoding = OpenDatabaseAction.getSuppliedEncoding(file);
+            if (encoding == null) {
+                encoding = Globals.prefs.getDefaultEncoding();
+            }
+            System.out.println(Globals.lang("Saving") + ": " + target);
+            SaveSession session = FileActions.convertDatabase(file, encoding, new File(target),
+                    Globals.prefs, Globals.prefs.getDefaultEncoding());
+            // Show just a warning message if encoding didn't work for all characters:
+            if (!session.getWriter().couldEncodeAll()) {
+                System.err.println(Globals.lang("Warning") + ": " +
+                        Globals.lang("The chosen encoding '%0' could not encode the following characters: ",
+                                session.getEncoding()) + session.getWriter().getProblemCharacters());
+            }
+            session.commit();
+        } catch (IOException ex) {
+            System.err.println(Globals.lang("Error opening file") + " '"
+                    + source + "': " + ex.getLocalizedMessage());
+        } catch (SaveException ex) {
+            System.err.println(Globals.lang("Could not save file") + " '"
+                    + target + "': " + ex.getMessage());
+        }
+    }
+
     private static ParserResult importFile(String argument) {
         String[] data = argument.split(",");
         try {
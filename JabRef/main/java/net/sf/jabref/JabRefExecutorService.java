@@ -18,6 +18,8 @@ public class JabRefExecutorService implements Executor {
         }
     });
     private final ConcurrentLinkedQueue<Thread> startedThreads = new ConcurrentLinkedQueue<Thread>();
+    // Used for CPU-bound work that is split across all cores:
+    private final ForkJoinPool forkJoinPool = new ForkJoinPool();
 
     private JabRefExecutorService() {}
 
@@ -82,6 +84,13 @@ public class JabRefExecutorService implements Executor {
         thread.start();
     }
 
+    /**
+     * Returns the pool for CPU-bound tasks that are split into parts and run on all cores.
+     */
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
     public void executeInOwnThread(Thread thread) {
         // this is a special case method for Threads that cannot be interrupted so easily
         // this method should normally not be used
@@ -114,6 +123,7 @@ public class JabRefExecutorService implements Executor {
 
     public void shutdownEverything() {
         this.executorService.shutdown();
+        this.forkJoinPool.shutdown();
         for(Thread thread : startedThreads) {
             thread.interrupt();
         }
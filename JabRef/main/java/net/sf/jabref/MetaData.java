@@ -301,6 +301,31 @@ public class MetaData implements Iterable<String> {
         }
     }
 
+    /**
+     * Returns the meta data in the form the constructor takes it, which is
+     * what the parser reads back from the output of writeMetaData().
+     */
+    public HashMap<String, String> getSerializedData() {
+        HashMap<String, String> data = new HashMap<String, String>();
+        for (String key : metaData.keySet()) {
+            StringBuilder sb = new StringBuilder();
+            for (String unit : metaData.get(key)) {
+                sb.append(StringUtil.quote(unit, ";", '\\')).append(";");
+            }
+            data.put(key, sb.toString());
+        }
+        if ((groupsRoot != null) && (groupsRoot.getChildCount() > 0)) {
+            data.put("groupsversion", VersionHandling.CURRENT_VERSION + ";");
+            StringBuilder sb = new StringBuilder();
+            StringTokenizer tok = new StringTokenizer(groupsRoot.getTreeAsString(), Globals.NEWLINE);
+            while (tok.hasMoreTokens()) {
+                sb.append(StringUtil.quote(tok.nextToken(), ";", '\\')).append(";");
+            }
+            data.put("groupstree", sb.toString());
+        }
+        return data;
+    }
+
     private void wrapStringBuffer(StringBuffer sb, int lineLength) {
         for (int i = lineLength; i < sb.length(); i += lineLength + Globals.NEWLINE_LENGTH) {
             sb.insert(i, Globals.NEWLINE);
@@ -32,6 +32,7 @@ import java.awt.*;
 import java.awt.event.*;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Set;
 import java.util.Vector;
 
 public class SearchManager2 extends SidePaneComponent
@@ -556,26 +557,25 @@ public class SearchManager2 extends SidePaneComponent
         public void run() {
             if (!searchAllBases.isSelected()) {
                 // Search only the current database:
-                for (BibtexEntry entry : panel.getDatabase().getEntries()) {
-
-                    boolean hit = rule.applyRule(searchTerm, entry);
-                    entry.setSearchHit(hit);
-                    if (hit) {
-                        hits++;
-                    }
-                }
+                search(panel.getDatabase());
             } else {
                 // Search all databases:
                 for (int i = 0; i < frame.getTabbedPane().getTabCount(); i++) {
-                    BasePanel p = frame.baseAt(i);
-                    for (BibtexEntry entry : p.getDatabase().getEntries()) {
+                    search(frame.baseAt(i).getDatabase());
+                }
+            }
+        }
 
-                        boolean hit = rule.applyRule(searchTerm, entry);
-                        entry.setSearchHit(hit);
-                        if (hit) {
-                            hits++;
-                        }
-                    }
+        private void search(BibtexDatabase database) {
+            // Only the entries the index cannot rule out need to be checked:
+            Set<BibtexEntry> candidates = database.getSearchIndex().getCandidates(rule, searchTerm);
+            for (BibtexEntry entry : database.getEntries()) {
+
+                boolean hit = ((candidates == null) || candidates.contains(entry))
+                        && rule.applyRule(searchTerm, entry);
+                entry.setSearchHit(hit);
+                if (hit) {
+                    hits++;
                 }
             }
         }
@@ -743,8 +743,10 @@ public class SearchManager2 extends SidePaneComponent
                 if (incSearchPos < 0) {
                     incSearchPos = 0;
                 }
+                // Entries the index rules out need not be searched:
+                Set<BibtexEntry> candidates = panel.getDatabase().getSearchIndex().getCandidates(text);
                 BibtexEntry be = panel.mainTable.getEntryAt(incSearchPos);
-                while (!incSearcher.search(text, be)) {
+                while (((candidates != null) && !candidates.contains(be)) || !incSearcher.search(text, be)) {
                     incSearchPos++;
                     if (incSearchPos < panel.getDatabase().getEntryCount()) {
                         be = panel.mainTable.getEntryAt(incSearchPos);
@@ -0,0 +1,262 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref;
+
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A list of entries kept sorted by a Comparator, in which an entry can be
+ * added, removed, moved to its new place after it changed, looked up by
+ * position and located in O(log n).
+ *
+ * The entries are stored in a treap (a binary search tree balanced by random
+ * priorities) whose nodes know the size of their subtree. Entries the
+ * Comparator considers equal are kept in the order in which they were added.
+ *
+ * Since the sort keys of a changed entry are no longer where the tree expects
+ * them, nodes are found through an identity map and removed by rotating them
+ * down to a leaf, which needs no comparisons.
+ *
+ * This class is not thread safe.
+ */
+class SortedEntryTree {
+
+    private static class Node {
+
+        private final BibtexEntry entry;
+
+        private final long sequence;
+
+        private final int priority;
+
+        private int size = 1;
+
+        private Node left;
+
+        private Node right;
+
+        private Node parent;
+
+
+        public Node(BibtexEntry entry, long sequence, int priority) {
+            this.entry = entry;
+            this.sequence = sequence;
+            this.priority = priority;
+        }
+    }
+
+
+    private final Comparator<BibtexEntry> comp;
+
+    private final Map<BibtexEntry, Node> nodes = new IdentityHashMap<BibtexEntry, Node>();
+
+    private final Random random = new Random();
+
+    private Node root;
+
+    private long nextSequence = 0;
+
+
+    public SortedEntryTree(Comparator<BibtexEntry> comp) {
+        this.comp = comp;
+    }
+
+    public int size() {
+        return SortedEntryTree.size(root);
+    }
+
+    public boolean contains(BibtexEntry entry) {
+        return nodes.containsKey(entry);
+    }
+
+    /**
+     * Inserts the entry at its place. Does nothing if it is already contained.
+     */
+    public void add(BibtexEntry entry) {
+        if (nodes.containsKey(entry)) {
+            return;
+        }
+        Node node = new Node(entry, nextSequence++, random.nextInt());
+        nodes.put(entry, node);
+        insert(node);
+    }
+
+    /**
+     * Removes the entry, if contained.
+     */
+    public boolean remove(BibtexEntry entry) {
+        Node node = nodes.remove(entry);
+        if (node == null) {
+            return false;
+        }
+        detach(node);
+        return true;
+    }
+
+    /**
+     * Moves the entry to the place where it belongs after its sort keys
+     * changed. Does nothing if the entry is not contained.
+     */
+    public void reposition(BibtexEntry entry) {
+        Node node = nodes.get(entry);
+        if (node == null) {
+            return;
+        }
+        detach(node);
+        node.left = null;
+        node.right = null;
+        node.parent = null;
+        node.size = 1;
+        insert(node);
+    }
+
+    /**
+     * Returns the entry at the given position of the sorted list.
+     */
+    public BibtexEntry get(int index) {
+        if ((index < 0) || (index >= size())) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node node = root;
+        while (true) {
+            int leftSize = SortedEntryTree.size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node.entry;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the entry in the sorted list, or -1 if it is not
+     * contained.
+     */
+    public int indexOf(BibtexEntry entry) {
+        Node node = nodes.get(entry);
+        if (node == null) {
+            return -1;
+        }
+        int index = SortedEntryTree.size(node.left);
+        while (node.parent != null) {
+            if (node == node.parent.right) {
+                index += SortedEntryTree.size(node.parent.left) + 1;
+            }
+            node = node.parent;
+        }
+        return index;
+    }
+
+    private int compare(Node a, Node b) {
+        int result = comp.compare(a.entry, b.entry);
+        if (result != 0) {
+            return result;
+        }
+        return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+    }
+
+    private void insert(Node node) {
+        if (root == null) {
+            root = node;
+            return;
+        }
+        Node current = root;
+        while (true) {
+            current.size++;
+            if (compare(node, current) < 0) {
+                if (current.left == null) {
+                    current.left = node;
+                    break;
+                }
+                current = current.left;
+            } else {
+                if (current.right == null) {
+                    current.right = node;
+                    break;
+                }
+                current = current.right;
+            }
+        }
+        node.parent = current;
+        while ((node.parent != null) && (node.priority > node.parent.priority)) {
+            rotateUp(node);
+        }
+    }
+
+    private void detach(Node node) {
+        // Rotate the node down until it has at most one child:
+        while ((node.left != null) && (node.right != null)) {
+            rotateUp(node.left.priority > node.right.priority ? node.left : node.right);
+        }
+        Node child = node.left != null ? node.left : node.right;
+        Node parent = node.parent;
+        if (child != null) {
+            child.parent = parent;
+        }
+        if (parent == null) {
+            root = child;
+        } else if (parent.left == node) {
+            parent.left = child;
+        } else {
+            parent.right = child;
+        }
+        for (Node n = parent; n != null; n = n.parent) {
+            n.size--;
+        }
+    }
+
+    /**
+     * Rotates the node above its parent.
+     */
+    private void rotateUp(Node node) {
+        Node parent = node.parent;
+        Node grandParent = parent.parent;
+        if (node == parent.left) {
+            parent.left = node.right;
+            if (node.right != null) {
+                node.right.parent = parent;
+            }
+            node.right = parent;
+        } else {
+            parent.right = node.left;
+            if (node.left != null) {
+                node.left.parent = parent;
+            }
+            node.left = parent;
+        }
+        parent.parent = node;
+        node.parent = grandParent;
+        if (grandParent == null) {
+            root = node;
+        } else if (grandParent.left == parent) {
+            grandParent.left = node;
+        } else {
+            grandParent.right = node;
+        }
+        parent.size = 1 + SortedEntryTree.size(parent.left) + SortedEntryTree.size(parent.right);
+        node.size = 1 + SortedEntryTree.size(node.left) + SortedEntryTree.size(node.right);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+}
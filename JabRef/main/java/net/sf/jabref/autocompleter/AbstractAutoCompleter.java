@@ -17,8 +17,9 @@ package net.sf.jabref.autocompleter;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import net.sf.jabref.BibtexEntry;
 
@@ -35,18 +36,94 @@ abstract class AbstractAutoCompleter implements AutoCompleter {
 
     private static final int SHORTEST_WORD = 4;
 
-    // stores the strings as is
-    private final TreeSet<String> indexCaseSensitive = new TreeSet<String>();
+    // The number of completions offered at most:
+    static final int MAX_COMPLETIONS = 20;
 
-    // stores strings in lowercase
-    private final TreeSet<String> indexCaseInsensitive = new TreeSet<String>();
+    // An accepted completion counts as this many occurrences:
+    private static final double ACCEPTED_WEIGHT = 5;
 
-    // stores for a lowercase string the possible expanded strings
-    private final HashMap<String, TreeSet<String>> possibleStringsForSearchString = new HashMap<String, TreeSet<String>>();
+    // Each accepted completion lets the weight of the earlier ones decay by
+    // this factor, so that recently accepted words are ranked higher:
+    private static final double ACCEPTED_DECAY = 0.9;
 
+    // Weights of accepted completions below this are dropped:
+    private static final double MIN_ACCEPTED_WEIGHT = 0.01;
 
+    // stores the words with their spellings and scores
+    private final CompletionTrie index = new CompletionTrie();
 
-    abstract public void addBibtexEntry(BibtexEntry entry);
+    // The weight of the accepted completions of each word. As the weights
+    // decay, only the words accepted recently are kept:
+    private final Map<String, Double> acceptedWeights = new HashMap<String, Double>();
+
+
+
+    /**
+     * Returns the fields whose words are stored.
+     */
+    protected abstract String[] getFieldNames();
+
+    /**
+     * Adds the words to store for the value of one of the fields to the list.
+     */
+    protected abstract void addWords(String fieldValue, List<String> words);
+
+    @Override
+    public void addBibtexEntry(BibtexEntry entry) {
+        addOccurrences(entry, 1);
+    }
+
+    @Override
+    public void removeBibtexEntry(BibtexEntry entry) {
+        addOccurrences(entry, -1);
+    }
+
+    private synchronized void addOccurrences(BibtexEntry entry, int occurrences) {
+        if (entry == null) {
+            return;
+        }
+        List<String> words = new ArrayList<String>();
+        for (String fieldName : getFieldNames()) {
+            String fieldValue = entry.getField(fieldName);
+            if (fieldValue != null) {
+                addWords(fieldValue, words);
+            }
+        }
+        for (String word : words) {
+            addWordToIndex(word, occurrences);
+        }
+    }
+
+    @Override
+    public synchronized void fieldChanged(String fieldName, String oldValue, String newValue) {
+        boolean stored = false;
+        for (String name : getFieldNames()) {
+            stored |= name.equals(fieldName);
+        }
+        if (!stored) {
+            return;
+        }
+        Map<String, Integer> changes = new HashMap<String, Integer>();
+        countWords(oldValue, -1, changes);
+        countWords(newValue, 1, changes);
+        for (Map.Entry<String, Integer> change : changes.entrySet()) {
+            if (change.getValue() != 0) {
+                addWordToIndex(change.getKey(), change.getValue());
+            }
+        }
+    }
+
+    private void countWords(String fieldValue, int occurrences, Map<String, Integer> counts) {
+        if (fieldValue == null) {
+            return;
+        }
+        List<String> words = new ArrayList<String>();
+        addWords(fieldValue, words);
+        for (String word : words) {
+            Integer count = counts.get(word);
+            counts.put(word, (count == null ? 0 : count) + occurrences);
+        }
+    }
 
     /**
      * Returns one or more possible completions for a given String. The returned
@@ -54,43 +131,30 @@ abstract class AbstractAutoCompleter implements AutoCompleter {
      * BibtexEntries by the used implementation of {@link AbstractAutoCompleter}
      * .
      * 
+     * The words used most often (in the entries currently in the database and
+     * in accepted completions) are returned first, at most MAX_COMPLETIONS.
+     * Occurrences in the database are counted, while the weight of accepted
+     * completions decays with each later one.
+     * 
      * @see AbstractAutoCompleter#addBibtexEntry(BibtexEntry)
      */
     public String[] complete(String str) {
         if (AbstractAutoCompleter.stringMinLength(str)) {
             return null;
         }
-        String lstr = str.toLowerCase();
-
-        if (lstr.equals(str)) {
-            // user typed in lower case word -> we do an case-insenstive search
-            String ender = AbstractAutoCompleter.incrementLastCharacter(lstr);
-            SortedSet<String> subset = indexCaseInsensitive.subSet(lstr, ender);
-
-            // As subset only contains lower case strings, 
-            // we have to to determine possible strings for each hit
-            ArrayList<String> res = new ArrayList<String>();
-            for (String s : subset) {
-                res.addAll(possibleStringsForSearchString.get(s));
-            }
-            return res.toArray(new String[res.size()]);
-        } else {
-            // user typed in a mix of upper case and lower case,
-            // we assume user wants to have exact search
-            String ender = AbstractAutoCompleter.incrementLastCharacter(str);
-            SortedSet<String> subset = indexCaseSensitive.subSet(str, ender);
-            return subset.toArray(new String[subset.size()]);
-        }
+        // If the user typed in a lower case word, we do a case-insensitive
+        // search. If the user typed in a mix of upper case and lower case,
+        // we assume user wants to have exact search.
+        return index.complete(str, !AbstractAutoCompleter.isLowerCase(str), AbstractAutoCompleter.MAX_COMPLETIONS);
     }
 
-    /**
-     * Increments the last character of a string.
-     * 
-     * Example: incrementLastCharacter("abc") returns "abd".
-     */
-    private static String incrementLastCharacter(String str) {
-        char lastChar = str.charAt(str.length() - 1);
-        return str.substring(0, str.length() - 1) + Character.toString((char) (lastChar + 1));
+    private static boolean isLowerCase(String str) {
+        for (int i = 0; i < str.length(); i++) {
+            if (Character.toLowerCase(str.charAt(i)) != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private static boolean stringMinLength(String str) {
@@ -98,25 +162,43 @@ abstract class AbstractAutoCompleter implements AutoCompleter {
     }
 
     public void addWordToIndex(String word) {
-        if (word.length() >= AbstractAutoCompleter.SHORTEST_WORD) {
-            indexCaseSensitive.add(word);
-
-            // insensitive treatment
-            // first, add the lower cased word to search index
-            // second, add a mapping from the lower cased word to the real word
-            String word_lcase = word.toLowerCase();
-            indexCaseInsensitive.add(word_lcase);
-            TreeSet<String> set = possibleStringsForSearchString.get(word_lcase);
-            if (set == null) {
-                set = new TreeSet<String>();
+        addWordToIndex(word, 1);
+    }
+
+    public synchronized void addWordToIndex(String word, int occurrences) {
+        if (word.length() < AbstractAutoCompleter.SHORTEST_WORD) {
+            return;
+        }
+        if (occurrences == 0) {
+            index.addSuggestion(word);
+        } else {
+            index.addOccurrences(word, occurrences);
+        }
+    }
+
+    public synchronized void completionAccepted(String word) {
+        if (word.length() < AbstractAutoCompleter.SHORTEST_WORD) {
+            return;
+        }
+        for (Iterator<Map.Entry<String, Double>> i = acceptedWeights.entrySet().iterator(); i.hasNext();) {
+            Map.Entry<String, Double> accepted = i.next();
+            double weight = accepted.getValue() * AbstractAutoCompleter.ACCEPTED_DECAY;
+            if (weight < AbstractAutoCompleter.MIN_ACCEPTED_WEIGHT) {
+                i.remove();
+                weight = 0;
+            } else {
+                accepted.setValue(weight);
             }
-            set.add(word);
-            possibleStringsForSearchString.put(word_lcase, set);
+            index.setAccepted(accepted.getKey(), weight);
         }
+        Double weight = acceptedWeights.get(word);
+        double newWeight = (weight == null ? 0 : weight) + AbstractAutoCompleter.ACCEPTED_WEIGHT;
+        acceptedWeights.put(word, newWeight);
+        index.setAccepted(word, newWeight);
     }
 
     public boolean indexContainsWord(String word) {
-        return indexCaseInsensitive.contains(word.toLowerCase());
+        return index.contains(word);
     }
 
     public String getPrefix() {
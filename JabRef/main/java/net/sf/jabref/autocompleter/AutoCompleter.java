@@ -11,6 +11,17 @@ public interface AutoCompleter {
      */
     void addBibtexEntry(BibtexEntry entry);
 
+    /**
+     * Takes back the words added for a BibtexEntry that is removed.
+     */
+    void removeBibtexEntry(BibtexEntry entry);
+
+    /**
+     * Updates the words of an entry whose field changed from the old to the
+     * new value (either may be null), by adding only the difference.
+     */
+    void fieldChanged(String fieldName, String oldValue, String newValue);
+
     /**
      * States whether the field consists of multiple values (false) or of a single value (true)
      * <p/>
@@ -21,6 +32,23 @@ public interface AutoCompleter {
 
     void addWordToIndex(String word);
 
+    /**
+     * Adds the given number of occurrences of a word, which ranks it among
+     * the completions. Words that are only suggested, e.g. from the journal
+     * abbreviation list, are added with 0 occurrences, and are kept even if
+     * they do not occur. Occurrences that no longer exist are taken back
+     * with a negative number; a word that is neither suggested nor occurs
+     * nor has been accepted recently is no longer offered.
+     */
+    void addWordToIndex(String word, int occurrences);
+
+    /**
+     * Called when the user has accepted a completion returned by
+     * complete(), which ranks it higher in later completions. The weight of
+     * an accepted completion decays with each later one.
+     */
+    void completionAccepted(String word);
+
     String getPrefix();
 
     String[] complete(String str);
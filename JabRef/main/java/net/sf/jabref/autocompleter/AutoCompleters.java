@@ -31,6 +31,25 @@ class AutoCompleters {
         }
     }
 
+    /**
+     * Takes back the words of an entry that is removed from the database.
+     */
+    public void removeEntry(BibtexEntry bibtexEntry) {
+        for (AutoCompleter autoCompleter : autoCompleters.values()) {
+            autoCompleter.removeBibtexEntry(bibtexEntry);
+        }
+    }
+
+    /**
+     * Records the difference between the old and new value of a changed
+     * field in the Completers that store its words.
+     */
+    public void fieldChanged(String fieldName, String oldValue, String newValue) {
+        for (AutoCompleter autoCompleter : autoCompleters.values()) {
+            autoCompleter.fieldChanged(fieldName, oldValue, newValue);
+        }
+    }
+
     void put(String field, AutoCompleter autoCompleter) {
         autoCompleters.put(field, autoCompleter);
     }
@@ -0,0 +1,392 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.autocompleter;
+
+import java.util.Arrays;
+
+/**
+ * The words of an autocompleter in a path compressed prefix tree, ranked by
+ * a score: how often they occur, plus a weight for accepted completions.
+ *
+ * The tree is built over the case folded words, so that a word and its
+ * spellings with different case end in the same node, which keeps the
+ * spellings and their scores. Each node also knows the highest score below
+ * it. A completion visits the subtrees in lexical order and skips those that
+ * cannot improve the best completions found so far, so that only a few
+ * nodes are visited even for short prefixes. The buffers used for this are
+ * kept between calls.
+ *
+ * A spelling is removed as soon as it neither occurs nor has an accepted
+ * weight, unless it was added as a suggestion. All methods are thread safe.
+ */
+class CompletionTrie {
+
+    private static final char[] NO_CHARS = new char[0];
+
+    private static final String[] NO_WORDS = new String[0];
+
+    private static final class Node {
+
+        // The (folded) characters on the edge leading to this node:
+        private char[] label;
+
+        // Sorted by the first character of their labels:
+        private Node[] children;
+
+        private int childCount = 0;
+
+        // The spellings of the word ending here, in lexical order:
+        private String[] words;
+
+        private int[] occurrences;
+
+        private double[] accepted;
+
+        private boolean[] suggested;
+
+        private int wordCount = 0;
+
+        // The highest score of a word in this subtree:
+        private double best = 0;
+
+
+        private Node(char[] label) {
+            this.label = label;
+        }
+
+        private double getScore(int index) {
+            return occurrences[index] + accepted[index];
+        }
+    }
+
+
+    private final Node root = new Node(CompletionTrie.NO_CHARS);
+
+    private int size = 0;
+
+    // Buffers for complete(), sorted by decreasing score and then in the
+    // (lexical) order the words were visited in:
+    private String[] found = new String[0];
+
+    private double[] foundScores = new double[0];
+
+    private int foundCount;
+
+
+    /**
+     * Folds a character the same way for words and prefixes.
+     */
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Adds the given number of occurrences of the word, or takes them back
+     * if the number is negative.
+     */
+    public synchronized void addOccurrences(String word, int occurrences) {
+        update(word, occurrences, false, false, 0);
+    }
+
+    /**
+     * Adds the word as a suggestion, which is kept even if it does not occur.
+     */
+    public synchronized void addSuggestion(String word) {
+        update(word, 0, true, false, 0);
+    }
+
+    /**
+     * Sets the weight of the accepted completions of the word, which is
+     * added to its number of occurrences.
+     */
+    public synchronized void setAccepted(String word, double weight) {
+        update(word, 0, false, true, weight);
+    }
+
+    private void update(String word, int occurrences, boolean suggest, boolean setAccepted, double accepted) {
+        boolean adds = (occurrences > 0) || suggest || (setAccepted && (accepted > 0));
+        char[] key = new char[word.length()];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = CompletionTrie.fold(word.charAt(i));
+        }
+        Node[] path = new Node[key.length + 1];
+        int depth = findPath(key, path, false);
+        if (depth < 0) {
+            if (!adds) {
+                return;
+            }
+            depth = findPath(key, path, true);
+        }
+        Node node = path[depth - 1];
+        int index = node.words == null ? -1 : Arrays.binarySearch(node.words, 0, node.wordCount, word);
+        if (index < 0) {
+            if (!adds) {
+                return;
+            }
+            index = -index - 1;
+            CompletionTrie.insertWord(node, index, word);
+            size++;
+        }
+        // Taking back more occurrences than were added is a caller's error,
+        // which must not make the score negative:
+        node.occurrences[index] = Math.max(0, node.occurrences[index] + occurrences);
+        node.suggested[index] |= suggest;
+        if (setAccepted) {
+            node.accepted[index] = accepted;
+        }
+        if ((node.occurrences[index] == 0) && (node.accepted[index] == 0) && !node.suggested[index]) {
+            CompletionTrie.removeWord(node, index);
+            size--;
+        }
+        for (int i = depth - 1; i >= 0; i--) {
+            if ((i > 0) && (path[i].wordCount == 0) && (path[i].childCount == 0)) {
+                CompletionTrie.removeChild(path[i - 1], path[i]);
+            } else {
+                CompletionTrie.updateBest(path[i]);
+            }
+        }
+    }
+
+    /**
+     * Fills the path with the nodes from the root to the node of the key,
+     * and returns its length, or -1 if there is no such node and none is to
+     * be created.
+     */
+    private int findPath(char[] key, Node[] path, boolean create) {
+        Node node = root;
+        int pos = 0;
+        int depth = 0;
+        path[depth++] = node;
+        while (pos < key.length) {
+            int index = CompletionTrie.findChild(node, key[pos]);
+            if (index < 0) {
+                if (!create) {
+                    return -1;
+                }
+                Node leaf = new Node(Arrays.copyOfRange(key, pos, key.length));
+                CompletionTrie.insertChild(node, -index - 1, leaf);
+                node = leaf;
+                pos = key.length;
+            } else {
+                Node child = node.children[index];
+                int common = 0;
+                while ((common < child.label.length) && ((pos + common) < key.length)
+                        && (child.label[common] == key[pos + common])) {
+                    common++;
+                }
+                if (common < child.label.length) {
+                    if (!create) {
+                        return -1;
+                    }
+                    // Split the edge:
+                    Node middle = new Node(Arrays.copyOf(child.label, common));
+                    child.label = Arrays.copyOfRange(child.label, common, child.label.length);
+                    CompletionTrie.insertChild(middle, 0, child);
+                    middle.best = child.best;
+                    node.children[index] = middle;
+                    child = middle;
+                }
+                node = child;
+                pos += common;
+            }
+            path[depth++] = node;
+        }
+        return depth;
+    }
+
+    private static void updateBest(Node node) {
+        double best = 0;
+        for (int i = 0; i < node.wordCount; i++) {
+            best = Math.max(best, node.getScore(i));
+        }
+        for (int i = 0; i < node.childCount; i++) {
+            best = Math.max(best, node.children[i].best);
+        }
+        node.best = best;
+    }
+
+    /**
+     * Returns true if the trie contains the word, ignoring case.
+     */
+    public synchronized boolean contains(String word) {
+        Node node = root;
+        int pos = 0;
+        while (pos < word.length()) {
+            int index = CompletionTrie.findChild(node, CompletionTrie.fold(word.charAt(pos)));
+            if (index < 0) {
+                return false;
+            }
+            node = node.children[index];
+            for (char c : node.label) {
+                if ((pos >= word.length()) || (CompletionTrie.fold(word.charAt(pos)) != c)) {
+                    return false;
+                }
+                pos++;
+            }
+        }
+        return node.wordCount > 0;
+    }
+
+    /**
+     * Returns the number of different spellings in the trie.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns at most max words starting with the prefix, the highest score
+     * first and words with equal scores in lexical order.
+     *
+     * @param caseSensitive If false, the case of the prefix is ignored.
+     */
+    public synchronized String[] complete(String prefix, boolean caseSensitive, int max) {
+        if (found.length < max) {
+            found = new String[max];
+            foundScores = new double[max];
+        }
+        foundCount = 0;
+        Node node = root;
+        int pos = 0;
+        // Find the node at or below the end of the prefix:
+        while (pos < prefix.length()) {
+            int index = CompletionTrie.findChild(node, CompletionTrie.fold(prefix.charAt(pos)));
+            if (index < 0) {
+                return CompletionTrie.NO_WORDS;
+            }
+            node = node.children[index];
+            for (int i = 0; (i < node.label.length) && (pos < prefix.length()); i++, pos++) {
+                if (CompletionTrie.fold(prefix.charAt(pos)) != node.label[i]) {
+                    return CompletionTrie.NO_WORDS;
+                }
+            }
+        }
+        collect(node, caseSensitive ? prefix : null, max);
+        String[] result = Arrays.copyOf(found, foundCount);
+        Arrays.fill(found, 0, foundCount, null);
+        return result;
+    }
+
+    private void collect(Node node, String prefix, int max) {
+        if ((foundCount == max) && (node.best <= foundScores[max - 1])) {
+            // Everything below either has a lower score or is later in
+            // lexical order than what has been found:
+            return;
+        }
+        for (int i = 0; i < node.wordCount; i++) {
+            if ((prefix == null) || node.words[i].startsWith(prefix)) {
+                offer(node.words[i], node.getScore(i), max);
+            }
+        }
+        for (int i = 0; i < node.childCount; i++) {
+            collect(node.children[i], prefix, max);
+        }
+    }
+
+    private void offer(String word, double score, int max) {
+        if ((foundCount == max) && (score <= foundScores[max - 1])) {
+            return;
+        }
+        int i = foundCount < max ? foundCount++ : max - 1;
+        // Words are visited in lexical order, so a word goes after those
+        // with at least the same score:
+        while ((i > 0) && (foundScores[i - 1] < score)) {
+            found[i] = found[i - 1];
+            foundScores[i] = foundScores[i - 1];
+            i--;
+        }
+        found[i] = word;
+        foundScores[i] = score;
+    }
+
+    private static int findChild(Node node, char c) {
+        int low = 0;
+        int high = node.childCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char first = node.children[middle].label[0];
+            if (first < c) {
+                low = middle + 1;
+            } else if (first > c) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static void insertChild(Node node, int index, Node child) {
+        if (node.children == null) {
+            node.children = new Node[2];
+        } else if (node.childCount == node.children.length) {
+            node.children = Arrays.copyOf(node.children, 2 * node.childCount);
+        }
+        System.arraycopy(node.children, index, node.children, index + 1, node.childCount - index);
+        node.children[index] = child;
+        node.childCount++;
+    }
+
+    private static void removeChild(Node node, Node child) {
+        int index = CompletionTrie.findChild(node, child.label[0]);
+        System.arraycopy(node.children, index + 1, node.children, index, node.childCount - index - 1);
+        node.children[--node.childCount] = null;
+    }
+
+    /**
+     * Inserts a spelling without occurrences into the node.
+     */
+    private static void insertWord(Node node, int index, String word) {
+        if (node.words == null) {
+            node.words = new String[1];
+            node.occurrences = new int[1];
+            node.accepted = new double[1];
+            node.suggested = new boolean[1];
+        } else if (node.wordCount == node.words.length) {
+            int length = node.wordCount + 1;
+            node.words = Arrays.copyOf(node.words, length);
+            node.occurrences = Arrays.copyOf(node.occurrences, length);
+            node.accepted = Arrays.copyOf(node.accepted, length);
+            node.suggested = Arrays.copyOf(node.suggested, length);
+        }
+        int moved = node.wordCount - index;
+        System.arraycopy(node.words, index, node.words, index + 1, moved);
+        System.arraycopy(node.occurrences, index, node.occurrences, index + 1, moved);
+        System.arraycopy(node.accepted, index, node.accepted, index + 1, moved);
+        System.arraycopy(node.suggested, index, node.suggested, index + 1, moved);
+        node.words[index] = word;
+        node.occurrences[index] = 0;
+        node.accepted[index] = 0;
+        node.suggested[index] = false;
+        node.wordCount++;
+    }
+
+    private static void removeWord(Node node, int index) {
+        int moved = node.wordCount - index - 1;
+        System.arraycopy(node.words, index + 1, node.words, index, moved);
+        System.arraycopy(node.occurrences, index + 1, node.occurrences, index, moved);
+        System.arraycopy(node.accepted, index + 1, node.accepted, index, moved);
+        System.arraycopy(node.suggested, index + 1, node.suggested, index, moved);
+        node.wordCount--;
+        node.words[node.wordCount] = null;
+        if (node.wordCount == 0) {
+            node.words = null;
+            node.occurrences = null;
+            node.accepted = null;
+            node.suggested = null;
+        }
+    }
+}
@@ -35,7 +35,7 @@ public class ContentAutoCompleters extends AutoCompleters {
                 Vector<String> items = metaData.getData(Globals.SELECTOR_META_PREFIX + entry.getKey());
                 if (items != null) {
                     for (String item : items) {
-                        ac.addWordToIndex(item);
+                        ac.addWordToIndex(item, 0);
                     }
                 }
             }
@@ -50,7 +50,7 @@ public class ContentAutoCompleters extends AutoCompleters {
         AutoCompleter autoCompleter = get("journal");
         if(autoCompleter != null) {
             for(Abbreviation abbreviation : Globals.journalAbbrev.getAbbreviations()) {
-                autoCompleter.addWordToIndex(abbreviation.getName());
+                autoCompleter.addWordToIndex(abbreviation.getName(), 0);
             }
         }
     }
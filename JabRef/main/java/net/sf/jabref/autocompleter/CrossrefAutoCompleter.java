@@ -15,7 +15,9 @@
 */
 package net.sf.jabref.autocompleter;
 
-import net.sf.jabref.BibtexEntry;
+import java.util.List;
+
+import net.sf.jabref.BibtexFields;
 
 /**
  * Crossref autocompleter stores info from the key field.
@@ -30,14 +32,12 @@ class CrossrefAutoCompleter extends AbstractAutoCompleter {
     }
 
     @Override
-    public void addBibtexEntry(BibtexEntry entry) {
-        if (entry == null) {
-            return;
-        }
-
-        String key = entry.getCiteKey();
-        if (key != null) {
-            addWordToIndex(key.trim());
-        }
+    protected String[] getFieldNames() {
+        return new String[] {BibtexFields.KEY_FIELD};
+    }
+
+    @Override
+    protected void addWords(String key, List<String> words) {
+        words.add(key.trim());
     }
 }
@@ -15,9 +15,9 @@
 */
 package net.sf.jabref.autocompleter;
 
-import net.sf.jabref.BibtexEntry;
 import net.sf.jabref.Globals;
 
+import java.util.List;
 import java.util.StringTokenizer;
 
 /**
@@ -43,18 +43,15 @@ class DefaultAutoCompleter extends AbstractAutoCompleter {
     }
 
     @Override
-    public void addBibtexEntry(BibtexEntry entry) {
-        if (entry == null) {
-            return;
-        }
+    protected String[] getFieldNames() {
+        return new String[] {fieldName};
+    }
 
-        String fieldValue = entry.getField(fieldName);
-        if (fieldValue != null) {
-            StringTokenizer tok = new StringTokenizer(fieldValue, Globals.SEPARATING_CHARS);
-            while (tok.hasMoreTokens()) {
-                String word = tok.nextToken();
-                addWordToIndex(word);
-            }
+    @Override
+    protected void addWords(String fieldValue, List<String> words) {
+        StringTokenizer tok = new StringTokenizer(fieldValue, Globals.SEPARATING_CHARS);
+        while (tok.hasMoreTokens()) {
+            words.add(tok.nextToken());
         }
     }
 }
@@ -15,7 +15,7 @@
 */
 package net.sf.jabref.autocompleter;
 
-import net.sf.jabref.BibtexEntry;
+import java.util.List;
 
 /**
  * Stores the full original value of one field of the given BibtexEntries.
@@ -39,14 +39,12 @@ class EntireFieldAutoCompleter extends AbstractAutoCompleter {
     }
 
     @Override
-    public void addBibtexEntry(BibtexEntry entry) {
-        if (entry == null) {
-            return;
-        }
-
-        String fieldValue = entry.getField(fieldName);
-        if (fieldValue != null) {
-            addWordToIndex(fieldValue.trim());
-        }
+    protected String[] getFieldNames() {
+        return new String[] {fieldName};
+    }
+
+    @Override
+    protected void addWords(String fieldValue, List<String> words) {
+        words.add(fieldValue.trim());
     }
 }
@@ -15,8 +15,9 @@
 */
 package net.sf.jabref.autocompleter;
 
+import java.util.List;
+
 import net.sf.jabref.AuthorList;
-import net.sf.jabref.BibtexEntry;
 import net.sf.jabref.Globals;
 import net.sf.jabref.JabRefPreferences;
 
@@ -76,41 +77,38 @@ class NameFieldAutoCompleter extends AbstractAutoCompleter {
     }
 
     @Override
-    public void addBibtexEntry(BibtexEntry entry) {
-        if (entry == null) {
-            return;
-        }
-        for (String fieldName : fieldNames) {
-            String fieldValue = entry.getField(fieldName);
-            if (fieldValue != null) {
-                AuthorList authorList = AuthorList.getAuthorList(fieldValue);
-                for (int j = 0; j < authorList.size(); j++) {
-                    AuthorList.Author author = authorList.getAuthor(j);
-                    if (lastNameOnlyAndSeparationBySpace) {
-                        addWordToIndex(author.getLastOnly());
+    protected String[] getFieldNames() {
+        return fieldNames;
+    }
+
+    @Override
+    protected void addWords(String fieldValue, List<String> words) {
+        AuthorList authorList = AuthorList.getAuthorList(fieldValue);
+        for (int j = 0; j < authorList.size(); j++) {
+            AuthorList.Author author = authorList.getAuthor(j);
+            if (lastNameOnlyAndSeparationBySpace) {
+                words.add(author.getLastOnly());
+            } else {
+                if (autoCompLF) {
+                    if (autoCompShortFirstOnly) {
+                        words.add(author.getLastFirst(true));
+                    } else if (autoCompFullFirstOnly) {
+                        words.add(author.getLastFirst(false));
+                    } else {
+                        // JabRefPreferences.AUTOCOMPLETE_FIRSTNAME_MODE_BOTH
+                        words.add(author.getLastFirst(true));
+                        words.add(author.getLastFirst(false));
+                    }
+                }
+                if (autoCompFF) {
+                    if (autoCompShortFirstOnly) {
+                        words.add(author.getFirstLast(true));
+                    } else if (autoCompFullFirstOnly) {
+                        words.add(author.getFirstLast(false));
                     } else {
-                        if (autoCompLF) {
-                            if (autoCompShortFirstOnly) {
-                                addWordToIndex(author.getLastFirst(true));
-                            } else if (autoCompFullFirstOnly) {
-                                addWordToIndex(author.getLastFirst(false));
-                            } else {
-                                // JabRefPreferences.AUTOCOMPLETE_FIRSTNAME_MODE_BOTH
-                                addWordToIndex(author.getLastFirst(true));
-                                addWordToIndex(author.getLastFirst(false));
-                            }
-                        }
-                        if (autoCompFF) {
-                            if (autoCompShortFirstOnly) {
-                                addWordToIndex(author.getFirstLast(true));
-                            } else if (autoCompFullFirstOnly) {
-                                addWordToIndex(author.getFirstLast(false));
-                            } else {
-                                // JabRefPreferences.AUTOCOMPLETE_FIRSTNAME_MODE_BOTH
-                                addWordToIndex(author.getFirstLast(true));
-                                addWordToIndex(author.getFirstLast(false));
-                            }
-                        }
+                        // JabRefPreferences.AUTOCOMPLETE_FIRSTNAME_MODE_BOTH
+                        words.add(author.getFirstLast(true));
+                        words.add(author.getFirstLast(false));
                     }
                 }
             }
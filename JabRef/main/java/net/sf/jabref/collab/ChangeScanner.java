@@ -18,7 +18,7 @@ package net.sf.jabref.collab;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Vector;
 import java.util.ArrayList;
 
@@ -194,77 +194,59 @@ public class ChangeScanner implements Runnable {
 
     private void scanEntries(EntrySorter mem, EntrySorter tmp, EntrySorter disk) {
 
-        // Create pointers that are incremented as the entries of each base are used in
-        // successive order from the beginning. Entries "further down" in the "disk" base
-        // can also be matched.
-        int piv1, piv2 = 0;
+        // The entries are indexed by a hash of their fields, so that each unchanged entry
+        // is matched in constant time, and only the entries that really changed are
+        // compared with others.
+        EntryHashIndex diskIndex = new EntryHashIndex(disk);
+        EntryHashIndex memIndex = new EntryHashIndex(mem);
 
-        // Create a HashSet where we can put references to entry numbers in the "disk"
-        // database that we have matched. This is to avoid matching them twice.
-        HashSet<String> used = new HashSet<String>(disk.getEntryCount());
-        HashSet<Integer> notMatched = new HashSet<Integer>(tmp.getEntryCount());
+        // The entries in the "disk" database that we have matched. This is to avoid
+        // matching them twice.
+        boolean[] used = new boolean[disk.getEntryCount()];
+        List<Integer> notMatched = new ArrayList<Integer>();
 
         // Loop through the entries of the "tmp" database, looking for exact matches in the "disk" one.
         // We must finish scanning for exact matches before looking for near matches, to avoid an exact
         // match being "stolen" from another entry.
-        mainLoop: for (piv1 = 0; piv1 < tmp.getEntryCount(); piv1++) {
-
-            // First check if the similarly placed entry in the other base matches exactly.
-            double comp = -1;
-            // (if there are not any entries left in the "disk" database, comp will stay at -1,
-            // and this entry will be marked as nonmatched).
-            if (!used.contains("" + piv2) && (piv2 < disk.getEntryCount())) {
-                comp = DuplicateCheck.compareEntriesStrictly(tmp.getEntryAt(piv1), disk.getEntryAt(piv2));
-            }
-            if (comp > 1) {
-                used.add("" + piv2);
-                piv2++;
-                continue;
-            }
-
-            // No? Then check if another entry matches exactly.
-            if (piv2 < (disk.getEntryCount() - 1)) {
-                for (int i = piv2 + 1; i < disk.getEntryCount(); i++) {
-                    if (!used.contains("" + i)) {
-                        comp = DuplicateCheck.compareEntriesStrictly(tmp.getEntryAt(piv1), disk.getEntryAt(i));
-                    } else {
-                        comp = -1;
-                    }
-
-                    if (comp > 1) {
-                        used.add("" + i);
-                        continue mainLoop;
-                    }
-                }
+        for (int piv1 = 0; piv1 < tmp.getEntryCount(); piv1++) {
+            int i = diskIndex.findIdentical(tmp.getEntryAt(piv1), used);
+            if (i >= 0) {
+                used[i] = true;
+            } else {
+                notMatched.add(piv1);
             }
-
-            // No? Add this entry to the list of nonmatched entries.
-            notMatched.add(piv1);
         }
 
         // Now we've found all exact matches, look through the remaining entries, looking
-        // for close matches.
+        // for close matches. The unmatched entries in the "disk" database with the same
+        // key are tried first, then all of them.
         if (!notMatched.isEmpty()) {
+            List<Integer> notMatchedOnDisk = new ArrayList<Integer>();
+            for (int i = 0; i < used.length; i++) {
+                if (!used[i]) {
+                    notMatchedOnDisk.add(i);
+                }
+            }
 
-            for (Iterator<Integer> it = notMatched.iterator(); it.hasNext();) {
-
-                piv1 = it.next();
+            for (int piv1 : notMatched) {
+                BibtexEntry entry = tmp.getEntryAt(piv1);
 
                 // These two variables will keep track of which entry most closely matches the
                 // one we're looking at, in case none matches completely.
                 int bestMatchI = -1;
                 double bestMatch = 0;
-                double comp;
-
-                if (piv2 < (disk.getEntryCount() - 1)) {
-                    for (int i = piv2; i < disk.getEntryCount(); i++) {
-                        if (!used.contains("" + i)) {
-                            comp = DuplicateCheck.compareEntriesStrictly(tmp.getEntryAt(piv1),
-                                    disk.getEntryAt(i));
-                        } else {
-                            comp = -1;
-                        }
+                double MATCH_THRESHOLD = 0.4;
 
+                for (int i : diskIndex.getByKey(entry.getCiteKey())) {
+                    double comp = used[i] ? -1 : DuplicateCheck.compareEntriesStrictly(entry, disk.getEntryAt(i));
+                    if (comp > bestMatch) {
+                        bestMatch = comp;
+                        bestMatchI = i;
+                    }
+                }
+                if (bestMatch <= MATCH_THRESHOLD) {
+                    for (int i : notMatchedOnDisk) {
+                        double comp = used[i] ? -1 : DuplicateCheck.compareEntriesStrictly(entry, disk.getEntryAt(i));
                         if (comp > bestMatch) {
                             bestMatch = comp;
                             bestMatchI = i;
@@ -272,34 +254,16 @@ public class ChangeScanner implements Runnable {
                     }
                 }
 
-                double MATCH_THRESHOLD = 0.4;
                 if (bestMatch > MATCH_THRESHOLD) {
-                    used.add("" + bestMatchI);
-                    it.remove();
+                    used[bestMatchI] = true;
 
-                    EntryChange ec = new EntryChange(bestFit(tmp, mem, piv1), tmp.getEntryAt(piv1),
+                    EntryChange ec = new EntryChange(bestFit(tmp, mem, memIndex, piv1), entry,
                             disk.getEntryAt(bestMatchI));
                     changes.add(ec);
-
-                    // Create an undo edit to represent this change:
-                    //NamedCompound ce = new NamedCompound("Modified entry");
-                    //ce.addEdit(new UndoableRemoveEntry(inMem, disk.getEntryAt(bestMatchI), panel));
-                    //ce.addEdit(new UndoableInsertEntry(inMem, tmp.getEntryAt(piv1), panel));
-                    //ce.end();
-                    //changes.add(ce);
-
-                    //System.out.println("Possible match for entry:");
-                    //System.out.println("----------------------------------------------");
-
                 }
                 else {
-                    EntryDeleteChange ec = new EntryDeleteChange(bestFit(tmp, mem, piv1), tmp.getEntryAt(piv1));
+                    EntryDeleteChange ec = new EntryDeleteChange(bestFit(tmp, mem, memIndex, piv1), entry);
                     changes.add(ec);
-                    /*NamedCompound ce = new NamedCompound("Removed entry");
-                    ce.addEdit(new UndoableInsertEntry(inMem, tmp.getEntryAt(piv1), panel));
-                    ce.end();
-                    changes.add(ce);*/
-
                 }
 
             }
@@ -308,30 +272,15 @@ public class ChangeScanner implements Runnable {
 
         // Finally, look if there are still untouched entries in the disk database. These
         // mayhave been added.
-        if (used.size() < disk.getEntryCount()) {
-            for (int i = 0; i < disk.getEntryCount(); i++) {
-                if (!used.contains("" + i)) {
-
-                    // See if there is an identical dupe in the mem database:
-                    boolean hasAlready = false;
-                    for (int j = 0; j < mem.getEntryCount(); j++) {
-                        if (DuplicateCheck.compareEntriesStrictly(mem.getEntryAt(j),
-                                disk.getEntryAt(i)) >= 1) {
-                            hasAlready = true;
-                            break;
-                        }
-                    }
-                    if (!hasAlready) {
-                        EntryAddChange ec = new EntryAddChange(disk.getEntryAt(i));
-                        changes.add(ec);
-                    }
-                    /*NamedCompound ce = new NamedCompound("Added entry");
-                    ce.addEdit(new UndoableRemoveEntry(inMem, disk.getEntryAt(i), panel));
-                    ce.end();
-                    changes.add(ce);*/
+        for (int i = 0; i < used.length; i++) {
+            if (!used[i]) {
+
+                // See if there is an identical dupe in the mem database:
+                if (memIndex.findIdentical(disk.getEntryAt(i), null) < 0) {
+                    EntryAddChange ec = new EntryAddChange(disk.getEntryAt(i));
+                    changes.add(ec);
                 }
             }
-            //System.out.println("Suspected new entries in file: "+(disk.getEntryCount()-used.size()));
         }
     }
 
@@ -340,12 +289,17 @@ public class ChangeScanner implements Runnable {
      * above zero, an entry is still returned.
      * @param old EntrySorter
      * @param neu EntrySorter
+     * @param neuIndex The index of neu, to find an identical entry without comparing them all.
      * @param index int
      * @return BibtexEntry
      */
-    private BibtexEntry bestFit(EntrySorter old, EntrySorter neu, int index) {
+    private BibtexEntry bestFit(EntrySorter old, EntrySorter neu, EntryHashIndex neuIndex, int index) {
+        int found = neuIndex.findIdentical(old.getEntryAt(index), null);
+        if (found >= 0) {
+            return neu.getEntryAt(found);
+        }
         double comp = -1;
-        int found = 0;
+        found = 0;
         for (int i = 0; i < neu.getEntryCount(); i++) {
             double res = DuplicateCheck.compareEntriesStrictly(old.getEntryAt(index),
                     neu.getEntryAt(i));
@@ -353,9 +307,6 @@ public class ChangeScanner implements Runnable {
                 comp = res;
                 found = i;
             }
-            if (comp > 1) {
-                break;
-            }
         }
         return neu.getEntryAt(found);
     }
@@ -418,8 +369,9 @@ public class ChangeScanner implements Runnable {
 
         // See if we can detect a name change for those entries that we couldn't match.
         if (!notMatched.isEmpty()) {
-            for (Iterator<String> i = notMatched.iterator(); i.hasNext();) {
-                BibtexString tmp = onTmp.getString(i.next());
+            List<String> renamed = new ArrayList<String>();
+            for (String tmpId : notMatched) {
+                BibtexString tmp = onTmp.getString(tmpId);
 
                 // If we get to this point, we found no string with matching name. See if we
                 // can find one with matching content.
@@ -448,13 +400,14 @@ public class ChangeScanner implements Runnable {
                             changes.add(new StringNameChange(bsMem, tmp, bsMem.getName(),
                                     tmp.getName(), disk.getName(),
                                     tmp.getContent()));
-                            i.remove();
+                            renamed.add(tmpId);
                             used.add(diskId);
-
+                            break;
                         }
                     }
                 }
             }
+            notMatched.removeAll(renamed);
         }
 
         if (!notMatched.isEmpty()) {
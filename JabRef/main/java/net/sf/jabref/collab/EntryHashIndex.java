@@ -0,0 +1,113 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.collab;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.DuplicateCheck;
+import net.sf.jabref.EntrySorter;
+
+/**
+ * An index of the entries of an EntrySorter by a hash of their fields and by
+ * their bibtex key. An entry with exactly the same fields as a given one
+ * (which is what DuplicateCheck.compareEntriesStrictly() calls a match) is
+ * found in constant time, and the entries sharing a key are the first
+ * candidates for an entry that has changed.
+ */
+class EntryHashIndex {
+
+    private final EntrySorter sorter;
+
+    // Positions in the sorter, in ascending order:
+    private final Map<Long, List<Integer>> byHash = new HashMap<Long, List<Integer>>();
+
+    private final Map<String, List<Integer>> byKey = new HashMap<String, List<Integer>>();
+
+
+    public EntryHashIndex(EntrySorter sorter) {
+        this.sorter = sorter;
+        for (int i = 0; i < sorter.getEntryCount(); i++) {
+            BibtexEntry entry = sorter.getEntryAt(i);
+            EntryHashIndex.add(byHash, EntryHashIndex.hash(entry), i);
+            if (entry.getCiteKey() != null) {
+                EntryHashIndex.add(byKey, entry.getCiteKey(), i);
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the first entry with the same fields as the
+     * given one, which is not marked as used, or -1 if there is none.
+     *
+     * @param used The positions that are already used. May be null.
+     */
+    public int findIdentical(BibtexEntry entry, boolean[] used) {
+        List<Integer> candidates = byHash.get(EntryHashIndex.hash(entry));
+        if (candidates != null) {
+            for (int i : candidates) {
+                if (((used == null) || !used[i])
+                        && (DuplicateCheck.compareEntriesStrictly(entry, sorter.getEntryAt(i)) > 1)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the positions of the entries with the given key.
+     */
+    public List<Integer> getByKey(String key) {
+        List<Integer> positions = key != null ? byKey.get(key) : null;
+        return positions != null ? positions : Collections.<Integer> emptyList();
+    }
+
+    /**
+     * Returns a hash of the names and values of the entry's fields, which
+     * does not depend on their order.
+     */
+    static long hash(BibtexEntry entry) {
+        long hash = 0;
+        for (String name : entry.getAllFields()) {
+            String value = entry.getField(name);
+            if (value != null) {
+                long h = (((long) name.hashCode()) << 32) ^ (value.hashCode() & 0xffffffffL);
+                // Mix the bits (from MurmurHash3), so that summing does not cancel them out:
+                h ^= h >>> 33;
+                h *= 0xff51afd7ed558ccdL;
+                h ^= h >>> 33;
+                h *= 0xc4ceb9fe1a85ec53L;
+                h ^= h >>> 33;
+                hash += h;
+            }
+        }
+        return hash;
+    }
+
+    private static <K> void add(Map<K, List<Integer>> map, K key, int position) {
+        List<Integer> positions = map.get(key);
+        if (positions == null) {
+            positions = new ArrayList<Integer>(1);
+            map.put(key, positions);
+        }
+        positions.add(position);
+    }
+}
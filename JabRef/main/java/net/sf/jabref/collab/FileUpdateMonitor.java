@@ -20,14 +20,37 @@ import net.sf.jabref.Globals;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.Iterator;
 
 /**
  * This thread monitors a set of files, each associated with a FileUpdateListener, for changes
- * in the file's last modification time stamp. The
+ * in the file's last modification time stamp.
+ *
+ * The directories of the files are watched for events from the file system. A
+ * file is checked once no more events have arrived for it for DEBOUNCE ms, so
+ * that a save that writes the file in several steps is reported once. Files
+ * whose directory cannot be watched, or which are on a network file system
+ * where changes made by other computers send no events, are polled every WAIT
+ * ms instead. Watched files are polled as well, but only every WATCHED_WAIT
+ * ms, in case the file system does not send all events.
  */
 public class FileUpdateMonitor implements Runnable {
 
@@ -35,30 +58,114 @@ public class FileUpdateMonitor implements Runnable {
 
     private static final int WAIT = 4000;
 
+    private static final int WATCHED_WAIT = 30000;
+
+    private static final int DEBOUNCE = 200;
+
+    /**
+     * The types of file stores (as given by FileStore.type()) that are shared
+     * over the network.
+     */
+    private static final Set<String> NETWORK_FILE_STORES = new HashSet<String>(Arrays.asList(
+            "nfs", "nfs4", "cifs", "smb", "smbfs", "smb2", "afs", "ncpfs", "coda", "9p",
+            "davfs", "fuse.davfs", "fuse.sshfs", "webdav"));
+
     private int numberOfUpdateListener = 0;
-    private final HashMap<String, Entry> entries = new HashMap<String, Entry>();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    // Null if the file system cannot send events, in which case all files are polled:
+    private final WatchService watcher;
+    private final Map<Path, WatchKey> watchedDirectories = new HashMap<Path, WatchKey>();
+
+
+    public FileUpdateMonitor() {
+        WatchService ws = null;
+        try {
+            ws = FileSystems.getDefault().newWatchService();
+        } catch (IOException ex) {
+            LOGGER.info("Cannot watch files for changes, polling instead", ex);
+        } catch (UnsupportedOperationException ex) {
+            LOGGER.info("Cannot watch files for changes, polling instead", ex);
+        }
+        watcher = ws;
+    }
 
     @Override
     public void run() {
+        long nextPoll = System.currentTimeMillis() + WAIT;
+        long nextWatchedPoll = System.currentTimeMillis() + WATCHED_WAIT;
         // The running variable is used to make the thread stop when needed.
         while (true) {
-            for(Entry e : entries.values()) {
-                try {
-                    if (e.hasBeenUpdated()) {
-                        e.notifyListener();
+            long now = System.currentTimeMillis();
+            boolean poll = now >= nextPoll;
+            if (poll) {
+                nextPoll = now + WAIT;
+            }
+            boolean pollWatched = now >= nextWatchedPoll;
+            if (pollWatched) {
+                nextWatchedPoll = now + WATCHED_WAIT;
+            }
+            // Check the files that are due. Files added meanwhile are seen
+            // after WAIT ms at the latest:
+            long wait = nextPoll - now;
+            for (Entry e : entries.values()) {
+                if (e.polled) {
+                    if (poll) {
+                        check(e);
                     }
-                } catch (IOException ex) {
-                    e.notifyFileRemoved();
+                } else if (pollWatched || ((e.due != 0) && (e.due <= now))) {
+                    e.due = 0;
+                    check(e);
+                } else if (e.due != 0) {
+                    wait = Math.min(wait, e.due - now);
                 }
             }
 
-            // Sleep for a while before starting a new polling round.
             try {
-                Thread.sleep(WAIT);
+                if (watcher == null) {
+                    Thread.sleep(Math.max(wait, 1));
+                } else {
+                    WatchKey key = watcher.poll(Math.max(wait, 1), TimeUnit.MILLISECONDS);
+                    while (key != null) {
+                        handleEvents(key);
+                        key = watcher.poll();
+                    }
+                }
             } catch (InterruptedException ex) {
                 LOGGER.debug("FileUpdateMonitor has been interrupted. Terminating...");
                 return;
+            } catch (ClosedWatchServiceException ex) {
+                LOGGER.debug("FileUpdateMonitor has been closed. Terminating...");
+                return;
+            }
+        }
+    }
+
+    /**
+     * Marks the files the events of the given directory refer to, so that they
+     * are checked DEBOUNCE ms after the last event.
+     */
+    private void handleEvents(WatchKey key) {
+        long due = System.currentTimeMillis() + DEBOUNCE;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            for (Entry e : entries.values()) {
+                if (!e.polled && e.directory.equals(key.watchable())
+                        && ((event.kind() == StandardWatchEventKinds.OVERFLOW)
+                        || e.path.getFileName().equals(event.context()))) {
+                    e.due = due;
+                }
+            }
+        }
+        key.reset();
+    }
+
+    private static void check(Entry e) {
+        try {
+            if (e.hasBeenUpdated()) {
+                e.notifyListener();
             }
+        } catch (IOException ex) {
+            e.notifyFileRemoved();
         }
     }
 
@@ -68,16 +175,53 @@ public class FileUpdateMonitor implements Runnable {
      * @param file File The file to monitor.
      * @throws IOException if the file does not exist.
      */
-    public String addUpdateListener(FileUpdateListener ul, File file) throws IOException {
+    public synchronized String addUpdateListener(FileUpdateListener ul, File file) throws IOException {
         if (!file.exists()) {
             throw new IOException("File not found");
         }
         numberOfUpdateListener++;
         String key = "" + numberOfUpdateListener;
-        entries.put(key, new Entry(ul, file));
+        Entry entry = new Entry(ul, file);
+        entry.polled = FileUpdateMonitor.isOnNetwork(entry.path) || !watch(entry.directory);
+        entries.put(key, entry);
         return key;
     }
 
+    /**
+     * Returns true if the file is on a file system shared over the network.
+     */
+    private static boolean isOnNetwork(Path path) {
+        try {
+            return FileUpdateMonitor.NETWORK_FILE_STORES.contains(
+                    Files.getFileStore(path).type().toLowerCase(Locale.ENGLISH));
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts watching the directory, unless it is watched already. Returns
+     * false if the directory cannot be watched.
+     */
+    private boolean watch(Path directory) {
+        if (watcher == null) {
+            return false;
+        }
+        if (watchedDirectories.containsKey(directory)) {
+            return true;
+        }
+        try {
+            watchedDirectories.put(directory, directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY));
+            return true;
+        } catch (IOException ex) {
+            LOGGER.info("Cannot watch directory '" + directory + "' for changes, polling instead", ex);
+        } catch (UnsupportedOperationException ex) {
+            LOGGER.info("Cannot watch directory '" + directory + "' for changes, polling instead", ex);
+        }
+        return false;
+    }
+
     /**
      * Forces a check on the file, and returns the result. Does not
      * force a report to all listeners before the next routine check.
@@ -115,8 +259,21 @@ public class FileUpdateMonitor implements Runnable {
      * Removes a listener from the monitor.
      * @param handle String The handle for the listener to remove.
      */
-    public void removeUpdateListener(String handle) {
-        entries.remove(handle);
+    public synchronized void removeUpdateListener(String handle) {
+        Entry removed = entries.remove(handle);
+        if ((removed == null) || removed.polled) {
+            return;
+        }
+        // Stop watching the directory if no other file in it is monitored:
+        for (Entry e : entries.values()) {
+            if (e.directory.equals(removed.directory)) {
+                return;
+            }
+        }
+        WatchKey key = watchedDirectories.remove(removed.directory);
+        if (key != null) {
+            key.cancel();
+        }
     }
 
     public void updateTimeStamp(String key) throws IllegalArgumentException {
@@ -152,13 +309,22 @@ public class FileUpdateMonitor implements Runnable {
 
         final FileUpdateListener listener;
         final File file;
+        final Path path;
+        final Path directory;
         final File tmpFile;
         long timeStamp, fileSize;
+        // Whether the file is polled every WAIT ms rather than watched:
+        boolean polled;
+        // When the file is to be checked after an event, or 0 if not:
+        volatile long due = 0;
 
 
-        public Entry(FileUpdateListener ul, File f) {
+        public Entry(FileUpdateListener ul, File f) throws IOException {
             listener = ul;
             file = f;
+            // Changes to a linked file happen in the directory of its target:
+            path = f.toPath().toRealPath();
+            directory = path.getParent();
             timeStamp = file.lastModified();
             fileSize = file.length();
             tmpFile = FileUpdateMonitor.getTempFile();
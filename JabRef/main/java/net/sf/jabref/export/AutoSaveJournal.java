@@ -0,0 +1,549 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.export;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.BibtexEntryType;
+import net.sf.jabref.BibtexString;
+import net.sf.jabref.DatabaseChangeEvent;
+import net.sf.jabref.DatabaseChangeListener;
+import net.sf.jabref.GUIGlobals;
+import net.sf.jabref.IdGenerator;
+import net.sf.jabref.MetaData;
+import net.sf.jabref.UnknownEntryType;
+import net.sf.jabref.imports.ParserResult;
+
+/**
+ * An append-only journal of the changes made to a database since it was
+ * loaded from or saved to its file. Replaying the journal on top of the
+ * file gives the database as it was when the journal was last committed.
+ *
+ * Entry changes are taken from the database's change events, and buffered
+ * until commit() writes all of them at once and forces them to disk. The
+ * strings, the preamble and the meta data send no events, so commit()
+ * writes a complete copy of each of them whenever it has changed. The
+ * caller tells commit() whether they may have changed, so that they are
+ * not copied and compared when nothing has happened.
+ *
+ * Each line of the journal is one record of tab separated values:
+ * <pre>
+ * E n type (field value)*   entry n is the entry of the file with exactly this type and these fields
+ * A n type (field value)*   entry n has been added
+ * F n field value           a field of entry n has been set
+ * C n field                 a field of entry n has been cleared
+ * T n type                  the type of entry n has been changed
+ * R n                       entry n has been removed
+ * S (name content)*         the strings are now these
+ * P [preamble]              the preamble is now this (none if missing)
+ * M (key value)*            the meta data is now this
+ * </pre>
+ * The first line identifies the file the journal applies to. A base entry
+ * is described by an E record when it is changed for the first time, so
+ * that recovery can find it in the file.
+ */
+public class AutoSaveJournal implements DatabaseChangeListener {
+
+    private static final String HEADER = "JabRef autosave journal 1";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+
+    private final BibtexDatabase database;
+
+    private final MetaData metaData;
+
+    private final String header;
+
+    // Each entry that has been written to the journal, by its number:
+    private final Map<BibtexEntry, Integer> numbers;
+
+    private int nextNumber;
+
+    // The records that have not been committed yet:
+    private StringBuilder pending = new StringBuilder();
+
+    private boolean closed = false;
+
+    // The following are only used while holding writeLock.
+    private final Object writeLock = new Object();
+
+    private FileChannel channel = null;
+
+    private boolean append;
+
+    private String writtenStrings;
+
+    private String writtenPreamble;
+
+    private String writtenMetaData;
+
+
+    /**
+     * Starts a journal of the changes made to the database from now on. The
+     * database must be the same as the file it was loaded from or saved to.
+     *
+     * @param file The journal file. It is replaced on the first commit.
+     * @param databaseFile The file of the database.
+     */
+    public AutoSaveJournal(File file, File databaseFile, BibtexDatabase database, MetaData metaData) {
+        this(file, AutoSaveJournal.getHeader(databaseFile), database, metaData,
+                new IdentityHashMap<BibtexEntry, Integer>(), 0, false);
+    }
+
+    private AutoSaveJournal(File file, String header, BibtexDatabase database, MetaData metaData,
+            Map<BibtexEntry, Integer> numbers, int nextNumber, boolean append) {
+        this.file = file;
+        this.header = header;
+        this.database = database;
+        this.metaData = metaData;
+        this.numbers = numbers;
+        this.nextNumber = nextNumber;
+        this.append = append;
+        writtenStrings = getStringsRecord();
+        writtenPreamble = getPreambleRecord();
+        writtenMetaData = getMetaDataRecord();
+        database.addDatabaseChangeListener(this);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Writes all changes since the last commit to the journal, and forces
+     * them to disk. Nothing is written if nothing has changed.
+     */
+    public void commit() throws IOException {
+        commit(true);
+    }
+
+    /**
+     * Writes all changes since the last commit to the journal, and forces
+     * them to disk. Nothing is written if nothing has changed.
+     *
+     * @param checkOthers Whether the strings, the preamble and the meta data
+     *   may have changed since the last commit. If false, they are not
+     *   compared to what has been written, which needs a copy of each.
+     */
+    public void commit(boolean checkOthers) throws IOException {
+        synchronized (writeLock) {
+            String strings = checkOthers ? getStringsRecord() : writtenStrings;
+            String preamble = checkOthers ? getPreambleRecord() : writtenPreamble;
+            String meta = checkOthers ? getMetaDataRecord() : writtenMetaData;
+            StringBuilder records;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (!checkOthers && (pending.length() == 0)) {
+                    return;
+                }
+                records = pending;
+                pending = new StringBuilder();
+            }
+            if (!strings.equals(writtenStrings)) {
+                records.append(strings);
+            }
+            if (!preamble.equals(writtenPreamble)) {
+                records.append(preamble);
+            }
+            if (!meta.equals(writtenMetaData)) {
+                records.append(meta);
+            }
+            if (records.length() == 0) {
+                return;
+            }
+            if (channel == null) {
+                channel = new FileOutputStream(file, append).getChannel();
+                if (!append) {
+                    records.insert(0, header);
+                }
+            }
+            ByteBuffer buffer = UTF8.encode(records.toString());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            writtenStrings = strings;
+            writtenPreamble = preamble;
+            writtenMetaData = meta;
+        }
+    }
+
+    /**
+     * Stops recording changes. The journal file is left as it is.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        database.removeDatabaseChangeListener(this);
+        synchronized (writeLock) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Everything has been forced to disk already.
+                }
+                channel = null;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void databaseChanged(DatabaseChangeEvent e) {
+        if (closed) {
+            return;
+        }
+        BibtexEntry entry = e.getEntry();
+        switch (e.getType()) {
+        case ADDED_ENTRY:
+            int number = nextNumber++;
+            numbers.put(entry, number);
+            writeEntry("A", number, entry.getType().getName(), AutoSaveJournal.getFields(entry));
+            break;
+        case REMOVED_ENTRY:
+            write("R", String.valueOf(getNumber(entry, null, null)));
+            numbers.remove(entry);
+            break;
+        case CHANGED_ENTRY:
+            String field = e.getFieldName();
+            if (field == null) {
+                break;
+            }
+            String n = String.valueOf(getNumber(entry, field, e.getOldValue()));
+            if (GUIGlobals.TYPE_HEADER.equals(field)) {
+                write("T", n, e.getNewValue());
+            } else if (e.getNewValue() == null) {
+                write("C", n, field);
+            } else {
+                write("F", n, field, e.getNewValue());
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Returns the number of the entry. An entry of the file that has not been
+     * written yet is described by an E record first, which needs its state
+     * before the change that is being recorded.
+     */
+    private int getNumber(BibtexEntry entry, String changedField, String oldValue) {
+        Integer number = numbers.get(entry);
+        if (number == null) {
+            number = nextNumber++;
+            numbers.put(entry, number);
+            String type = entry.getType().getName();
+            Map<String, String> fields = AutoSaveJournal.getFields(entry);
+            if (GUIGlobals.TYPE_HEADER.equals(changedField)) {
+                type = oldValue;
+            } else if (changedField != null) {
+                if (oldValue == null) {
+                    fields.remove(changedField);
+                } else {
+                    fields.put(changedField, oldValue);
+                }
+            }
+            writeEntry("E", number, type, fields);
+        }
+        return number;
+    }
+
+    private void writeEntry(String kind, int number, String type, Map<String, String> fields) {
+        List<String> values = new ArrayList<String>();
+        values.add(kind);
+        values.add(String.valueOf(number));
+        values.add(type);
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            values.add(field.getKey());
+            values.add(field.getValue());
+        }
+        pending.append(AutoSaveJournal.toRecord(values));
+    }
+
+    private void write(String... values) {
+        pending.append(AutoSaveJournal.toRecord(Arrays.asList(values)));
+    }
+
+    private String getStringsRecord() {
+        Map<String, String> strings = new TreeMap<String, String>();
+        for (BibtexString string : database.getStringValues()) {
+            strings.put(string.getName(), string.getContent());
+        }
+        return AutoSaveJournal.toRecord("S", strings);
+    }
+
+    private String getPreambleRecord() {
+        List<String> values = new ArrayList<String>();
+        values.add("P");
+        if (database.getPreamble() != null) {
+            values.add(database.getPreamble());
+        }
+        return AutoSaveJournal.toRecord(values);
+    }
+
+    private String getMetaDataRecord() {
+        return AutoSaveJournal.toRecord("M", new TreeMap<String, String>(metaData.getSerializedData()));
+    }
+
+    private static Map<String, String> getFields(BibtexEntry entry) {
+        Map<String, String> fields = new TreeMap<String, String>();
+        for (String name : entry.getAllFields()) {
+            String value = entry.getField(name);
+            if (value != null) {
+                fields.put(name, value);
+            }
+        }
+        return fields;
+    }
+
+    private static String getHeader(File databaseFile) {
+        return AutoSaveJournal.toRecord(Arrays.asList(HEADER,
+                String.valueOf(databaseFile.length()), String.valueOf(databaseFile.lastModified())));
+    }
+
+    private static String toRecord(String kind, Map<String, String> map) {
+        List<String> values = new ArrayList<String>();
+        values.add(kind);
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            values.add(e.getKey());
+            values.add(e.getValue());
+        }
+        return AutoSaveJournal.toRecord(values);
+    }
+
+    private static String toRecord(List<String> values) {
+        StringBuilder sb = new StringBuilder();
+        for (String value : values) {
+            if (sb.length() > 0) {
+                sb.append('\t');
+            }
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.append('\n').toString();
+    }
+
+    private static String[] parseRecord(String line) {
+        List<String> values = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                values.add(sb.toString());
+                sb.setLength(0);
+            } else if ((c == '\\') && ((i + 1) < line.length())) {
+                c = line.charAt(++i);
+                sb.append(c == 't' ? '\t' : c == 'n' ? '\n' : c == 'r' ? '\r' : c);
+            } else {
+                sb.append(c);
+            }
+        }
+        values.add(sb.toString());
+        return values.toArray(new String[values.size()]);
+    }
+
+    /**
+     * Returns true if the file is a journal, as opposed to a complete copy of
+     * the database written by earlier versions.
+     */
+    public static boolean isJournal(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), UTF8);
+        try {
+            char[] start = new char[HEADER.length()];
+            int read = 0;
+            int n;
+            while ((read < start.length) && ((n = reader.read(start, read, start.length - read)) != -1)) {
+                read += n;
+            }
+            return HEADER.equals(new String(start, 0, read));
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Replays the journal on the database loaded from the database file. The
+     * journal is continued from there: the returned journal is already
+     * listening to the database, and appends to the journal file.
+     *
+     * @param file The journal file.
+     * @param databaseFile The file the database was loaded from.
+     * @param pr The database loaded from the file, which is changed in place.
+     *   Its meta data is replaced if the journal contains meta data.
+     * @throws IOException if the journal cannot be read, or does not belong
+     *   to the database file as it is now.
+     */
+    public static AutoSaveJournal replay(File file, File databaseFile, ParserResult pr) throws IOException {
+        String text = new String(Files.readAllBytes(file.toPath()), UTF8);
+        String header = AutoSaveJournal.getHeader(databaseFile);
+        if (!text.startsWith(header)) {
+            throw new IOException("The database file has been changed since the autosave was written.");
+        }
+        // An incomplete last line is the remains of an interrupted commit:
+        text = text.substring(header.length(), text.lastIndexOf('\n') + 1);
+
+        BibtexDatabase database = pr.getDatabase();
+        // The entries of the file by their type and fields, for E records:
+        Map<String, LinkedList<BibtexEntry>> unmatched = new HashMap<String, LinkedList<BibtexEntry>>();
+        for (BibtexEntry entry : database.getEntries()) {
+            String signature = AutoSaveJournal.getSignature(entry.getType().getName(),
+                    AutoSaveJournal.getFields(entry));
+            LinkedList<BibtexEntry> list = unmatched.get(signature);
+            if (list == null) {
+                list = new LinkedList<BibtexEntry>();
+                unmatched.put(signature, list);
+            }
+            list.add(entry);
+        }
+        Map<Integer, BibtexEntry> entries = new HashMap<Integer, BibtexEntry>();
+        String[] meta = null;
+        int nextNumber = 0;
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            String[] record = AutoSaveJournal.parseRecord(text.substring(start, end));
+            start = end + 1;
+            try {
+                String kind = record[0];
+                if ("S".equals(kind)) {
+                    for (String id : new ArrayList<String>(database.getStringKeySet())) {
+                        database.removeString(id);
+                    }
+                    for (int i = 1; (i + 1) < record.length; i += 2) {
+                        database.addString(new BibtexString(IdGenerator.next(), record[i], record[i + 1]));
+                    }
+                } else if ("P".equals(kind)) {
+                    database.setPreamble(record.length > 1 ? record[1] : null);
+                } else if ("M".equals(kind)) {
+                    meta = record;
+                } else {
+                    int number = Integer.parseInt(record[1]);
+                    nextNumber = Math.max(nextNumber, number + 1);
+                    AutoSaveJournal.replayEntryRecord(kind, number, record, database, entries, unmatched);
+                }
+            } catch (RuntimeException ex) {
+                // A missing or malformed value, or a key collision:
+                throw new IOException("Malformed record in autosave.", ex);
+            }
+        }
+
+        if (meta != null) {
+            pr.setMetaData(new MetaData(AutoSaveJournal.getFields(meta, 1), database));
+        }
+        Map<BibtexEntry, Integer> numbers = new IdentityHashMap<BibtexEntry, Integer>();
+        for (Map.Entry<Integer, BibtexEntry> e : entries.entrySet()) {
+            numbers.put(e.getValue(), e.getKey());
+        }
+        return new AutoSaveJournal(file, header, database, pr.getMetaData(), numbers, nextNumber, true);
+    }
+
+    private static void replayEntryRecord(String kind, int number, String[] record, BibtexDatabase database,
+            Map<Integer, BibtexEntry> entries, Map<String, LinkedList<BibtexEntry>> unmatched)
+            throws IOException {
+        if ("E".equals(kind)) {
+            LinkedList<BibtexEntry> list = unmatched.get(
+                    AutoSaveJournal.getSignature(record[2], AutoSaveJournal.getFields(record)));
+            if ((list == null) || list.isEmpty()) {
+                throw new IOException("The autosave does not match the database file.");
+            }
+            entries.put(number, list.removeFirst());
+        } else if ("A".equals(kind)) {
+            BibtexEntry entry = new BibtexEntry(IdGenerator.next(), AutoSaveJournal.getType(record[2]));
+            entry.setField(AutoSaveJournal.getFields(record));
+            database.insertEntry(entry);
+            entries.put(number, entry);
+        } else {
+            BibtexEntry entry = entries.get(number);
+            if (entry == null) {
+                throw new IOException("The autosave refers to an unknown entry.");
+            }
+            if ("F".equals(kind)) {
+                entry.setField(record[2], record[3]);
+            } else if ("C".equals(kind)) {
+                entry.clearField(record[2]);
+            } else if ("T".equals(kind)) {
+                entry.setType(AutoSaveJournal.getType(record[2]));
+            } else if ("R".equals(kind)) {
+                database.removeEntry(entry.getId());
+                entries.remove(number);
+            } else {
+                throw new IOException("Unknown record in autosave: " + kind);
+            }
+        }
+    }
+
+    private static BibtexEntryType getType(String name) {
+        BibtexEntryType type = BibtexEntryType.getType(name);
+        return type != null ? type : new UnknownEntryType(name);
+    }
+
+    private static HashMap<String, String> getFields(String[] record) {
+        return AutoSaveJournal.getFields(record, 3);
+    }
+
+    private static HashMap<String, String> getFields(String[] record, int start) {
+        HashMap<String, String> fields = new HashMap<String, String>();
+        for (int i = start; (i + 1) < record.length; i += 2) {
+            fields.put(record[i], record[i + 1]);
+        }
+        return fields;
+    }
+
+    private static String getSignature(String type, Map<String, String> fields) {
+        return AutoSaveJournal.toRecord(type, new TreeMap<String, String>(fields));
+    }
+}
@@ -15,25 +15,59 @@
 */
 package net.sf.jabref.export;
 
+import net.sf.jabref.BibtexDatabase;
 import net.sf.jabref.JabRefFrame;
 import net.sf.jabref.BasePanel;
 import net.sf.jabref.Globals;
 import net.sf.jabref.JabRefPreferences;
+import net.sf.jabref.MetaData;
+import net.sf.jabref.imports.OpenDatabaseAction;
+import net.sf.jabref.imports.ParserResult;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.WeakHashMap;
 import java.io.File;
+import java.io.IOException;
 
 /**
  * Background task and utilities for autosave feature.
+ *
+ * A database that is the same as its file when it is opened or saved gets an
+ * AutoSaveJournal, which records each change and is committed every few
+ * seconds. Other databases (for instance one that was recovered from an old
+ * style autosave, until it is saved) are written completely at the autosave
+ * interval, as before.
  */
 public class AutoSaveManager {
 
+    /**
+     * The time in milliseconds between commits of the journals. Each commit
+     * writes all changes since the last one, and forces them to disk once.
+     */
+    private static final long JOURNAL_COMMIT_INTERVAL = 2000;
+
+    // Journals continued by recover(), until the database is opened in a panel:
+    private static final Map<BibtexDatabase, AutoSaveJournal> recoveredJournals =
+            Collections.synchronizedMap(new WeakHashMap<BibtexDatabase, AutoSaveJournal>());
+
+    // Databases recovered from complete copies, which differ from their files
+    // until they are saved:
+    private static final Set<BibtexDatabase> recoveredCopies =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<BibtexDatabase, Boolean>()));
+
     private final JabRefFrame frame;
     private Timer t = null;
 
+    private final Map<BasePanel, AutoSaveJournal> journals =
+            Collections.synchronizedMap(new HashMap<BasePanel, AutoSaveJournal>());
+
 
     public AutoSaveManager(JabRefFrame frame) {
 
@@ -46,14 +80,104 @@ public class AutoSaveManager {
             t.cancel();
         }
 
+        for (int i = 0; i < frame.baseCount(); i++) {
+            BasePanel panel = frame.baseAt(i);
+            if (!panel.isBaseChanged()) {
+                startJournal(panel);
+            }
+        }
+
         TimerTask task = new AutoSaveTask();
         t = new Timer();
         long interval = 60000 * Globals.prefs.getAutoSaveInterval();
         t.scheduleAtFixedRate(task, interval, interval);
+        t.schedule(new JournalTask(), AutoSaveManager.JOURNAL_COMMIT_INTERVAL,
+                AutoSaveManager.JOURNAL_COMMIT_INTERVAL);
     }
 
     public void stopAutoSaveTimer() {
         t.cancel();
+        for (AutoSaveJournal journal : getJournals()) {
+            journal.close();
+        }
+        journals.clear();
+    }
+
+    /**
+     * Starts journaling the changes to the panel's database. If the database
+     * was recovered from a journal, that journal is continued instead.
+     * Nothing is done if the database is not the same as its file, i.e. if
+     * it has unsaved changes or was recovered from a complete copy; it is
+     * then written completely at the autosave interval.
+     */
+    public void startJournal(BasePanel panel) {
+        stopJournal(panel);
+        AutoSaveJournal journal = AutoSaveManager.recoveredJournals.remove(panel.database());
+        if (journal == null) {
+            if ((panel.getFile() == null) || panel.isBaseChanged()
+                    || AutoSaveManager.isRecoveredCopy(panel.database())) {
+                return;
+            }
+            journal = new AutoSaveJournal(AutoSaveManager.getAutoSaveFile(panel.getFile()),
+                    panel.getFile(), panel.database(), panel.metaData());
+        }
+        journals.put(panel, journal);
+    }
+
+    /**
+     * Starts journaling the changes to the panel's database after it has
+     * been saved to its file.
+     */
+    public void databaseSaved(BasePanel panel) {
+        AutoSaveManager.recoveredCopies.remove(panel.database());
+        startJournal(panel);
+    }
+
+    /**
+     * Called when the panel's file has been changed on disk. The journal
+     * only applies to the file as it was, so it is stopped and replaced (see
+     * fileChanged()). The database is written completely at the autosave
+     * interval from now on, until it is saved.
+     */
+    public void fileUpdated(BasePanel panel) {
+        stopJournal(panel);
+        AutoSaveManager.fileChanged(panel.getFile(), panel.database(), panel.metaData(),
+                panel.getEncoding(), panel.isBaseChanged());
+    }
+
+    /**
+     * Replaces the autosave of a database whose file has been changed on
+     * disk: by a complete copy of the database if it has unsaved changes,
+     * which can then still be recovered, and by nothing otherwise.
+     * @return true if successful, false otherwise.
+     */
+    static boolean fileChanged(File file, BibtexDatabase database, MetaData metaData, String encoding,
+            boolean changed) {
+        if (file == null) {
+            return true;
+        }
+        if (changed) {
+            return AutoSaveManager.autoSave(file, database, metaData, encoding);
+        }
+        File backupFile = AutoSaveManager.getAutoSaveFile(file);
+        return !backupFile.exists() || backupFile.delete();
+    }
+
+    /**
+     * Stops journaling the changes to the panel's database. The journal file
+     * is not deleted.
+     */
+    public void stopJournal(BasePanel panel) {
+        AutoSaveJournal journal = journals.remove(panel);
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private List<AutoSaveJournal> getJournals() {
+        synchronized (journals) {
+            return new ArrayList<AutoSaveJournal>(journals.values());
+        }
     }
 
 
@@ -70,7 +194,7 @@ public class AutoSaveManager {
             }
 
             for (BasePanel panel : panels) {
-                if (panel.isBaseChanged()) {
+                if (panel.isBaseChanged() && !journals.containsKey(panel)) {
                     if (panel.getFile() != null) {
                         AutoSaveManager.autoSave(panel);
                     }
@@ -79,6 +203,45 @@ public class AutoSaveManager {
         }
     }
 
+    private class JournalTask extends TimerTask {
+
+        // The modification count of each panel when its journal was last
+        // committed:
+        private final Map<BasePanel, Integer> committedCounts = new HashMap<BasePanel, Integer>();
+
+
+        @Override
+        public void run() {
+            Map<BasePanel, AutoSaveJournal> toCommit;
+            synchronized (journals) {
+                toCommit = new HashMap<BasePanel, AutoSaveJournal>(journals);
+            }
+            committedCounts.keySet().retainAll(toCommit.keySet());
+            for (Map.Entry<BasePanel, AutoSaveJournal> e : toCommit.entrySet()) {
+                try {
+                    // The strings, preamble and meta data can only have
+                    // changed if the user has changed something:
+                    int count = e.getKey().getModificationCount();
+                    Integer committed = committedCounts.get(e.getKey());
+                    e.getValue().commit((committed == null) || (committed != count));
+                    committedCounts.put(e.getKey(), count);
+                } catch (IOException ex) {
+                    // The panel is written completely at the next autosave instead:
+                    ex.printStackTrace();
+                    synchronized (journals) {
+                        if (journals.get(e.getKey()) == e.getValue()) {
+                            journals.remove(e.getKey());
+                        }
+                    }
+                    e.getValue().close();
+                } catch (RuntimeException ex) {
+                    // The database was changed while it was being read; try again next time.
+                    ex.printStackTrace();
+                }
+            }
+        }
+    }
+
 
     /**
      * Get a File object pointing to the autosave file corresponding to the given file.
@@ -96,11 +259,16 @@ public class AutoSaveManager {
      * @return true if successful, false otherwise.
      */
     private static boolean autoSave(BasePanel panel) {
-        File backupFile = AutoSaveManager.getAutoSaveFile(panel.getFile());
+        return AutoSaveManager.autoSave(panel.getFile(), panel.database(), panel.metaData(),
+                panel.getEncoding());
+    }
+
+    private static boolean autoSave(File file, BibtexDatabase database, MetaData metaData, String encoding) {
+        File backupFile = AutoSaveManager.getAutoSaveFile(file);
         try {
-            SaveSession ss = FileActions.saveDatabase(panel.database(), panel.metaData(),
+            SaveSession ss = FileActions.saveDatabase(database, metaData,
                     backupFile, Globals.prefs,
-                    false, false, panel.getEncoding(), true);
+                    false, false, encoding, true);
             ss.commit();
         } catch (SaveException e) {
             e.printStackTrace();
@@ -118,6 +286,9 @@ public class AutoSaveManager {
      * @return true if there was no autosave or if the autosave was successfully deleted, false otherwise.
      */
     public static boolean deleteAutoSaveFile(BasePanel panel) {
+        if (Globals.autoSaveManager != null) {
+            Globals.autoSaveManager.stopJournal(panel);
+        }
         if (panel.getFile() == null) {
             return true;
         }
@@ -153,4 +324,36 @@ public class AutoSaveManager {
         File asFile = AutoSaveManager.getAutoSaveFile(f);
         return asFile.exists() && (asFile.lastModified() > f.lastModified());
     }
+
+    /**
+     * Recovers a database from its autosave. The autosave is either a journal,
+     * which is replayed on top of the database file, or a complete copy of
+     * the database written by earlier versions.
+     * @param file The database file.
+     * @param encoding The default encoding.
+     * @return the recovered database.
+     * @throws IOException if the autosave cannot be used.
+     */
+    public static ParserResult recover(File file, String encoding) throws IOException {
+        File asFile = AutoSaveManager.getAutoSaveFile(file);
+        if (!AutoSaveJournal.isJournal(asFile)) {
+            ParserResult pr = OpenDatabaseAction.loadDatabase(asFile, encoding);
+            // It must not be journaled, as the journal would replace the
+            // autosave without containing its changes:
+            AutoSaveManager.recoveredCopies.add(pr.getDatabase());
+            return pr;
+        }
+        ParserResult pr = OpenDatabaseAction.loadDatabase(file, encoding);
+        AutoSaveJournal journal = AutoSaveJournal.replay(asFile, file, pr);
+        AutoSaveManager.recoveredJournals.put(pr.getDatabase(), journal);
+        return pr;
+    }
+
+    /**
+     * Returns true if the database was recovered from a complete copy of the
+     * database written by earlier versions, and has not been saved since.
+     */
+    public static boolean isRecoveredCopy(BibtexDatabase database) {
+        return AutoSaveManager.recoveredCopies.contains(database);
+    }
 }
@@ -19,7 +19,9 @@ import net.sf.jabref.BibtexDatabase;
 import net.sf.jabref.BibtexEntry;
 import net.sf.jabref.Globals;
 import net.sf.jabref.MetaData;
+import net.sf.jabref.NameFormatterTab;
 import net.sf.jabref.export.layout.Layout;
+import net.sf.jabref.export.layout.LayoutContext;
 import net.sf.jabref.export.layout.LayoutHelper;
 
 import javax.swing.filechooser.FileFilter;
@@ -32,9 +34,30 @@ import java.util.*;
 /**
  * Base class for export formats based on templates.
  * 
+ * The layout files are parsed on the first export and the parsed layouts are
+ * kept for later exports with this format. They are parsed again if a layout
+ * file of a custom export was modified, or if the name formatters they may
+ * refer to have changed.
  */
 public class ExportFormat implements IExportFormat {
 
+    /**
+     * A parsed layout file, or a layout file that does not exist (layout is
+     * null).
+     */
+    private static class CachedLayout {
+
+        private final Layout layout;
+
+        private final long lastModified;
+
+
+        public CachedLayout(Layout layout, long lastModified) {
+            this.layout = layout;
+            this.lastModified = lastModified;
+        }
+    }
+
     private String displayName;
     private String consoleName;
     private String lfFileName;
@@ -46,6 +69,14 @@ public class ExportFormat implements IExportFormat {
     private FileFilter fileFilter;
     private boolean customExport = false;
 
+    // The parsed layouts by file name, and the name formatters they were
+    // parsed with:
+    private final Map<String, CachedLayout> layoutCache = new HashMap<String, CachedLayout>();
+    private List<Map<String, String>> layoutCacheFormatters;
+
+    // Held while layouts are parsed, see performExport():
+    private static final Object layoutLock = new Object();
+
 
     /**
      * Initialize another export format based on templates stored in dir with
@@ -86,6 +117,9 @@ public class ExportFormat implements IExportFormat {
      */
     public void setCustomExport(boolean custom) {
         this.customExport = custom;
+        synchronized (layoutCache) {
+            layoutCache.clear();
+        }
     }
 
     /**
@@ -189,32 +223,6 @@ public class ExportFormat implements IExportFormat {
 
         VerifyingWriter ps = ss.getWriter();
 
-        Layout beginLayout = null;
-        Reader reader;
-
-        // Check if this export filter has bundled name formatters:
-        // Set a global field, so all layouts have access to the custom name formatters:
-        Globals.prefs.customExportNameFormatters = readFormatterFile(lfFileName);
-
-        ArrayList<String> missingFormatters = new ArrayList<String>(1);
-
-        // Print header
-        try {
-            reader = getReader(lfFileName + ".begin.layout");
-            LayoutHelper layoutHelper = new LayoutHelper(reader);
-            beginLayout = layoutHelper
-                    .getLayoutFromText(Globals.FORMATTER_PACKAGE);
-            reader.close();
-        } catch (IOException ex) {
-            // If an exception was cast, export filter doesn't have a begin
-            // file.
-        }
-        // Write the header
-        if (beginLayout != null) {
-            ps.write(beginLayout.doLayout(database, encoding));
-            missingFormatters.addAll(beginLayout.getMissingFormatters());
-        }
-
         /*
          * Write database entries; entries will be sorted as they appear on the
          * screen, or sorted by author, depending on Preferences. We also supply
@@ -225,75 +233,97 @@ public class ExportFormat implements IExportFormat {
         List<BibtexEntry> sorted = FileActions.getSortedEntries(database, metaData,
                 entryIds, false);
 
-        // Load default layout
-        reader = getReader(lfFileName + ".layout");
-
-        LayoutHelper layoutHelper = new LayoutHelper(reader);
-        Layout defLayout = layoutHelper
-                .getLayoutFromText(Globals.FORMATTER_PACKAGE);
-        reader.close();
-        if (defLayout != null) {
-            missingFormatters.addAll(defLayout.getMissingFormatters());
-            System.out.println(defLayout.getMissingFormatters());
-        }
+        ArrayList<String> missingFormatters = new ArrayList<String>(1);
+        Layout beginLayout;
+        Layout defLayout;
+        Layout endLayout;
         HashMap<String, Layout> layouts = new HashMap<String, Layout>();
-        Layout layout;
 
-        ExportFormats.entryNumber = 0;
-        for (BibtexEntry entry : sorted) {
-            ExportFormats.entryNumber++; // Increment entry counter.
-            // Get the layout
-            String type = entry.getType().getName().toLowerCase();
-            if (layouts.containsKey(type)) {
-                layout = layouts.get(type);
-            } else {
-                try {
-                    // We try to get a type-specific layout for this entry.
-                    reader = getReader(lfFileName + '.' + type + ".layout");
-                    layoutHelper = new LayoutHelper(reader);
-                    layout = layoutHelper
-                            .getLayoutFromText(Globals.FORMATTER_PACKAGE);
-                    layouts.put(type, layout);
-                    reader.close();
-                    if (layout != null) {
-                        missingFormatters.addAll(layout.getMissingFormatters());
-                    }
+        // Get all layouts before writing anything. The custom name formatters
+        // are only needed while the layouts are parsed, and other exports
+        // must not parse their layouts meanwhile:
+        synchronized (ExportFormat.layoutLock) {
+            // Check if this export filter has bundled name formatters:
+            // Set a global field, so all layouts have access to the custom name formatters:
+            Globals.prefs.customExportNameFormatters = readFormatterFile(lfFileName);
+            try {
+                checkLayoutCache();
 
-                } catch (IOException ex) {
-                    // The exception indicates that no type-specific layout
-                    // exists, so we
-                    // go with the default one.
-                    layout = defLayout;
+                // If there is no begin file, the layout is null.
+                beginLayout = getLayout(lfFileName + ".begin.layout");
+                if (beginLayout != null) {
+                    missingFormatters.addAll(beginLayout.getMissingFormatters());
                 }
-            }
 
-            // Write the entry
-            ps.write(layout.doLayout(entry, database));
-        }
+                // Load default layout
+                defLayout = getLayout(lfFileName + ".layout");
+                if (defLayout == null) {
+                    // The default layout is required, so report it missing:
+                    getReader(lfFileName + ".layout").close();
+                }
+                if (defLayout != null) {
+                    missingFormatters.addAll(defLayout.getMissingFormatters());
+                    System.out.println(defLayout.getMissingFormatters());
+                }
 
-        // Print footer
+                for (BibtexEntry entry : sorted) {
+                    String type = entry.getType().getName().toLowerCase();
+                    if (!layouts.containsKey(type)) {
+                        // We try to get a type-specific layout for this entry.
+                        Layout layout = getLayout(lfFileName + '.' + type + ".layout");
+                        if (layout != null) {
+                            missingFormatters.addAll(layout.getMissingFormatters());
+                        } else {
+                            // No type-specific layout exists, so we go with the
+                            // default one.
+                            layout = defLayout;
+                        }
+                        layouts.put(type, layout);
+                    }
+                }
 
-        // changed section - begin (arudert)
-        Layout endLayout = null;
-        try {
-            reader = getReader(lfFileName + ".end.layout");
-            layoutHelper = new LayoutHelper(reader);
-            endLayout = layoutHelper
-                    .getLayoutFromText(Globals.FORMATTER_PACKAGE);
-            reader.close();
-        } catch (IOException ex) {
-            // If an exception was thrown, export filter doesn't have an end
-            // file.
+                // changed section - begin (arudert)
+                // If there is no end file, the layout is null.
+                endLayout = getLayout(lfFileName + ".end.layout");
+                if (endLayout != null) {
+                    missingFormatters.addAll(endLayout.getMissingFormatters());
+                }
+            } finally {
+                // Clear custom name formatters:
+                Globals.prefs.customExportNameFormatters = null;
+            }
         }
 
-        // Write footer
-        if (endLayout != null) {
-            ps.write(endLayout.doLayout(database, encoding));
-            missingFormatters.addAll(endLayout.getMissingFormatters());
+        // Entries can be formatted in parallel, unless group blocks make an
+        // entry depend on the entries before it:
+        boolean groupDependent = false;
+        for (Layout layout : layouts.values()) {
+            groupDependent |= layout.isGroupDependent();
         }
+        LayoutContext context = new LayoutContext(0);
+        EntryLayoutFormatter formatter = new EntryLayoutFormatter(sorted, layouts, database,
+                groupDependent ? context : null);
+        LayoutContext previous = LayoutContext.setCurrent(context);
+        try {
+            // Write the header
+            if (beginLayout != null) {
+                ps.write(beginLayout.doLayout(database, encoding));
+            }
 
-        // Clear custom name formatters:
-        Globals.prefs.customExportNameFormatters = null;
+            for (int i = 0; i < sorted.size(); i++) {
+                // Write the entry
+                ps.write(formatter.get(i));
+            }
+
+            // Write footer
+            if (endLayout != null) {
+                context.setEntryNumber(sorted.size());
+                ps.write(endLayout.doLayout(database, encoding));
+            }
+        } finally {
+            formatter.cancel();
+            LayoutContext.setCurrent(previous);
+        }
 
         if (!missingFormatters.isEmpty()) {
             StringBuilder sb = new StringBuilder("The following formatters could not be found").
@@ -310,6 +340,106 @@ public class ExportFormat implements IExportFormat {
         finalizeSaveSession(ss);
     }
 
+    /**
+     * Formats entries with the layout for their type. If a LayoutContext is
+     * given, the entries are formatted one after the other in the calling
+     * thread with that context. Otherwise they are formatted in parallel,
+     * each with its own entry number.
+     */
+    private static class EntryLayoutFormatter extends ParallelFormatter {
+
+        private final List<BibtexEntry> entries;
+
+        private final Map<String, Layout> layouts;
+
+        private final BibtexDatabase database;
+
+        private final LayoutContext context;
+
+
+        public EntryLayoutFormatter(List<BibtexEntry> entries, Map<String, Layout> layouts,
+                BibtexDatabase database, LayoutContext context) {
+            super(entries.size(), context == null);
+            this.entries = entries;
+            this.layouts = layouts;
+            this.database = database;
+            this.context = context;
+        }
+
+        @Override
+        protected Formatter createFormatter() {
+            final LayoutContext formatterContext = context != null ? context : new LayoutContext(0);
+            return new Formatter() {
+
+                @Override
+                public String format(int index) {
+                    BibtexEntry entry = entries.get(index);
+                    Layout layout = layouts.get(entry.getType().getName().toLowerCase());
+                    formatterContext.setEntryNumber(index + 1);
+                    LayoutContext previous = LayoutContext.setCurrent(formatterContext);
+                    try {
+                        return layout.doLayout(entry, database);
+                    } finally {
+                        LayoutContext.setCurrent(previous);
+                    }
+                }
+            };
+        }
+    }
+
+
+    /**
+     * Forgets the parsed layouts if the name formatters have changed since
+     * they were parsed.
+     */
+    private void checkLayoutCache() {
+        List<Map<String, String>> formatters = new ArrayList<Map<String, String>>(2);
+        formatters.add(Globals.prefs.customExportNameFormatters);
+        formatters.add(NameFormatterTab.getNameFormatters());
+        synchronized (layoutCache) {
+            if (!formatters.equals(layoutCacheFormatters)) {
+                layoutCache.clear();
+                layoutCacheFormatters = formatters;
+            }
+        }
+    }
+
+    /**
+     * Returns the parsed layout file with the given name, or null if there
+     * is no such file. The layout is parsed again only if the file is a
+     * custom export file that was modified since it was parsed.
+     */
+    private Layout getLayout(String filename) throws IOException {
+        long lastModified = customExport ? new File(filename).lastModified() : 0;
+        synchronized (layoutCache) {
+            CachedLayout cached = layoutCache.get(filename);
+            if ((cached != null) && (cached.lastModified == lastModified)) {
+                return cached.layout;
+            }
+        }
+        Layout layout;
+        Reader reader;
+        try {
+            reader = getReader(filename);
+        } catch (IOException ex) {
+            // The file does not exist.
+            reader = null;
+        }
+        if (reader == null) {
+            layout = null;
+        } else {
+            try {
+                layout = new LayoutHelper(reader).getLayoutFromText(Globals.FORMATTER_PACKAGE);
+            } finally {
+                reader.close();
+            }
+        }
+        synchronized (layoutCache) {
+            layoutCache.put(filename, new CachedLayout(layout, lastModified));
+        }
+        return layout;
+    }
+
     /**
      * See if there is a name formatter file bundled with this export format. If so, read
      * all the name formatters so they can be used by the filter layouts.
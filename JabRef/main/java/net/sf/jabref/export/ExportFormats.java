@@ -43,9 +43,6 @@ public class ExportFormats {
 
     private static final Map<String, IExportFormat> exportFormats = new TreeMap<String, IExportFormat>();
 
-    // Global variable that is used for counting output entries when exporting:
-    public static int entryNumber = 0;
-
 
     public static void initAllExports() {
 
@@ -29,6 +29,12 @@ import java.util.regex.Pattern;
 
 import net.sf.jabref.*;
 import net.sf.jabref.config.SaveOrderConfig;
+import net.sf.jabref.imports.BibtexParser;
+import net.sf.jabref.imports.BibtexParserListener;
+import net.sf.jabref.imports.MappedFileReader;
+import net.sf.jabref.imports.OpenDatabaseAction;
+import net.sf.jabref.imports.ParserResult;
+import net.sf.jabref.specialfields.SpecialFieldsUtils;
 
 public class FileActions {
 
@@ -163,6 +169,8 @@ public class FileActions {
         }
 
         SaveSession session;
+        SaveCache.Save save = null;
+        ParallelEntryFormatter formatter = null;
         BibtexEntry exceptionCause = null;
         try {
             session = new SaveSession(file, encoding, backup);
@@ -199,10 +207,14 @@ public class FileActions {
             // sorted as they appear on the screen.
             List<BibtexEntry> sorter = FileActions.getSortedEntries(database, metaData, null, true);
 
-            BibtexEntryWriter bibtexEntryWriter = new BibtexEntryWriter(new LatexFieldFormatter(), true);
+            // When saving all entries, copy the unchanged ones from the last
+            // save to this file:
+            if (!checkSearch && !checkGroup && (file != null)) {
+                save = database.getSaveCache().startSave(file, session, encoding);
+            }
 
+            List<BibtexEntry> toWrite = new ArrayList<BibtexEntry>(sorter.size());
             for (BibtexEntry be : sorter) {
-                exceptionCause = be;
 
                 // Check if we must write the type definition for this
                 // entry, as well. Our criterion is that all non-standard
@@ -225,11 +237,26 @@ public class FileActions {
                 }
 
                 if (write) {
-                    bibtexEntryWriter.write(be, fw);
-                    fw.write(Globals.NEWLINE);
+                    toWrite.add(be);
                 }
             }
 
+            // The entries are formatted in parallel, and written here in
+            // their order:
+            formatter = new ParallelEntryFormatter(toWrite, save);
+            for (int i = 0; i < toWrite.size(); i++) {
+                BibtexEntry be = toWrite.get(i);
+                exceptionCause = be;
+                if (save == null) {
+                    fw.write(formatter.get(i));
+                } else if (!save.copyEntry(be)) {
+                    save.writeEntry(be, formatter.get(i), fw);
+                }
+            }
+            if (save != null) {
+                save.finish();
+            }
+
             // Write meta data.
             if (metaData != null) {
                 metaData.writeMetaData(fw);
@@ -251,6 +278,9 @@ public class FileActions {
             fw.close();
         } catch (Throwable ex) {
             ex.printStackTrace();
+            if (formatter != null) {
+                formatter.cancel();
+            }
             session.cancel();
             // repairAfterError(file, backup, INIT_OK);
             throw new SaveException(ex.getMessage(), exceptionCause);
@@ -261,6 +291,202 @@ public class FileActions {
     }
 
 
+    /**
+     * Copies a bib file to another file and encoding without building a
+     * database: every entry is written as soon as it has been parsed, so only
+     * one entry at a time is held in memory, apart from the keys of all
+     * entries, which explicit groups refer to. The output is the same as if
+     * the file were opened and saved with saveDatabase().
+     *
+     * The source is read once to collect the strings, preamble, meta data and
+     * entry types, and then once more to write the entries (twice if some
+     * entries have a crossref, which are written first). Only if the entries
+     * are saved in a sorted order, the file is opened as a whole instead.
+     *
+     * @return The session, which must be committed to replace the target file.
+     */
+    public static SaveSession convertDatabase(File source, String sourceEncoding, File file,
+            JabRefPreferences prefs, String encoding) throws SaveException {
+        HeaderCollector header;
+        Reader reader = null;
+        try {
+            header = new HeaderCollector();
+            reader = new MappedFileReader(source, sourceEncoding);
+            new BibtexParser(reader).parse(header);
+            header.finish();
+            if (!FileActions.isSavedInOriginalOrder(header.getMetaData())) {
+                ParserResult pr = OpenDatabaseAction.loadDatabase(source, sourceEncoding);
+                return FileActions.saveDatabase(pr.getDatabase(), pr.getMetaData(), file, prefs,
+                        false, false, encoding, false);
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            throw new SaveException(ex.getMessage());
+        } finally {
+            FileActions.closeQuietly(reader);
+        }
+
+        SaveSession session;
+        try {
+            session = new SaveSession(file, encoding, prefs.isBackup());
+        } catch (Throwable e) {
+            e.printStackTrace();
+            throw new SaveException(e.getMessage());
+        }
+
+        reader = null;
+        try {
+            VerifyingWriter fw = session.getWriter();
+            FileActions.writeBibFileHeader(fw, encoding);
+            FileActions.writePreamble(fw, header.getDatabase().getPreamble());
+            FileActions.writeStrings(fw, header.getDatabase());
+
+            // Like CrossRefEntryComparator, entries with a crossref go first:
+            TreeMap<String, BibtexEntryType> types = new TreeMap<String, BibtexEntryType>();
+            for (Boolean crossRefs : header.hasCrossRefs() ? new Boolean[] {true, false} : new Boolean[] {null}) {
+                reader = new MappedFileReader(source, sourceEncoding);
+                new BibtexParser(reader).parse(new StreamingWriter(fw, header, crossRefs, types));
+                reader.close();
+                reader = null;
+            }
+
+            header.getMetaData().writeMetaData(fw);
+            for (BibtexEntryType type : types.values()) {
+                if (type instanceof CustomEntryType) {
+                    ((CustomEntryType) type).save(fw);
+                    fw.write(Globals.NEWLINE);
+                }
+            }
+
+            fw.close();
+        } catch (Throwable ex) {
+            ex.printStackTrace();
+            session.cancel();
+            throw new SaveException(ex.getMessage());
+        } finally {
+            FileActions.closeQuietly(reader);
+        }
+
+        return session;
+    }
+
+    private static void closeQuietly(Reader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+                // Nothing to do, the file was only read.
+            }
+        }
+    }
+
+
+    /**
+     * Collects what is written before and after the entries, as opening the
+     * file would. Of the entries, only their keys are kept.
+     */
+    private static class HeaderCollector extends BibtexParser.DatabaseBuilder {
+
+        private final ParserResult parserResult;
+
+        private boolean crossRefs = false;
+
+
+        public HeaderCollector() {
+            this(new ParserResult(new BibtexDatabase(), null, new HashMap<String, BibtexEntryType>()));
+        }
+
+        private HeaderCollector(ParserResult parserResult) {
+            super(parserResult);
+            this.parserResult = parserResult;
+        }
+
+        @Override
+        public void entryParsed(BibtexEntry entry) {
+            if (entry.getField("crossref") != null) {
+                crossRefs = true;
+            }
+            String key = entry.getCiteKey();
+            if ((key != null) && !key.isEmpty()) {
+                BibtexEntry keyOnly = new BibtexEntry(IdGenerator.next(), entry.getType());
+                keyOnly.setField(BibtexFields.KEY_FIELD, key);
+                super.entryParsed(keyOnly);
+            }
+        }
+
+        public boolean hasCrossRefs() {
+            return crossRefs;
+        }
+
+        public BibtexDatabase getDatabase() {
+            return parserResult.getDatabase();
+        }
+
+        public MetaData getMetaData() {
+            return parserResult.getMetaData();
+        }
+    }
+
+    /**
+     * Writes the entries straight to the output, as saveDatabase() would,
+     * and collects the entry types to be saved along with them.
+     */
+    private static class StreamingWriter implements BibtexParserListener {
+
+        private final Writer fw;
+
+        private final HeaderCollector header;
+
+        // Null to write all entries:
+        private final Boolean crossRefs;
+
+        private final Map<String, BibtexEntryType> types;
+
+        private final BibtexEntryWriter bibtexEntryWriter = new BibtexEntryWriter(new LatexFieldFormatter(), true);
+
+
+        public StreamingWriter(Writer fw, HeaderCollector header, Boolean crossRefs,
+                Map<String, BibtexEntryType> types) {
+            this.fw = fw;
+            this.header = header;
+            this.crossRefs = crossRefs;
+            this.types = types;
+        }
+
+        @Override
+        public void entryParsed(BibtexEntry entry) throws IOException {
+            if ((crossRefs != null) && (crossRefs != (entry.getField("crossref") != null))) {
+                return;
+            }
+            // As when opening the file:
+            entry.setType(header.getFinalType(entry));
+            if (SpecialFieldsUtils.keywordSyncEnabled()) {
+                SpecialFieldsUtils.syncSpecialFieldsFromKeywords(entry, null);
+            }
+            BibtexEntryType tp = entry.getType();
+            if (BibtexEntryType.getStandardType(tp.getName()) == null) {
+                types.put(tp.getName(), tp);
+            }
+            bibtexEntryWriter.write(entry, fw);
+            fw.write(Globals.NEWLINE);
+        }
+
+        @Override
+        public void stringParsed(BibtexString string) {
+            // Written before the entries.
+        }
+
+        @Override
+        public void preambleParsed(String preamble) {
+            // Written before the entries.
+        }
+
+        @Override
+        public void commentParsed(String comment) {
+            // Written after the entries.
+        }
+    }
+
     private static class SaveSettings {
 
         public final String pri, sec, ter;
@@ -473,13 +699,7 @@ public class FileActions {
     public static List<BibtexEntry> getSortedEntries(BibtexDatabase database, MetaData metaData, Set<String> keySet, boolean isSaveOperation) {
         boolean inOriginalOrder;
         if (isSaveOperation) {
-            Vector<String> storedSaveOrderConfig = metaData.getData(net.sf.jabref.gui.DatabasePropertiesDialog.SAVE_ORDER_CONFIG);
-            if (storedSaveOrderConfig == null) {
-                inOriginalOrder = Globals.prefs.isSaveInOriginalOrder();
-            } else {
-                SaveOrderConfig saveOrderConfig = new SaveOrderConfig(storedSaveOrderConfig);
-                inOriginalOrder = saveOrderConfig.saveInOriginalOrder;
-            }
+            inOriginalOrder = FileActions.isSavedInOriginalOrder(metaData);
         } else {
             inOriginalOrder = JabRefPreferences.getInstance().isExportInOriginalOrder();
         }
@@ -514,6 +734,18 @@ public class FileActions {
         return sorter;
     }
 
+    /**
+     * Returns true if the database is saved in the order the entries were
+     * read or created, according to its meta data or else the preferences.
+     */
+    private static boolean isSavedInOriginalOrder(MetaData metaData) {
+        Vector<String> storedSaveOrderConfig = metaData.getData(net.sf.jabref.gui.DatabasePropertiesDialog.SAVE_ORDER_CONFIG);
+        if (storedSaveOrderConfig == null) {
+            return Globals.prefs.isSaveInOriginalOrder();
+        }
+        return new SaveOrderConfig(storedSaveOrderConfig).saveInOriginalOrder;
+    }
+
     /**
      * @return true iff the entry has a nonzero value in its field.
      */
@@ -0,0 +1,70 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.export;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.BibtexEntryWriter;
+import net.sf.jabref.Globals;
+
+/**
+ * Formats entries for saving on all cores, while the caller writes them in
+ * their original order.
+ *
+ * Each task has its own BibtexEntryWriter and LatexFieldFormatter, since
+ * these are not thread safe. The text of an entry is exactly what
+ * BibtexEntryWriter.write() would write, followed by a line break.
+ */
+class ParallelEntryFormatter extends ParallelFormatter {
+
+    private final List<BibtexEntry> entries;
+
+    private final SaveCache.Save save;
+
+
+    /**
+     * @param entries The entries to format.
+     * @param save Entries this can copy are not formatted in advance. May be null.
+     */
+    public ParallelEntryFormatter(List<BibtexEntry> entries, SaveCache.Save save) {
+        super(entries.size(), true);
+        this.entries = entries;
+        this.save = save;
+    }
+
+    @Override
+    protected Formatter createFormatter() {
+        final BibtexEntryWriter entryWriter = new BibtexEntryWriter(new LatexFieldFormatter(), true);
+        return new Formatter() {
+
+            @Override
+            public String format(int index) throws IOException {
+                StringWriter sw = new StringWriter();
+                entryWriter.write(entries.get(index), sw);
+                sw.write(Globals.NEWLINE);
+                return sw.toString();
+            }
+        };
+    }
+
+    @Override
+    protected boolean isSkipped(int index) {
+        return (save != null) && save.canReuse(entries.get(index));
+    }
+}
@@ -0,0 +1,230 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.export;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import net.sf.jabref.JabRefExecutorService;
+
+/**
+ * Formats a sequence of entries to text on all cores, while the caller
+ * writes the texts in their original order.
+ *
+ * The entries are split into chunks, which are formatted by tasks on the
+ * shared ForkJoinPool. Only a few chunks are ahead of the writer at any time,
+ * so the memory used does not grow with the number of entries. Each task
+ * formats its chunk with its own Formatter, so a Formatter need not be thread
+ * safe.
+ */
+abstract class ParallelFormatter {
+
+    private static final int CHUNK_SIZE = 128;
+
+    /**
+     * Fewer entries are formatted by the calling thread.
+     */
+    private static final int PARALLEL_THRESHOLD = 4 * ParallelFormatter.CHUNK_SIZE;
+
+    /**
+     * Formats entries in a single thread.
+     */
+    protected interface Formatter {
+
+        String format(int index) throws IOException;
+    }
+
+    /**
+     * The result of formatting one chunk. If formatting an entry failed, the
+     * texts of the following entries are missing.
+     */
+    private static class Chunk {
+
+        private final String[] texts;
+
+        private int failedIndex = -1;
+
+        private Throwable error;
+
+
+        public Chunk(int size) {
+            texts = new String[size];
+        }
+    }
+
+    private class FormatTask implements Callable<Chunk> {
+
+        private final int start;
+
+        private final int end;
+
+
+        public FormatTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Chunk call() {
+            Chunk chunk = new Chunk(end - start);
+            Formatter formatter = createFormatter();
+            for (int i = start; i < end; i++) {
+                if (isSkipped(i)) {
+                    continue;
+                }
+                try {
+                    chunk.texts[i - start] = formatter.format(i);
+                } catch (Throwable e) {
+                    chunk.failedIndex = i;
+                    chunk.error = e;
+                    break;
+                }
+            }
+            return chunk;
+        }
+    }
+
+
+    private final int size;
+
+    private final ForkJoinPool pool;
+
+    private final Queue<Future<Chunk>> submitted = new ArrayDeque<Future<Chunk>>();
+
+    // The number of chunks formatted ahead of the writer:
+    private final int window;
+
+    private int nextChunkStart = 0;
+
+    private Chunk current;
+
+    private int currentStart = 0;
+
+    // Formats entries that were not formatted in advance:
+    private Formatter formatter;
+
+
+    /**
+     * @param size The number of entries to format.
+     * @param parallel Whether the entries may be formatted in parallel.
+     */
+    protected ParallelFormatter(int size, boolean parallel) {
+        this.size = size;
+        if (parallel && (size >= ParallelFormatter.PARALLEL_THRESHOLD)) {
+            pool = JabRefExecutorService.INSTANCE.getForkJoinPool();
+            window = 2 * pool.getParallelism();
+        } else {
+            pool = null;
+            window = 0;
+        }
+    }
+
+    /**
+     * Creates a formatter for one thread.
+     */
+    protected abstract Formatter createFormatter();
+
+    /**
+     * Returns true if the entry with the given index need not be formatted in
+     * advance.
+     */
+    protected boolean isSkipped(int index) {
+        return false;
+    }
+
+    /**
+     * Returns the text of the entry with the given index. Must be called for
+     * increasing indexes. If formatting the entry failed, this throws the
+     * exception the Formatter threw.
+     */
+    public String get(int index) throws IOException {
+        if (pool == null) {
+            return format(index);
+        }
+        while ((current == null) || (index >= (currentStart + current.texts.length))) {
+            nextChunk();
+        }
+        if (index == current.failedIndex) {
+            ParallelFormatter.rethrow(current.error);
+        }
+        String text = current.texts[index - currentStart];
+        if (text == null) {
+            // Skipped, or after an error:
+            text = format(index);
+        }
+        return text;
+    }
+
+    /**
+     * Formats the entry in the calling thread.
+     */
+    private String format(int index) throws IOException {
+        if (formatter == null) {
+            formatter = createFormatter();
+        }
+        return formatter.format(index);
+    }
+
+    /**
+     * Stops formatting, e.g. after an error.
+     */
+    public void cancel() {
+        for (Future<Chunk> future : submitted) {
+            future.cancel(false);
+        }
+        submitted.clear();
+    }
+
+    private void nextChunk() throws IOException {
+        // Keep the window full:
+        while ((submitted.size() < window) && (nextChunkStart < size)) {
+            int end = Math.min(nextChunkStart + ParallelFormatter.CHUNK_SIZE, size);
+            submitted.add(pool.submit(new FormatTask(nextChunkStart, end)));
+            nextChunkStart = end;
+        }
+        if (current != null) {
+            currentStart += current.texts.length;
+        }
+        try {
+            current = submitted.remove().get();
+        } catch (InterruptedException e) {
+            cancel();
+            throw new InterruptedIOException("Interrupted while formatting entries");
+        } catch (ExecutionException e) {
+            cancel();
+            ParallelFormatter.rethrow(e.getCause());
+        }
+    }
+
+    private static void rethrow(Throwable e) throws IOException {
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new IOException(e);
+    }
+}
@@ -0,0 +1,368 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.export;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.BibtexEntryType;
+import net.sf.jabref.DatabaseChangeEvent;
+import net.sf.jabref.DatabaseChangeListener;
+import net.sf.jabref.Globals;
+import net.sf.jabref.JabRefPreferences;
+
+/**
+ * Remembers where each entry was written in the files a database was last
+ * saved to, so that the next save can copy the bytes of unchanged entries
+ * from the old file instead of formatting them again.
+ *
+ * An entry is forgotten as soon as it changes (which includes undo and
+ * redo). A saved file is only reused if it has not been modified since it
+ * was written, and if it was written with the same encoding and the same
+ * formatting preferences.
+ *
+ * All methods are thread safe.
+ */
+public class SaveCache implements DatabaseChangeListener {
+
+    /**
+     * Where an entry was written, and with which type (customizing entry
+     * types replaces the type objects, which changes the field order). Also
+     * the characters of the entry that the encoding could not represent, as
+     * a copy of the entry must report them again.
+     */
+    private static class Range {
+
+        private final long offset;
+
+        private final long length;
+
+        private final BibtexEntryType type;
+
+        // Null if there are none:
+        private final String problems;
+
+
+        public Range(long offset, long length, BibtexEntryType type, String problems) {
+            this.offset = offset;
+            this.length = length;
+            this.type = type;
+            this.problems = problems;
+        }
+    }
+
+    /**
+     * A file as it was committed.
+     */
+    private static class SavedFile {
+
+        private final long length;
+
+        private final long lastModified;
+
+        private final String encoding;
+
+        private final String format;
+
+        private final Map<BibtexEntry, Range> ranges;
+
+
+        public SavedFile(long length, long lastModified, String encoding, String format,
+                Map<BibtexEntry, Range> ranges) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.encoding = encoding;
+            this.format = format;
+            this.ranges = ranges;
+        }
+    }
+
+    /**
+     * Writes the entries of one save, reusing what it can from the previous
+     * save to the same file, and records where each entry ends up.
+     */
+    public class Save {
+
+        private final File file;
+
+        private final SaveSession session;
+
+        private final String encoding;
+
+        private final String format;
+
+        private final Map<BibtexEntry, Range> oldRanges;
+
+        private final Map<BibtexEntry, Range> newRanges = new IdentityHashMap<BibtexEntry, Range>();
+
+        // Entries changed while this save is going on:
+        private final Set<BibtexEntry> changed = Collections.newSetFromMap(new IdentityHashMap<BibtexEntry, Boolean>());
+
+        private FileChannel source;
+
+        private long position = -1;
+
+        // A copy from the old file that has not been done yet; consecutive
+        // unchanged entries are copied in one go:
+        private long pendingOffset;
+
+        private long pendingLength = 0;
+
+        private int reused = 0;
+
+
+        private Save(File file, SaveSession session, String encoding, String format, SavedFile old)
+                throws IOException {
+            this.file = file;
+            this.session = session;
+            this.encoding = encoding;
+            this.format = format;
+            if (old != null) {
+                oldRanges = old.ranges;
+                source = new FileInputStream(file).getChannel();
+            } else {
+                oldRanges = null;
+            }
+        }
+
+        /**
+         * Returns true if the entry can probably be copied from the previous
+         * save, so that it need not be formatted.
+         */
+        public boolean canReuse(BibtexEntry entry) {
+            return getReusableRange(entry) != null;
+        }
+
+        /**
+         * Copies the entry from the previous save, if possible. Returns false
+         * if the entry must be written with writeEntry() instead.
+         */
+        public boolean copyEntry(BibtexEntry entry) throws IOException {
+            if (position < 0) {
+                position = session.getPosition();
+            }
+            Range old = getReusableRange(entry);
+            if (old == null) {
+                return false;
+            }
+            if ((pendingLength > 0) && ((pendingOffset + pendingLength) == old.offset)) {
+                pendingLength += old.length;
+            } else {
+                copyPending();
+                pendingOffset = old.offset;
+                pendingLength = old.length;
+            }
+            if (old.problems != null) {
+                session.getWriter().addProblemCharacters(old.problems);
+            }
+            putRange(entry, new Range(position, old.length, old.type, old.problems));
+            position += old.length;
+            reused++;
+            return true;
+        }
+
+        /**
+         * Writes the formatted entry (including the line break following it).
+         */
+        public void writeEntry(BibtexEntry entry, String text, Writer out) throws IOException {
+            if (position < 0) {
+                position = session.getPosition();
+            }
+            copyPending();
+            out.write(text);
+            long end = session.getPosition();
+            putRange(entry, new Range(position, end - position, entry.getType(),
+                    session.getWriter().getProblemCharacters(text)));
+            position = end;
+        }
+
+        /**
+         * Returns the number of entries copied from the previous save.
+         */
+        public int getReusedCount() {
+            return reused;
+        }
+
+        /**
+         * Must be called after the last entry has been written.
+         */
+        public void finish() throws IOException {
+            try {
+                copyPending();
+            } finally {
+                closeSource();
+            }
+        }
+
+        /**
+         * Called when the session has been committed to the file.
+         */
+        void committed() {
+            SaveCache.this.committed(this);
+        }
+
+        /**
+         * Called when the session has been cancelled.
+         */
+        void cancelled() {
+            closeSource();
+            SaveCache.this.discard(this);
+        }
+
+        private Range getReusableRange(BibtexEntry entry) {
+            if (oldRanges == null) {
+                return null;
+            }
+            synchronized (SaveCache.this) {
+                Range range = oldRanges.get(entry);
+                return (range != null) && (range.type == entry.getType()) ? range : null;
+            }
+        }
+
+        private void putRange(BibtexEntry entry, Range range) {
+            synchronized (SaveCache.this) {
+                if (!changed.contains(entry)) {
+                    newRanges.put(entry, range);
+                }
+            }
+        }
+
+        private void copyPending() throws IOException {
+            if (pendingLength > 0) {
+                session.copyFrom(source, pendingOffset, pendingLength);
+                pendingLength = 0;
+            }
+        }
+
+        private void closeSource() {
+            if (source != null) {
+                try {
+                    source.close();
+                } catch (IOException ignored) {
+                    // Nothing to do, the file was only read.
+                }
+                source = null;
+            }
+        }
+    }
+
+
+    private final Map<File, SavedFile> files = new HashMap<File, SavedFile>();
+
+    private final Set<Save> activeSaves = new HashSet<Save>();
+
+
+    public SaveCache(BibtexDatabase database) {
+        database.addDatabaseChangeListener(this);
+    }
+
+    /**
+     * Starts saving to the given file through the given session. Entries
+     * written through the returned Save are copied from the last save to
+     * the file if possible, and remembered when the session is committed.
+     */
+    public Save startSave(File file, SaveSession session, String encoding) throws IOException {
+        File key = file.getCanonicalFile();
+        String format = SaveCache.getFormat();
+        SavedFile old;
+        synchronized (this) {
+            old = files.remove(key);
+            // A save that has not been committed yet is superseded by this one:
+            for (Iterator<Save> i = activeSaves.iterator(); i.hasNext();) {
+                if (i.next().file.equals(key)) {
+                    i.remove();
+                }
+            }
+        }
+        if ((old != null) && (!old.encoding.equals(encoding) || !old.format.equals(format)
+                || (old.length != key.length()) || (old.lastModified != key.lastModified())
+                || !SaveCache.isStateless(encoding))) {
+            old = null;
+        }
+        Save save = new Save(key, session, encoding, format, old);
+        session.setSave(save);
+        synchronized (this) {
+            activeSaves.add(save);
+        }
+        return save;
+    }
+
+    private synchronized void committed(Save save) {
+        if (!activeSaves.remove(save)) {
+            return;
+        }
+        files.put(save.file, new SavedFile(save.file.length(), save.file.lastModified(),
+                save.encoding, save.format, save.newRanges));
+    }
+
+    private synchronized void discard(Save save) {
+        activeSaves.remove(save);
+    }
+
+    @Override
+    public synchronized void databaseChanged(DatabaseChangeEvent e) {
+        if ((e.getType() == DatabaseChangeEvent.ChangeType.CHANGED_ENTRY)
+                || (e.getType() == DatabaseChangeEvent.ChangeType.REMOVED_ENTRY)) {
+            for (SavedFile file : files.values()) {
+                file.ranges.remove(e.getEntry());
+            }
+            for (Save save : activeSaves) {
+                if (save.oldRanges != null) {
+                    save.oldRanges.remove(e.getEntry());
+                }
+                save.newRanges.remove(e.getEntry());
+                save.changed.add(e.getEntry());
+            }
+        }
+    }
+
+    /**
+     * Returns a description of the preferences that affect how entries are
+     * written.
+     */
+    private static String getFormat() {
+        JabRefPreferences prefs = Globals.prefs;
+        return Globals.NEWLINE + '|' + prefs.isWriteFieldCamelCase() + '|' + prefs.isWriteFieldAddSpaces()
+                + '|' + prefs.isIncludeEmptyFields() + '|' + prefs.getWritefieldSortStyle()
+                + '|' + JabRefPreferences.getWritefieldUserdefinedOrder()
+                + '|' + prefs.isResolveStringsAllFields() + '|' + JabRefPreferences.getDoNotResolveStringsFor()
+                + '|' + prefs.getValueDelimiters(0) + prefs.getValueDelimiters(1)
+                + '|' + prefs.get(JabRefPreferences.PUT_BRACES_AROUND_CAPITALS)
+                + '|' + prefs.get(JabRefPreferences.NON_WRAPPABLE_FIELDS);
+    }
+
+    /**
+     * Encodings that switch between character sets with escape sequences
+     * (ISO-2022) depend on what was written before, so the bytes of an
+     * entry cannot be copied to another place.
+     */
+    private static boolean isStateless(String encoding) {
+        return !Charset.forName(encoding).name().toUpperCase().startsWith("ISO-2022");
+    }
+}
@@ -205,6 +205,9 @@ public class SaveDatabaseAction extends AbstractWorker {
                 panel.setNonUndoableChange(false);
                 panel.setBaseChanged(false);
                 panel.setUpdatedExternally(false);
+                if (Globals.autoSaveManager != null) {
+                    Globals.autoSaveManager.databaseSaved(panel);
+                }
             }
         } catch (SaveException ex2) {
             if (ex2 == SaveException.FILE_LOCKED) {
@@ -21,10 +21,21 @@ import net.sf.jabref.util.FileUtil;
 import net.sf.jabref.Globals;
 import net.sf.jabref.GUIGlobals;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
 
 /**
  * Class used to handle safe storage to disk. 
@@ -36,8 +47,10 @@ import java.nio.charset.UnsupportedCharsetException;
  * 
  * After saving is finished, the client should close the Writer. If the save should be put into effect, call
  * commit(), otherwise call cancel(). When cancelling, the temporary file is simply deleted and the target
- * file remains unchanged. When committing, the temporary file is copied to the target file after making
- * a backup if requested and if the target file already existed, and finally the temporary file is deleted.
+ * file remains unchanged. When committing, the temporary file is renamed to the target file after making
+ * a backup if requested and if the target file already existed. The temporary file is created next to the
+ * target file, so the rename replaces the target in one step, and the backup is a hard link to the old
+ * file where possible. Only if the file system cannot do this, the files are copied instead.
  * 
  * If committing fails, the temporary file will not be deleted.
  */
@@ -57,16 +70,120 @@ public class SaveSession {
     private boolean backup;
     private boolean useLockFile;
     private VerifyingWriter writer;
+    private FileOutputStream fileOut;
+    private PositionOutputStream out;
+    private SaveCache.Save save;
+
+
+    /**
+     * Counts the bytes written. Flushing only goes as far as this stream, so
+     * that the writer can be flushed after each entry to learn its position
+     * without writing to the disk each time.
+     */
+    private static class PositionOutputStream extends FilterOutputStream {
+
+        private long position = 0;
+
+
+        public PositionOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+
+        @Override
+        public void flush() {
+            // See above.
+        }
+
+        public void flushBuffer() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+            out.close();
+        }
+    }
 
 
     public SaveSession(File file, String encoding, boolean backup) throws IOException,
             UnsupportedCharsetException {
         this.file = file;
-        tmp = File.createTempFile(SaveSession.TEMP_PREFIX, SaveSession.TEMP_SUFFIX);
+        tmp = SaveSession.createTempFile(file);
         useLockFile = Globals.prefs.getBoolean(JabRefPreferences.USE_LOCK_FILES);
         this.backup = backup;
         this.encoding = encoding;
-        writer = new VerifyingWriter(new FileOutputStream(tmp), encoding);
+        fileOut = new FileOutputStream(tmp);
+        out = new PositionOutputStream(new BufferedOutputStream(fileOut, 65536));
+        writer = new VerifyingWriter(out, encoding);
+    }
+
+    /**
+     * Creates the temporary file in the directory of the target file if
+     * possible, so that it can be renamed to the target.
+     */
+    private static File createTempFile(File file) throws IOException {
+        if (file != null) {
+            try {
+                File dir = SaveSession.resolve(file).getAbsoluteFile().getParentFile();
+                if (dir != null) {
+                    return File.createTempFile(SaveSession.TEMP_PREFIX, SaveSession.TEMP_SUFFIX, dir);
+                }
+            } catch (IOException ignored) {
+                // The directory is not writable, use the default one.
+            }
+        }
+        return File.createTempFile(SaveSession.TEMP_PREFIX, SaveSession.TEMP_SUFFIX);
+    }
+
+    /**
+     * Follows symbolic links, so that the linked file is replaced instead of
+     * the link.
+     */
+    private static File resolve(File file) throws IOException {
+        return file.exists() ? file.toPath().toRealPath().toFile() : file;
+    }
+
+    /**
+     * Returns the number of bytes written so far.
+     */
+    long getPosition() throws IOException {
+        writer.flush();
+        return out.position;
+    }
+
+    /**
+     * Copies the given bytes of another file to the end of the output.
+     */
+    void copyFrom(FileChannel source, long offset, long length) throws IOException {
+        writer.flush();
+        out.flushBuffer();
+        FileChannel target = fileOut.getChannel();
+        long done = 0;
+        while (done < length) {
+            long n = source.transferTo(offset + done, length - done, target);
+            if (n <= 0) {
+                throw new IOException("Could not copy from the previously saved file");
+            }
+            done += n;
+        }
+        out.position += length;
+    }
+
+    void setSave(SaveCache.Save save) {
+        this.save = save;
     }
 
     public VerifyingWriter getWriter() {
@@ -85,12 +202,14 @@ public class SaveSession {
         if (file == null) {
             return;
         }
+        File backupFile = null;
+        boolean backupLinked = false;
         if (file.exists() && backup) {
             String name = file.getName();
             String path = file.getParent();
-            File backupFile = new File(path, name + GUIGlobals.backupExt);
+            backupFile = new File(path, name + GUIGlobals.backupExt);
             try {
-                FileUtil.copyFile(file, backupFile, true);
+                backupLinked = SaveSession.linkOrCopy(file, backupFile);
             } catch (IOException ex) {
                 ex.printStackTrace();
                 throw SaveException.BACKUP_CREATION;
@@ -113,7 +232,27 @@ public class SaveSession {
                 }
             }
 
-            FileUtil.copyFile(tmp, file, true);
+            File target = SaveSession.resolve(file);
+            Set<PosixFilePermission> permissions = SaveSession.getPermissions(target);
+            // The contents must be on the disk before the rename is, or a
+            // crash could leave an empty file in place of the old one:
+            SaveSession.sync(tmp.toPath());
+            try {
+                Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                if (permissions != null) {
+                    Files.setPosixFilePermissions(target.toPath(), permissions);
+                }
+                SaveSession.syncDirectory(target.getAbsoluteFile().getParentFile());
+            } catch (AtomicMoveNotSupportedException ex) {
+                // The file will be overwritten in place, which would change a
+                // linked backup, too:
+                if (backupLinked) {
+                    backupFile.delete();
+                    FileUtil.copyFile(file, backupFile, true);
+                }
+                FileUtil.copyFile(tmp, file, true);
+            }
         } catch (IOException ex2) {
             // If something happens here, what can we do to correct the problem? The file is corrupted, but we still
             // have a clean copy in tmp. However, we just failed to copy tmp to file, so it's not likely that
@@ -127,12 +266,89 @@ public class SaveSession {
         }
 
         tmp.delete();
+        if (save != null) {
+            save.committed();
+        }
     }
 
     public void cancel() {
+        if (save != null) {
+            save.cancelled();
+        }
+        try {
+            writer.close();
+        } catch (IOException ignored) {
+            // The file is deleted anyway.
+        }
         tmp.delete();
     }
 
+    /**
+     * Writes the contents of the file to the disk.
+     */
+    private static void sync(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes the entries of the directory to the disk, so that a rename in it
+     * persists. Not all platforms allow this; the rename then persists when
+     * the system decides.
+     */
+    private static void syncDirectory(File dir) {
+        if (dir == null) {
+            return;
+        }
+        try {
+            FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException ignored) {
+            // See above.
+        }
+    }
+
+    /**
+     * Makes the backup a hard link to the file, or a copy if the file system
+     * does not support links. Returns true if a link was made.
+     */
+    private static boolean linkOrCopy(File file, File backupFile) throws IOException {
+        if (backupFile.exists() && !backupFile.delete()) {
+            throw new IOException("Could not delete " + backupFile.getPath());
+        }
+        try {
+            Files.createLink(backupFile.toPath(), SaveSession.resolve(file).toPath());
+            return true;
+        } catch (UnsupportedOperationException ex) {
+            // Copy below.
+        } catch (IOException ex) {
+            // Copy below.
+        }
+        FileUtil.copyFile(file, backupFile, true);
+        return false;
+    }
+
+    private static Set<PosixFilePermission> getPermissions(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return Files.getPosixFilePermissions(file.toPath());
+        } catch (UnsupportedOperationException ex) {
+            return null;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
     /**
      * Check if a lock file exists, and create it if it doesn't.
      * @return true if the lock file already existed
@@ -54,6 +54,40 @@ public class VerifyingWriter extends OutputStreamWriter {
         }
     }
 
+    /**
+     * Returns the characters of the string that the encoding cannot
+     * represent, or null if there are none.
+     */
+    public String getProblemCharacters(String str) {
+        if (encoder.canEncode(str)) {
+            return null;
+        }
+        TreeSet<Character> chars = new TreeSet<Character>();
+        for (int i = 0; i < str.length(); i++) {
+            if (!encoder.canEncode(str.charAt(i))) {
+                chars.add(str.charAt(i));
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Character ch : chars) {
+            sb.append(ch.charValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Records problem characters of text that was copied to the output
+     * without passing through this writer.
+     */
+    public void addProblemCharacters(String chars) {
+        for (int i = 0; i < chars.length(); i++) {
+            problemCharacters.add(chars.charAt(i));
+        }
+        if (!chars.isEmpty()) {
+            couldEncodeAll = false;
+        }
+    }
+
     public boolean couldEncodeAll() {
         return couldEncodeAll;
     }
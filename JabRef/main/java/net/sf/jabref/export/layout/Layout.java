@@ -183,6 +183,20 @@ public class Layout
 
     // added section - end (arudert)
 
+    /**
+     * Returns true if the output for an entry depends on the entries formatted
+     * before it with the same LayoutContext, i.e. if this layout contains
+     * group blocks. Other layouts can format entries in any order.
+     */
+    public boolean isGroupDependent() {
+        for (LayoutEntry layoutEntry : layoutEntries) {
+            if (layoutEntry.isGroupDependent()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public ArrayList<String> getMissingFormatters() {
         return missingFormatters;
     }
@@ -0,0 +1,84 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.export.layout;
+
+/**
+ * The state an export shares between the entries it formats: the number of
+ * the entry being formatted (see the Number formatter), and the value of the
+ * last group block that was written (see \begingroup).
+ *
+ * Each thread has a current context, which layouts and formatters use. An
+ * export sets its own context while it formats entries, so that exports can
+ * run at the same time, and entries that do not depend on each other can be
+ * formatted in parallel.
+ */
+public class LayoutContext {
+
+    private static final ThreadLocal<LayoutContext> current = new ThreadLocal<LayoutContext>() {
+
+        @Override
+        protected LayoutContext initialValue() {
+            return new LayoutContext(0);
+        }
+    };
+
+    private int entryNumber;
+
+    private String currentGroup;
+
+
+    public LayoutContext(int entryNumber) {
+        this.entryNumber = entryNumber;
+    }
+
+    /**
+     * Returns the context of the calling thread.
+     */
+    public static LayoutContext getCurrent() {
+        return LayoutContext.current.get();
+    }
+
+    /**
+     * Makes the given context the context of the calling thread.
+     *
+     * @return The previous context of the calling thread, which should be
+     *         restored when done.
+     */
+    public static LayoutContext setCurrent(LayoutContext context) {
+        LayoutContext previous = LayoutContext.current.get();
+        LayoutContext.current.set(context);
+        return previous;
+    }
+
+    /**
+     * Returns the number of the entry being formatted, starting at 1.
+     */
+    public int getEntryNumber() {
+        return entryNumber;
+    }
+
+    public void setEntryNumber(int entryNumber) {
+        this.entryNumber = entryNumber;
+    }
+
+    public String getCurrentGroup() {
+        return currentGroup;
+    }
+
+    public void setCurrentGroup(String currentGroup) {
+        this.currentGroup = currentGroup;
+    }
+}
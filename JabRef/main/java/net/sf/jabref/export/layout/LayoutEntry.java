@@ -39,6 +39,17 @@ class LayoutEntry {
 
     private String text;
 
+    // For field blocks, the field names in the block start, split along
+    // &, && or ; (all fields are required) or along | or || (one field is
+    // required), so that this need not be done for each entry:
+    private String[] fieldNames;
+
+    private boolean allFieldsRequired;
+
+    // For option fields referring to a field (\format[...]{\field}), the
+    // field name:
+    private String optionFieldName;
+
     private LayoutEntry[] layoutEntries;
 
     private final int type;
@@ -65,6 +76,9 @@ class LayoutEntry {
                 text = v.get(0);
             } else {
                 text = v.get(0).trim();
+                if (text.startsWith("\\")) {
+                    optionFieldName = text.substring(1);
+                }
 
                 option = LayoutEntry.getOptionalLayout(v.get(1), classPrefix);
                 // See if there was an undefined formatter:
@@ -102,6 +116,15 @@ class LayoutEntry {
 
         type = layoutType;
         text = si.s;
+        if (text.matches(".*(;|(\\&+)).*")) {
+            // split the strings along &, && or ; for AND formatter
+            fieldNames = text.split("\\s*(;|(\\&+))\\s*");
+            allFieldsRequired = true;
+        } else {
+            // split the strings along |, ||  for OR formatter
+            fieldNames = text.split("\\s*(\\|+)\\s*");
+            allFieldsRequired = false;
+        }
 
         for (int i = 1; i < (parsedEntries.size() - 1); i++) {
             si = parsedEntries.get(i);
@@ -184,36 +207,23 @@ class LayoutEntry {
             String field;
             if (type == LayoutHelper.IS_GROUP_START) {
                 field = BibtexDatabase.getResolvedField(text, bibtex, database);
-            } else if (text.matches(".*(;|(\\&+)).*")) {
-                // split the strings along &, && or ; for AND formatter
-                String[] parts = text.split("\\s*(;|(\\&+))\\s*");
-                field = null;
-                for (String part : parts) {
-                    field = BibtexDatabase.getResolvedField(part, bibtex, database);
-                    if (field == null) {
-                        break;
-                    }
-
-                }
             } else {
-                // split the strings along |, ||  for OR formatter
-                String[] parts = text.split("\\s*(\\|+)\\s*");
                 field = null;
-                for (String part : parts) {
+                for (String part : fieldNames) {
                     field = BibtexDatabase.getResolvedField(part, bibtex, database);
-                    if (field != null) {
+                    if ((field == null) == allFieldsRequired) {
                         break;
                     }
                 }
             }
 
             if ((field == null)
-                    || ((type == LayoutHelper.IS_GROUP_START) && (field.equalsIgnoreCase(LayoutHelper
-                            .getCurrentGroup())))) {
+                    || ((type == LayoutHelper.IS_GROUP_START) && (field.equalsIgnoreCase(LayoutContext
+                            .getCurrent().getCurrentGroup())))) {
                 return null;
             } else {
                 if (type == LayoutHelper.IS_GROUP_START) {
-                    LayoutHelper.setCurrentGroup(field);
+                    LayoutContext.getCurrent().setCurrentGroup(field);
                 }
                 StringBuilder sb = new StringBuilder(100);
                 String fieldText;
@@ -282,7 +292,7 @@ class LayoutEntry {
             } else {
                 // changed section begin - arudert
                 // resolve field (recognized by leading backslash) or text
-                String field = text.startsWith("\\") ? BibtexDatabase.getResolvedField(text.substring(1), bibtex, database)
+                String field = optionFieldName != null ? BibtexDatabase.getResolvedField(optionFieldName, bibtex, database)
                         : BibtexDatabase.getText(text, database);
                 // changed section end - arudert
                 if (field == null) {
@@ -507,6 +517,24 @@ class LayoutEntry {
         return results.toArray(new LayoutFormatter[results.size()]);
     }
 
+    /**
+     * Returns true if this is or contains a group block, whose output depends
+     * on the entries formatted before.
+     */
+    public boolean isGroupDependent() {
+        if (type == LayoutHelper.IS_GROUP_START) {
+            return true;
+        }
+        if (layoutEntries != null) {
+            for (LayoutEntry layoutEntry : layoutEntries) {
+                if (layoutEntry.isGroupDependent()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     public boolean isInvalidFormatter() {
         return invalidFormatter != null;
     }
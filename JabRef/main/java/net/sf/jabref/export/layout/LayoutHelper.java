@@ -44,8 +44,6 @@ public class LayoutHelper {
     public static final int IS_FILENAME = 9;
     public static final int IS_FILEPATH = 10;
 
-    private static String currentGroup = null;
-
     private final PushbackReader _in;
     private final Vector<StringInt> parsedEntries = new Vector<StringInt>();
 
@@ -82,14 +80,6 @@ public class LayoutHelper {
         return new Layout(parsedEntries, classPrefix);
     }
 
-    public static String getCurrentGroup() {
-        return LayoutHelper.currentGroup;
-    }
-
-    public static void setCurrentGroup(String newGroup) {
-        LayoutHelper.currentGroup = newGroup;
-    }
-
     private String getBracketedField(int _field) throws IOException
     {
         StringBuffer buffer = null;
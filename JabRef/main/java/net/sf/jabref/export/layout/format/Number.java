@@ -15,8 +15,8 @@
 */
 package net.sf.jabref.export.layout.format;
 
+import net.sf.jabref.export.layout.LayoutContext;
 import net.sf.jabref.export.layout.ParamLayoutFormatter;
-import net.sf.jabref.export.ExportFormats;
 
 /**
  * Formatter that outputs a sequence number for the current entry. The sequence number is
@@ -31,6 +31,6 @@ public class Number implements ParamLayoutFormatter {
 
     @Override
     public String format(String fieldText) {
-        return String.valueOf(ExportFormats.entryNumber);
+        return String.valueOf(LayoutContext.getCurrent().getEntryNumber());
     }
 }
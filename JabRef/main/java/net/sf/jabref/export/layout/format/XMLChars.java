@@ -47,6 +47,24 @@ import net.sf.jabref.export.layout.LayoutFormatter;
  */
 public class XMLChars implements LayoutFormatter {
 
+    /**
+     * The characters below 126 that are always written as character
+     * references. The table is never changed, so that an instance can be
+     * used by several threads at once.
+     */
+    private static final boolean[] FORCE_REPLACE = new boolean[126];
+
+    static {
+        for (int i = 0; i < 40; i++) {
+            XMLChars.FORCE_REPLACE[i] = true;
+        }
+        XMLChars.FORCE_REPLACE[32] = false;
+        for (int i : new int[] {44, 45, 63, 64, 94, 95, 96, 124}) {
+            XMLChars.FORCE_REPLACE[i] = true;
+        }
+    }
+
+
     @Override
     public String format(String fieldText) {
 
@@ -67,9 +85,6 @@ public class XMLChars implements LayoutFormatter {
     }
 
 
-    private boolean[] forceReplace;
-
-
     private String restFormat(String toFormat) {
 
         String fieldText = toFormat.replaceAll("\\}", "").replaceAll("\\{", "");
@@ -79,17 +94,6 @@ public class XMLChars implements LayoutFormatter {
         // AND: this is accepted in the abstract of bibtex files, so are forced
         // to catch those cases
 
-        if (forceReplace == null) {
-            forceReplace = new boolean[126];
-            for (int i = 0; i < 40; i++) {
-                forceReplace[i] = true;
-            }
-            forceReplace[32] = false;
-            for (int i : new int[] {44, 45, 63, 64, 94, 95, 96, 124}) {
-                forceReplace[i] = true;
-            }
-        }
-
         StringBuilder buffer = new StringBuilder(fieldText.length() * 2);
 
         for (int i = 0; i < fieldText.length(); i++) {
@@ -104,7 +108,7 @@ public class XMLChars implements LayoutFormatter {
             }
 
             // TODO: Check whether > 125 is correct here or whether it should rather be >=  
-            if ((code > 125) || forceReplace[code]) {
+            if ((code > 125) || XMLChars.FORCE_REPLACE[code]) {
                 buffer.append("&#").append(code).append(';');
             } else {
                 buffer.append((char) code);
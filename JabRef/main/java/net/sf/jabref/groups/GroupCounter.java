@@ -0,0 +1,189 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.groups;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.JTree;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeModel;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.DatabaseChangeEvent;
+import net.sf.jabref.DatabaseChangeListener;
+import net.sf.jabref.Globals;
+import net.sf.jabref.JabRefExecutorService;
+import net.sf.jabref.JabRefPreferences;
+
+/**
+ * Counts the entries matched by every node of a group tree in the
+ * background, so that the tree can show the counts without evaluating
+ * groups on the event dispatch thread.
+ *
+ * The first count evaluates all groups in one parallel pass over the
+ * entries (see GroupMembershipIndex.prepare()). After that the index keeps
+ * the groups up to date as entries change, so a recount only combines
+ * bitsets. Requests for a recount that come in while one is pending are
+ * handled by the pending one, and changes of the database are collected for
+ * CHANGE_DELAY before counting again, so that a burst of changes, e.g. when
+ * pasting many entries, is counted only once.
+ */
+public class GroupCounter implements DatabaseChangeListener {
+
+    private static final int CHANGE_DELAY = 200;
+
+    private final JTree tree;
+
+    private final Timer changeTimer;
+
+    private BibtexDatabase database;
+
+    private GroupTreeNode root;
+
+    private boolean pending = false;
+
+    private volatile Map<GroupTreeNode, Integer> counts = Collections.emptyMap();
+
+
+    /**
+     * @param tree The tree to update when new counts are available.
+     */
+    public GroupCounter(JTree tree) {
+        this.tree = tree;
+        changeTimer = new Timer(GroupCounter.CHANGE_DELAY, new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                recount();
+            }
+        });
+        changeTimer.setRepeats(false);
+    }
+
+    /**
+     * Starts counting the given tree of groups for the given database.
+     * Either may be null to stop counting.
+     */
+    public synchronized void setGroups(BibtexDatabase database, GroupTreeNode root) {
+        if (database != this.database) {
+            if (this.database != null) {
+                this.database.removeDatabaseChangeListener(this);
+            }
+            if (database != null) {
+                database.addDatabaseChangeListener(this);
+            }
+        }
+        this.database = database;
+        this.root = root;
+        counts = Collections.emptyMap();
+        recount();
+    }
+
+    /**
+     * Returns the number of entries the node matches, or -1 if it has not
+     * been counted yet.
+     */
+    public int getCount(GroupTreeNode node) {
+        Integer count = counts.get(node);
+        return count != null ? count : -1;
+    }
+
+    /**
+     * Counts again in the background, e.g. after the tree has been changed.
+     * Does nothing unless the number of entries is shown for each group.
+     */
+    public void recount() {
+        synchronized (this) {
+            if (pending || (database == null) || (root == null)
+                    || !Globals.prefs.getBoolean(JabRefPreferences.GROUP_SHOW_NUMBER_OF_ELEMENTS)) {
+                return;
+            }
+            pending = true;
+        }
+        JabRefExecutorService.INSTANCE.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                count();
+            }
+        });
+    }
+
+    private void count() {
+        BibtexDatabase database;
+        GroupTreeNode root;
+        synchronized (this) {
+            pending = false;
+            database = this.database;
+            root = this.root;
+        }
+        if ((database == null) || (root == null)) {
+            return;
+        }
+        GroupMembershipIndex index = database.getGroupMembershipIndex();
+        index.prepare(root);
+        Map<GroupTreeNode, Integer> counts = index.getCounts(root);
+        final List<GroupTreeNode> changed = new ArrayList<GroupTreeNode>();
+        synchronized (this) {
+            if ((database != this.database) || (root != this.root)) {
+                return;
+            }
+            for (Map.Entry<GroupTreeNode, Integer> e : counts.entrySet()) {
+                if (!e.getValue().equals(this.counts.get(e.getKey()))) {
+                    changed.add(e.getKey());
+                }
+            }
+            this.counts = counts;
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+
+            @Override
+            public void run() {
+                // The tree caches the width of each cell, so it has to be
+                // told that the labels have changed, not just repainted:
+                TreeModel model = tree.getModel();
+                if (model instanceof DefaultTreeModel) {
+                    for (GroupTreeNode node : changed) {
+                        if (node.getRoot() == model.getRoot()) {
+                            ((DefaultTreeModel) model).nodeChanged(node);
+                        }
+                    }
+                } else {
+                    tree.treeDidChange();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void databaseChanged(DatabaseChangeEvent e) {
+        // Timer is thread safe; the first change starts it, and the others
+        // until it fires are counted along with that one:
+        if (!changeTimer.isRunning()) {
+            changeTimer.start();
+        }
+    }
+}
@@ -0,0 +1,444 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.groups;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RecursiveTask;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.DatabaseChangeEvent;
+import net.sf.jabref.DatabaseChangeListener;
+import net.sf.jabref.JabRefExecutorService;
+import net.sf.jabref.groups.structure.AbstractGroup;
+import net.sf.jabref.groups.structure.AllEntriesGroup;
+import net.sf.jabref.groups.structure.ExplicitGroup;
+import net.sf.jabref.groups.structure.GroupHierarchyType;
+import net.sf.jabref.groups.structure.KeywordGroup;
+import net.sf.jabref.search.KeywordIndex;
+
+/**
+ * Keeps track of which entries of a database belong to which groups, so that
+ * selecting a group does not evaluate it against every entry.
+ *
+ * Each entry gets a position, and the entries a group contains are kept as a
+ * bitset of positions. The bitset of a group is computed when it is first
+ * asked for, and then kept up to date by re-evaluating only the entry that a
+ * DatabaseChangeListener event concerns. The members of a tree node, which
+ * depend on the hierarchical context of the groups involved, are combined
+ * from these bitsets with the same semantics as
+ * GroupTreeNode.getSearchRule(). To avoid evaluating groups one at a time,
+ * prepare() computes the bitsets of a whole tree in one parallel pass.
+ *
+ * Keyword groups that do not use a regular expression are first computed
+ * from the candidates of the database's KeywordIndex.
+ *
+ * Explicit groups are not cached, since entries are assigned to them without
+ * any event; their bitsets are built from their (small) entry sets instead.
+ */
+public class GroupMembershipIndex implements DatabaseChangeListener {
+
+    /**
+     * Evaluates a list of groups against a range of entries, splitting the
+     * range until it is small enough.
+     */
+    private static class EvaluateTask extends RecursiveTask<BitSet[]> {
+
+        private static final int THRESHOLD = 512;
+
+        private final List<AbstractGroup> groups;
+
+        private final BibtexEntry[] entries;
+
+        private final int from;
+
+        private final int to;
+
+
+        public EvaluateTask(List<AbstractGroup> groups, BibtexEntry[] entries, int from, int to) {
+            this.groups = groups;
+            this.entries = entries;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected BitSet[] compute() {
+            if ((to - from) <= EvaluateTask.THRESHOLD) {
+                BitSet[] members = new BitSet[groups.size()];
+                for (int g = 0; g < members.length; g++) {
+                    members[g] = new BitSet();
+                }
+                for (int i = from; i < to; i++) {
+                    if (entries[i] == null) {
+                        continue;
+                    }
+                    for (int g = 0; g < members.length; g++) {
+                        if (groups.get(g).contains(entries[i])) {
+                            members[g].set(i);
+                        }
+                    }
+                }
+                return members;
+            }
+            int middle = (from + to) >>> 1;
+            EvaluateTask left = new EvaluateTask(groups, entries, from, middle);
+            left.fork();
+            BitSet[] members = new EvaluateTask(groups, entries, middle, to).compute();
+            BitSet[] leftMembers = left.join();
+            for (int g = 0; g < members.length; g++) {
+                members[g].or(leftMembers[g]);
+            }
+            return members;
+        }
+    }
+
+
+    private final Map<BibtexEntry, Integer> positions = new IdentityHashMap<BibtexEntry, Integer>();
+
+    private final List<BibtexEntry> entries = new ArrayList<BibtexEntry>();
+
+    // Positions of removed entries, which are used again:
+    private final List<Integer> freePositions = new ArrayList<Integer>();
+
+    private final BitSet allEntries = new BitSet();
+
+    private final Map<AbstractGroup, BitSet> groupMembers = new IdentityHashMap<AbstractGroup, BitSet>();
+
+    private final KeywordIndex keywordIndex;
+
+    // Positions that changed while prepare() evaluated groups outside the
+    // lock; null if no such evaluation is going on:
+    private BitSet touched;
+
+    private int preparing = 0;
+
+
+    /**
+     * Indexes all entries of the database and keeps the index up to date from
+     * then on.
+     */
+    public GroupMembershipIndex(BibtexDatabase database) {
+        synchronized (database) {
+            for (BibtexEntry entry : database.getEntries()) {
+                add(entry);
+            }
+            // Listeners are notified in the order they were added, so the
+            // keyword index is always up to date when this one is:
+            keywordIndex = database.getKeywordIndex();
+            database.addDatabaseChangeListener(this);
+        }
+    }
+
+    /**
+     * Returns the positions of the entries matched by the search rule of the
+     * node (see GroupTreeNode.getSearchRule()). The returned bitset may be
+     * modified by the caller.
+     */
+    public synchronized BitSet getMembers(GroupTreeNode node) {
+        pruneCache(node);
+        GroupHierarchyType context = node.getGroup().getHierarchicalContext();
+        return (BitSet) getMembers(node, context,
+                new IdentityHashMap<GroupTreeNode, BitSet>()).clone();
+    }
+
+    /**
+     * Returns the number of entries matched by each node of the tree below
+     * (and including) the given root.
+     */
+    public synchronized Map<GroupTreeNode, Integer> getCounts(GroupTreeNode root) {
+        pruneCache(root);
+        Map<GroupHierarchyType, Map<GroupTreeNode, BitSet>> computed =
+                new EnumMap<GroupHierarchyType, Map<GroupTreeNode, BitSet>>(GroupHierarchyType.class);
+        Map<GroupTreeNode, Integer> counts = new IdentityHashMap<GroupTreeNode, Integer>();
+        for (Enumeration<GroupTreeNode> e = root.preorderEnumeration(); e.hasMoreElements();) {
+            GroupTreeNode node = e.nextElement();
+            GroupHierarchyType context = node.getGroup().getHierarchicalContext();
+            Map<GroupTreeNode, BitSet> computedInContext = computed.get(context);
+            if (computedInContext == null) {
+                computedInContext = new IdentityHashMap<GroupTreeNode, BitSet>();
+                computed.put(context, computedInContext);
+            }
+            counts.put(node, getMembers(node, context, computedInContext).cardinality());
+        }
+        return counts;
+    }
+
+    /**
+     * Computes the bitsets of all groups of the tree that are not known yet,
+     * in one pass over the entries that is split across all cores. The index
+     * is not locked meanwhile; entries changed in the meantime are evaluated
+     * again afterwards.
+     */
+    public void prepare(GroupTreeNode root) {
+        List<AbstractGroup> groups = new ArrayList<AbstractGroup>();
+        BibtexEntry[] snapshot;
+        synchronized (this) {
+            for (Enumeration<GroupTreeNode> e = root.preorderEnumeration(); e.hasMoreElements();) {
+                AbstractGroup group = e.nextElement().getGroup();
+                if (!GroupMembershipIndex.isCached(group) || groupMembers.containsKey(group)
+                        || groups.contains(group)) {
+                    continue;
+                }
+                BitSet members = findKeywordGroupMembers(group);
+                if (members != null) {
+                    groupMembers.put(group, members);
+                } else {
+                    groups.add(group);
+                }
+            }
+            if (groups.isEmpty()) {
+                return;
+            }
+            snapshot = entries.toArray(new BibtexEntry[entries.size()]);
+            if (preparing++ == 0) {
+                touched = new BitSet();
+            }
+        }
+        BitSet[] members = null;
+        try {
+            members = JabRefExecutorService.INSTANCE.getForkJoinPool()
+                    .invoke(new EvaluateTask(groups, snapshot, 0, snapshot.length));
+        } finally {
+            synchronized (this) {
+                if (members != null) {
+                    for (int g = 0; g < members.length; g++) {
+                        AbstractGroup group = groups.get(g);
+                        if (groupMembers.containsKey(group)) {
+                            continue;
+                        }
+                        for (int i = touched.nextSetBit(0); i >= 0; i = touched.nextSetBit(i + 1)) {
+                            BibtexEntry entry = i < entries.size() ? entries.get(i) : null;
+                            members[g].set(i, (entry != null) && group.contains(entry));
+                        }
+                        groupMembers.put(group, members[g]);
+                    }
+                }
+                if (--preparing == 0) {
+                    touched = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the positions of all entries. The returned bitset may be
+     * modified by the caller.
+     */
+    public synchronized BitSet getAllEntries() {
+        return (BitSet) allEntries.clone();
+    }
+
+    /**
+     * Returns the position of the entry, or -1 if it is not in the database.
+     */
+    public synchronized int getPosition(BibtexEntry entry) {
+        Integer position = positions.get(entry);
+        return position != null ? position : -1;
+    }
+
+    /**
+     * Returns the entry at the given position, or null if there is none.
+     */
+    public synchronized BibtexEntry getEntry(int position) {
+        return position < entries.size() ? entries.get(position) : null;
+    }
+
+    /**
+     * Mirrors GroupTreeNode.getSearchRule(GroupHierarchyType). Results are
+     * remembered for the duration of one call, since the same subtree may be
+     * needed several times.
+     */
+    private BitSet getMembers(GroupTreeNode node, GroupHierarchyType originalContext,
+            Map<GroupTreeNode, BitSet> computed) {
+        BitSet members = computed.get(node);
+        if (members != null) {
+            return members;
+        }
+        AbstractGroup group = node.getGroup();
+        GroupHierarchyType context = group.getHierarchicalContext();
+        members = getGroupMembers(group);
+        if (context == GroupHierarchyType.REFINING) {
+            if (!node.isRoot() && (originalContext != GroupHierarchyType.INCLUDING)) {
+                members = (BitSet) members.clone();
+                members.and(getMembers((GroupTreeNode) node.getParent(), originalContext, computed));
+            }
+        } else if (context == GroupHierarchyType.INCLUDING) {
+            if (originalContext != GroupHierarchyType.REFINING) {
+                members = (BitSet) members.clone();
+                for (int i = 0; i < node.getChildCount(); i++) {
+                    members.or(getMembers((GroupTreeNode) node.getChildAt(i), originalContext, computed));
+                }
+            }
+        }
+        computed.put(node, members);
+        return members;
+    }
+
+    /**
+     * Returns the bitset of the entries the group itself contains. Must not be
+     * modified.
+     */
+    private BitSet getGroupMembers(AbstractGroup group) {
+        if (group instanceof AllEntriesGroup) {
+            return allEntries;
+        }
+        if (group instanceof ExplicitGroup) {
+            BitSet members = new BitSet();
+            for (BibtexEntry entry : ((ExplicitGroup) group).getEntries()) {
+                Integer position = positions.get(entry);
+                if (position != null) {
+                    members.set(position);
+                }
+            }
+            return members;
+        }
+        BitSet members = groupMembers.get(group);
+        if (members == null) {
+            members = findKeywordGroupMembers(group);
+            if (members == null) {
+                members = new BitSet();
+                for (int i = allEntries.nextSetBit(0); i >= 0; i = allEntries.nextSetBit(i + 1)) {
+                    if (group.contains(entries.get(i))) {
+                        members.set(i);
+                    }
+                }
+            }
+            groupMembers.put(group, members);
+        }
+        return members;
+    }
+
+    /**
+     * Computes the members of a keyword group from the candidates of the
+     * keyword index, or returns null if the index cannot narrow them down.
+     */
+    private BitSet findKeywordGroupMembers(AbstractGroup group) {
+        if (!(group instanceof KeywordGroup) || ((KeywordGroup) group).isRegExp()) {
+            return null;
+        }
+        KeywordGroup keywordGroup = (KeywordGroup) group;
+        Set<BibtexEntry> candidates = keywordIndex.getWordCandidates(keywordGroup.getSearchField(),
+                keywordGroup.getSearchExpression());
+        if (candidates == null) {
+            return null;
+        }
+        BitSet members = new BitSet();
+        for (BibtexEntry entry : candidates) {
+            Integer position = positions.get(entry);
+            if ((position != null) && group.contains(entry)) {
+                members.set(position);
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Returns true for the groups whose bitsets are kept up to date.
+     */
+    private static boolean isCached(AbstractGroup group) {
+        return !(group instanceof AllEntriesGroup) && !(group instanceof ExplicitGroup);
+    }
+
+    /**
+     * Forgets the groups that are no longer part of the node's tree (e.g.
+     * because they have been edited, which replaces the group object), and
+     * lets the keyword index drop the words of fields no keyword group of
+     * the tree searches any more.
+     */
+    private void pruneCache(GroupTreeNode node) {
+        Set<AbstractGroup> inTree = Collections.newSetFromMap(new IdentityHashMap<AbstractGroup, Boolean>());
+        Set<String> keywordFields = new HashSet<String>();
+        for (Enumeration<GroupTreeNode> e = ((GroupTreeNode) node.getRoot()).preorderEnumeration(); e.hasMoreElements();) {
+            AbstractGroup group = e.nextElement().getGroup();
+            inTree.add(group);
+            if ((group instanceof KeywordGroup) && !((KeywordGroup) group).isRegExp()) {
+                keywordFields.add(((KeywordGroup) group).getSearchField());
+            }
+        }
+        if (groupMembers.size() > (2 * inTree.size())) {
+            groupMembers.keySet().retainAll(inTree);
+        }
+        keywordIndex.retainWordIndexes(keywordFields);
+    }
+
+    @Override
+    public synchronized void databaseChanged(DatabaseChangeEvent e) {
+        BibtexEntry entry = e.getEntry();
+        switch (e.getType()) {
+        case ADDED_ENTRY:
+            add(entry);
+            break;
+        case REMOVED_ENTRY:
+            Integer position = positions.remove(entry);
+            if (position != null) {
+                allEntries.clear(position);
+                for (BitSet members : groupMembers.values()) {
+                    members.clear(position);
+                }
+                entries.set(position, null);
+                freePositions.add(position);
+                if (touched != null) {
+                    touched.set(position);
+                }
+            }
+            break;
+        case CHANGED_ENTRY:
+            position = positions.get(entry);
+            if (position != null) {
+                update(entry, position);
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void add(BibtexEntry entry) {
+        if (positions.containsKey(entry)) {
+            return;
+        }
+        int position;
+        if (freePositions.isEmpty()) {
+            position = entries.size();
+            entries.add(entry);
+        } else {
+            position = freePositions.remove(freePositions.size() - 1);
+            entries.set(position, entry);
+        }
+        positions.put(entry, position);
+        allEntries.set(position);
+        update(entry, position);
+    }
+
+    private void update(BibtexEntry entry, int position) {
+        if (touched != null) {
+            touched.set(position);
+        }
+        for (Map.Entry<AbstractGroup, BitSet> e : groupMembers.entrySet()) {
+            e.getValue().set(position, e.getKey().contains(entry));
+        }
+    }
+}
@@ -28,6 +28,7 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Vector;
@@ -69,13 +70,9 @@ import net.sf.jabref.JabRefPreferences;
 import net.sf.jabref.MetaData;
 import net.sf.jabref.groups.structure.AbstractGroup;
 import net.sf.jabref.groups.structure.AllEntriesGroup;
-import net.sf.jabref.search.rules.InvertSearchRule;
-import net.sf.jabref.search.SearchRule;
 import net.sf.jabref.SidePaneComponent;
 import net.sf.jabref.SidePaneManager;
 import net.sf.jabref.help.HelpAction;
-import net.sf.jabref.search.rules.sets.SearchRuleSets;
-import net.sf.jabref.search.rules.sets.SearchRuleSet;
 import net.sf.jabref.undo.NamedCompound;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -208,6 +205,7 @@ public class GroupSelector extends SidePaneComponent implements
             public void stateChanged(ChangeEvent e) {
                 Globals.prefs.putBoolean(JabRefPreferences.GROUP_SHOW_NUMBER_OF_ELEMENTS, showNumberOfElements.isSelected());
                 if (groupsTree != null) {
+                    groupsTree.getCounter().recount();
                     groupsTree.invalidate();
                     groupsTree.validate();
                     groupsTree.repaint();
@@ -763,51 +761,54 @@ public class GroupSelector extends SidePaneComponent implements
     }
 
     private void updateSelections() {
-        final SearchRuleSet searchRules = SearchRuleSets.build(andCb.isSelected() ? SearchRuleSets.RuleSetType.AND : SearchRuleSets.RuleSetType.OR);
+        // The members of the selected groups are combined as bitsets, instead of
+        // evaluating the groups against every entry:
+        GroupMembershipIndex index = panel.database().getGroupMembershipIndex();
         TreePath[] selection = groupsTree.getSelectionPaths();
 
+        BitSet hits = null;
         for (TreePath aSelection : selection) {
-            SearchRule searchRule = ((GroupTreeNode) aSelection.getLastPathComponent()).getSearchRule();
-            searchRules.addRule(searchRule);
+            BitSet members = index.getMembers((GroupTreeNode) aSelection.getLastPathComponent());
+            if (hits == null) {
+                hits = members;
+            } else if (andCb.isSelected()) {
+                hits.and(members);
+            } else {
+                hits.or(members);
+            }
+        }
+        if (invCb.isSelected()) {
+            BitSet all = index.getAllEntries();
+            all.andNot(hits);
+            hits = all;
         }
-        SearchRule searchRule = invCb.isSelected() ? new InvertSearchRule(searchRules) : searchRules;
-        GroupingWorker worker = new GroupingWorker(searchRule, SearchRule.DUMMY_QUERY);
+        GroupingWorker worker = new GroupingWorker(index, hits);
         worker.getWorker().run();
         worker.getCallBack().update();
-        /*panel.setGroupMatcher(new SearchMatcher(searchRules, searchOptions));
-        DatabaseSearch search = new DatabaseSearch(this, searchOptions, searchRules,
-                panel, Globals.GROUPSEARCH, floatCb.isSelected(), Globals.prefs
-                        .getBoolean(JabRefPreferences.GRAY_OUT_NON_HITS),
-                //true,
-                select.isSelected());
-        search.start();*/
     }
 
     class GroupingWorker extends AbstractWorker {
 
-        private final SearchRule rules;
-        private final String searchTerm;
-        private final ArrayList<BibtexEntry> matches = new ArrayList<BibtexEntry>();
+        private final GroupMembershipIndex index;
+        private final BitSet hitPositions;
         private final boolean showOverlappingGroupsP;
         int hits = 0;
 
 
-        public GroupingWorker(SearchRule rules, String searchTerm) {
-            this.rules = rules;
-            this.searchTerm = searchTerm;
+        public GroupingWorker(GroupMembershipIndex index, BitSet hitPositions) {
+            this.index = index;
+            this.hitPositions = hitPositions;
             showOverlappingGroupsP = showOverlappingGroups.isSelected();
         }
 
         @Override
         public void run() {
             for (BibtexEntry entry : panel.getDatabase().getEntries()) {
-                boolean hit = rules.applyRule(searchTerm, entry);
+                int position = index.getPosition(entry);
+                boolean hit = (position >= 0) && hitPositions.get(position);
                 entry.setGroupHit(hit);
                 if (hit) {
                     hits++;
-                    if (showOverlappingGroupsP) {
-                        matches.add(entry);
-                    }
                 }
             }
         }
@@ -825,7 +826,7 @@ public class GroupSelector extends SidePaneComponent implements
             }
 
             if (showOverlappingGroupsP) {
-                showOverlappingGroups(matches);
+                showOverlappingGroups(index, hitPositions);
             }
             frame.output(Globals.lang("Updated group selection") + ".");
         }
@@ -864,6 +865,7 @@ public class GroupSelector extends SidePaneComponent implements
         if (node != null) {
             groupsTree.scrollPathToVisible(new TreePath(node.getPath()));
         }
+        groupsTree.getCounter().recount();
     }
 
     /**
@@ -935,6 +937,7 @@ public class GroupSelector extends SidePaneComponent implements
     private void setGroups(GroupTreeNode groupsRoot) {
         groupsTree.setModel(groupsTreeModel = new DefaultTreeModel(groupsRoot));
         this.groupsRoot = groupsRoot;
+        groupsTree.getCounter().setGroups(panel.database(), groupsRoot);
         if (Globals.prefs.isGroupExpandTree()) {
             groupsTree.expandSubtree(groupsRoot);
         }
@@ -1459,6 +1462,7 @@ public class GroupSelector extends SidePaneComponent implements
         panel.undoManager.addEdit(undo);
         panel.markBaseChanged();
         panel.updateEntryEditorIfShowing();
+        groupsTree.getCounter().recount();
         final String groupName = node.getGroup().getName();
         if (assignedEntries == 1) {
             frame.output(Globals.lang("Assigned 1 entry to group \"%0\".", groupName));
@@ -1488,6 +1492,7 @@ public class GroupSelector extends SidePaneComponent implements
     public void setActiveBasePanel(BasePanel panel) {
         super.setActiveBasePanel(panel);
         if (panel == null) { // hide groups
+            groupsTree.getCounter().setGroups(null, null);
             frame.sidePaneManager.hide("groups");
             return;
         }
@@ -1563,17 +1568,12 @@ public class GroupSelector extends SidePaneComponent implements
      * Show groups that, if selected, would show at least one
      * of the entries found in the specified search.
      */
-    private void showOverlappingGroups(List<BibtexEntry> matches) { //DatabaseSearch search) {
+    private void showOverlappingGroups(GroupMembershipIndex index, BitSet matches) {
         List<GroupTreeNode> nodes = new ArrayList<GroupTreeNode>();
         for (Enumeration<GroupTreeNode> e = groupsRoot.depthFirstEnumeration(); e.hasMoreElements(); ) {
             GroupTreeNode node = e.nextElement();
-            SearchRule rule = node.getSearchRule();
-            for (BibtexEntry match : matches) {
-                if (!rule.applyRule(SearchRule.DUMMY_QUERY, match)) {
-                    continue;
-                }
+            if (index.getMembers(node).intersects(matches)) {
                 nodes.add(node);
-                break;
             }
         }
         groupsTree.setHighlight2Cells(nodes.toArray());
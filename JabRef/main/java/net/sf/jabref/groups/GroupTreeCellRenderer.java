@@ -23,10 +23,8 @@ import javax.swing.JLabel;
 import javax.swing.JTree;
 import javax.swing.tree.DefaultTreeCellRenderer;
 
-import net.sf.jabref.BibtexEntry;
 import net.sf.jabref.GUIGlobals;
 import net.sf.jabref.Globals;
-import net.sf.jabref.JabRef;
 import net.sf.jabref.JabRefPreferences;
 import net.sf.jabref.groups.structure.*;
 import net.sf.jabref.util.StringUtil;
@@ -47,6 +45,8 @@ public class GroupTreeCellRenderer extends DefaultTreeCellRenderer {
     private Object[] highlight3Cells = null;
     private Object highlightBorderCell = null;
 
+    private GroupCounter counter = null;
+
     private static final ImageIcon
             groupRefiningIcon = GUIGlobals.getImage("groupRefining");
     private static final ImageIcon groupIncludingIcon = GUIGlobals.getImage("groupIncluding");
@@ -118,16 +118,13 @@ public class GroupTreeCellRenderer extends DefaultTreeCellRenderer {
         }
         sb.append(StringUtil.quoteForHTML(name));
         if (Globals.prefs.getBoolean(JabRefPreferences.GROUP_SHOW_NUMBER_OF_ELEMENTS)) {
-            if (group instanceof ExplicitGroup) {
-                sb.append(" [").append(((ExplicitGroup) group).getNumEntries()).append("]");
-            } else if ((group instanceof KeywordGroup) || (group instanceof SearchGroup)) {
-                int hits = 0;
-                for (BibtexEntry entry : JabRef.jrf.basePanel().getDatabase().getEntries()) {
-                    if (group.contains(entry)) {
-                        hits++;
-                    }
-                }
-                sb.append(" [").append(hits).append("]");
+            int count = counter != null ? counter.getCount((GroupTreeNode) value) : -1;
+            if ((count < 0) && (group instanceof ExplicitGroup)) {
+                count = ((ExplicitGroup) group).getNumEntries();
+            }
+            // Other groups are shown without a number until they are counted:
+            if (count >= 0) {
+                sb.append(" [").append(count).append("]");
             }
         }
         if (italics) {
@@ -170,6 +167,14 @@ public class GroupTreeCellRenderer extends DefaultTreeCellRenderer {
         return c;
     }
 
+    /**
+     * Sets where the number of entries of each group comes from. Without a
+     * counter, only explicit groups show a number.
+     */
+    void setCounter(GroupCounter counter) {
+        this.counter = counter;
+    }
+
     /**
      * For use when dragging: The sepcified cell is always rendered as selected.
      *
@@ -77,6 +77,8 @@ public class GroupsTree extends JTree implements DragSourceListener,
 
     private final GroupTreeCellRenderer cellRenderer = new GroupTreeCellRenderer();
 
+    private final GroupCounter counter = new GroupCounter(this);
+
 
     /**
      * @param groupSelector the parent UI component
@@ -93,6 +95,7 @@ public class GroupsTree extends JTree implements DragSourceListener,
         // Eliminates right mouse clicks as valid actions
         dgr.setSourceActions(dgr.getSourceActions() & ~InputEvent.BUTTON3_MASK);
         new DropTarget(this, this);
+        cellRenderer.setCounter(counter);
         setCellRenderer(cellRenderer);
         setFocusable(false);
         setToggleClickCount(0);
@@ -379,6 +382,11 @@ public class GroupsTree extends JTree implements DragSourceListener,
         return freshPaths;
     }
 
+    /** Returns the counter of the entries in each group. */
+    public GroupCounter getCounter() {
+        return counter;
+    }
+
     /** Highlights the specified cell or disables highlight if cell == null */
     private void setHighlight1Cell(Object cell) {
         cellRenderer.setHighlight1Cell(cell);
@@ -86,6 +86,7 @@ public class AutoCompleteListener extends KeyAdapter implements FocusListener {
 
             // replace typed characters by characters from completion
             lastBeginning = lastCompletions[lastShownCompletion];
+            completer.completionAccepted(lastBeginning);
 
             int end = comp.getSelectionEnd();
             comp.select(end, end);
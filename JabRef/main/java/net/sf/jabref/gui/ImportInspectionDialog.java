@@ -75,6 +75,7 @@ import net.sf.jabref.groups.GroupTreeNode;
 import net.sf.jabref.groups.UndoableChangeAssignment;
 import net.sf.jabref.help.HelpAction;
 import net.sf.jabref.imports.ImportInspector;
+import net.sf.jabref.labelPattern.KeyGenerator;
 import net.sf.jabref.labelPattern.LabelPatternUtil;
 import net.sf.jabref.undo.NamedCompound;
 import net.sf.jabref.undo.UndoableInsertEntry;
@@ -568,7 +569,9 @@ public class ImportInspectionDialog extends JDialog implements ImportInspector,
                 ex.printStackTrace();
             }
             // }
-            LabelPatternUtil.makeLabel(metaData, database, entry);
+        }
+        new KeyGenerator(metaData, database).generateKeys(entries);
+        for (BibtexEntry entry : entries) {
             // Add the generated key to our list:
             keys.add(entry.getCiteKey());
         }
@@ -16,6 +16,7 @@
 package net.sf.jabref.imports;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -52,7 +53,6 @@ public class AutosaveStartupPrompter implements Runnable {
         List<ParserResult> loaded = new ArrayList<ParserResult>();
         Map<ParserResult, Integer> location = new HashMap<ParserResult, Integer>();
         for (File file : files) {
-            File fileToLoad = file;
             boolean tryingAutosave;
             if (Globals.prefs.isPromptBeforeUsingAutosave()) {
                 int answer = JOptionPane.showConfirmDialog(null, "<html>" +
@@ -65,13 +65,19 @@ public class AutosaveStartupPrompter implements Runnable {
                 tryingAutosave = true;
             }
 
-            if (tryingAutosave) {
-                fileToLoad = AutoSaveManager.getAutoSaveFile(file);
-            }
             boolean done = false;
             ParserResult pr = null;
             while (!done) {
-                pr = JabRef.openBibFile(fileToLoad.getPath(), true);
+                if (tryingAutosave) {
+                    try {
+                        pr = AutoSaveManager.recover(file, Globals.prefs.getDefaultEncoding());
+                    } catch (IOException ex) {
+                        ex.printStackTrace();
+                        pr = null;
+                    }
+                } else {
+                    pr = JabRef.openBibFile(file.getPath(), true);
+                }
                 if ((pr != null) && !pr.isInvalid()) {
                     loaded.add(pr);
                     BasePanel panel = frame.addTab(pr.getDatabase(), file,
@@ -89,7 +95,6 @@ public class AutosaveStartupPrompter implements Runnable {
                                 Globals.lang("Error opening autosave of '%0'. Trying to load '%0' instead.", file.getName()),
                                 Globals.lang("Error opening file"), JOptionPane.ERROR_MESSAGE);
                         tryingAutosave = false;
-                        fileToLoad = file;
                     } else {
                         String message;
                         if (pr != null) {
@@ -30,9 +30,9 @@ package net.sf.jabref.imports;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.PushbackReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.CharBuffer;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.regex.Matcher;
@@ -56,6 +56,11 @@ import org.apache.commons.logging.LogFactory;
  * 
  * ParserResult result = BibtexParser.parse(reader);
  * 
+ * or, to handle each entry as soon as it has been read without building a
+ * database,
+ * 
+ * ParserResult result = parser.parse(listener);
+ * 
  * Can be used stand-alone.
  * 
  * @author David Weitzman
@@ -67,7 +72,23 @@ public class BibtexParser {
 
     private static final Log LOGGER = LogFactory.getLog(BibtexParser.class);
 
-    private final PushbackReader pushbackReader;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+
+    private final CharBuffer source;
+
+    private char[] buffer;
+
+    private int bufferStart;
+
+    private int bufferPos;
+
+    private int bufferLimit;
+
+    private final char[] pushback;
+
+    private int pushbackCount;
 
     private BibtexDatabase database;
 
@@ -85,17 +106,53 @@ public class BibtexParser {
 
     private final boolean autoDoubleBraces;
 
+    // Builders reused for every token and field, so parsing does not allocate
+    // new ones per character sequence:
+    private final StringBuilder tokenBuilder = new StringBuilder(20);
+
+    private final StringBuilder keyBuilder = new StringBuilder(20);
+
+    private final StringBuilder fieldContentBuilder = new StringBuilder();
+
+    private final StringBuffer textBuffer = new StringBuffer();
+
 
     public BibtexParser(Reader in) {
+        this(in, null);
+    }
 
+    /**
+     * Creates a parser that reads directly from the given buffer, starting at its
+     * current position. Heap buffers are parsed in place without copying.
+     */
+    public static BibtexParser forCharBuffer(CharBuffer in) {
         if (in == null) {
             throw new NullPointerException();
         }
+        return new BibtexParser(null, in);
+    }
+
+    private BibtexParser(Reader in, CharBuffer buf) {
+
+        if ((in == null) && (buf == null)) {
+            throw new NullPointerException();
+        }
         if (Globals.prefs == null) {
             Globals.prefs = JabRefPreferences.getInstance();
         }
         autoDoubleBraces =JabRefPreferences.getInstance().isAutoDoubleBraces();
-        pushbackReader = new PushbackReader(in, BibtexParser.LOOKAHEAD);
+        pushback = new char[BibtexParser.LOOKAHEAD];
+        reader = in;
+        if ((buf != null) && buf.hasArray()) {
+            buffer = buf.array();
+            bufferStart = buf.arrayOffset() + buf.position();
+            bufferPos = bufferStart;
+            bufferLimit = buf.arrayOffset() + buf.limit();
+            source = null;
+        } else {
+            buffer = new char[BibtexParser.BUFFER_SIZE];
+            source = buf;
+        }
     }
 
     /**
@@ -242,10 +299,55 @@ public class BibtexParser {
         }
 
         database = new BibtexDatabase(); // Bibtex related contents.
-        HashMap<String, String> meta = new HashMap<String, String>();
         entryTypes = new HashMap<String, BibtexEntryType>(); // To store custem entry types parsed.
         parserResult = new ParserResult(database, null, entryTypes);
+        DatabaseBuilder builder = new DatabaseBuilder(parserResult);
+
+        try {
+            parseContents(builder);
+            builder.finish();
 
+            return parserResult;
+        } catch (KeyCollisionException kce) {
+            // kce.printStackTrace();
+            throw new IOException("Duplicate ID in bibtex file: " + kce.toString());
+        }
+    }
+
+    /**
+     * Parses the BibTex-Data found when reading from reader, handing every entry,
+     * string, preamble and comment to the listener as soon as it has been read.
+     * 
+     * No database is built, so the memory needed does not grow with the size of
+     * the input. The returned ParserResult holds an empty database, the JabRef
+     * version found in the file and any warnings issued while parsing. Meta
+     * data and custom entry types are not interpreted; they are passed to the
+     * listener as comments.
+     * 
+     * The reader will be consumed, so this can only be called once.
+     * 
+     * @param listener The listener to notify. Must not be null.
+     * @return ParserResult
+     * @throws IOException
+     */
+    public ParserResult parse(BibtexParserListener listener) throws IOException {
+        if (listener == null) {
+            throw new NullPointerException();
+        }
+        if (parserResult != null) {
+            throw new IllegalStateException("The input has already been parsed.");
+        }
+
+        database = new BibtexDatabase();
+        entryTypes = new HashMap<String, BibtexEntryType>();
+        parserResult = new ParserResult(database, null, entryTypes);
+
+        parseContents(listener);
+
+        return parserResult;
+    }
+
+    private void parseContents(BibtexParserListener listener) throws IOException {
         // First see if we can find the version number of the JabRef version that
         // wrote the file:
         String versionNum = readJabRefVersionNumber();
@@ -256,147 +358,216 @@ public class BibtexParser {
 
         skipWhitespace();
 
-        try {
-            while (!eof) {
-                boolean found = consumeUncritically('@');
-                if (!found) {
-                    break;
+        while (!eof) {
+            boolean found = consumeUncritically('@');
+            if (!found) {
+                break;
+            }
+            skipWhitespace();
+            String entryType = parseTextToken();
+            BibtexEntryType tp = BibtexEntryType.getType(entryType);
+            boolean isEntry = (tp != null);
+            // Util.pr(tp.getName());
+            if (!isEntry) {
+                // The entry type name was not recognized. This can mean
+                // that it is a string, preamble, or comment. If so,
+                // parse and set accordingly. If not, assume it is an entry
+                // with an unknown type.
+                if (entryType.toLowerCase().equals("preamble")) {
+                    listener.preambleParsed(parsePreamble());
+                } else if (entryType.toLowerCase().equals("string")) {
+                    listener.stringParsed(parseString());
+                } else if (entryType.toLowerCase().equals("comment")) {
+                    listener.commentParsed(parseBracketedTextExactly().toString());
+                } else {
+                    // The entry type was not recognized. This may mean that
+                    // it is a custom entry type whose definition will
+                    // appear
+                    // at the bottom of the file. So we use an
+                    // UnknownEntryType
+                    // to remember the type name by.
+                    tp = new UnknownEntryType(entryType.toLowerCase());
+                    // System.out.println("unknown type: "+entryType);
+                    isEntry = true;
                 }
-                skipWhitespace();
-                String entryType = parseTextToken();
-                BibtexEntryType tp = BibtexEntryType.getType(entryType);
-                boolean isEntry = (tp != null);
-                // Util.pr(tp.getName());
-                if (!isEntry) {
-                    // The entry type name was not recognized. This can mean
-                    // that it is a string, preamble, or comment. If so,
-                    // parse and set accordingly. If not, assume it is an entry
-                    // with an unknown type.
-                    if (entryType.toLowerCase().equals("preamble")) {
-                        database.setPreamble(parsePreamble());
-                    } else if (entryType.toLowerCase().equals("string")) {
-                        BibtexString bs = parseString();
-                        try {
-                            database.addString(bs);
-                        } catch (KeyCollisionException ex) {
-                            parserResult.addWarning(Globals.lang("Duplicate string name") + ": "
-                                    + bs.getName());
-                            // ex.printStackTrace();
-                        }
-                    } else if (entryType.toLowerCase().equals("comment")) {
-                        StringBuffer commentBuf = parseBracketedTextExactly();
-                        /**
-                         * 
-                         * Metadata are used to store Bibkeeper-specific
-                         * information in .bib files.
-                         * 
-                         * Metadata are stored in bibtex files in the format
-                         * 
-                         * @comment{jabref-meta: type:data0;data1;data2;...}
-                         * 
-                         * Each comment that starts with the META_FLAG is stored
-                         * in the meta HashMap, with type as key. Unluckily, the
-                         * old META_FLAG bibkeeper-meta: was used in JabRef 1.0
-                         * and 1.1, so we need to support it as well. At least
-                         * for a while. We'll always save with the new one.
-                         */
-                        String comment = commentBuf.toString().replaceAll("[\\x0d\\x0a]", "");
-                        if (comment.substring(0,
-                                Math.min(comment.length(), GUIGlobals.META_FLAG.length())).equals(
-                                GUIGlobals.META_FLAG)
-                                || comment.substring(0,
-                                        Math.min(comment.length(), GUIGlobals.META_FLAG_OLD.length()))
-                                        .equals(GUIGlobals.META_FLAG_OLD)) {
-
-                            String rest;
-                            if (comment.substring(0, GUIGlobals.META_FLAG.length()).equals(
-                                    GUIGlobals.META_FLAG)) {
-                                rest = comment.substring(GUIGlobals.META_FLAG.length());
-                            } else {
-                                rest = comment.substring(GUIGlobals.META_FLAG_OLD.length());
-                            }
-
-                            int pos = rest.indexOf(':');
-
-                            if (pos > 0)
-                             {
-                                meta.put(rest.substring(0, pos), rest.substring(pos + 1));
-                            // We remove all line breaks in the metadata - these
-                            // will have been inserted
-                            // to prevent too long lines when the file was
-                            // saved, and are not part of the data.
-                            }
-
-                        } else if (comment.substring(0,
-                                Math.min(comment.length(), GUIGlobals.ENTRYTYPE_FLAG.length())).equals(
-                                GUIGlobals.ENTRYTYPE_FLAG)) {
-                            // A custom entry type can also be stored in a
-                            // "@comment"
-                            CustomEntryType typ = CustomEntryType.parseEntryType(comment);
-                            entryTypes.put(typ.getName().toLowerCase(), typ);
-                        } else {
-                            // FIXME: user comments are simply dropped
-                            // at least, we log that we ignored the comment
-                            LOGGER.info(Globals.lang("Dropped comment from database") + ":" + comment);
-                        }
-                    } else {
-                        // The entry type was not recognized. This may mean that
-                        // it is a custom entry type whose definition will
-                        // appear
-                        // at the bottom of the file. So we use an
-                        // UnknownEntryType
-                        // to remember the type name by.
-                        tp = new UnknownEntryType(entryType.toLowerCase());
-                        // System.out.println("unknown type: "+entryType);
-                        isEntry = true;
-                    }
+            }
+
+            if (isEntry) // True if not comment, preamble or string.
+            {
+                /**
+                 * Morten Alver 13 Aug 2006: Trying to make the parser more
+                 * robust. If an exception is thrown when parsing an entry,
+                 * drop the entry and try to resume parsing. Add a warning
+                 * for the user.
+                 * 
+                 * An alternative solution is to try rescuing the entry for
+                 * which parsing failed, by returning the entry with the
+                 * exception and adding it before parsing is continued.
+                 */
+                BibtexEntry be = null;
+                try {
+                    be = parseEntry(tp);
+                } catch (IOException ex) {
+                    LOGGER.warn("Could not parse entry", ex);
+                    parserResult.addWarning(Globals.lang("Error occured when parsing entry") + ": '"
+                            + ex.getMessage() + "'. " + Globals.lang("Skipped entry."));
+
                 }
+                if (be != null) {
+                    listener.entryParsed(be);
+                }
+            }
 
-                if (isEntry) // True if not comment, preamble or string.
-                {
-                    /**
-                     * Morten Alver 13 Aug 2006: Trying to make the parser more
-                     * robust. If an exception is thrown when parsing an entry,
-                     * drop the entry and try to resume parsing. Add a warning
-                     * for the user.
-                     * 
-                     * An alternative solution is to try rescuing the entry for
-                     * which parsing failed, by returning the entry with the
-                     * exception and adding it before parsing is continued.
-                     */
-                    try {
-                        BibtexEntry be = parseEntry(tp);
-
-                        boolean duplicateKey = database.insertEntry(be);
-                        if (duplicateKey) {
-                            parserResult.addDuplicateKey(be.getCiteKey());
-                        } else if ((be.getCiteKey() == null) || be.getCiteKey().equals("")) {
-                            parserResult.addWarning(Globals.lang("empty BibTeX key") + ": "
-                                    + be.getAuthorTitleYear(40) + " ("
-                                    + Globals.lang("grouping may not work for this entry") + ")");
-                        }
-                    } catch (IOException ex) {
-                        LOGGER.warn("Could not parse entry", ex);
-                        parserResult.addWarning(Globals.lang("Error occured when parsing entry") + ": '"
-                                + ex.getMessage() + "'. " + Globals.lang("Skipped entry."));
+            skipWhitespace();
+        }
+    }
+
+
+    /**
+     * Collects everything reported by the parser into the database, meta data
+     * and entry types of a ParserResult. This is what parse() uses.
+     */
+    public static class DatabaseBuilder implements BibtexParserListener {
+
+        private final ParserResult parserResult;
+
+        private final BibtexDatabase database;
+
+        private final HashMap<String, BibtexEntryType> entryTypes;
+
+        private final HashMap<String, String> meta = new HashMap<String, String>();
+
+
+        public DatabaseBuilder(ParserResult parserResult) {
+            this.parserResult = parserResult;
+            this.database = parserResult.getDatabase();
+            this.entryTypes = parserResult.getEntryTypes();
+        }
+
+        /**
+         * Updates entries with unknown type based on the parsed type definitions,
+         * if possible, and instantiates the meta data. Call this once the whole
+         * input has been reported.
+         */
+        public void finish() {
+            checkEntryTypes();
+            parserResult.setMetaData(new MetaData(meta, database));
+        }
 
+        /**
+         * Returns the type finish() gives the entry: its own, unless that is
+         * unknown, in which case the parsed definition of the type, or 'other'
+         * if there is none.
+         */
+        public BibtexEntryType getFinalType(BibtexEntry be) {
+            if (!(be.getType() instanceof UnknownEntryType)) {
+                return be.getType();
+            }
+            BibtexEntryType type = entryTypes.get(be.getType().getName().toLowerCase());
+            return type != null ? type : BibtexEntryTypes.OTHER;
+        }
+
+        private void checkEntryTypes() {
+
+            for (BibtexEntry be : database.getEntries()) {
+                if (be.getType() instanceof UnknownEntryType) {
+                    // Look up the unknown type name in our map of parsed types:
+                    if (!entryTypes.containsKey(be.getType().getName().toLowerCase())) {
+                        parserResult
+                                .addWarning(Globals.lang("unknown entry type") + ": "
+                                        + be.getType().getName() + ":" + be.getField(BibtexFields.KEY_FIELD)
+                                        + " . " + Globals.lang("Type set to 'other'")
+                                        + ".");
                     }
+                    be.setType(getFinalType(be));
                 }
+            }
+        }
 
-                skipWhitespace();
+        @Override
+        public void entryParsed(BibtexEntry be) {
+            boolean duplicateKey = database.insertEntry(be);
+            if (duplicateKey) {
+                parserResult.addDuplicateKey(be.getCiteKey());
+            } else if ((be.getCiteKey() == null) || be.getCiteKey().equals("")) {
+                parserResult.addWarning(Globals.lang("empty BibTeX key") + ": "
+                        + be.getAuthorTitleYear(40) + " ("
+                        + Globals.lang("grouping may not work for this entry") + ")");
             }
+        }
 
-            // Before returning the database, update entries with unknown type
-            // based on parsed type definitions, if possible.
-            checkEntryTypes(parserResult);
+        @Override
+        public void stringParsed(BibtexString bs) {
+            try {
+                database.addString(bs);
+            } catch (KeyCollisionException ex) {
+                parserResult.addWarning(Globals.lang("Duplicate string name") + ": "
+                        + bs.getName());
+                // ex.printStackTrace();
+            }
+        }
 
-            // Instantiate meta data:
-            parserResult.setMetaData(new MetaData(meta, database));
+        @Override
+        public void preambleParsed(String preamble) {
+            database.setPreamble(preamble);
+        }
 
-            return parserResult;
-        } catch (KeyCollisionException kce) {
-            // kce.printStackTrace();
-            throw new IOException("Duplicate ID in bibtex file: " + kce.toString());
+        @Override
+        public void commentParsed(String commentText) {
+            /**
+             * 
+             * Metadata are used to store Bibkeeper-specific
+             * information in .bib files.
+             * 
+             * Metadata are stored in bibtex files in the format
+             * 
+             * @comment{jabref-meta: type:data0;data1;data2;...}
+             * 
+             * Each comment that starts with the META_FLAG is stored
+             * in the meta HashMap, with type as key. Unluckily, the
+             * old META_FLAG bibkeeper-meta: was used in JabRef 1.0
+             * and 1.1, so we need to support it as well. At least
+             * for a while. We'll always save with the new one.
+             */
+            String comment = commentText.replaceAll("[\\x0d\\x0a]", "");
+            if (comment.substring(0,
+                    Math.min(comment.length(), GUIGlobals.META_FLAG.length())).equals(
+                    GUIGlobals.META_FLAG)
+                    || comment.substring(0,
+                            Math.min(comment.length(), GUIGlobals.META_FLAG_OLD.length()))
+                            .equals(GUIGlobals.META_FLAG_OLD)) {
+
+                String rest;
+                if (comment.substring(0, GUIGlobals.META_FLAG.length()).equals(
+                        GUIGlobals.META_FLAG)) {
+                    rest = comment.substring(GUIGlobals.META_FLAG.length());
+                } else {
+                    rest = comment.substring(GUIGlobals.META_FLAG_OLD.length());
+                }
+
+                int pos = rest.indexOf(':');
+
+                if (pos > 0)
+                 {
+                    meta.put(rest.substring(0, pos), rest.substring(pos + 1));
+                // We remove all line breaks in the metadata - these
+                // will have been inserted
+                // to prevent too long lines when the file was
+                // saved, and are not part of the data.
+                }
+
+            } else if (comment.substring(0,
+                    Math.min(comment.length(), GUIGlobals.ENTRYTYPE_FLAG.length())).equals(
+                    GUIGlobals.ENTRYTYPE_FLAG)) {
+                // A custom entry type can also be stored in a
+                // "@comment"
+                CustomEntryType typ = CustomEntryType.parseEntryType(comment);
+                entryTypes.put(typ.getName().toLowerCase(), typ);
+            } else {
+                // FIXME: user comments are simply dropped
+                // at least, we log that we ignored the comment
+                LOGGER.info(Globals.lang("Dropped comment from database") + ":" + comment);
+            }
         }
     }
 
@@ -408,18 +579,61 @@ public class BibtexParser {
     }
 
     private int read() throws IOException {
-        int c = pushbackReader.read();
+        int c;
+        if (pushbackCount > 0) {
+            c = pushback[--pushbackCount];
+        } else if ((bufferPos < bufferLimit) || fillBuffer()) {
+            c = buffer[bufferPos++];
+        } else {
+            return -1;
+        }
         if (c == '\n') {
             line++;
         }
         return c;
     }
 
+    /**
+     * Pushes a character back. Like PushbackReader, -1 is pushed back as the
+     * character 65535, which the callers treat as end of input.
+     */
     private void unread(int c) throws IOException {
         if (c == '\n') {
             line--;
         }
-        pushbackReader.unread(c);
+        // Usually the character is the one just taken from the buffer, so we
+        // can simply step back instead of using the pushback stack:
+        if ((pushbackCount == 0) && (bufferPos > bufferStart) && (buffer[bufferPos - 1] == (char) c)) {
+            bufferPos--;
+        } else if (pushbackCount < pushback.length) {
+            pushback[pushbackCount++] = (char) c;
+        } else {
+            throw new IOException("Pushback buffer overflow");
+        }
+    }
+
+    /**
+     * Reads the next block of characters from the reader or char buffer.
+     *
+     * @return false if the input is exhausted.
+     */
+    private boolean fillBuffer() throws IOException {
+        int n;
+        if (reader != null) {
+            n = reader.read(buffer, 0, buffer.length);
+        } else if ((source != null) && source.hasRemaining()) {
+            n = Math.min(buffer.length, source.remaining());
+            source.get(buffer, 0, n);
+        } else {
+            n = -1;
+        }
+        if (n <= 0) {
+            return false;
+        }
+        bufferStart = 0;
+        bufferPos = 0;
+        bufferLimit = n;
+        return true;
     }
 
     private BibtexString parseString() throws IOException {
@@ -521,7 +735,8 @@ public class BibtexParser {
 
     private String parseFieldContent(String key) throws IOException {
         skipWhitespace();
-        StringBuilder value = new StringBuilder();
+        StringBuilder value = fieldContentBuilder;
+        value.setLength(0);
         int c;
 
         while (((c = peek()) != ',') && (c != '}') && (c != ')')) {
@@ -648,7 +863,8 @@ public class BibtexParser {
      * numbers outside brackets.
      */
     private String parseTextToken() throws IOException {
-        StringBuilder token = new StringBuilder(20);
+        StringBuilder token = tokenBuilder;
+        token.setLength(0);
 
         while (true) {
             int c = read();
@@ -792,7 +1008,8 @@ public class BibtexParser {
      * This method is used to parse the bibtex key for an entry.
      */
     private String parseKey() throws IOException {
-        StringBuilder token = new StringBuilder(20);
+        StringBuilder token = keyBuilder;
+        token.setLength(0);
 
         while (true) {
             int c = read();
@@ -904,9 +1121,14 @@ public class BibtexParser {
         return value;
     }
 
+    /**
+     * Note: the returned buffer is reused by the next call of this method or of
+     * parseQuotedFieldExactly().
+     */
     private StringBuffer parseBracketedTextExactly() throws IOException {
 
-        StringBuffer value = new StringBuffer();
+        StringBuffer value = textBuffer;
+        value.setLength(0);
 
         consume('{');
 
@@ -932,9 +1154,14 @@ public class BibtexParser {
         return value;
     }
 
+    /**
+     * Note: the returned buffer is reused by the next call of this method or of
+     * parseBracketedTextExactly().
+     */
     private StringBuffer parseQuotedFieldExactly() throws IOException {
 
-        StringBuffer value = new StringBuffer();
+        StringBuffer value = textBuffer;
+        value.setLength(0);
 
         consume('"');
 
@@ -997,30 +1224,6 @@ public class BibtexParser {
 
     }
 
-    private void checkEntryTypes(ParserResult _pr) {
-
-        for (BibtexEntry be : database.getEntries()) {
-            if (be.getType() instanceof UnknownEntryType) {
-                // Look up the unknown type name in our map of parsed types:
-
-                Object o = entryTypes.get(be.getType().getName().toLowerCase());
-                if (o != null) {
-                    BibtexEntryType type = (BibtexEntryType) o;
-                    be.setType(type);
-                } else {
-                    // System.out.println("Unknown entry type:
-                    // "+be.getType().getName());
-                    _pr
-                            .addWarning(Globals.lang("unknown entry type") + ": "
-                                    + be.getType().getName() + ":" + be.getField(BibtexFields.KEY_FIELD)
-                                    + " . " + Globals.lang("Type set to 'other'")
-                                    + ".");
-                    be.setType(BibtexEntryTypes.OTHER);
-                }
-            }
-        }
-    }
-
     /**
      * Read the JabRef signature, if any, and find what version number is given.
      * This method advances the file reader only as far as the end of the first line of
@@ -0,0 +1,65 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.imports;
+
+import java.io.IOException;
+
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.BibtexString;
+
+/**
+ * Receives the contents of a BibTeX file from the BibtexParser as soon as each
+ * item has been read, in the order in which they appear in the file.
+ *
+ * Use:
+ *
+ * BibtexParser parser = new BibtexParser(reader);
+ *
+ * ParserResult result = parser.parse(listener);
+ *
+ * Entries handed to the listener have not been inserted into any database, and
+ * entries of custom types defined further down in the file still carry an
+ * UnknownEntryType.
+ *
+ * An IOException thrown by the listener aborts parsing and is passed on to the
+ * caller of parse(listener).
+ */
+public interface BibtexParserListener {
+
+    /**
+     * Called for every entry (i.e. everything except @preamble, @string and
+     * @comment) that was parsed successfully.
+     */
+    void entryParsed(BibtexEntry entry) throws IOException;
+
+    /**
+     * Called for every @string definition.
+     */
+    void stringParsed(BibtexString string) throws IOException;
+
+    /**
+     * Called for the @preamble. If the file contains several, each of them is
+     * reported.
+     */
+    void preambleParsed(String preamble) throws IOException;
+
+    /**
+     * Called for every @comment, including the ones JabRef uses to store its
+     * meta data and custom entry types. The text is given exactly as found
+     * between the outer braces.
+     */
+    void commentParsed(String comment) throws IOException;
+}
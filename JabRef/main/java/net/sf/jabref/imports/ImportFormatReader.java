@@ -139,26 +139,55 @@ public class ImportFormatReader {
     }
 
     public List<BibtexEntry> importFromFile(ImportFormat importer, String filename, OutputPrinter status) throws IOException {
-        List<BibtexEntry> result = null;
-        InputStream stream = null;
+        MappedInput input = new MappedInput(new File(filename));
         try {
-            File file = new File(filename);
-            stream = new FileInputStream(file);
+            return importFromInput(importer, input, false, status);
+        } finally {
+            input.close();
+        }
+    }
 
-            if (!importer.isRecognizedFormat(stream)) {
-                throw new IOException(Globals.lang("Wrong file format"));
+    /**
+     * Imports the file with the given importer, if it recognizes the file, or
+     * if it is already known to recognize the start of the file. The importer
+     * reads the mapped file through streams of its own.
+     */
+    private List<BibtexEntry> importFromInput(ImportFormat importer, MappedInput input, boolean recognized,
+            OutputPrinter status) throws IOException {
+        InputStream stream;
+        if (!recognized) {
+            stream = input.getInputStream();
+            try {
+                if (!importer.isRecognizedFormat(stream)) {
+                    throw new IOException(Globals.lang("Wrong file format"));
+                }
+            } finally {
+                stream.close();
             }
+        }
 
-            stream = new FileInputStream(file);
-
-            result = importer.importEntries(stream, status);
+        stream = input.getInputStream();
+        try {
+            return importer.importEntries(stream, status);
         } finally {
-            if (stream != null) {
-                stream.close();
-            }
+            stream.close();
         }
+    }
 
-        return result;
+    /**
+     * Returns true if the importer recognizes the start of the file.
+     */
+    private static boolean recognizesHead(ImportFormat importer, MappedInput input) {
+        try {
+            InputStream head = input.getHead();
+            try {
+                return importer.isRecognizedFormat(head);
+            } finally {
+                head.close();
+            }
+        } catch (IOException ex) {
+            return false;
+        }
     }
 
     public static BibtexDatabase createDatabase(Collection<BibtexEntry> bibentries) {
@@ -432,29 +461,69 @@ public class ImportFormatReader {
         int bestResultCount = 0;
         String bestFormatName = null;
 
-        // Cycle through all importers:
-        for (ImportFormat imFo : getImportFormats()) {
-
-            try {
-
-                List<BibtexEntry> entries = importFromFile(imFo, filename, nullOutput);
-
-                int entryCount;
-                if (entries == null) {
-                    entryCount = 0;
+        // The file is mapped once, and all importers read it from there. Only
+        // the importers that recognize the start of the file are tried. If
+        // none of them finds any entries, and the start is not the complete
+        // file, the others are tried on the complete file, as some importers
+        // only recognize that. As before, the importer with the most entries
+        // wins, and of those the first one in the list of all importers.
+        MappedInput input;
+        try {
+            input = new MappedInput(new File(filename));
+        } catch (IOException ex) {
+            return null;
+        }
+        try {
+            List<ImportFormat> formats = new ArrayList<ImportFormat>(getImportFormats());
+            List<ImportFormat> candidates = new ArrayList<ImportFormat>();
+            List<ImportFormat> others = new ArrayList<ImportFormat>();
+            for (ImportFormat imFo : formats) {
+                if (ImportFormatReader.recognizesHead(imFo, input)) {
+                    candidates.add(imFo);
                 } else {
-                    ImportFormatReader.purgeEmptyEntries(entries);
-                    entryCount = entries.size();
+                    others.add(imFo);
                 }
+            }
+            int bestIndex = -1;
 
-                if (entryCount > bestResultCount) {
-                    bestResult = entries;
-                    bestResultCount = bestResult.size();
-                    bestFormatName = imFo.getFormatName();
+            // Cycle through the importers:
+            for (int pass = 0; pass < 2; pass++) {
+                boolean recognized = pass == 0;
+                if (!recognized && ((bestResult != null) || input.isHeadComplete())) {
+                    break;
+                }
+                for (ImportFormat imFo : recognized ? candidates : others) {
+
+                    try {
+
+                        List<BibtexEntry> entries = importFromInput(imFo, input, recognized, nullOutput);
+
+                        int entryCount;
+                        if (entries == null) {
+                            entryCount = 0;
+                        } else {
+                            ImportFormatReader.purgeEmptyEntries(entries);
+                            entryCount = entries.size();
+                        }
+
+                        int index = formats.indexOf(imFo);
+                        if ((entryCount > bestResultCount)
+                                || ((entryCount > 0) && (entryCount == bestResultCount) && (index < bestIndex))) {
+                            bestResult = entries;
+                            bestResultCount = bestResult.size();
+                            bestFormatName = imFo.getFormatName();
+                            bestIndex = index;
+                        }
+                    } catch (IOException ex) {
+                        // The import didn't succeed. Go on.
+                    } catch (RuntimeException ex) {
+                        // Neither did this one, as the importer did not check
+                        // more than the start of the file.
+                    }
                 }
-            } catch (IOException ex) {
-                // The import didn't succeed. Go on.
             }
+        } finally {
+            input.close();
         }
 
         if (bestResult != null) {
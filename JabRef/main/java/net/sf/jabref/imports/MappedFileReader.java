@@ -0,0 +1,144 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.imports;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A Reader that decodes a file through a read-only memory mapping instead of
+ * copying it through a FileInputStream.
+ *
+ * The file is mapped in windows of at most WINDOW_SIZE bytes, so arbitrarily
+ * large files can be read without mapping (or holding) all of it at once.
+ * Malformed input is replaced, just like an InputStreamReader does.
+ */
+public class MappedFileReader extends Reader {
+
+    private static final long WINDOW_SIZE = 32L * 1024 * 1024;
+
+    private static final int CHAR_BUFFER_SIZE = 8192;
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    private final CharsetDecoder decoder;
+
+    private final long size;
+
+    private final CharBuffer chars = CharBuffer.allocate(MappedFileReader.CHAR_BUFFER_SIZE);
+
+    private long windowStart;
+
+    private MappedByteBuffer window;
+
+    private boolean endOfInput = false;
+
+
+    public MappedFileReader(File f, String encoding) throws IOException {
+        this(f, Charset.forName(encoding));
+    }
+
+    public MappedFileReader(File f, Charset charset) throws IOException {
+        file = new RandomAccessFile(f, "r");
+        channel = file.getChannel();
+        size = channel.size();
+        decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        chars.flip();
+        mapWindow(0);
+    }
+
+    /**
+     * Returns the size of the underlying file in bytes.
+     */
+    public long getFileSize() {
+        return size;
+    }
+
+    private void mapWindow(long position) throws IOException {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                Math.min(MappedFileReader.WINDOW_SIZE, size - position));
+    }
+
+    private boolean isLastWindow() {
+        return (windowStart + window.limit()) >= size;
+    }
+
+    /**
+     * Decodes the next batch of characters into the internal char buffer.
+     *
+     * @return false if there is nothing more to read.
+     */
+    private boolean fillChars() throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+        chars.clear();
+        while (chars.position() == 0) {
+            boolean last = isLastWindow();
+            CoderResult result = decoder.decode(window, chars, last);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (result.isOverflow() || (chars.position() > 0)) {
+                break;
+            }
+            if (!last) {
+                // Continue in the next window, starting with the bytes of a
+                // character that may have been cut at the window boundary:
+                mapWindow(windowStart + window.position());
+            } else {
+                decoder.flush(chars);
+                endOfInput = true;
+                break;
+            }
+        }
+        chars.flip();
+        return chars.hasRemaining();
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!chars.hasRemaining() && !fillChars()) {
+            return -1;
+        }
+        int n = Math.min(len, chars.remaining());
+        chars.get(cbuf, off, n);
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+        file.close();
+    }
+}
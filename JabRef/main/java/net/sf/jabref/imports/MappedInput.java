@@ -0,0 +1,241 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.imports;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The contents of a file, mapped into memory once, from which any number of
+ * independent input streams can be read without copying the data or opening
+ * the file again. This lets several importers look at the same file.
+ *
+ * The first HEAD_SIZE bytes can be read on their own, so that the format of a
+ * file can be guessed without reading all of it. Files too large to be mapped
+ * in one piece are read from disk for each stream instead.
+ *
+ * The mapping keeps the file locked on some platforms, so the input should be
+ * closed as soon as the file has been read. Streams obtained from it cannot
+ * be read any more afterwards.
+ */
+public class MappedInput implements Closeable {
+
+    /**
+     * The number of bytes at the start of the file used to guess its format.
+     */
+    public static final int HEAD_SIZE = 32 * 1024;
+
+    private final File file;
+
+    private final long size;
+
+    // Null if the file is too large to be mapped:
+    private final ByteBuffer buffer;
+
+    private volatile boolean closed;
+
+
+    public MappedInput(File file) throws IOException {
+        this.file = file;
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                buffer = null;
+            } else if (size == 0) {
+                // Empty files cannot be mapped on all platforms:
+                buffer = ByteBuffer.allocate(0);
+            } else {
+                // The mapping stays valid after the channel is closed:
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns true if the head is the whole file.
+     */
+    public boolean isHeadComplete() {
+        return size <= HEAD_SIZE;
+    }
+
+    /**
+     * Returns a new stream over the whole file.
+     */
+    public InputStream getInputStream() throws IOException {
+        checkOpen();
+        if (buffer == null) {
+            return new FileInputStream(file);
+        }
+        return new BufferInputStream(buffer.duplicate());
+    }
+
+    /**
+     * Returns a new stream over the first HEAD_SIZE bytes of the file.
+     */
+    public InputStream getHead() throws IOException {
+        checkOpen();
+        if (buffer == null) {
+            byte[] head = new byte[HEAD_SIZE];
+            InputStream in = new FileInputStream(file);
+            try {
+                int read = 0;
+                int n;
+                while ((read < head.length) && ((n = in.read(head, read, head.length - read)) != -1)) {
+                    read += n;
+                }
+                return new BufferInputStream(ByteBuffer.wrap(head, 0, read));
+            } finally {
+                in.close();
+            }
+        }
+        ByteBuffer head = buffer.duplicate();
+        head.limit((int) Math.min(size, HEAD_SIZE));
+        return new BufferInputStream(head);
+    }
+
+    /**
+     * Releases the mapping of the file, instead of waiting for the garbage
+     * collector to do so.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if ((buffer != null) && buffer.isDirect()) {
+            MappedInput.unmap(buffer);
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Input closed: " + file);
+        }
+    }
+
+    /**
+     * Unmaps the buffer, if this VM allows it. Reading the buffer afterwards
+     * crashes the VM, so all streams check first that the input is open.
+     */
+    private static void unmap(ByteBuffer buffer) {
+        try {
+            // Java 9 and later:
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (Exception ignored) {
+            // Try the way of older VMs.
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception ignored) {
+            // Left to the garbage collector.
+        }
+    }
+
+
+    /**
+     * An input stream over the remaining bytes of a buffer. Supports mark()
+     * and reset() without any limit.
+     */
+    private class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private int mark;
+
+
+        public BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+            mark = buffer.position();
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkOpen();
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkOpen();
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            mark = buffer.position();
+        }
+
+        @Override
+        public synchronized void reset() {
+            buffer.position(mark);
+        }
+    }
+}
@@ -177,14 +177,12 @@ public class OpenDatabaseAction extends MnemonicAwareAction {
 
     public void openIt(File file, boolean raisePanel) {
         if ((file != null) && (file.exists())) {
-            File fileToLoad = file;
             frame.output(Globals.lang("Opening") + ": '" + file.getPath() + "'");
             boolean tryingAutosave = false;
             boolean autoSaveFound = AutoSaveManager.newerAutoSaveExists(file);
             if (autoSaveFound && !Globals.prefs.isPromptBeforeUsingAutosave()) {
                 // We have found a newer autosave, and the preferences say we should load
-                // it without prompting, so we replace the fileToLoad:
-                fileToLoad = AutoSaveManager.getAutoSaveFile(file);
+                // it without prompting:
                 tryingAutosave = true;
             } else if (autoSaveFound) {
                 // We have found a newer autosave, but we are not allowed to use it without
@@ -195,7 +193,6 @@ public class OpenDatabaseAction extends MnemonicAwareAction {
                         + Globals.lang("Do you want to recover the database from the autosave file?") + "</html>",
                         Globals.lang("Recover from autosave"), JOptionPane.YES_NO_OPTION);
                 if (answer == JOptionPane.YES_OPTION) {
-                    fileToLoad = AutoSaveManager.getAutoSaveFile(file);
                     tryingAutosave = true;
                 }
             }
@@ -233,7 +230,11 @@ public class OpenDatabaseAction extends MnemonicAwareAction {
                 ParserResult pr;
                 String errorMessage = null;
                 try {
-                    pr = OpenDatabaseAction.loadDatabase(fileToLoad, encoding);
+                    if (tryingAutosave) {
+                        pr = AutoSaveManager.recover(file, encoding);
+                    } else {
+                        pr = OpenDatabaseAction.loadDatabase(file, encoding);
+                    }
                 } catch (Exception ex) {
                     //ex.printStackTrace();
                     errorMessage = ex.getMessage();
@@ -251,7 +252,6 @@ public class OpenDatabaseAction extends MnemonicAwareAction {
 
                     if (tryingAutosave) {
                         tryingAutosave = false;
-                        fileToLoad = file;
                     } else {
                         done = true;
                     }
@@ -356,21 +356,7 @@ public class OpenDatabaseAction extends MnemonicAwareAction {
         // The file looks promising. Reinitialize the reader and go on:
         //reader = getReader(fileToOpen, encoding);
 
-        // We want to check if there is a JabRef signature in the file, because that would tell us
-        // which character encoding is used. However, to read the signature we must be using a compatible
-        // encoding in the first place. Since the signature doesn't contain any fancy characters, we can
-        // read it regardless of encoding, with either UTF8 or UTF-16. That's the hypothesis, at any rate.
-        // 8 bit is most likely, so we try that first:
-        Reader utf8Reader = ImportFormatReader.getUTF8Reader(fileToOpen);
-        String suppliedEncoding = OpenDatabaseAction.checkForEncoding(utf8Reader);
-        utf8Reader.close();
-        // Now if that didn't get us anywhere, we check with the 16 bit encoding:
-        if (suppliedEncoding == null) {
-            Reader utf16Reader = ImportFormatReader.getUTF16Reader(fileToOpen);
-            suppliedEncoding = OpenDatabaseAction.checkForEncoding(utf16Reader);
-            utf16Reader.close();
-            //System.out.println("Result of UTF-16 test: "+suppliedEncoding);
-        }
+        String suppliedEncoding = OpenDatabaseAction.getSuppliedEncoding(fileToOpen);
 
         //System.out.println(suppliedEncoding != null ? "Encoding: '"+suppliedEncoding+"' Len: "+suppliedEncoding.length() : "no supplied encoding");
 
@@ -387,9 +373,14 @@ public class OpenDatabaseAction extends MnemonicAwareAction {
             reader = ImportFormatReader.getReader(fileToOpen, encoding);
         }
 
-        BibtexParser bp = new BibtexParser(reader);
-
-        ParserResult pr = bp.parse();
+        ParserResult pr;
+        if (fileToOpen.length() >= ParallelBibtexParser.MIN_PARALLEL_LENGTH) {
+            // Large files are parsed on all cores:
+            pr = ParallelBibtexParser.parse(reader);
+        } else {
+            BibtexParser bp = new BibtexParser(reader);
+            pr = bp.parse();
+        }
         pr.setEncoding(encoding);
         pr.setFile(fileToOpen);
 
@@ -407,6 +398,30 @@ public class OpenDatabaseAction extends MnemonicAwareAction {
         return pr;
     }
 
+    /**
+     * Looks for the encoding given in the JabRef signature of a bib file.
+     *
+     * @return The encoding named in the file, or null if there is none.
+     */
+    public static String getSuppliedEncoding(File file) throws IOException {
+        // We want to check if there is a JabRef signature in the file, because that would tell us
+        // which character encoding is used. However, to read the signature we must be using a compatible
+        // encoding in the first place. Since the signature doesn't contain any fancy characters, we can
+        // read it regardless of encoding, with either UTF8 or UTF-16. That's the hypothesis, at any rate.
+        // 8 bit is most likely, so we try that first:
+        Reader utf8Reader = ImportFormatReader.getUTF8Reader(file);
+        String suppliedEncoding = OpenDatabaseAction.checkForEncoding(utf8Reader);
+        utf8Reader.close();
+        // Now if that didn't get us anywhere, we check with the 16 bit encoding:
+        if (suppliedEncoding == null) {
+            Reader utf16Reader = ImportFormatReader.getUTF16Reader(file);
+            suppliedEncoding = OpenDatabaseAction.checkForEncoding(utf16Reader);
+            utf16Reader.close();
+            //System.out.println("Result of UTF-16 test: "+suppliedEncoding);
+        }
+        return suppliedEncoding;
+    }
+
     private static String checkForEncoding(Reader reader) {
         String suppliedEncoding = null;
         StringBuilder headerText = new StringBuilder();
@@ -0,0 +1,318 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.imports;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import net.sf.jabref.*;
+
+/**
+ * Parses large BibTeX files on all cores.
+ *
+ * The input is split at '@' characters that start a line outside of any braces.
+ * The chunks are parsed by independent BibtexParsers on the fork-join pool of
+ * JabRefExecutorService, and what they found is then inserted into the
+ * database in file order, exactly as BibtexParser.parse() would do it. This way
+ * duplicate keys, duplicate strings, meta data and custom entry types are
+ * handled by the same code as in the sequential case.
+ *
+ * If any chunk cannot be parsed cleanly (e.g. because a split point turned out
+ * to be inside an entry, or because the file has errors that produce warnings),
+ * the whole input is parsed again sequentially, so the result is always the
+ * one of the sequential parser.
+ */
+public class ParallelBibtexParser {
+
+    /**
+     * Inputs smaller than this (in bytes or chars) are not worth splitting.
+     */
+    public static final int MIN_PARALLEL_LENGTH = 4 * 1024 * 1024;
+
+    private static final int MIN_CHUNK_LENGTH = 256 * 1024;
+
+    private static final int CHUNKS_PER_THREAD = 4;
+
+
+    private ParallelBibtexParser() {
+    }
+
+    /**
+     * Reads the whole reader and parses its contents.
+     */
+    public static ParserResult parse(Reader in) throws IOException {
+        return ParallelBibtexParser.parse(ParallelBibtexParser.readFully(in));
+    }
+
+    /**
+     * Parses the remaining contents of the given buffer.
+     */
+    public static ParserResult parse(CharBuffer in) throws IOException {
+        if (in.remaining() < ParallelBibtexParser.MIN_PARALLEL_LENGTH) {
+            return BibtexParser.forCharBuffer(in).parse();
+        }
+        ForkJoinPool pool = JabRefExecutorService.INSTANCE.getForkJoinPool();
+        return ParallelBibtexParser.parse(in, pool.getParallelism() * ParallelBibtexParser.CHUNKS_PER_THREAD,
+                ParallelBibtexParser.MIN_CHUNK_LENGTH);
+    }
+
+    static ParserResult parse(CharBuffer in, int chunkCount, int minChunkLength) throws IOException {
+        int[] bounds = ParallelBibtexParser.findChunkBounds(in, chunkCount, minChunkLength);
+        if (bounds.length <= 2) {
+            return BibtexParser.forCharBuffer(in).parse();
+        }
+
+        List<ChunkResult> chunks = JabRefExecutorService.INSTANCE.getForkJoinPool().invoke(
+                new ChunkTask(in, bounds, 0, bounds.length - 1));
+        for (ChunkResult chunk : chunks) {
+            if (!chunk.isClean()) {
+                return BibtexParser.forCharBuffer(in).parse();
+            }
+        }
+
+        ParserResult result = new ParserResult(new BibtexDatabase(), null, new HashMap<String, BibtexEntryType>());
+        ParserResult first = chunks.get(0).getParserResult();
+        if (first.getJabrefVersion() != null) {
+            result.setJabrefVersion(first.getJabrefVersion());
+            result.setJabrefMajorVersion(first.getJabrefMajorVersion());
+            result.setJabrefMinorVersion(first.getJabrefMinorVersion());
+            result.setJabrefMinor2Version(first.getJabrefMinor2Version());
+        }
+
+        BibtexParser.DatabaseBuilder builder = new BibtexParser.DatabaseBuilder(result);
+        try {
+            for (ChunkResult chunk : chunks) {
+                chunk.replay(builder);
+            }
+            builder.finish();
+        } catch (KeyCollisionException kce) {
+            throw new IOException("Duplicate ID in bibtex file: " + kce.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Finds the positions at which the input can be split. The first element
+     * is the position of the buffer, the last one its limit.
+     */
+    static int[] findChunkBounds(CharBuffer in, int chunkCount, int minChunkLength) {
+        int start = in.position();
+        int end = in.limit();
+        int chunkLength = Math.max(minChunkLength, (end - start) / Math.max(1, chunkCount));
+
+        List<Integer> bounds = new ArrayList<Integer>();
+        bounds.add(start);
+        int next = start + chunkLength;
+        int depth = 0;
+        for (int i = start; i < end; i++) {
+            char c = in.get(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                if (depth > 0) {
+                    depth--;
+                }
+            } else if ((c == '@') && (depth == 0) && (i >= next)
+                    && ParallelBibtexParser.isAtLineStart(in, start, i)) {
+                bounds.add(i);
+                next = i + chunkLength;
+            }
+        }
+        bounds.add(end);
+
+        int[] result = new int[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static boolean isAtLineStart(CharBuffer in, int start, int pos) {
+        for (int i = pos - 1; i >= start; i--) {
+            char c = in.get(i);
+            if ((c == '\n') || (c == '\r')) {
+                return true;
+            }
+            if ((c != ' ') && (c != '\t')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static CharBuffer readFully(Reader in) throws IOException {
+        char[] buf = new char[64 * 1024];
+        int length = 0;
+        int n;
+        while ((n = in.read(buf, length, buf.length - length)) != -1) {
+            length += n;
+            if (length == buf.length) {
+                char[] larger = new char[buf.length * 2];
+                System.arraycopy(buf, 0, larger, 0, length);
+                buf = larger;
+            }
+        }
+        return CharBuffer.wrap(buf, 0, length);
+    }
+
+
+    /**
+     * Parses the chunks between bounds[from] and bounds[to], splitting the work
+     * in halves until single chunks remain.
+     */
+    private static class ChunkTask extends RecursiveTask<List<ChunkResult>> {
+
+        private final CharBuffer in;
+
+        private final int[] bounds;
+
+        private final int from;
+
+        private final int to;
+
+
+        public ChunkTask(CharBuffer in, int[] bounds, int from, int to) {
+            this.in = in;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<ChunkResult> compute() {
+            if ((to - from) == 1) {
+                List<ChunkResult> result = new ArrayList<ChunkResult>(1);
+                result.add(parseChunk());
+                return result;
+            }
+            int middle = (from + to) / 2;
+            ChunkTask left = new ChunkTask(in, bounds, from, middle);
+            left.fork();
+            List<ChunkResult> result = new ArrayList<ChunkResult>(to - from);
+            List<ChunkResult> right = new ChunkTask(in, bounds, middle, to).compute();
+            result.addAll(left.join());
+            result.addAll(right);
+            return result;
+        }
+
+        private ChunkResult parseChunk() {
+            CharBuffer chunk = in.duplicate();
+            chunk.limit(bounds[to]);
+            chunk.position(bounds[from]);
+            ChunkResult result = new ChunkResult();
+            try {
+                result.setParserResult(BibtexParser.forCharBuffer(chunk).parse(result));
+            } catch (Exception ex) {
+                // The sequential parser will report this properly.
+                result.setParserResult(null);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Records everything found in one chunk, in order.
+     */
+    private static class ChunkResult implements BibtexParserListener {
+
+        private static final int ENTRY = 0;
+        private static final int STRING = 1;
+        private static final int PREAMBLE = 2;
+        private static final int COMMENT = 3;
+
+        private final List<Object> items = new ArrayList<Object>();
+
+        private final List<Integer> kinds = new ArrayList<Integer>();
+
+        private ParserResult parserResult;
+
+
+        public ParserResult getParserResult() {
+            return parserResult;
+        }
+
+        public void setParserResult(ParserResult parserResult) {
+            this.parserResult = parserResult;
+        }
+
+        /**
+         * A chunk is clean if it was parsed to its end without any warnings.
+         */
+        public boolean isClean() {
+            return (parserResult != null) && !parserResult.hasWarnings();
+        }
+
+        @Override
+        public void entryParsed(BibtexEntry entry) {
+            add(ChunkResult.ENTRY, entry);
+        }
+
+        @Override
+        public void stringParsed(BibtexString string) {
+            add(ChunkResult.STRING, string);
+        }
+
+        @Override
+        public void preambleParsed(String preamble) {
+            add(ChunkResult.PREAMBLE, preamble);
+        }
+
+        @Override
+        public void commentParsed(String comment) {
+            add(ChunkResult.COMMENT, comment);
+        }
+
+        private void add(int kind, Object item) {
+            kinds.add(kind);
+            items.add(item);
+        }
+
+        /**
+         * Hands the recorded items to the builder. Entries and strings get new
+         * IDs, so that IDs increase in file order just as with the sequential
+         * parser.
+         */
+        public void replay(BibtexParser.DatabaseBuilder builder) {
+            for (int i = 0; i < items.size(); i++) {
+                Object item = items.get(i);
+                switch (kinds.get(i)) {
+                case ENTRY:
+                    BibtexEntry entry = (BibtexEntry) item;
+                    entry.setId(IdGenerator.next());
+                    builder.entryParsed(entry);
+                    break;
+                case STRING:
+                    BibtexString string = (BibtexString) item;
+                    string.setId(IdGenerator.next());
+                    builder.stringParsed(string);
+                    break;
+                case PREAMBLE:
+                    builder.preambleParsed((String) item);
+                    break;
+                default:
+                    builder.commentParsed((String) item);
+                    break;
+                }
+            }
+        }
+    }
+}
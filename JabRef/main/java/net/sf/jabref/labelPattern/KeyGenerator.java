@@ -0,0 +1,321 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.labelPattern;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Pattern;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.BibtexFields;
+import net.sf.jabref.Globals;
+import net.sf.jabref.JabRefExecutorService;
+import net.sf.jabref.MetaData;
+import net.sf.jabref.util.Util;
+
+/**
+ * Generates BibTeX keys for the entries of a database, according to the
+ * label patterns of the database.
+ *
+ * The pattern of each entry type is parsed once per generator. When keys are
+ * generated for many entries at once, the labels are made on the fork-join
+ * pool of JabRefExecutorService, and then made unique one entry after the
+ * other, in the order of the entries. Keys given to entries that are not in
+ * the database are remembered, so that they are unique with respect to each
+ * other as well.
+ */
+public class KeyGenerator {
+
+    /**
+     * Fewer entries are labelled by the calling thread.
+     */
+    private static final int PARALLEL_THRESHOLD = 256;
+
+    private static final int ENTRIES_PER_TASK = 64;
+
+    /**
+     * A part of a label pattern: either text, or a field marker with its
+     * modifiers.
+     */
+    private static class PatternPart {
+
+        private final String text;
+
+        private final String[] marker;
+
+
+        public PatternPart(String text, String[] marker) {
+            this.text = text;
+            this.marker = marker;
+        }
+    }
+
+    /**
+     * Labels the entries from (inclusive) to to (exclusive), splitting the
+     * range so that idle threads can steal parts of it.
+     */
+    private class LabelTask extends RecursiveAction {
+
+        private final List<BibtexEntry> entries;
+
+        private final String[] labels;
+
+        private final int from;
+
+        private final int to;
+
+
+        public LabelTask(List<BibtexEntry> entries, String[] labels, int from, int to) {
+            this.entries = entries;
+            this.labels = labels;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if ((to - from) <= KeyGenerator.ENTRIES_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    labels[i] = makeLabel(entries.get(i));
+                }
+            } else {
+                int middle = (from + to) / 2;
+                ForkJoinTask.invokeAll(new LabelTask(entries, labels, from, middle),
+                        new LabelTask(entries, labels, middle, to));
+            }
+        }
+    }
+
+
+    private final BibtexDatabase database;
+
+    private final LabelPattern labelPattern;
+
+    private final Map<String, List<PatternPart>> patterns = new ConcurrentHashMap<String, List<PatternPart>>();
+
+    private final Pattern regex;
+
+    private final String replacement;
+
+    private final boolean alwaysAddLetter;
+
+    private final boolean firstLetterA;
+
+    // Keys given to entries that are not in the database, with their number
+    // of occurences:
+    private final Map<String, Integer> assignedKeys = new HashMap<String, Integer>();
+
+    // For labels that had to be extended with letters, the number of the
+    // first letter that may still be free. All letters before it are taken:
+    private final Map<String, Integer> nextAddition = new HashMap<String, Integer>();
+
+
+    public KeyGenerator(MetaData metaData, BibtexDatabase database) {
+        this.database = database;
+        labelPattern = metaData.getLabelPattern();
+
+        // Patch by Toralf Senger:
+        // Remove Regular Expressions while generating Keys
+        String regexPref = Globals.prefs.get("KeyPatternRegex");
+        if ((regexPref != null) && (regexPref.trim().length() > 0)) {
+            regex = Pattern.compile(regexPref);
+            replacement = Globals.prefs.get("KeyPatternReplacement");
+        } else {
+            regex = null;
+            replacement = null;
+        }
+
+        alwaysAddLetter = Globals.prefs.isKeyGenAlwaysAddLetter();
+        firstLetterA = Globals.prefs.isKeyGenFirstLetterA();
+    }
+
+    /**
+     * Generates a unique key for the entry. If the entry is in the database,
+     * the key is set through the database, otherwise in the entry only.
+     */
+    public void generateKey(BibtexEntry entry) {
+        setUniqueKey(entry, makeLabel(entry));
+    }
+
+    /**
+     * Generates unique keys for the entries. The result is the same as calling
+     * generateKey() for each entry in turn.
+     */
+    public void generateKeys(List<BibtexEntry> entries) {
+        String[] labels = new String[entries.size()];
+        if (entries.size() < KeyGenerator.PARALLEL_THRESHOLD) {
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = makeLabel(entries.get(i));
+            }
+        } else {
+            JabRefExecutorService.INSTANCE.getForkJoinPool().invoke(new LabelTask(entries, labels, 0, labels.length));
+        }
+        for (int i = 0; i < labels.length; i++) {
+            setUniqueKey(entries.get(i), labels[i]);
+        }
+    }
+
+    /**
+     * Returns the label for the entry according to the pattern of its type,
+     * before it has been made unique. Thread safe.
+     */
+    public String makeLabel(BibtexEntry entry) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            for (PatternPart part : getPattern(entry.getType().getName().toLowerCase())) {
+                if (part.marker == null) {
+                    sb.append(part.text);
+                } else {
+                    String label = LabelPatternUtil.makeLabel(entry, part.marker[0], database);
+
+                    // apply modifier if present
+                    if (part.marker.length > 1) {
+                        label = LabelPatternUtil.applyModifiers(label, part.marker, 1);
+                    }
+
+                    sb.append(label);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println(e);
+        }
+
+        // Remove all illegal characters from the key.
+        String label = Util.checkLegalKey(sb.toString());
+
+        if (regex != null) {
+            label = regex.matcher(label).replaceAll(replacement);
+        }
+        return label;
+    }
+
+    /**
+     * Returns the parsed label pattern for the given entry type.
+     */
+    private List<PatternPart> getPattern(String type) {
+        List<PatternPart> pattern = patterns.get(type);
+        if (pattern != null) {
+            return pattern;
+        }
+        // The first item is the whole pattern, the others alternate between
+        // text and field markers enclosed in [ and ]:
+        ArrayList<String> items = labelPattern.getValue(type);
+        pattern = new ArrayList<PatternPart>(items.size());
+        boolean field = false;
+        for (int i = 1; i < items.size(); i++) {
+            String val = items.get(i);
+            if (val.equals("[")) {
+                field = true;
+            } else if (val.equals("]")) {
+                field = false;
+            } else if (field) {
+                pattern.add(new PatternPart(null, LabelPatternUtil.parseFieldMarker(val)));
+            } else {
+                pattern.add(new PatternPart(val, null));
+            }
+        }
+        patterns.put(type, pattern);
+        return pattern;
+    }
+
+    /**
+     * Sets the label as key of the entry, extended with letters if the label
+     * is already taken.
+     */
+    private void setUniqueKey(BibtexEntry entry, String label) {
+        String oldKey = entry.getCiteKey();
+        boolean inDatabase = database.getEntryById(entry.getId()) != null;
+        if (oldKey != null) {
+            // The old key may become free, or be kept:
+            forgetAdditions(oldKey);
+        }
+
+        int occurences = countKey(label);
+        if (inDatabase && label.equals(oldKey)) {
+            occurences--; // No change, so we can accept one dupe.
+        }
+
+        String key;
+        if (!alwaysAddLetter && (occurences == 0)) {
+            // No dupes found, so we can just go ahead.
+            key = label;
+        } else {
+            // The key is already in use, so we must modify it.
+            int number = 0;
+            if (!alwaysAddLetter && !firstLetterA) {
+                number = 1;
+            }
+            Integer next = nextAddition.get(label);
+            if ((next != null) && (next > number)) {
+                number = next;
+            }
+
+            key = label + LabelPatternUtil.getAddition(number);
+            occurences = countKey(key);
+            if (inDatabase && key.equals(oldKey)) {
+                occurences--;
+            }
+
+            while (occurences > 0) {
+                number++;
+                key = label + LabelPatternUtil.getAddition(number);
+
+                occurences = countKey(key);
+                if (inDatabase && key.equals(oldKey)) {
+                    occurences--;
+                }
+            }
+            nextAddition.put(label, number + 1);
+        }
+
+        if (inDatabase) {
+            if (!key.equals(oldKey)) {
+                database.setCiteKeyForEntry(entry.getId(), key);
+            }
+        } else {
+            if (!key.equals(oldKey)) {
+                // entry does not (yet) exist in the database, just update the entry
+                entry.setField(BibtexFields.KEY_FIELD, key);
+            }
+            Integer count = assignedKeys.get(key);
+            assignedKeys.put(key, count == null ? 1 : count + 1);
+        }
+    }
+
+    private int countKey(String key) {
+        Integer assigned = assignedKeys.get(key);
+        return database.getNumberOfKeyOccurences(key) + (assigned == null ? 0 : assigned);
+    }
+
+    /**
+     * Forgets where to continue extending the labels the given key may have
+     * been made from by adding letters.
+     */
+    private void forgetAdditions(String key) {
+        if (nextAddition.isEmpty()) {
+            return;
+        }
+        for (int i = key.length() - 1; (i >= 0) && (key.charAt(i) >= 'a') && (key.charAt(i) <= 'z'); i--) {
+            nextAddition.remove(key.substring(0, i));
+        }
+    }
+}
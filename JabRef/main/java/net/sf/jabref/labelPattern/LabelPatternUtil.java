@@ -457,129 +457,8 @@ public class LabelPatternUtil {
      */
     public static BibtexEntry makeLabel(MetaData metaData, BibtexDatabase database, BibtexEntry _entry) {
         LabelPatternUtil._db = database;
-        ArrayList<String> _al;
-        String _label;
-        StringBuilder _sb = new StringBuilder();
-        boolean forceUpper = false, forceLower = false;
-
-        try {
-            // get the type of entry
-            String _type = _entry.getType().getName().toLowerCase();
-            // Get the arrayList corresponding to the type
-            _al = metaData.getLabelPattern().getValue(_type);
-            int _alSize = _al.size();
-            boolean field = false;
-            for (int i = 1; i < _alSize; i++) {
-                String val = _al.get(i);
-                if (val.equals("[")) {
-                    field = true;
-                } else if (val.equals("]")) {
-                    field = false;
-                } else if (field) {
-                    /*
-                     * Edited by Seb Wills <saw27@mrao.cam.ac.uk> on 13-Apr-2004
-                     * Added new pseudo-fields "shortyear" and "veryshorttitle",
-                     * and and ":lower" modifier for all fields (in a way easily
-                     * extended to other modifiers). Helpfile
-                     * help/LabelPatterns.html updated accordingly.
-                     */
-                    // check whether there is a modifier on the end such as
-                    // ":lower"
-                    // String modifier = null;
-                    String[] parts = LabelPatternUtil.parseFieldMarker(val);//val.split(":");
-
-                    String label = LabelPatternUtil.makeLabel(_entry, parts[0]);
-
-                    // apply modifier if present
-                    if (parts.length > 1) {
-                        label = LabelPatternUtil.applyModifiers(label, parts, 1);
-                    }
-
-                    _sb.append(label);
-
-                } else {
-                    _sb.append(val);
-                }
-            }
-        } catch (Exception e) {
-            System.err.println(e);
-        }
-
-        // Remove all illegal characters from the key.
-        _label = Util.checkLegalKey(_sb.toString());
-
-        // Patch by Toralf Senger:
-        // Remove Regular Expressions while generating Keys
-        String regex = Globals.prefs.get("KeyPatternRegex");
-        if ((regex != null) && (regex.trim().length() > 0)) {
-            String replacement = Globals.prefs.get("KeyPatternReplacement");
-            _label = _label.replaceAll(regex, replacement);
-        }
-
-        if (forceUpper) {
-            _label = _label.toUpperCase();
-        }
-        if (forceLower) {
-            _label = _label.toLowerCase();
-        }
-
-        String oldKey = _entry.getCiteKey();
-        int occurences = LabelPatternUtil._db.getNumberOfKeyOccurences(_label);
-
-        if ((oldKey != null) && oldKey.equals(_label))
-         {
-            occurences--; // No change, so we can accept one dupe.
-        }
-
-        boolean alwaysAddLetter = Globals.prefs.isKeyGenAlwaysAddLetter(), firstLetterA = Globals.prefs.isKeyGenFirstLetterA();
-
-        if (!alwaysAddLetter && (occurences == 0)) {
-            // No dupes found, so we can just go ahead.
-            if (!_label.equals(oldKey)) {
-                if (LabelPatternUtil._db.getEntryById(_entry.getId()) == null) {
-                    // entry does not (yet) exist in the database, just update the entry
-                    _entry.setField(BibtexFields.KEY_FIELD, _label);
-                } else {
-                    LabelPatternUtil._db.setCiteKeyForEntry(_entry.getId(), _label);
-                }
-            }
-
-        } else {
-            // The key is already in use, so we must modify it.
-            int number = 0;
-            if (!alwaysAddLetter && !firstLetterA) {
-                number = 1;
-            }
-
-            String moddedKey = _label + LabelPatternUtil.getAddition(number);
-            occurences = LabelPatternUtil._db.getNumberOfKeyOccurences(moddedKey);
-
-            if ((oldKey != null) && oldKey.equals(moddedKey)) {
-                occurences--;
-            }
-
-            while (occurences > 0) {
-                number++;
-                moddedKey = _label + LabelPatternUtil.getAddition(number);
-
-                occurences = LabelPatternUtil._db.getNumberOfKeyOccurences(moddedKey);
-                if ((oldKey != null) && oldKey.equals(moddedKey)) {
-                    occurences--;
-                }
-            }
-
-            if (!moddedKey.equals(oldKey)) {
-                if (LabelPatternUtil._db.getEntryById(_entry.getId()) == null) {
-                    // entry does not (yet) exist in the database, just update the entry
-                    _entry.setField(BibtexFields.KEY_FIELD, moddedKey);
-                } else {
-                    LabelPatternUtil._db.setCiteKeyForEntry(_entry.getId(), moddedKey);
-                }
-            }
-        }
-
+        new KeyGenerator(metaData, database).generateKey(_entry);
         return _entry;
-        /** End of edit, Morten Alver 2004.02.04.  */
     }
 
     /**
@@ -628,6 +507,14 @@ public class LabelPatternUtil {
     }
 
     public static String makeLabel(BibtexEntry _entry, String val) {
+        return LabelPatternUtil.makeLabel(_entry, val, LabelPatternUtil._db);
+    }
+
+    /**
+     * Returns the text for the given field marker (without modifiers), using
+     * the given database to resolve strings. Thread safe.
+     */
+    public static String makeLabel(BibtexEntry _entry, String val, BibtexDatabase database) {
 
         try {
             if (val.startsWith("auth") || val.startsWith("pureauth")) {
@@ -644,7 +531,7 @@ public class LabelPatternUtil {
                  */
                 String authString = _entry.getField("author");
                 if (authString != null) {
-                    authString = LabelPatternUtil.normalize(LabelPatternUtil._db.resolveForStrings(authString));
+                    authString = LabelPatternUtil.normalize(database.resolveForStrings(authString));
                 }
 
                 if (val.startsWith("pure")) {
@@ -656,7 +543,7 @@ public class LabelPatternUtil {
                         authString = _entry.getField("editor");
                         if (authString != null) {
                             authString = LabelPatternUtil.normalize(
-                                    LabelPatternUtil._db.resolveForStrings(authString));
+                                    database.resolveForStrings(authString));
                         }
                     }
                 }
@@ -833,7 +720,7 @@ public class LabelPatternUtil {
      *            The appendix number.
      * @return The String to append.
      */
-    private static String getAddition(int number) {
+    static String getAddition(int number) {
         if (number >= LabelPatternUtil.CHARS.length()) {
             int lastChar = number % LabelPatternUtil.CHARS.length();
             return LabelPatternUtil.getAddition((number / LabelPatternUtil.CHARS.length()) - 1) + LabelPatternUtil.CHARS.substring(lastChar, lastChar + 1);
@@ -1394,7 +1281,7 @@ public class LabelPatternUtil {
      * @param arg The argument string.
      * @return An array of strings representing the parts of the marker
      */
-    private static String[] parseFieldMarker(String arg) {
+    static String[] parseFieldMarker(String arg) {
         List<String> parts = new ArrayList<String>();
         StringBuilder current = new StringBuilder();
         boolean escaped = false;
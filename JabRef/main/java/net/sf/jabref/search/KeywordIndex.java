@@ -0,0 +1,334 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.DatabaseChangeEvent;
+import net.sf.jabref.DatabaseChangeListener;
+
+/**
+ * An index of the keywords in the fields of all entries of a database, for
+ * the features that work with keywords instead of the raw field content:
+ * keyword groups, the keyword manager and the automatic creation of groups.
+ *
+ * A field is split into keywords at a set of separator characters, which
+ * depends on the feature. Keyword groups instead look for whole words, so a
+ * field can also be split into words, i.e. maximal runs of letters and
+ * digits of the lower case content. The keywords of a field are indexed for
+ * a set of separators when they are first asked for, and are kept up to date
+ * as entries are added, changed or removed.
+ *
+ * The words of a field are kept until retainWordIndexes() drops them. Of
+ * the keywords at a set of separators, which dialogs ask for, only the
+ * MAX_KEYWORD_INDEXES used last are kept, and none that has not been used
+ * for MAX_IDLE_TIME.
+ */
+public class KeywordIndex implements DatabaseChangeListener {
+
+    private static final int MAX_KEYWORD_INDEXES = 4;
+
+    private static final long MAX_IDLE_TIME = 5 * 60 * 1000;
+
+    /**
+     * The keywords of one field, split at one set of separators, or into
+     * words if the separators are null.
+     */
+    private static class Keywords {
+
+        private final String field;
+
+        private final String separators;
+
+        /**
+         * Keyword -> entries containing the keyword.
+         */
+        private final Map<String, Set<BibtexEntry>> postings = new HashMap<String, Set<BibtexEntry>>();
+
+        /**
+         * Entry -> its keywords, in the order they occur.
+         */
+        private final Map<BibtexEntry, List<String>> keywords = new IdentityHashMap<BibtexEntry, List<String>>();
+
+        private long lastUsed;
+
+
+        public Keywords(String field, String separators) {
+            this.field = field;
+            this.separators = separators;
+        }
+
+        public List<String> split(BibtexEntry entry) {
+            String content = entry.getField(field);
+            return separators != null ? KeywordIndex.splitKeywords(content, separators)
+                    : KeywordIndex.splitWords(content);
+        }
+
+        public void add(BibtexEntry entry) {
+            List<String> entryKeywords = split(entry);
+            if (entryKeywords.isEmpty()) {
+                return;
+            }
+            keywords.put(entry, entryKeywords);
+            for (String keyword : entryKeywords) {
+                Set<BibtexEntry> entries = postings.get(keyword);
+                if (entries == null) {
+                    entries = Collections.newSetFromMap(new IdentityHashMap<BibtexEntry, Boolean>());
+                    postings.put(keyword, entries);
+                }
+                entries.add(entry);
+            }
+        }
+
+        public void remove(BibtexEntry entry) {
+            List<String> entryKeywords = keywords.remove(entry);
+            if (entryKeywords == null) {
+                return;
+            }
+            for (String keyword : entryKeywords) {
+                Set<BibtexEntry> entries = postings.get(keyword);
+                if (entries != null) {
+                    entries.remove(entry);
+                    if (entries.isEmpty()) {
+                        postings.remove(keyword);
+                    }
+                }
+            }
+        }
+
+        public void update(DatabaseChangeEvent e) {
+            BibtexEntry entry = e.getEntry();
+            switch (e.getType()) {
+            case ADDED_ENTRY:
+                remove(entry);
+                add(entry);
+                break;
+            case REMOVED_ENTRY:
+                remove(entry);
+                break;
+            case CHANGED_ENTRY:
+                if ((e.getFieldName() == null) || e.getFieldName().equals(field)) {
+                    remove(entry);
+                    add(entry);
+                }
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+
+    private final BibtexDatabase database;
+
+    /**
+     * Field -> the words of that field.
+     */
+    private final Map<String, Keywords> wordIndexes = new HashMap<String, Keywords>();
+
+    /**
+     * [field, separators] -> the keywords of that field, the one used last
+     * coming last.
+     */
+    private final Map<List<String>, Keywords> keywordIndexes =
+            new LinkedHashMap<List<String>, Keywords>(16, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<String>, Keywords> eldest) {
+                    return size() > KeywordIndex.MAX_KEYWORD_INDEXES;
+                }
+            };
+
+
+    /**
+     * Keeps the index up to date with the given database. Fields are only
+     * indexed when they are first asked for.
+     */
+    public KeywordIndex(BibtexDatabase database) {
+        this.database = database;
+        database.addDatabaseChangeListener(this);
+    }
+
+    @Override
+    public synchronized void databaseChanged(DatabaseChangeEvent e) {
+        for (Keywords index : wordIndexes.values()) {
+            index.update(e);
+        }
+        long now = System.currentTimeMillis();
+        for (Iterator<Keywords> i = keywordIndexes.values().iterator(); i.hasNext();) {
+            Keywords index = i.next();
+            if ((now - index.lastUsed) > KeywordIndex.MAX_IDLE_TIME) {
+                // Not worth keeping up to date any more:
+                i.remove();
+            } else {
+                index.update(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the keywords of the entry's field, split at the given
+     * separators and trimmed, in the order they occur.
+     */
+    public synchronized List<String> getKeywords(BibtexEntry entry, String field, String separators) {
+        Keywords index = getKeywordIndex(field, separators);
+        List<String> keywords = index.keywords.get(entry);
+        if (keywords == null) {
+            // Not part of the database, or without keywords:
+            keywords = index.split(entry);
+        }
+        return Collections.unmodifiableList(keywords);
+    }
+
+    /**
+     * Returns all keywords that occur in the field of any entry, split at the
+     * given separators and trimmed.
+     */
+    public synchronized Set<String> getKeywords(String field, String separators) {
+        return new HashSet<String>(getKeywordIndex(field, separators).postings.keySet());
+    }
+
+    /**
+     * Returns the entries whose field may contain the given text as whole
+     * words (ignoring case), or null if the text contains no words and so
+     * does not restrict the entries. Every entry in which the text occurs
+     * with a word boundary (or the start or end of the field) on either side
+     * is contained in the result.
+     */
+    public synchronized Set<BibtexEntry> getWordCandidates(String field, String text) {
+        List<String> words = KeywordIndex.splitWords(text);
+        if (words.isEmpty()) {
+            return null;
+        }
+        Keywords index = wordIndexes.get(field);
+        if (index == null) {
+            index = createIndex(field, null);
+            wordIndexes.put(field, index);
+        }
+        Set<BibtexEntry> result = null;
+        for (String word : words) {
+            Set<BibtexEntry> entries = index.postings.get(word);
+            if (entries == null) {
+                return Collections.newSetFromMap(new IdentityHashMap<BibtexEntry, Boolean>());
+            }
+            if (result == null) {
+                result = Collections.newSetFromMap(new IdentityHashMap<BibtexEntry, Boolean>());
+                result.addAll(entries);
+            } else {
+                result.retainAll(entries);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stops keeping the words of all fields but the given ones up to date,
+     * e.g. after the keyword groups on a field have been removed.
+     */
+    public synchronized void retainWordIndexes(Collection<String> fields) {
+        wordIndexes.keySet().retainAll(fields);
+    }
+
+    /**
+     * Returns the number of fields whose words are kept up to date.
+     */
+    synchronized int getWordIndexCount() {
+        return wordIndexes.size();
+    }
+
+    /**
+     * Returns the number of fields whose keywords at some separators are
+     * kept up to date.
+     */
+    synchronized int getKeywordIndexCount() {
+        return keywordIndexes.size();
+    }
+
+    private Keywords getKeywordIndex(String field, String separators) {
+        List<String> key = Arrays.asList(field, separators);
+        Keywords index = keywordIndexes.get(key);
+        if (index == null) {
+            index = createIndex(field, separators);
+            keywordIndexes.put(key, index);
+        }
+        index.lastUsed = System.currentTimeMillis();
+        return index;
+    }
+
+    private Keywords createIndex(String field, String separators) {
+        Keywords index = new Keywords(field, separators);
+        for (BibtexEntry entry : database.getEntries()) {
+            index.add(entry);
+        }
+        return index;
+    }
+
+    /**
+     * Splits the content at the given separator characters and trims the
+     * keywords, like Util.getSeparatedKeywords() does.
+     */
+    static List<String> splitKeywords(String content, String separators) {
+        List<String> keywords = new ArrayList<String>();
+        if (content == null) {
+            return keywords;
+        }
+        StringTokenizer tok = new StringTokenizer(content.trim(), separators);
+        while (tok.hasMoreTokens()) {
+            keywords.add(tok.nextToken().trim());
+        }
+        return keywords;
+    }
+
+    /**
+     * Splits the lower case content into maximal runs of letters and digits,
+     * folding characters the same way as SearchIndex.
+     */
+    static List<String> splitWords(String content) {
+        List<String> words = new ArrayList<String>();
+        if (content == null) {
+            return words;
+        }
+        String lower = content.toLowerCase();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(Character.toUpperCase(c)));
+            } else if (sb.length() > 0) {
+                words.add(sb.toString());
+                sb.setLength(0);
+            }
+        }
+        if (sb.length() > 0) {
+            words.add(sb.toString());
+        }
+        return words;
+    }
+}
@@ -0,0 +1,559 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.DatabaseChangeEvent;
+import net.sf.jabref.DatabaseChangeListener;
+import net.sf.jabref.export.layout.format.RemoveLatexCommands;
+import net.sf.jabref.search.rules.ContainBasedSearchRule;
+import net.sf.jabref.search.rules.GrammarBasedSearchRule;
+import net.sf.jabref.search.rules.RegexBasedSearchRule;
+import net.sf.jabref.search.rules.util.SentenceAnalyzer;
+
+/**
+ * An inverted index over the fields of all entries of a database, used to
+ * avoid running a search rule against every single entry.
+ *
+ * Every field is split into tokens, i.e. maximal runs of letters and digits of
+ * the lower case content. Each distinct token is stored once, together with
+ * the entries containing it in any field and per field. The search terms are
+ * substrings of the tokens, so the tokens are additionally indexed by their
+ * character trigrams: the tokens containing a term are found among the ones
+ * sharing its rarest trigram. It registers itself as DatabaseChangeListener
+ * and re-indexes the fields of entries as they are added, changed or removed.
+ *
+ * The index only narrows down the entries that can possibly match: the
+ * candidates it returns are a superset of the hits, so the rule still has to be
+ * applied to each of them. Search terms the index cannot handle (e.g. regular
+ * expressions using special characters, or terms shorter than a trigram, which
+ * would match most of the entries anyway) do not restrict the candidates at
+ * all.
+ */
+public class SearchIndex implements DatabaseChangeListener {
+
+    /**
+     * The pseudo field GrammarBasedSearchRule uses for the entry type.
+     */
+    private static final String ENTRYTYPE_FIELD = "entrytype";
+
+    private static final String REGEX_SPECIAL_CHARS = "\\^$.|?*+()[]{}";
+
+    private static final RemoveLatexCommands REMOVE_LATEX_COMMANDS = new RemoveLatexCommands();
+
+    /**
+     * Search terms shorter than this do not restrict the candidates.
+     */
+    private static final int GRAM_LENGTH = 3;
+
+    /**
+     * A token and the entries containing it.
+     */
+    private static class Term {
+
+        private final String token;
+
+        // Entries containing the token in any field:
+        private final Set<BibtexEntry> entries = new HashSet<BibtexEntry>();
+
+        // Field name -> entries containing the token in that field:
+        private final Map<String, Set<BibtexEntry>> fields = new HashMap<String, Set<BibtexEntry>>(4);
+
+
+        public Term(String token) {
+            this.token = token;
+        }
+    }
+
+
+    /**
+     * Token -> its term, for all tokens of all entries.
+     */
+    private final Map<String, Term> terms = new HashMap<String, Term>();
+
+    /**
+     * Trigram -> terms whose token contains it.
+     */
+    private final Map<String, Set<Term>> grams = new HashMap<String, Set<Term>>();
+
+    /**
+     * Entry -> field name -> the content that was indexed for it. Only the
+     * references to the field values are kept; the tokens of a field that
+     * changed are computed again from its old content to remove them.
+     */
+    private final Map<BibtexEntry, Map<String, String>> indexed =
+            new HashMap<BibtexEntry, Map<String, String>>();
+
+
+    /**
+     * Indexes all entries of the given database and keeps the index up to date
+     * from then on.
+     */
+    public SearchIndex(BibtexDatabase database) {
+        synchronized (this) {
+            for (BibtexEntry entry : database.getEntries()) {
+                addEntry(entry);
+            }
+        }
+        database.addDatabaseChangeListener(this);
+    }
+
+    @Override
+    public synchronized void databaseChanged(DatabaseChangeEvent e) {
+        switch (e.getType()) {
+        case ADDED_ENTRY:
+            addEntry(e.getEntry());
+            break;
+        case REMOVED_ENTRY:
+            removeEntry(e.getEntry());
+            break;
+        case CHANGED_ENTRY:
+            updateEntry(e.getEntry());
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Returns the entries that may contain the given text in one of their
+     * fields, or null if the text does not restrict the entries.
+     */
+    public synchronized Set<BibtexEntry> getCandidates(String text) {
+        return findCandidates(null, text);
+    }
+
+    /**
+     * Returns the entries that may contain the given text in the given field
+     * (ignoring case in the field name), or null if the text does not restrict
+     * the entries.
+     */
+    public synchronized Set<BibtexEntry> getCandidates(String field, String text) {
+        return findCandidates(field.toLowerCase(Locale.ENGLISH), text);
+    }
+
+    /**
+     * Each term of the text must be part of a token in the content, so the
+     * candidates are the intersection, over the terms of the text, of the
+     * entries having a token that contains it in the given field, or in any
+     * field if key is null.
+     */
+    private Set<BibtexEntry> findCandidates(String key, String text) {
+        // For each term of the text, the postings of the tokens containing it:
+        List<List<Set<BibtexEntry>>> postings = new ArrayList<List<Set<BibtexEntry>>>();
+        List<Integer> sizes = new ArrayList<Integer>();
+        int smallest = -1;
+        for (String part : SearchIndex.getTokens(text)) {
+            if (part.length() < SearchIndex.GRAM_LENGTH) {
+                continue;
+            }
+            List<Set<BibtexEntry>> partPostings = new ArrayList<Set<BibtexEntry>>();
+            int size = 0;
+            for (Term term : findTerms(part)) {
+                Set<BibtexEntry> entries = key == null ? term.entries : term.fields.get(key);
+                if (entries != null) {
+                    partPostings.add(entries);
+                    size += entries.size();
+                }
+            }
+            if (size == 0) {
+                return new HashSet<BibtexEntry>();
+            }
+            if ((smallest < 0) || (size < sizes.get(smallest))) {
+                smallest = postings.size();
+            }
+            postings.add(partPostings);
+            sizes.add(size);
+        }
+        if (smallest < 0) {
+            return null;
+        }
+        // Every candidate is contained in the postings of each term, so only
+        // the entries of the term with the fewest ones have to be checked:
+        Set<BibtexEntry> result = new HashSet<BibtexEntry>();
+        for (Set<BibtexEntry> entries : postings.get(smallest)) {
+            for (BibtexEntry entry : entries) {
+                if (!result.contains(entry) && SearchIndex.containedInAll(postings, smallest, entry)) {
+                    result.add(entry);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean containedInAll(List<List<Set<BibtexEntry>>> postings, int skip, BibtexEntry entry) {
+        for (int i = 0; i < postings.size(); i++) {
+            if (i != skip) {
+                boolean found = false;
+                for (Set<BibtexEntry> entries : postings.get(i)) {
+                    if (entries.contains(entry)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the terms whose token contains the given part, which is at least
+     * GRAM_LENGTH characters long. They all contain each trigram of the part,
+     * so only the terms of the trigram with the fewest ones are checked.
+     */
+    private List<Term> findTerms(String part) {
+        Set<Term> rarest = null;
+        for (int i = 0; i <= (part.length() - SearchIndex.GRAM_LENGTH); i++) {
+            Set<Term> gramTerms = grams.get(part.substring(i, i + SearchIndex.GRAM_LENGTH));
+            if (gramTerms == null) {
+                return Collections.emptyList();
+            }
+            if ((rarest == null) || (gramTerms.size() < rarest.size())) {
+                rarest = gramTerms;
+            }
+        }
+        List<Term> result = new ArrayList<Term>();
+        for (Term term : rarest) {
+            if (term.token.contains(part)) {
+                result.add(term);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the entries that may be matched by the given rule and query, or
+     * null if all entries have to be checked.
+     *
+     * For the rules known to the index, every entry for which
+     * rule.applyRule(query, entry) returns true is contained in the result.
+     */
+    public Set<BibtexEntry> getCandidates(SearchRule rule, String query) {
+        if (rule instanceof ContainBasedSearchRule) {
+            return getCandidates(SearchIndex.getWords(query), false);
+        } else if (rule instanceof RegexBasedSearchRule) {
+            return getCandidates(SearchIndex.getWords(query), true);
+        } else if (rule instanceof GrammarBasedSearchRule) {
+            GrammarBasedSearchRule grammarRule = (GrammarBasedSearchRule) rule;
+            if (grammarRule.isRegExpSearch() || (grammarRule.getTree() == null)
+                    || !query.equals(grammarRule.getQuery())) {
+                return null;
+            }
+            return new CandidateVisitor(this).visit(grammarRule.getTree());
+        }
+        return null;
+    }
+
+    private static List<String> getWords(String query) {
+        // The rules analyze the lower case query if they ignore case, which
+        // yields the same tokens:
+        return new SentenceAnalyzer(query).getWords();
+    }
+
+    private Set<BibtexEntry> getCandidates(List<String> words, boolean regex) {
+        Set<BibtexEntry> result = null;
+        for (String word : words) {
+            if (regex && !SearchIndex.isLiteral(word)) {
+                continue;
+            }
+            Set<BibtexEntry> candidates = getCandidates(word);
+            if (candidates != null) {
+                result = SearchIndex.intersect(result, candidates);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isLiteral(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            if (SearchIndex.REGEX_SPECIAL_CHARS.indexOf(regex.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Set<BibtexEntry> intersect(Set<BibtexEntry> a, Set<BibtexEntry> b) {
+        if (a == null) {
+            return b;
+        } else if (b == null) {
+            return a;
+        }
+        Set<BibtexEntry> smaller = a.size() <= b.size() ? a : b;
+        Set<BibtexEntry> larger = smaller == a ? b : a;
+        Set<BibtexEntry> result = new HashSet<BibtexEntry>();
+        for (BibtexEntry entry : smaller) {
+            if (larger.contains(entry)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    private static Set<BibtexEntry> union(Set<BibtexEntry> a, Set<BibtexEntry> b) {
+        if ((a == null) || (b == null)) {
+            return null;
+        }
+        Set<BibtexEntry> result = new HashSet<BibtexEntry>(a);
+        result.addAll(b);
+        return result;
+    }
+
+    /**
+     * Splits the lower case text into maximal runs of letters and digits.
+     * Characters are additionally folded one by one, so that e.g. both sigma
+     * forms or the Turkish dotless i end up as the same token.
+     */
+    static Set<String> getTokens(String text) {
+        Set<String> result = new HashSet<String>();
+        SearchIndex.addTokens(text, result);
+        return result;
+    }
+
+    private static void addTokens(String text, Set<String> tokens) {
+        String lower = text.toLowerCase();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(Character.toUpperCase(c)));
+            } else if (sb.length() > 0) {
+                tokens.add(sb.toString());
+                sb.setLength(0);
+            }
+        }
+        if (sb.length() > 0) {
+            tokens.add(sb.toString());
+        }
+    }
+
+    /**
+     * Collects the tokens of the field content as seen by the different search
+     * rules: the raw content, and the content with LaTeX commands removed
+     * (a second time after converting to lower case, as RegexBasedSearchRule
+     * does, if that can make a difference).
+     */
+    private static Set<String> getFieldTokens(String content) {
+        Set<String> tokens = new HashSet<String>();
+        SearchIndex.addTokens(content, tokens);
+        String withoutLatex = SearchIndex.REMOVE_LATEX_COMMANDS.format(content);
+        SearchIndex.addTokens(withoutLatex, tokens);
+        if ((withoutLatex.indexOf('\\') >= 0) || (withoutLatex.indexOf('{') >= 0)
+                || (withoutLatex.indexOf('}') >= 0)) {
+            SearchIndex.addTokens(SearchIndex.REMOVE_LATEX_COMMANDS.format(withoutLatex.toLowerCase()), tokens);
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the content of each field of the entry by lower case field
+     * name, including the entry type as ENTRYTYPE_FIELD. Fields whose names
+     * only differ in case are indexed together.
+     */
+    private static Map<String, String> getContents(BibtexEntry entry) {
+        Map<String, String> contents = new HashMap<String, String>();
+        contents.put(SearchIndex.ENTRYTYPE_FIELD, entry.getType().getName());
+        for (String field : entry.getAllFields()) {
+            String content = entry.getField(field);
+            if (content != null) {
+                String key = field.toLowerCase(Locale.ENGLISH);
+                String other = contents.get(key);
+                contents.put(key, other == null ? content : other + '\n' + content);
+            }
+        }
+        return contents;
+    }
+
+    private void addEntry(BibtexEntry entry) {
+        if (indexed.containsKey(entry)) {
+            return;
+        }
+        Map<String, String> contents = SearchIndex.getContents(entry);
+        for (Map.Entry<String, String> field : contents.entrySet()) {
+            for (String token : SearchIndex.getFieldTokens(field.getValue())) {
+                addPosting(token, field.getKey(), entry);
+            }
+        }
+        indexed.put(entry, contents);
+    }
+
+    /**
+     * Re-indexes the fields of the entry whose content differs from the one
+     * indexed before.
+     */
+    private void updateEntry(BibtexEntry entry) {
+        Map<String, String> oldContents = indexed.get(entry);
+        if (oldContents == null) {
+            return;
+        }
+        Map<String, String> contents = SearchIndex.getContents(entry);
+        Set<String> fields = new HashSet<String>(oldContents.keySet());
+        fields.addAll(contents.keySet());
+        for (String field : fields) {
+            String oldContent = oldContents.get(field);
+            String content = contents.get(field);
+            if ((oldContent == null ? content == null : oldContent.equals(content))) {
+                continue;
+            }
+            Set<String> oldTokens = oldContent == null ? Collections.<String> emptySet()
+                    : SearchIndex.getFieldTokens(oldContent);
+            Set<String> tokens = content == null ? Collections.<String> emptySet()
+                    : SearchIndex.getFieldTokens(content);
+            for (String token : oldTokens) {
+                if (!tokens.contains(token)) {
+                    removePosting(token, field, entry);
+                }
+            }
+            for (String token : tokens) {
+                if (!oldTokens.contains(token)) {
+                    addPosting(token, field, entry);
+                }
+            }
+        }
+        indexed.put(entry, contents);
+    }
+
+    private void removeEntry(BibtexEntry entry) {
+        Map<String, String> contents = indexed.remove(entry);
+        if (contents == null) {
+            return;
+        }
+        for (Map.Entry<String, String> field : contents.entrySet()) {
+            for (String token : SearchIndex.getFieldTokens(field.getValue())) {
+                removePosting(token, field.getKey(), entry);
+            }
+        }
+    }
+
+    private void addPosting(String token, String field, BibtexEntry entry) {
+        Term term = terms.get(token);
+        if (term == null) {
+            term = new Term(token);
+            terms.put(token, term);
+            for (int i = 0; i <= (token.length() - SearchIndex.GRAM_LENGTH); i++) {
+                String gram = token.substring(i, i + SearchIndex.GRAM_LENGTH);
+                Set<Term> gramTerms = grams.get(gram);
+                if (gramTerms == null) {
+                    gramTerms = new HashSet<Term>();
+                    grams.put(gram, gramTerms);
+                }
+                gramTerms.add(term);
+            }
+        }
+        Set<BibtexEntry> entries = term.fields.get(field);
+        if (entries == null) {
+            entries = new HashSet<BibtexEntry>();
+            term.fields.put(field, entries);
+        }
+        entries.add(entry);
+        term.entries.add(entry);
+    }
+
+    private void removePosting(String token, String field, BibtexEntry entry) {
+        Term term = terms.get(token);
+        if (term == null) {
+            return;
+        }
+        Set<BibtexEntry> entries = term.fields.get(field);
+        if (entries != null) {
+            entries.remove(entry);
+            if (entries.isEmpty()) {
+                term.fields.remove(field);
+            }
+        }
+        for (Set<BibtexEntry> other : term.fields.values()) {
+            if (other.contains(entry)) {
+                return; // still contained in another field
+            }
+        }
+        term.entries.remove(entry);
+        if (term.entries.isEmpty()) {
+            terms.remove(token);
+            for (int i = 0; i <= (token.length() - SearchIndex.GRAM_LENGTH); i++) {
+                String gram = token.substring(i, i + SearchIndex.GRAM_LENGTH);
+                Set<Term> gramTerms = grams.get(gram);
+                gramTerms.remove(term);
+                if (gramTerms.isEmpty()) {
+                    grams.remove(gram);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Computes the candidates for a search expression: comparisons that
+     * require a field to contain a value are answered by the index, AND and OR
+     * are mapped to intersection and union, and everything else (negations,
+     * "!=") does not restrict the candidates.
+     */
+    static class CandidateVisitor extends SearchBaseVisitor<Set<BibtexEntry>> {
+
+        private final SearchIndex index;
+
+
+        public CandidateVisitor(SearchIndex index) {
+            this.index = index;
+        }
+
+        @Override
+        public Set<BibtexEntry> visitStart(SearchParser.StartContext ctx) {
+            return visit(ctx.expression());
+        }
+
+        @Override
+        public Set<BibtexEntry> visitComparison(SearchParser.ComparisonContext ctx) {
+            GrammarBasedSearchRule.ComparisonOperator operator =
+                    GrammarBasedSearchRule.ComparisonOperator.build(ctx.operator.getText());
+            if (operator == GrammarBasedSearchRule.ComparisonOperator.DOES_NOT_CONTAIN) {
+                return null;
+            }
+            return index.getCandidates(ctx.left.getText(), ctx.right.getText());
+        }
+
+        @Override
+        public Set<BibtexEntry> visitUnaryExpression(SearchParser.UnaryExpressionContext ctx) {
+            return null;
+        }
+
+        @Override
+        public Set<BibtexEntry> visitParenExpression(SearchParser.ParenExpressionContext ctx) {
+            return visit(ctx.expression());
+        }
+
+        @Override
+        public Set<BibtexEntry> visitBinaryExpression(SearchParser.BinaryExpressionContext ctx) {
+            if (ctx.operator.getText().equalsIgnoreCase("AND")) {
+                return SearchIndex.intersect(visit(ctx.left), visit(ctx.right));
+            } else {
+                return SearchIndex.union(visit(ctx.left), visit(ctx.right));
+            }
+        }
+    }
+}
@@ -25,6 +25,8 @@ public class CountingUndoManager extends UndoManager {
 
     private int unchangedPoint = 0,
             current = 0;
+    // Counts every edit, undo and redo:
+    private volatile int modifications = 0;
     private BasePanel panel = null;
 
 
@@ -36,6 +38,7 @@ public class CountingUndoManager extends UndoManager {
     @Override
     public synchronized boolean addEdit(UndoableEdit edit) {
         current++;
+        modifications++;
         return super.addEdit(edit);
     }
 
@@ -43,6 +46,7 @@ public class CountingUndoManager extends UndoManager {
     public synchronized void undo() throws CannotUndoException {
         super.undo();
         current--;
+        modifications++;
         panel.updateEntryEditorIfShowing();
     }
 
@@ -50,6 +54,7 @@ public class CountingUndoManager extends UndoManager {
     public synchronized void redo() throws CannotUndoException {
         super.redo();
         current++;
+        modifications++;
         panel.updateEntryEditorIfShowing();
     }
 
@@ -57,6 +62,14 @@ public class CountingUndoManager extends UndoManager {
         unchangedPoint = current;
     }
 
+    /**
+     * Returns the number of edits, undos and redos so far. Unlike the
+     * position in the undo history, it changes with each of them.
+     */
+    public int getModificationCount() {
+        return modifications;
+    }
+
     public boolean hasChanged() {
         return !(current == unchangedPoint);
     }
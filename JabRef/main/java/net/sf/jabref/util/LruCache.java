@@ -0,0 +1,207 @@
+/*  Copyright (C) 2003-2015 JabRef contributors.
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 2 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*/
+package net.sf.jabref.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread safe cache that holds at most a given number of values, evicting
+ * the least recently used ones.
+ *
+ * The cache is split into segments by the hash of the key, and each segment
+ * is locked on its own, so that threads using different keys rarely wait for
+ * each other. Each segment evicts its own least recently used value, which
+ * approximates evicting the least recently used value of the whole cache.
+ *
+ * The cache counts hits, misses and evictions, so that its size can be
+ * chosen from how it is used.
+ */
+public class LruCache<K, V> {
+
+    private class Segment extends LinkedHashMap<K, V> {
+
+        // Guarded by the segment:
+        private int capacity;
+
+
+        public Segment() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() > capacity) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Evicts the least recently used values until the segment holds no
+         * more than its capacity.
+         */
+        public void trim() {
+            Iterator<K> keys = keySet().iterator();
+            while ((size() > capacity) && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+
+    private final Segment[] segments;
+
+    private volatile int maximumSize;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+
+    /**
+     * @param maximumSize The number of values the cache holds at most.
+     */
+    @SuppressWarnings("unchecked")
+    public LruCache(int maximumSize) {
+        // Enough segments that the threads of all cores seldom share one:
+        int count = 1;
+        while (count < (4 * Runtime.getRuntime().availableProcessors())) {
+            count *= 2;
+        }
+        segments = (Segment[]) new LruCache<?, ?>.Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment();
+        }
+        setMaximumSize(maximumSize);
+    }
+
+    /**
+     * Changes the number of values the cache holds at most. If the cache
+     * holds more values, the least recently used ones are evicted right away.
+     *
+     * The capacity is divided among the segments so that they add up to the
+     * maximum size exactly. If it is smaller than the number of segments,
+     * some segments hold no values at all.
+     */
+    public synchronized void setMaximumSize(int maximumSize) {
+        maximumSize = Math.max(0, maximumSize);
+        int capacity = maximumSize / segments.length;
+        int remainder = maximumSize % segments.length;
+        for (int i = 0; i < segments.length; i++) {
+            Segment segment = segments[i];
+            synchronized (segment) {
+                segment.capacity = i < remainder ? capacity + 1 : capacity;
+                segment.trim();
+            }
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Returns the value for the key, or null if it is not in the cache.
+     */
+    public V get(K key) {
+        Segment segment = segmentFor(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Adds the value for the key, unless the cache already has a value for
+     * it. Returns the value that is in the cache afterwards.
+     */
+    public V putIfAbsent(K key, V value) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            V old = segment.get(key);
+            if (old != null) {
+                return old;
+            }
+            segment.put(key, value);
+            return value;
+        }
+    }
+
+    /**
+     * Removes all values. The counters are kept.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of values in the cache.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + size() + '/' + getMaximumSize() + ", hits=" + getHitCount() + ", misses="
+                + getMissCount() + ", evictions=" + getEvictionCount();
+    }
+
+    private Segment segmentFor(K key) {
+        // Spread the bits of the hash, as the low bits select the segment:
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        hash ^= (hash >>> 7);
+        return segments[hash & (segments.length - 1)];
+    }
+}
@@ -23,6 +23,7 @@ import java.awt.event.KeyListener;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.List;
 import java.util.TreeSet;
 
 import javax.swing.AbstractAction;
@@ -48,6 +49,7 @@ import net.sf.jabref.JabRefFrame;
 import net.sf.jabref.MnemonicAwareAction;
 import net.sf.jabref.autocompleter.AutoCompleter;
 import net.sf.jabref.gui.AutoCompleteListener;
+import net.sf.jabref.search.KeywordIndex;
 import net.sf.jabref.specialfields.Printed;
 import net.sf.jabref.specialfields.Priority;
 import net.sf.jabref.specialfields.Quality;
@@ -404,6 +406,7 @@ public class ManageKeywordsAction extends MnemonicAwareAction {
     private void fillKeyWordList() {
         BasePanel bp = frame.basePanel();
         BibtexEntry[] entries = bp.getSelectedEntries();
+        KeywordIndex index = bp.database().getKeywordIndex();
 
         // fill dialog with values
         keywordListModel.clear();
@@ -411,23 +414,20 @@ public class ManageKeywordsAction extends MnemonicAwareAction {
 
         if (mergeKeywords.isSelected()) {
             for (BibtexEntry entry : entries) {
-                ArrayList<String> separatedKeywords = Util.getSeparatedKeywords(entry);
-                sortedKeywordsOfAllEntriesBeforeUpdateByUser.addAll(separatedKeywords);
+                sortedKeywordsOfAllEntriesBeforeUpdateByUser.addAll(getKeywords(index, entry));
             }
         } else {
             assert (intersectKeywords.isSelected());
 
             // all keywords from first entry have to be added
             BibtexEntry firstEntry = entries[0];
-            ArrayList<String> separatedKeywords = Util.getSeparatedKeywords(firstEntry);
-            sortedKeywordsOfAllEntriesBeforeUpdateByUser.addAll(separatedKeywords);
+            sortedKeywordsOfAllEntriesBeforeUpdateByUser.addAll(getKeywords(index, firstEntry));
 
             // for the remaining entries, intersection has to be used
             // this approach ensures that one empty keyword list leads to an empty set of common keywords
             for (int i = 1; i < entries.length; i++) {
                 BibtexEntry entry = entries[i];
-                separatedKeywords = Util.getSeparatedKeywords(entry);
-                sortedKeywordsOfAllEntriesBeforeUpdateByUser.retainAll(separatedKeywords);
+                sortedKeywordsOfAllEntriesBeforeUpdateByUser.retainAll(getKeywords(index, entry));
             }
         }
         for (String s : sortedKeywordsOfAllEntriesBeforeUpdateByUser) {
@@ -435,4 +435,11 @@ public class ManageKeywordsAction extends MnemonicAwareAction {
         }
     }
 
+    /**
+     * Returns the keywords of the entry as Util.getSeparatedKeywords() splits them.
+     */
+    private static List<String> getKeywords(KeywordIndex index, BibtexEntry entry) {
+        return index.getKeywords(entry, "keywords", Globals.SEPARATING_CHARS_NOSPACE);
+    }
+
 }
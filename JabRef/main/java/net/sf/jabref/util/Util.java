@@ -257,17 +257,8 @@ public class Util {
 	public static TreeSet<String> findDeliminatedWordsInField(BibtexDatabase db, String field,
 			String deliminator) {
 		TreeSet<String> res = new TreeSet<String>();
-
-		for (String s : db.getKeySet()) {
-			BibtexEntry be = db.getEntryById(s);
-			Object o = be.getField(field);
-			if (o != null) {
-				String fieldValue = o.toString().trim();
-				StringTokenizer tok = new StringTokenizer(fieldValue, deliminator);
-				while (tok.hasMoreTokens()) {
-					res.add(StringUtil.nCase(tok.nextToken().trim()));
-				}
-			}
+		for (String keyword : db.getKeywordIndex().getKeywords(field, deliminator)) {
+			res.add(StringUtil.nCase(keyword));
 		}
 		return res;
 	}
@@ -286,16 +277,8 @@ public class Util {
 	 */
 	public static TreeSet<String> findAllWordsInField(BibtexDatabase db, String field, String remove) {
 		TreeSet<String> res = new TreeSet<String>();
-		StringTokenizer tok;
-		for (String s : db.getKeySet()) {
-			BibtexEntry be = db.getEntryById(s);
-			Object o = be.getField(field);
-			if (o != null) {
-				tok = new StringTokenizer(o.toString(), remove, false);
-				while (tok.hasMoreTokens()) {
-					res.add(StringUtil.nCase(tok.nextToken().trim()));
-				}
-			}
+		for (String word : db.getKeywordIndex().getKeywords(field, remove)) {
+			res.add(StringUtil.nCase(word));
 		}
 		return res;
 	}
@@ -11,6 +11,7 @@ import org.junit.Test;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Collection;
 
 public class BibtexDatabaseTest {
 
@@ -46,4 +47,83 @@ public class BibtexDatabaseTest {
 
     }
 
+    @Test
+    public void testEntriesSnapshot() {
+        BibtexDatabase db = new BibtexDatabase();
+        BibtexEntry first = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        db.insertEntry(first);
+
+        Collection<BibtexEntry> snapshot = db.getEntries();
+        Assert.assertSame(snapshot, db.getEntries());
+
+        BibtexEntry second = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        db.insertEntry(second);
+        Assert.assertEquals(1, snapshot.size());
+        Assert.assertEquals(2, db.getEntries().size());
+
+        // Iterating the old snapshot is not disturbed by removals:
+        for (BibtexEntry entry : snapshot) {
+            db.removeEntry(entry.getId());
+        }
+        Assert.assertEquals(1, db.getEntryCount());
+        Assert.assertTrue(db.getEntries().contains(second));
+    }
+
+    @Test
+    public void testChangeIdRefilesEntry() {
+        BibtexDatabase db = new BibtexDatabase();
+        BibtexEntry entry = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        db.insertEntry(entry);
+        String oldId = entry.getId();
+
+        String newId = IdGenerator.next();
+        entry.setId(newId);
+        Assert.assertNull(db.getEntryById(oldId));
+        Assert.assertSame(entry, db.getEntryById(newId));
+        Assert.assertEquals(1, db.getEntries().size());
+    }
+
+    @Test
+    public void testKeyIndex() {
+        BibtexDatabase db = new BibtexDatabase();
+        BibtexEntry first = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        first.setField(BibtexFields.KEY_FIELD, "Smith2000");
+        Assert.assertFalse(db.insertEntry(first));
+        BibtexEntry second = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        second.setField(BibtexFields.KEY_FIELD, "Smith2000");
+        Assert.assertTrue(db.insertEntry(second));
+
+        Assert.assertSame(first, db.getEntryByKey("Smith2000"));
+        Assert.assertEquals(2, db.getEntriesByKey("Smith2000").length);
+        Assert.assertEquals(2, db.getNumberOfKeyOccurences("Smith2000"));
+
+        // Changing the field directly updates the index, too:
+        first.setField(BibtexFields.KEY_FIELD, "Jones2001");
+        Assert.assertSame(second, db.getEntryByKey("Smith2000"));
+        Assert.assertSame(first, db.getEntryByKey("Jones2001"));
+        Assert.assertEquals(1, db.getNumberOfKeyOccurences("Smith2000"));
+
+        Assert.assertTrue(db.setCiteKeyForEntry(second.getId(), "Jones2001"));
+        Assert.assertNull(db.getEntryByKey("Smith2000"));
+        Assert.assertEquals(2, db.getNumberOfKeyOccurences("Jones2001"));
+
+        db.removeEntry(first.getId());
+        Assert.assertSame(second, db.getEntryByKey("Jones2001"));
+        Assert.assertFalse(db.setCiteKeyForEntry(second.getId(), null));
+        Assert.assertEquals(0, db.getNumberOfKeyOccurences("Jones2001"));
+    }
+
+    @Test
+    public void testEntryWithoutKey() {
+        BibtexDatabase db = new BibtexDatabase();
+        BibtexEntry entry = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        Assert.assertFalse(db.insertEntry(entry));
+        Assert.assertSame(entry, db.getEntryById(entry.getId()));
+        Assert.assertNull(db.getEntryByKey(null));
+        Assert.assertNull(db.getEntryByKey(""));
+        Assert.assertEquals(0, db.getEntriesByKey(null).length);
+        Assert.assertEquals(0, db.getNumberOfKeyOccurences(null));
+        Assert.assertFalse(db.setCiteKeyForEntry(entry.getId(), null));
+    }
+
 }
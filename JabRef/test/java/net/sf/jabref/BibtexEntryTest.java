@@ -0,0 +1,92 @@
+package net.sf.jabref;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyVetoException;
+import java.beans.VetoableChangeListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BibtexEntryTest {
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+    }
+
+    @Test
+    public void testFieldStorage() {
+        BibtexEntry entry = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        // Enough fields to make the storage grow:
+        for (int i = 0; i < 20; i++) {
+            entry.setField("field" + i, "value" + i);
+        }
+        Assert.assertEquals(20, entry.getAllFields().size());
+        Assert.assertEquals("value7", entry.getField("field7"));
+
+        for (int i = 0; i < 20; i += 2) {
+            entry.clearField("field" + i);
+        }
+        Assert.assertEquals(10, entry.getAllFields().size());
+        Assert.assertNull(entry.getField("field4"));
+        Assert.assertEquals("value5", entry.getField("field5"));
+        Assert.assertNull(entry.getField("neverusedfield"));
+
+        Map<String, String> fields = new HashMap<String, String>();
+        fields.put("author", "Einstein, Albert");
+        fields.put(BibtexFields.KEY_FIELD, "einstein1916");
+        entry.setField(fields);
+        Assert.assertEquals("einstein1916", entry.getCiteKey());
+
+        BibtexEntry clone = (BibtexEntry) entry.clone();
+        clone.setField("author", "Someone else");
+        Assert.assertEquals("Einstein, Albert", entry.getField("author"));
+        Assert.assertEquals(entry.getAllFields(), clone.getAllFields());
+    }
+
+    @Test
+    public void testSharedValues() {
+        BibtexEntry one = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        BibtexEntry two = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        one.setField("journal", new String("Annalen der Physik"));
+        two.setField("journal", new String("Annalen der Physik"));
+        Assert.assertSame(one.getField("journal"), two.getField("journal"));
+    }
+
+    @Test
+    public void testChangeListeners() {
+        BibtexEntry entry = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        final List<String> changes = new ArrayList<String>();
+        VetoableChangeListener first = new VetoableChangeListener() {
+
+            @Override
+            public void vetoableChange(PropertyChangeEvent evt) throws PropertyVetoException {
+                changes.add("first:" + evt.getPropertyName());
+            }
+        };
+        VetoableChangeListener second = new VetoableChangeListener() {
+
+            @Override
+            public void vetoableChange(PropertyChangeEvent evt) throws PropertyVetoException {
+                changes.add("second:" + evt.getPropertyName());
+            }
+        };
+
+        entry.addPropertyChangeListener(first);
+        entry.setField("title", "A");
+        // Setting the same value again is no change:
+        entry.setField("title", "A");
+        entry.addPropertyChangeListener(second);
+        entry.setField("year", "2015");
+        entry.removePropertyChangeListener(first);
+        entry.clearField("year");
+
+        Assert.assertEquals(Arrays.asList("first:title", "first:year", "second:year", "second:year"), changes);
+    }
+}
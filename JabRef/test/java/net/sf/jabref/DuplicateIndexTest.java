@@ -0,0 +1,79 @@
+package net.sf.jabref;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class DuplicateIndexTest {
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+    }
+
+    private static BibtexEntry makeBibtexEntry(String author, String title, String year) {
+        BibtexEntry e = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        e.setField("author", author);
+        e.setField("title", title);
+        e.setField("year", year);
+        return e;
+    }
+
+    @Test
+    public void testSimilarTitlesShareBlock() {
+        BibtexEntry one = makeBibtexEntry("Billy Bob", "Characterization of Calanus finmarchicus habitat in the North Sea", "2001");
+        BibtexEntry two = makeBibtexEntry("James Joyce", "Characterization of {C}alunus finmarchicus habitat in the North Sea.", "2005");
+        BibtexEntry three = makeBibtexEntry("Kevin Shields", "Marine finfish larviculture in Europe", "2009");
+        DuplicateIndex index = new DuplicateIndex(Arrays.asList(one, two, three));
+
+        Assert.assertTrue(index.getCandidates(one).contains(two));
+        Assert.assertFalse(index.getCandidates(one).contains(three));
+    }
+
+    @Test
+    public void testFirstAuthorAndYearShareBlock() {
+        BibtexEntry one = makeBibtexEntry("Bob, Billy and Joyce, James", "First title", "2005");
+        BibtexEntry two = makeBibtexEntry("B. Bob", "Something completely different", "2005");
+        BibtexEntry three = makeBibtexEntry("B. Bob", "Something completely different", "2006");
+        DuplicateIndex index = new DuplicateIndex(Arrays.asList(one, two, three));
+
+        Assert.assertTrue(index.getCandidates(one).contains(two));
+        Assert.assertFalse(index.getCandidates(one).contains(three));
+    }
+
+    @Test
+    public void testDoiAndTypeBlocks() {
+        BibtexEntry one = makeBibtexEntry("Billy Bob", "First title", "2005");
+        one.setField("doi", "http://dx.doi.org/10.1000/ABC.123");
+        BibtexEntry two = makeBibtexEntry("James Joyce", "Other title", "2010");
+        two.setField("doi", "10.1000/abc.123");
+        BibtexEntry book = makeBibtexEntry("Billy Bob", "First title", "2005");
+        book.setType(BibtexEntryTypes.BOOK);
+        DuplicateIndex index = new DuplicateIndex(Arrays.asList(one, two, book));
+
+        Assert.assertTrue(index.getCandidates(one).contains(two));
+        Assert.assertFalse(index.getCandidates(one).contains(book));
+    }
+
+    @Test
+    public void testContainsDuplicateFollowsDatabase() {
+        BibtexDatabase database = new BibtexDatabase();
+        BibtexEntry one = makeBibtexEntry("Billy Bob", "A title", "2005");
+        one.setField("journal", "A");
+        database.insertEntry(one);
+
+        BibtexEntry two = makeBibtexEntry("Billy Bob", "A title", "2005");
+        two.setField("journal", "A");
+        Assert.assertSame(one, DuplicateCheck.containsDuplicate(database, two));
+
+        one.setField("author", "James Joyce");
+        one.setField("title", "Ulysses");
+        one.setField("year", "1922");
+        Assert.assertNull(DuplicateCheck.containsDuplicate(database, two));
+
+        database.removeEntry(one.getId());
+        Assert.assertTrue(database.getDuplicateIndex().getCandidates(two).isEmpty());
+    }
+}
@@ -0,0 +1,69 @@
+package net.sf.jabref;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Comparator;
+
+public class EntrySorterTest {
+
+    private BibtexDatabase database;
+
+    private EntrySorter sorter;
+
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+        database = new BibtexDatabase();
+        for (String title : new String[] {"c", "a", "d", "b"}) {
+            database.insertEntry(makeBibtexEntry(title));
+        }
+        sorter = database.getSorter(new Comparator<BibtexEntry>() {
+
+            @Override
+            public int compare(BibtexEntry o1, BibtexEntry o2) {
+                return o1.getField("title").compareTo(o2.getField("title"));
+            }
+        });
+    }
+
+    private static BibtexEntry makeBibtexEntry(String title) {
+        BibtexEntry e = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        e.setField("title", title);
+        return e;
+    }
+
+    private void assertOrder(String... titles) {
+        Assert.assertEquals(titles.length, sorter.getEntryCount());
+        for (int i = 0; i < titles.length; i++) {
+            BibtexEntry entry = sorter.getEntryAt(i);
+            Assert.assertEquals(titles[i], entry.getField("title"));
+            Assert.assertEquals(entry.getId(), sorter.getIdAt(i));
+            Assert.assertEquals(i, sorter.indexOf(entry));
+        }
+    }
+
+    @Test
+    public void testInitialOrder() {
+        assertOrder("a", "b", "c", "d");
+    }
+
+    @Test
+    public void testDatabaseChanges() {
+        BibtexEntry e = makeBibtexEntry("bb");
+        database.insertEntry(e);
+        assertOrder("a", "b", "bb", "c", "d");
+
+        e.setField("title", "e");
+        assertOrder("a", "b", "c", "d", "e");
+
+        sorter.getEntryAt(0).setField("title", "cc");
+        assertOrder("b", "c", "cc", "d", "e");
+
+        database.removeEntry(e.getId());
+        assertOrder("b", "c", "cc", "d");
+        Assert.assertEquals(-1, sorter.indexOf(e));
+    }
+}
@@ -51,6 +51,99 @@ public class AutoCompleterTest {
         Assert.assertEquals(0, autoCompleter.complete("osta").length);
     }
 
+    @Test
+    public void testAcceptedCompletionsRankFirst() {
+        Globals.prefs = JabRefPreferences.getInstance();
+        AutoCompleter autoCompleter = AutoCompleterFactory.getFor(AutoCompleterTest.OTHER_FIELD);
+        autoCompleter.addWordToIndex("security");
+        autoCompleter.addWordToIndex("security");
+        autoCompleter.addWordToIndex("secure");
+        Assert.assertEquals("security", autoCompleter.complete("secu")[0]);
+        autoCompleter.completionAccepted("secure");
+        Assert.assertEquals("secure", autoCompleter.complete("secu")[0]);
+        Assert.assertEquals(2, autoCompleter.complete("secu").length);
+    }
+
+    @Test
+    public void testCountsFollowEntries() {
+        Globals.prefs = JabRefPreferences.getInstance();
+        AutoCompleter autoCompleter = AutoCompleterFactory.getFor(AutoCompleterTest.OTHER_FIELD);
+        BibtexEntry first = new BibtexEntry(IdGenerator.next());
+        first.setField(AutoCompleterTest.OTHER_FIELD, "security");
+        BibtexEntry second = new BibtexEntry(IdGenerator.next());
+        second.setField(AutoCompleterTest.OTHER_FIELD, "security");
+        BibtexEntry third = new BibtexEntry(IdGenerator.next());
+        third.setField(AutoCompleterTest.OTHER_FIELD, "secure");
+        autoCompleter.addBibtexEntry(first);
+        autoCompleter.addBibtexEntry(second);
+        autoCompleter.addBibtexEntry(third);
+        Assert.assertEquals("security", autoCompleter.complete("secu")[0]);
+        autoCompleter.removeBibtexEntry(first);
+        autoCompleter.fieldChanged(AutoCompleterTest.OTHER_FIELD, "security", "secure");
+        Assert.assertArrayEquals(new String[] {"secure"}, autoCompleter.complete("secu"));
+        autoCompleter.fieldChanged(AutoCompleterTest.ENTIRE_FIELD, null, "security");
+        Assert.assertArrayEquals(new String[] {"secure"}, autoCompleter.complete("secu"));
+    }
+
+    @Test
+    public void testRepeatedEditsKeepRanking() {
+        Globals.prefs = JabRefPreferences.getInstance();
+        AutoCompleter autoCompleter = AutoCompleterFactory.getFor(AutoCompleterTest.OTHER_FIELD);
+        autoCompleter.addWordToIndex("security", 3);
+        autoCompleter.addWordToIndex("secure", 2);
+        autoCompleter.addWordToIndex("sector", 2);
+        autoCompleter.completionAccepted("sector");
+        String[] ranking = autoCompleter.complete("sec");
+        Assert.assertEquals("sector", ranking[0]);
+        for (int i = 0; i < 10; i++) {
+            autoCompleter.fieldChanged(AutoCompleterTest.OTHER_FIELD, "secure", "security");
+            autoCompleter.completionAccepted("other");
+            autoCompleter.fieldChanged(AutoCompleterTest.OTHER_FIELD, "security", "secure");
+            autoCompleter.fieldChanged(AutoCompleterTest.OTHER_FIELD, "secure", "secure");
+        }
+        Assert.assertArrayEquals(ranking, autoCompleter.complete("sec"));
+    }
+
+    @Test
+    public void testOccurrencesCountAfterManyAcceptedCompletions() {
+        Globals.prefs = JabRefPreferences.getInstance();
+        AutoCompleter autoCompleter = AutoCompleterFactory.getFor(AutoCompleterTest.OTHER_FIELD);
+        autoCompleter.addWordToIndex("security", 3);
+        autoCompleter.addWordToIndex("secure", 2);
+        autoCompleter.completionAccepted("secure");
+        Assert.assertEquals("secure", autoCompleter.complete("secu")[0]);
+        for (int i = 0; i < 500; i++) {
+            autoCompleter.completionAccepted("other");
+        }
+        Assert.assertArrayEquals(new String[] {"security", "secure"}, autoCompleter.complete("secu"));
+    }
+
+    @Test
+    public void testCorrectedTypoIsNotOffered() {
+        Globals.prefs = JabRefPreferences.getInstance();
+        AutoCompleter autoCompleter = AutoCompleterFactory.getFor(AutoCompleterTest.OTHER_FIELD);
+        autoCompleter.addWordToIndex("security", 1);
+        autoCompleter.completionAccepted("other");
+        autoCompleter.fieldChanged(AutoCompleterTest.OTHER_FIELD, null, "secutiry");
+        autoCompleter.fieldChanged(AutoCompleterTest.OTHER_FIELD, "secutiry", "security");
+        Assert.assertFalse(autoCompleter.indexContainsWord("secutiry"));
+        Assert.assertArrayEquals(new String[] {"security"}, autoCompleter.complete("secu"));
+    }
+
+    @Test
+    public void testRemovedWordsAreNotOffered() {
+        Globals.prefs = JabRefPreferences.getInstance();
+        AutoCompleter autoCompleter = AutoCompleterFactory.getFor(AutoCompleterTest.OTHER_FIELD);
+        BibtexEntry entry = new BibtexEntry(IdGenerator.next());
+        entry.setField(AutoCompleterTest.OTHER_FIELD, "security");
+        autoCompleter.addWordToIndex("secure", 0);
+        autoCompleter.addBibtexEntry(entry);
+        autoCompleter.removeBibtexEntry(entry);
+        Assert.assertFalse(autoCompleter.indexContainsWord("security"));
+        // Suggestions are kept:
+        Assert.assertArrayEquals(new String[] {"secure"}, autoCompleter.complete("secu"));
+    }
+
     @Test
     public void testCrossRefCompleter() {
         AutoCompleter autoCompleter = AutoCompleterFactory.getFor(AutoCompleterTest.CROSSREF_FIELD);
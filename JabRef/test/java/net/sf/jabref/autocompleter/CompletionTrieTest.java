@@ -0,0 +1,80 @@
+package net.sf.jabref.autocompleter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompletionTrieTest {
+
+    @Test
+    public void testMostFrequentFirst() {
+        CompletionTrie trie = new CompletionTrie();
+        trie.addOccurrences("security", 1);
+        trie.addOccurrences("secure", 3);
+        trie.addOccurrences("second", 1);
+        trie.addOccurrences("sector", 2);
+        Assert.assertArrayEquals(new String[] {"secure", "sector", "second", "security"},
+                trie.complete("sec", false, 10));
+        Assert.assertArrayEquals(new String[] {"secure", "sector"}, trie.complete("sec", false, 2));
+        Assert.assertArrayEquals(new String[] {"second"}, trie.complete("seco", false, 10));
+        Assert.assertArrayEquals(new String[] {"secure", "security"}, trie.complete("secu", false, 10));
+        Assert.assertEquals(0, trie.complete("secx", false, 10).length);
+    }
+
+    @Test
+    public void testCaseFolding() {
+        CompletionTrie trie = new CompletionTrie();
+        trie.addOccurrences("Usability", 1);
+        trie.addOccurrences("usability", 2);
+        trie.addOccurrences("Usable", 1);
+        Assert.assertEquals(3, trie.size());
+        Assert.assertArrayEquals(new String[] {"usability", "Usability", "Usable"}, trie.complete("usab", false, 10));
+        Assert.assertArrayEquals(new String[] {"Usability", "Usable"}, trie.complete("Usab", true, 10));
+        Assert.assertTrue(trie.contains("USABLE"));
+        Assert.assertFalse(trie.contains("usab"));
+    }
+
+    @Test
+    public void testAcceptedWeightIsAddedToOccurrences() {
+        CompletionTrie trie = new CompletionTrie();
+        trie.addOccurrences("security", 3);
+        trie.addOccurrences("secure", 2);
+        trie.setAccepted("secure", 1.5);
+        Assert.assertArrayEquals(new String[] {"secure", "security"}, trie.complete("secu", false, 10));
+        trie.setAccepted("secure", 0);
+        Assert.assertArrayEquals(new String[] {"security", "secure"}, trie.complete("secu", false, 10));
+    }
+
+    @Test
+    public void testSuggestionsComeLastAndAreKept() {
+        CompletionTrie trie = new CompletionTrie();
+        trie.addSuggestion("Journal of Aardvarks");
+        trie.addOccurrences("Journal of Zebras", 1);
+        Assert.assertArrayEquals(new String[] {"Journal of Zebras", "Journal of Aardvarks"},
+                trie.complete("jour", false, 10));
+        trie.addOccurrences("Journal of Aardvarks", 1);
+        trie.addOccurrences("Journal of Aardvarks", -1);
+        Assert.assertTrue(trie.contains("Journal of Aardvarks"));
+    }
+
+    @Test
+    public void testWordsWithoutScoreArePruned() {
+        CompletionTrie trie = new CompletionTrie();
+        trie.addOccurrences("secure", 3);
+        trie.addOccurrences("security", 2);
+        trie.addOccurrences("second", 1);
+        trie.addOccurrences("secure", -3);
+        Assert.assertFalse(trie.contains("secure"));
+        Assert.assertEquals(2, trie.size());
+        Assert.assertArrayEquals(new String[] {"security"}, trie.complete("sec", false, 1));
+        Assert.assertArrayEquals(new String[] {"security", "second"}, trie.complete("sec", false, 10));
+        trie.setAccepted("second", 2);
+        trie.addOccurrences("second", -1);
+        Assert.assertArrayEquals(new String[] {"second", "security"}, trie.complete("sec", false, 10));
+        trie.setAccepted("second", 0);
+        trie.addOccurrences("security", -2);
+        Assert.assertEquals(0, trie.size());
+        Assert.assertEquals(0, trie.complete("s", false, 10).length);
+        trie.addOccurrences("sector", 1);
+        Assert.assertArrayEquals(new String[] {"sector"}, trie.complete("sec", false, 10));
+    }
+}
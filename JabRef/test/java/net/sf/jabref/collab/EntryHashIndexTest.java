@@ -0,0 +1,58 @@
+package net.sf.jabref.collab;
+
+import java.io.StringReader;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.EntryComparator;
+import net.sf.jabref.EntrySorter;
+import net.sf.jabref.Globals;
+import net.sf.jabref.JabRefPreferences;
+import net.sf.jabref.imports.BibtexParser;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EntryHashIndexTest {
+
+    private EntrySorter sorter;
+
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+        BibtexDatabase database = BibtexParser.parse(new StringReader(
+                "@article{a, author = {Author}, year = {2000}}\n"
+                + "@article{a, author = {Author}, year = {2000}}\n"
+                + "@book{b, title = {Title}, year = {2001}}\n")).getDatabase();
+        sorter = database.getSorter(new EntryComparator(false, true, "year"));
+    }
+
+    @Test
+    public void testIdenticalEntryIsFoundWhateverTheFieldOrder() {
+        EntryHashIndex index = new EntryHashIndex(sorter);
+        BibtexEntry entry = BibtexParser.singleFromString("@book{b, year = {2001}, title = {Title}}");
+        int found = index.findIdentical(entry, null);
+        Assert.assertEquals("b", sorter.getEntryAt(found).getCiteKey());
+    }
+
+    @Test
+    public void testUsedEntriesAreSkipped() {
+        EntryHashIndex index = new EntryHashIndex(sorter);
+        BibtexEntry entry = BibtexParser.singleFromString("@article{a, author = {Author}, year = {2000}}");
+        boolean[] used = new boolean[sorter.getEntryCount()];
+        used[index.findIdentical(entry, used)] = true;
+        used[index.findIdentical(entry, used)] = true;
+        Assert.assertEquals(-1, index.findIdentical(entry, used));
+    }
+
+    @Test
+    public void testChangedEntryIsFoundByKeyOnly() {
+        EntryHashIndex index = new EntryHashIndex(sorter);
+        BibtexEntry entry = BibtexParser.singleFromString("@book{b, title = {Other title}, year = {2001}}");
+        Assert.assertEquals(-1, index.findIdentical(entry, null));
+        Assert.assertEquals(1, index.getByKey("b").size());
+        Assert.assertTrue(index.getByKey("c").isEmpty());
+    }
+}
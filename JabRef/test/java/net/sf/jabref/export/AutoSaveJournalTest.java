@@ -0,0 +1,169 @@
+package net.sf.jabref.export;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.BibtexEntryTypes;
+import net.sf.jabref.BibtexString;
+import net.sf.jabref.Globals;
+import net.sf.jabref.IdGenerator;
+import net.sf.jabref.JabRefPreferences;
+import net.sf.jabref.imports.OpenDatabaseAction;
+import net.sf.jabref.imports.ParserResult;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AutoSaveJournalTest {
+
+    private File bibFile;
+
+    private File journalFile;
+
+
+    @Before
+    public void setUp() throws IOException {
+        Globals.prefs = JabRefPreferences.getInstance();
+        bibFile = File.createTempFile("jabref", ".bib");
+        journalFile = AutoSaveManager.getAutoSaveFile(bibFile);
+        Files.write(bibFile.toPath(), ("@string{pub = {Publisher}}\n"
+                + "@article{a, author = {Author A}, title = {Same}}\n"
+                + "@article{b, author = {Author B}, title = {Same}}\n"
+                + "@book{c, author = {Author C}, title = {Other}}\n").getBytes("UTF-8"));
+    }
+
+    @After
+    public void tearDown() {
+        bibFile.delete();
+        journalFile.delete();
+    }
+
+    private ParserResult load() throws IOException {
+        return OpenDatabaseAction.loadDatabase(bibFile, "UTF-8");
+    }
+
+    private static BibtexEntry getEntry(BibtexDatabase database, String key) {
+        return database.getEntriesByKey(key)[0];
+    }
+
+    @Test
+    public void testReplayGivesSameDatabase() throws IOException {
+        ParserResult pr = load();
+        BibtexDatabase database = pr.getDatabase();
+        AutoSaveJournal journal = new AutoSaveJournal(journalFile, bibFile, database, pr.getMetaData());
+
+        getEntry(database, "a").setField("title", "Changed\ttwice\nwith \\ breaks");
+        getEntry(database, "b").clearField("author");
+        getEntry(database, "c").setType(BibtexEntryTypes.MISC);
+        journal.commit();
+        BibtexEntry added = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        added.setField("bibtexkey", "d");
+        added.setField("year", "2015");
+        database.insertEntry(added);
+        database.removeEntry(getEntry(database, "a").getId());
+        database.setPreamble("Preamble");
+        database.addString(new BibtexString(IdGenerator.next(), "other", "Other"));
+        journal.commit();
+        journal.close();
+
+        ParserResult recovered = load();
+        AutoSaveJournal.replay(journalFile, bibFile, recovered).close();
+        BibtexDatabase result = recovered.getDatabase();
+        Assert.assertEquals(3, result.getEntryCount());
+        Assert.assertEquals(0, result.getNumberOfKeyOccurences("a"));
+        Assert.assertNull(getEntry(result, "b").getField("author"));
+        Assert.assertEquals("Same", getEntry(result, "b").getField("title"));
+        Assert.assertEquals(BibtexEntryTypes.MISC, getEntry(result, "c").getType());
+        Assert.assertEquals("2015", getEntry(result, "d").getField("year"));
+        Assert.assertEquals("Preamble", result.getPreamble());
+        Assert.assertEquals(2, result.getStringCount());
+    }
+
+    @Test
+    public void testIncompleteRecordIsIgnored() throws IOException {
+        ParserResult pr = load();
+        AutoSaveJournal journal = new AutoSaveJournal(journalFile, bibFile, pr.getDatabase(), pr.getMetaData());
+        getEntry(pr.getDatabase(), "a").setField("year", "2000");
+        journal.commit();
+        journal.close();
+        FileOutputStream out = new FileOutputStream(journalFile, true);
+        out.write("F\t0\tyear\t20".getBytes("UTF-8"));
+        out.close();
+
+        ParserResult recovered = load();
+        AutoSaveJournal.replay(journalFile, bibFile, recovered).close();
+        Assert.assertEquals("2000", getEntry(recovered.getDatabase(), "a").getField("year"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testChangedDatabaseFileIsRejected() throws IOException {
+        ParserResult pr = load();
+        AutoSaveJournal journal = new AutoSaveJournal(journalFile, bibFile, pr.getDatabase(), pr.getMetaData());
+        getEntry(pr.getDatabase(), "a").setField("year", "2000");
+        journal.commit();
+        journal.close();
+        Files.write(bibFile.toPath(), "@article{x, title = {New}}\n".getBytes("UTF-8"));
+        AutoSaveJournal.replay(journalFile, bibFile, load());
+    }
+
+    @Test
+    public void testCompleteCopyIsNotJournaled() throws IOException {
+        byte[] copy = "@article{x, title = {Recovered}}\n".getBytes("UTF-8");
+        Files.write(journalFile.toPath(), copy);
+        ParserResult recovered = AutoSaveManager.recover(bibFile, "UTF-8");
+        Assert.assertEquals(1, recovered.getDatabase().getEntryCount());
+        Assert.assertTrue(AutoSaveManager.isRecoveredCopy(recovered.getDatabase()));
+        Assert.assertArrayEquals(copy, Files.readAllBytes(journalFile.toPath()));
+
+        ParserResult pr = load();
+        AutoSaveJournal journal = new AutoSaveJournal(journalFile, bibFile, pr.getDatabase(), pr.getMetaData());
+        getEntry(pr.getDatabase(), "a").setField("year", "2000");
+        journal.commit();
+        journal.close();
+        recovered = AutoSaveManager.recover(bibFile, "UTF-8");
+        Assert.assertFalse(AutoSaveManager.isRecoveredCopy(recovered.getDatabase()));
+        Assert.assertEquals("2000", getEntry(recovered.getDatabase(), "a").getField("year"));
+    }
+
+    @Test
+    public void testOthersAreOnlyComparedWhenAsked() throws IOException {
+        ParserResult pr = load();
+        AutoSaveJournal journal = new AutoSaveJournal(journalFile, bibFile, pr.getDatabase(), pr.getMetaData());
+        journalFile.delete();
+        pr.getDatabase().setPreamble("Preamble");
+        journal.commit(false);
+        Assert.assertFalse(journalFile.exists());
+        journal.commit(true);
+        journal.close();
+
+        ParserResult recovered = load();
+        AutoSaveJournal.replay(journalFile, bibFile, recovered).close();
+        Assert.assertEquals("Preamble", recovered.getDatabase().getPreamble());
+    }
+
+    @Test
+    public void testChangesSurviveChangedDatabaseFile() throws IOException {
+        ParserResult pr = load();
+        AutoSaveJournal journal = new AutoSaveJournal(journalFile, bibFile, pr.getDatabase(), pr.getMetaData());
+        getEntry(pr.getDatabase(), "a").setField("year", "2000");
+        journal.commit();
+        journal.close();
+        Files.write(bibFile.toPath(), "@article{x, title = {New}}\n".getBytes("UTF-8"));
+        Assert.assertTrue(AutoSaveManager.fileChanged(bibFile, pr.getDatabase(), pr.getMetaData(), "UTF-8", true));
+
+        ParserResult recovered = AutoSaveManager.recover(bibFile, "UTF-8");
+        Assert.assertTrue(AutoSaveManager.isRecoveredCopy(recovered.getDatabase()));
+        Assert.assertEquals(3, recovered.getDatabase().getEntryCount());
+        Assert.assertEquals("2000", getEntry(recovered.getDatabase(), "a").getField("year"));
+
+        // Without unsaved changes, there is nothing to recover:
+        Assert.assertTrue(AutoSaveManager.fileChanged(bibFile, pr.getDatabase(), pr.getMetaData(), "UTF-8", false));
+        Assert.assertFalse(journalFile.exists());
+    }
+}
@@ -0,0 +1,91 @@
+package net.sf.jabref.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import net.sf.jabref.Globals;
+import net.sf.jabref.JabRefPreferences;
+import net.sf.jabref.imports.OpenDatabaseAction;
+import net.sf.jabref.imports.ParserResult;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConvertDatabaseTest {
+
+    private static final String BIB = "% This file was created with JabRef 2.10.\n"
+            + "% Encoding: UTF-8\n\n"
+            + "@PREAMBLE{\"\\newcommand{\\noopsort}[1]{}\"}\n\n"
+            + "@String{conference = {Proceedings of the } # jan}\n"
+            + "@String { jan = {January} }\n"
+            + "@String{Smith = {Smith, John}}\n\n"
+            + "@Comment{A comment of the user, which is dropped.}\n\n"
+            + "@inproceedings{part, author = {Doe, Jane}, title = {A Part}, crossref = {whole}, year = {2001}}\n"
+            + "@proceedings{whole, title = {The Whole}, year = 2001, month = jan, booktitle = conference}\n"
+            + "@mytype{custom1, zfield = {Z}, author = Smith, title = {Custom}}\n"
+            + "@strangetype{unknown1, title = {Nobody Knows}, author = {X, Y}, abstract = {A}}\n"
+            + "@article{art1, journal = {J}, author = {Roe, Rick}, title = {On {T}hings}, year = {1999}}\n"
+            + "@inbook{part2, crossref = {whole}, title = {Another Part}, chapter = {2}}\n\n"
+            + "@comment{jabref-meta: groupsversion:3;}\n\n"
+            + "@comment{jabref-meta: groupstree:\n"
+            + "0 AllEntriesGroup:;\n"
+            + "1 ExplicitGroup:Selected\\;0\\;art1\\;part\\;;\n"
+            + "1 KeywordGroup:Things\\;0\\;title\\;things\\;0\\;0\\;;\n"
+            + "}\n\n"
+            + "@comment{jabref-meta: fileDirectory:papers;}\n\n"
+            + "@comment{jabref-entrytype: Mytype: req[author;title] opt[zfield]}\n";
+
+    private File source;
+
+    private File converted;
+
+    private File saved;
+
+    private boolean saveInOriginalOrder;
+
+
+    @Before
+    public void setUp() throws IOException {
+        Globals.prefs = JabRefPreferences.getInstance();
+        saveInOriginalOrder = JabRefPreferences.isSaveInOriginalOrder();
+        source = File.createTempFile("jabref", "source.bib");
+        converted = File.createTempFile("jabref", "converted.bib");
+        saved = File.createTempFile("jabref", "saved.bib");
+        Files.write(source.toPath(), ConvertDatabaseTest.BIB.getBytes("UTF-8"));
+    }
+
+    @After
+    public void tearDown() {
+        JabRefPreferences.setSaveInOriginalOrder(saveInOriginalOrder);
+        source.delete();
+        converted.delete();
+        saved.delete();
+    }
+
+    private void assertSameAsSave() throws IOException, SaveException {
+        FileActions.convertDatabase(source, "UTF-8", converted, Globals.prefs, "UTF-8").commit();
+        ParserResult pr = OpenDatabaseAction.loadDatabase(source, "UTF-8");
+        FileActions.saveDatabase(pr.getDatabase(), pr.getMetaData(), saved, Globals.prefs,
+                false, false, "UTF-8", true).commit();
+        byte[] expected = Files.readAllBytes(saved.toPath());
+        byte[] actual = Files.readAllBytes(converted.toPath());
+        Assert.assertEquals(new String(expected, "UTF-8"), new String(actual, "UTF-8"));
+        Assert.assertTrue(Arrays.equals(expected, actual));
+    }
+
+    @Test
+    public void testStreamedInOriginalOrder() throws IOException, SaveException {
+        JabRefPreferences.setSaveInOriginalOrder(true);
+        assertSameAsSave();
+    }
+
+    @Test
+    public void testSortedOrder() throws IOException, SaveException {
+        JabRefPreferences.setSaveInOriginalOrder(false);
+        assertSameAsSave();
+    }
+}
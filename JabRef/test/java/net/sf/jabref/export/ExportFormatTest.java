@@ -0,0 +1,117 @@
+package net.sf.jabref.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.Globals;
+import net.sf.jabref.JabRefPreferences;
+import net.sf.jabref.MetaData;
+import net.sf.jabref.export.layout.format.XMLChars;
+import net.sf.jabref.imports.BibtexParser;
+import net.sf.jabref.imports.ParserResult;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExportFormatTest {
+
+    private File layoutFile;
+
+    private File groupLayoutFile;
+
+    private File xmlLayoutFile;
+
+    private File output;
+
+    private BibtexDatabase database;
+
+    private MetaData metaData;
+
+
+    @Before
+    public void setUp() throws IOException {
+        Globals.prefs = JabRefPreferences.getInstance();
+        layoutFile = File.createTempFile("jabref", ".layout");
+        groupLayoutFile = File.createTempFile("jabref", ".layout");
+        xmlLayoutFile = File.createTempFile("jabref", ".layout");
+        output = File.createTempFile("jabref", ".txt");
+        Files.write(layoutFile.toPath(), "\\format[Number]{}:\\bibtexkey\n".getBytes("UTF-8"));
+        Files.write(groupLayoutFile.toPath(), "\\begingroup{year}\\year\n\\endgroup{year}\\bibtexkey\n"
+                .getBytes("UTF-8"));
+        Files.write(xmlLayoutFile.toPath(), "\\format[XMLChars]{\\title}\n".getBytes("UTF-8"));
+        StringBuilder bib = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            // The entries are sorted by author, so that each year is one group:
+            bib.append("@article{key").append(i).append(", author = {Author ").append((char) ('A' + (i / 1000)))
+                    .append("}, year = {").append(1990 + (i / 1000)).append("}, title = {")
+                    .append(ExportFormatTest.getTitle(i)).append("}}\n");
+        }
+        ParserResult result = BibtexParser.parse(new StringReader(bib.toString()));
+        database = result.getDatabase();
+        metaData = result.getMetaData();
+    }
+
+    @After
+    public void tearDown() {
+        layoutFile.delete();
+        groupLayoutFile.delete();
+        xmlLayoutFile.delete();
+        output.delete();
+    }
+
+    private static String getTitle(int i) {
+        return "Fish & \"Chips\", 'Peas' -- and more-or-less " + i;
+    }
+
+    private List<String> export(File layout) throws Exception {
+        String name = layout.getPath().substring(0, layout.getPath().length() - ".layout".length());
+        ExportFormat format = new ExportFormat("Test", "test", name, null, ".txt");
+        format.setCustomExport(true);
+        format.performExport(database, metaData, output.getPath(), "UTF-8", null);
+        return Files.readAllLines(output.toPath(), Charset.forName("UTF-8"));
+    }
+
+    @Test
+    public void testEntriesAreNumberedInOrder() throws Exception {
+        List<String> lines = export(layoutFile);
+        Assert.assertEquals(2000, lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            Assert.assertTrue(lines.get(i).startsWith((i + 1) + ":key"));
+        }
+    }
+
+    @Test
+    public void testGroupsStartOnce() throws Exception {
+        List<String> lines = export(groupLayoutFile);
+        Assert.assertEquals(2002, lines.size());
+        int groups = 0;
+        for (String line : lines) {
+            if (line.matches("\\d+")) {
+                groups++;
+            }
+        }
+        Assert.assertEquals(2, groups);
+    }
+
+    @Test
+    public void testParallelOutputEqualsSequential() throws Exception {
+        List<String> lines = export(xmlLayoutFile);
+        // Formatted one after the other in this thread:
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 2000; i++) {
+            expected.add(new XMLChars().format(ExportFormatTest.getTitle(i)));
+        }
+        Collections.sort(lines);
+        Collections.sort(expected);
+        Assert.assertEquals(expected, lines);
+    }
+}
@@ -0,0 +1,72 @@
+package net.sf.jabref.export;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.BibtexEntryTypes;
+import net.sf.jabref.BibtexEntryWriter;
+import net.sf.jabref.BibtexFields;
+import net.sf.jabref.Globals;
+import net.sf.jabref.IdGenerator;
+import net.sf.jabref.JabRefPreferences;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelEntryFormatterTest {
+
+    private List<BibtexEntry> entries;
+
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+        entries = new ArrayList<BibtexEntry>();
+        for (int i = 0; i < 2000; i++) {
+            BibtexEntry entry = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+            entry.setField(BibtexFields.KEY_FIELD, "key" + i);
+            entry.setField("author", "Author " + i);
+            entry.setField("title", "A {T}itle with some words to wrap around number " + i);
+            entries.add(entry);
+        }
+    }
+
+    @Test
+    public void testSameTextInSameOrder() throws IOException {
+        BibtexEntryWriter entryWriter = new BibtexEntryWriter(new LatexFieldFormatter(), true);
+        ParallelEntryFormatter formatter = new ParallelEntryFormatter(entries, null);
+        for (int i = 0; i < entries.size(); i++) {
+            StringWriter sw = new StringWriter();
+            entryWriter.write(entries.get(i), sw);
+            sw.write(Globals.NEWLINE);
+            Assert.assertEquals(sw.toString(), formatter.get(i));
+        }
+    }
+
+    @Test
+    public void testSkippingEntries() throws IOException {
+        ParallelEntryFormatter formatter = new ParallelEntryFormatter(entries, null);
+        Assert.assertTrue(formatter.get(5).contains("key5,"));
+        Assert.assertTrue(formatter.get(1500).contains("key1500,"));
+        Assert.assertTrue(formatter.get(1999).contains("key1999,"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testErrorIsThrownForItsEntry() throws IOException {
+        // Unbalanced braces cannot be written:
+        entries.get(1000).setField("note", "{unbalanced");
+        ParallelEntryFormatter formatter = new ParallelEntryFormatter(entries, null);
+        for (int i = 0; i < 1000; i++) {
+            formatter.get(i);
+        }
+        try {
+            formatter.get(1000);
+        } finally {
+            formatter.cancel();
+        }
+    }
+}
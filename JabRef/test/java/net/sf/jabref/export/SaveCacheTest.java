@@ -0,0 +1,102 @@
+package net.sf.jabref.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.Globals;
+import net.sf.jabref.JabRefPreferences;
+import net.sf.jabref.MetaData;
+import net.sf.jabref.imports.BibtexParser;
+import net.sf.jabref.imports.ParserResult;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SaveCacheTest {
+
+    private File file;
+
+    private File reference;
+
+    private BibtexDatabase database;
+
+    private MetaData metaData;
+
+
+    @Before
+    public void setUp() throws IOException {
+        Globals.prefs = JabRefPreferences.getInstance();
+        file = File.createTempFile("jabref", "savecache.bib");
+        reference = File.createTempFile("jabref", "reference.bib");
+        StringBuilder bib = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            bib.append("@article{key").append(i).append(", author = {Author ").append(i)
+                    .append("}, title = {Title ").append(i).append("}, year = {").append(1990 + i).append("}}\n");
+        }
+        ParserResult result = BibtexParser.parse(new StringReader(bib.toString()));
+        database = result.getDatabase();
+        metaData = result.getMetaData();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        reference.delete();
+    }
+
+    private void save(File target) throws SaveException {
+        SaveSession session = FileActions.saveDatabase(database, metaData, target, Globals.prefs,
+                false, false, "UTF-8", true);
+        session.commit();
+    }
+
+    private void assertSameAsFullSave() throws IOException, SaveException {
+        // The reference file is always written from scratch, as the cache
+        // never contains a file that was modified after it was saved:
+        reference.setLastModified(0);
+        save(reference);
+        save(file);
+        Assert.assertTrue(Arrays.equals(Files.readAllBytes(reference.toPath()), Files.readAllBytes(file.toPath())));
+    }
+
+    @Test
+    public void testChangedEntriesAreWrittenAgain() throws IOException, SaveException {
+        save(file);
+
+        BibtexEntry entry = database.getEntriesByKey("key7")[0];
+        entry.setField("title", "A much longer title than before, which moves all following entries");
+        assertSameAsFullSave();
+
+        database.removeEntry(database.getEntriesByKey("key3")[0].getId());
+        database.getEntriesByKey("key12")[0].clearField("year");
+        assertSameAsFullSave();
+    }
+
+    @Test
+    public void testFileModifiedOutsideIsNotReused() throws IOException, SaveException {
+        save(file);
+        Files.write(file.toPath(), "garbage".getBytes("UTF-8"));
+        save(file);
+        save(reference);
+        Assert.assertTrue(Arrays.equals(Files.readAllBytes(reference.toPath()), Files.readAllBytes(file.toPath())));
+    }
+
+    @Test
+    public void testCopiedEntriesReportProblemCharacters() throws IOException, SaveException {
+        database.getEntriesByKey("key5")[0].setField("title", "\u03a9 and \u00e9");
+        for (int i = 0; i < 2; i++) {
+            SaveSession session = FileActions.saveDatabase(database, metaData, file, Globals.prefs,
+                    false, false, "ISO-8859-1", true);
+            Assert.assertFalse(session.getWriter().couldEncodeAll());
+            Assert.assertEquals("\u03a9", session.getWriter().getProblemCharacters());
+            session.commit();
+        }
+    }
+}
@@ -63,6 +63,16 @@ public class LayoutTest {
         Assert.assertEquals("Misc", layout("\\bibtextype", "@misc{bla, author={This\nis\na\ntext}}"));
     }
 
+    @Test
+    public void testFieldBlocks() throws Exception {
+        String entry = "@article{bla, author={Author}, year={2005}}";
+        Assert.assertEquals("2005", layout("\\begin{author&year}\\year\\end{author&year}", entry));
+        Assert.assertEquals("", layout("\\begin{author;title}\\year\\end{author;title}", entry));
+        Assert.assertEquals("2005", layout("\\begin{title||year}\\year\\end{title||year}", entry));
+        Assert.assertEquals("", layout("\\begin{title|note}\\year\\end{title|note}", entry));
+        Assert.assertEquals("AUTHOR", layout("\\format[ToUpperCase]{\\author}", entry));
+    }
+
     @Test
     @Ignore
     public void testHTMLChar() throws Exception {
@@ -0,0 +1,122 @@
+package net.sf.jabref.groups;
+
+import java.util.BitSet;
+import java.util.Enumeration;
+import java.util.Map;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.BibtexEntryTypes;
+import net.sf.jabref.Globals;
+import net.sf.jabref.IdGenerator;
+import net.sf.jabref.JabRefPreferences;
+import net.sf.jabref.groups.structure.AllEntriesGroup;
+import net.sf.jabref.groups.structure.GroupHierarchyType;
+import net.sf.jabref.groups.structure.KeywordGroup;
+import net.sf.jabref.search.SearchRule;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GroupMembershipIndexTest {
+
+    private BibtexDatabase database;
+
+    private GroupTreeNode root;
+
+    private GroupTreeNode refining;
+
+    private GroupTreeNode including;
+
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+        database = new BibtexDatabase();
+        for (int i = 0; i < 100; i++) {
+            BibtexEntry entry = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+            entry.setField("keywords", (i % 2 == 0 ? "even" : "odd") + (i % 3 == 0 ? ", three" : ""));
+            database.insertEntry(entry);
+        }
+        root = new GroupTreeNode(new AllEntriesGroup());
+        GroupTreeNode odd = new GroupTreeNode(new KeywordGroup("Odd", "keywords", "odd", false, false,
+                GroupHierarchyType.INDEPENDENT));
+        refining = new GroupTreeNode(new KeywordGroup("Odd and three", "keywords", "three", false, false,
+                GroupHierarchyType.REFINING));
+        including = new GroupTreeNode(new KeywordGroup("Even or three", "keywords", "even", false, false,
+                GroupHierarchyType.INCLUDING));
+        including.add(new GroupTreeNode(new KeywordGroup("Three", "keywords", "three", false, false,
+                GroupHierarchyType.INDEPENDENT)));
+        odd.add(refining);
+        root.add(odd);
+        root.add(including);
+    }
+
+    /**
+     * Checks the index against the search rule of every node.
+     */
+    private void assertSameAsSearchRules(GroupMembershipIndex index) {
+        for (Enumeration<GroupTreeNode> e = root.depthFirstEnumeration(); e.hasMoreElements();) {
+            GroupTreeNode node = e.nextElement();
+            SearchRule rule = node.getSearchRule();
+            BitSet members = index.getMembers(node);
+            for (BibtexEntry entry : database.getEntries()) {
+                Assert.assertEquals(rule.applyRule(SearchRule.DUMMY_QUERY, entry),
+                        members.get(index.getPosition(entry)));
+            }
+            Assert.assertTrue(members.cardinality() <= database.getEntryCount());
+        }
+    }
+
+    @Test
+    public void testHierarchicalContexts() {
+        GroupMembershipIndex index = new GroupMembershipIndex(database);
+        Assert.assertEquals(100, index.getMembers(root).cardinality());
+        // Odd multiples of three:
+        Assert.assertEquals(17, index.getMembers(refining).cardinality());
+        // Even numbers or multiples of three:
+        Assert.assertEquals(67, index.getMembers(including).cardinality());
+        assertSameAsSearchRules(index);
+    }
+
+    @Test
+    public void testIncrementalUpdates() {
+        GroupMembershipIndex index = new GroupMembershipIndex(database);
+        assertSameAsSearchRules(index);
+        BibtexEntry changed = database.getEntries().iterator().next();
+        changed.setField("keywords", "odd, three");
+        assertSameAsSearchRules(index);
+        BibtexEntry removed = database.getEntries().iterator().next();
+        database.removeEntry(removed.getId());
+        Assert.assertEquals(-1, index.getPosition(removed));
+        assertSameAsSearchRules(index);
+        BibtexEntry added = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        added.setField("keywords", "even");
+        database.insertEntry(added);
+        assertSameAsSearchRules(index);
+        Assert.assertEquals(100, index.getAllEntries().cardinality());
+    }
+
+    @Test
+    public void testPrepareAndCount() {
+        GroupMembershipIndex index = new GroupMembershipIndex(database);
+        // Enough entries to evaluate them in parallel:
+        for (int i = 0; i < 2000; i++) {
+            BibtexEntry entry = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+            entry.setField("keywords", i % 2 == 0 ? "three" : "odd");
+            database.insertEntry(entry);
+        }
+        index.prepare(root);
+        assertSameAsSearchRules(index);
+        Map<GroupTreeNode, Integer> counts = index.getCounts(root);
+        Assert.assertEquals(5, counts.size());
+        for (Enumeration<GroupTreeNode> e = root.depthFirstEnumeration(); e.hasMoreElements();) {
+            GroupTreeNode node = e.nextElement();
+            Assert.assertEquals(index.getMembers(node).cardinality(), counts.get(node).intValue());
+        }
+        Assert.assertEquals(2100, counts.get(root).intValue());
+        Assert.assertEquals(17, counts.get(refining).intValue());
+        Assert.assertEquals(1067, counts.get(including).intValue());
+    }
+}
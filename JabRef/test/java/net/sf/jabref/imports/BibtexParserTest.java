@@ -2,6 +2,7 @@ package net.sf.jabref.imports;
 
 import net.sf.jabref.BibtexEntry;
 import net.sf.jabref.BibtexEntryTypes;
+import net.sf.jabref.BibtexString;
 
 import org.junit.Assert;
 import org.junit.Ignore;
@@ -9,8 +10,11 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -38,6 +42,76 @@ public class BibtexParserTest {
         Assert.assertEquals("Ed von Test", e.getField("author"));
     }
 
+    @Test
+    public void testParseCharBuffer() throws IOException {
+
+        ParserResult result = BibtexParser.forCharBuffer(CharBuffer.wrap(
+                "@article{test,author={Ed von Test}}".toCharArray())).parse();
+
+        Collection<BibtexEntry> c = result.getDatabase().getEntries();
+        Assert.assertEquals(1, c.size());
+
+        BibtexEntry e = c.iterator().next();
+        Assert.assertEquals("test", e.getCiteKey());
+        Assert.assertEquals("Ed von Test", e.getField("author"));
+    }
+
+    @Test
+    public void testParseWithListener() throws IOException {
+        final List<BibtexEntry> entries = new ArrayList<BibtexEntry>();
+        final List<BibtexString> strings = new ArrayList<BibtexString>();
+        final List<String> comments = new ArrayList<String>();
+        final List<String> preambles = new ArrayList<String>();
+
+        ParserResult result = new BibtexParser(new StringReader(
+                "@preamble{some text}"
+                        + "@string{ed = {Ed von Test}}"
+                        + "@article{test,author=ed}"
+                        + "@book{test2,title={A title}}"
+                        + "@comment{jabref-meta: selector_keywords:a;b;}"))
+                .parse(new BibtexParserListener() {
+
+                    @Override
+                    public void entryParsed(BibtexEntry entry) {
+                        entries.add(entry);
+                    }
+
+                    @Override
+                    public void stringParsed(BibtexString string) {
+                        strings.add(string);
+                    }
+
+                    @Override
+                    public void preambleParsed(String preamble) {
+                        preambles.add(preamble);
+                    }
+
+                    @Override
+                    public void commentParsed(String comment) {
+                        comments.add(comment);
+                    }
+                });
+
+        // Nothing is collected in the database when a listener is used:
+        Assert.assertEquals(0, result.getDatabase().getEntryCount());
+
+        Assert.assertEquals(2, entries.size());
+        Assert.assertEquals("test", entries.get(0).getCiteKey());
+        Assert.assertEquals("#ed#", entries.get(0).getField("author"));
+        Assert.assertEquals("test2", entries.get(1).getCiteKey());
+        Assert.assertEquals("A title", entries.get(1).getField("title"));
+
+        Assert.assertEquals(1, strings.size());
+        Assert.assertEquals("ed", strings.get(0).getName());
+        Assert.assertEquals("Ed von Test", strings.get(0).getContent());
+
+        Assert.assertEquals(1, preambles.size());
+        Assert.assertEquals("some text", preambles.get(0));
+
+        Assert.assertEquals(1, comments.size());
+        Assert.assertEquals("jabref-meta: selector_keywords:a;b;", comments.get(0));
+    }
+
     @Test
     public void testBibtexParser() {
         try {
@@ -0,0 +1,105 @@
+package net.sf.jabref.imports;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedInputTest {
+
+    private File file;
+
+    private byte[] content;
+
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("jabref", ".txt");
+        content = new byte[(3 * MappedInput.HEAD_SIZE) + 17];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        Files.write(file.toPath(), content);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testStreamsAreIndependent() throws IOException {
+        MappedInput input = new MappedInput(file);
+        InputStream first = input.getInputStream();
+        Assert.assertEquals(0, first.read());
+        Assert.assertArrayEquals(content, readAll(input.getInputStream()));
+        Assert.assertEquals(1, first.read());
+    }
+
+    @Test
+    public void testHead() throws IOException {
+        MappedInput input = new MappedInput(file);
+        Assert.assertFalse(input.isHeadComplete());
+        byte[] head = readAll(input.getHead());
+        Assert.assertEquals(MappedInput.HEAD_SIZE, head.length);
+        Assert.assertEquals(content[MappedInput.HEAD_SIZE - 1], head[head.length - 1]);
+    }
+
+    @Test
+    public void testMarkAndReset() throws IOException {
+        InputStream in = new MappedInput(file).getInputStream();
+        in.skip(10);
+        in.mark(0);
+        int value = in.read();
+        in.skip(MappedInput.HEAD_SIZE);
+        in.reset();
+        Assert.assertEquals(value, in.read());
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        Files.write(file.toPath(), new byte[0]);
+        MappedInput input = new MappedInput(file);
+        Assert.assertTrue(input.isHeadComplete());
+        Assert.assertEquals(-1, input.getInputStream().read());
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        MappedInput input = new MappedInput(file);
+        InputStream in = input.getInputStream();
+        Assert.assertEquals(0, in.read());
+        input.close();
+        try {
+            in.read();
+            Assert.fail();
+        } catch (IOException ignored) {
+            // expected
+        }
+        try {
+            input.getHead();
+            Assert.fail();
+        } catch (IOException ignored) {
+            // expected
+        }
+        input.close();
+        Assert.assertTrue(file.delete());
+    }
+}
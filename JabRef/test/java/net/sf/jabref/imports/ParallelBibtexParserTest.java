@@ -0,0 +1,89 @@
+package net.sf.jabref.imports;
+
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.IdComparator;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ParallelBibtexParserTest {
+
+    private static String createBibtex() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("% This file was created with JabRef 2.10.\n% Encoding: UTF8\n\n");
+        sb.append("@string{ieee = {IEEE}}\n\n");
+        for (int i = 0; i < 200; i++) {
+            // Every 50th key is used twice, which must give the same duplicate key warnings:
+            sb.append("@article{key").append(i % 150).append(",\n");
+            sb.append("  author = {Author ").append(i).append("},\n");
+            sb.append("  title = {Title {with} braces ").append(i).append("},\n");
+            sb.append("  abstract = {A line that starts with\n@ inside a field},\n");
+            sb.append("  journal = ieee\n}\n\n");
+            if ((i % 70) == 0) {
+                sb.append("@string{s").append(i).append(" = {String ").append(i).append("}}\n\n");
+                sb.append("@string{ieee = {Duplicate}}\n\n");
+            }
+        }
+        sb.append("@comment{jabref-meta: selector_keywords:a;b;}\n\n");
+        return sb.toString();
+    }
+
+    private static List<String> getKeysInFileOrder(ParserResult result) {
+        List<BibtexEntry> entries = new ArrayList<BibtexEntry>(result.getDatabase().getEntries());
+        Collections.sort(entries, new IdComparator());
+        List<String> keys = new ArrayList<String>();
+        for (BibtexEntry entry : entries) {
+            keys.add(entry.getCiteKey() + ':' + entry.getField("author"));
+        }
+        return keys;
+    }
+
+    private static void assertSameResult(ParserResult expected, ParserResult actual) {
+        Assert.assertEquals(expected.getDatabase().getEntryCount(), actual.getDatabase().getEntryCount());
+        Assert.assertEquals(getKeysInFileOrder(expected), getKeysInFileOrder(actual));
+        Assert.assertEquals(Arrays.asList(expected.getDuplicateKeys()), Arrays.asList(actual.getDuplicateKeys()));
+        Assert.assertEquals(Arrays.asList(expected.warnings()), Arrays.asList(actual.warnings()));
+        Assert.assertEquals(expected.getDatabase().getStringCount(), actual.getDatabase().getStringCount());
+        Assert.assertEquals(expected.getJabrefVersion(), actual.getJabrefVersion());
+        Assert.assertEquals(expected.getMetaData().getData("selector_keywords"),
+                actual.getMetaData().getData("selector_keywords"));
+    }
+
+    @Test
+    public void testSameResultAsSequentialParser() throws IOException {
+        String bibtex = createBibtex();
+        ParserResult expected = BibtexParser.parse(new StringReader(bibtex));
+
+        // Small chunks, so the input is really split:
+        ParserResult actual = ParallelBibtexParser.parse(CharBuffer.wrap(bibtex.toCharArray()), 16, 100);
+
+        Assert.assertTrue(expected.hasDuplicateKeys());
+        assertSameResult(expected, actual);
+    }
+
+    @Test
+    public void testFallbackOnWarnings() throws IOException {
+        String bibtex = createBibtex() + "@article{broken key,\n  author = {Someone}\n}\n";
+        ParserResult expected = BibtexParser.parse(new StringReader(bibtex));
+        ParserResult actual = ParallelBibtexParser.parse(CharBuffer.wrap(bibtex.toCharArray()), 16, 100);
+
+        Assert.assertTrue(expected.hasWarnings());
+        assertSameResult(expected, actual);
+    }
+
+    @Test
+    public void testSplitsOnlyAtTopLevel() {
+        String bibtex = "@a{x,\n  t = {\n@b{y}}}\n@c{z}\n";
+        int[] bounds = ParallelBibtexParser.findChunkBounds(CharBuffer.wrap(bibtex), 10, 1);
+
+        Assert.assertArrayEquals(new int[] {0, bibtex.indexOf("@c"), bibtex.length()}, bounds);
+    }
+}
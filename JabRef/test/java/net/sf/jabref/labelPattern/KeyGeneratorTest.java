@@ -0,0 +1,159 @@
+package net.sf.jabref.labelPattern;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.Globals;
+import net.sf.jabref.JabRefPreferences;
+import net.sf.jabref.MetaData;
+import net.sf.jabref.imports.BibtexParser;
+import net.sf.jabref.imports.ParserResult;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyGeneratorTest {
+
+    private BibtexDatabase database;
+
+    private MetaData metaData;
+
+    // In the order of the file:
+    private List<BibtexEntry> entries;
+
+    private boolean firstLetterA;
+
+    private boolean alwaysAddLetter;
+
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+        firstLetterA = JabRefPreferences.isKeyGenFirstLetterA();
+        alwaysAddLetter = JabRefPreferences.isKeyGenAlwaysAddLetter();
+        JabRefPreferences.setKeyGenFirstLetterA(true);
+        JabRefPreferences.setKeyGenAlwaysAddLetter(false);
+    }
+
+    @After
+    public void tearDown() {
+        JabRefPreferences.setKeyGenFirstLetterA(firstLetterA);
+        JabRefPreferences.setKeyGenAlwaysAddLetter(alwaysAddLetter);
+    }
+
+    private void parse(String bib, int count) {
+        ParserResult result = BibtexParser.parse(new StringReader(bib));
+        database = result.getDatabase();
+        metaData = result.getMetaData();
+        entries = new ArrayList<BibtexEntry>();
+        for (int i = 0; i < count; i++) {
+            entries.add(database.getEntriesByKey("e" + i)[0]);
+        }
+    }
+
+    private void parseAuthors(int count) {
+        StringBuilder bib = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            bib.append("@article{e").append(i).append(", author = {Author").append((char) ('A' + (i % 5)))
+                    .append("}, year = {2000}}\n");
+        }
+        parse(bib.toString(), count);
+    }
+
+    private void parseDuplicates() {
+        parse("@article{e0, author = {Smith}, year = {2000}}\n"
+                + "@article{e1, author = {Doe}, year = {1999}}\n"
+                + "@article{e2, author = {Smith}, year = {2000}}\n"
+                + "@article{e3, author = {Smith}, year = {2000}}\n", 4);
+    }
+
+    private List<String> generateKeys(boolean batch) {
+        for (BibtexEntry entry : entries) {
+            database.setCiteKeyForEntry(entry.getId(), null);
+        }
+        if (batch) {
+            new KeyGenerator(metaData, database).generateKeys(entries);
+        } else {
+            for (BibtexEntry entry : entries) {
+                LabelPatternUtil.makeLabel(metaData, database, entry);
+            }
+        }
+        List<String> keys = new ArrayList<String>();
+        for (BibtexEntry entry : entries) {
+            keys.add(entry.getCiteKey());
+        }
+        return keys;
+    }
+
+    private static void assertAuthorKeys(List<String> keys) {
+        Assert.assertEquals("AuthorA2000", keys.get(0));
+        Assert.assertEquals("AuthorE2000", keys.get(4));
+        Assert.assertEquals("AuthorA2000a", keys.get(5));
+        Assert.assertEquals("AuthorB2000a", keys.get(6));
+        Assert.assertEquals("AuthorA2000b", keys.get(10));
+        Assert.assertEquals("AuthorA2000z", keys.get(130));
+        Assert.assertEquals("AuthorA2000aa", keys.get(135));
+        Assert.assertEquals("AuthorE2000gq", keys.get(999));
+        Assert.assertEquals(keys.size(), new HashSet<String>(keys).size());
+    }
+
+    @Test
+    public void testBatchKeys() {
+        parseAuthors(1000);
+        assertAuthorKeys(generateKeys(true));
+    }
+
+    @Test
+    public void testSingleEntryKeys() {
+        parseAuthors(1000);
+        assertAuthorKeys(generateKeys(false));
+    }
+
+    @Test
+    public void testDuplicatesGetLetters() {
+        parseDuplicates();
+        List<String> expected = Arrays.asList("Smith2000", "Doe1999", "Smith2000a", "Smith2000b");
+        Assert.assertEquals(expected, generateKeys(true));
+        Assert.assertEquals(expected, generateKeys(false));
+    }
+
+    @Test
+    public void testDuplicatesWithoutLetterA() {
+        JabRefPreferences.setKeyGenFirstLetterA(false);
+        parseDuplicates();
+        List<String> expected = Arrays.asList("Smith2000", "Doe1999", "Smith2000b", "Smith2000c");
+        Assert.assertEquals(expected, generateKeys(true));
+        Assert.assertEquals(expected, generateKeys(false));
+    }
+
+    @Test
+    public void testAlwaysAddLetter() {
+        JabRefPreferences.setKeyGenAlwaysAddLetter(true);
+        parseDuplicates();
+        List<String> expected = Arrays.asList("Smith2000a", "Doe1999a", "Smith2000b", "Smith2000c");
+        Assert.assertEquals(expected, generateKeys(true));
+        Assert.assertEquals(expected, generateKeys(false));
+    }
+
+    @Test
+    public void testEntriesNotInDatabaseGetDifferentKeys() {
+        parseAuthors(0);
+        List<BibtexEntry> entries = new ArrayList<BibtexEntry>();
+        for (int i = 0; i < 3; i++) {
+            entries.add(BibtexParser.singleFromString("@article{e" + i + ", author = {Someone}, year = {1999}}"));
+        }
+        new KeyGenerator(metaData, new BibtexDatabase()).generateKeys(entries);
+        List<String> keys = new ArrayList<String>();
+        for (BibtexEntry entry : entries) {
+            keys.add(entry.getCiteKey());
+        }
+        Assert.assertEquals(Arrays.asList("Someone1999", "Someone1999a", "Someone1999b"), keys);
+    }
+}
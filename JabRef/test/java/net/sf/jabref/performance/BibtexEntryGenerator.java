@@ -1,7 +1,27 @@
 package net.sf.jabref.performance;
 
+/**
+ * Generates bibtex text with varying authors, titles, journals and years, so
+ * that searching, sorting and duplicate detection see realistic data. The
+ * output only depends on the number of entries. Every 50th entry repeats an
+ * earlier one under a new key.
+ */
 public class BibtexEntryGenerator {
 
+    private static final String[] LAST_NAMES = {"Einstein", "Bohr", "Curie", "Noether", "Planck", "Dirac",
+            "Heisenberg", "Meitner", "Schr{\\\"o}dinger", "Born", "Pauli", "Fermi", "Hilbert", "G{\\\"o}del"};
+
+    private static final String[] FIRST_NAMES = {"Albert", "Niels", "Marie", "Emmy", "Max", "Paul", "Werner",
+            "Lise", "Erwin", "Max", "Wolfgang", "Enrico", "David", "Kurt"};
+
+    private static final String[] WORDS = {"grundlage", "allgemeinen", "relativit{\\\"a}tstheorie", "quantum",
+            "theory", "structure", "atoms", "radiation", "invariant", "variation", "problems", "mechanics",
+            "wave", "matrix", "exclusion", "principle", "neutron", "decay", "geometry", "completeness"};
+
+    private static final String[] JOURNALS = {"Annalen der Physik", "Physical Review", "Nature",
+            "Zeitschrift f{\\\"u}r Physik", "Mathematische Annalen", "Proceedings of the Royal Society"};
+
+
     public String generateBibtexEntries(int number) {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < number; i++) {
@@ -12,16 +32,32 @@ public class BibtexEntryGenerator {
     }
 
     private String generateBibtexEntry(int i) {
-        return "@article{einstein1916grundlage" + i + ",\n" +
-                "  title={Die grundlage der allgemeinen relativit{\\\"a}tstheorie},\n" +
-                "  author={Einstein, Albert},\n" +
-                "  journal={Annalen der Physik},\n" +
-                "  volume={354},\n" +
-                "  number={7},\n" +
-                "  pages={769--822},\n" +
-                "  year={1916},\n" +
+        // Repeat the content of an earlier entry now and then:
+        int content = ((i % 50) == 49) ? i - 17 : i;
+        int author = content % BibtexEntryGenerator.LAST_NAMES.length;
+        int coAuthor = (author + 1 + ((content / 7) % (BibtexEntryGenerator.LAST_NAMES.length - 1)))
+                % BibtexEntryGenerator.LAST_NAMES.length;
+        return "@article{" + BibtexEntryGenerator.LAST_NAMES[author].replaceAll("[^A-Za-z]", "").toLowerCase()
+                + (1900 + (content % 120)) + "key" + i + ",\n" +
+                "  title={" + title(content) + "},\n" +
+                "  author={" + BibtexEntryGenerator.LAST_NAMES[author] + ", " + BibtexEntryGenerator.FIRST_NAMES[author]
+                + " and " + BibtexEntryGenerator.LAST_NAMES[coAuthor] + ", " + BibtexEntryGenerator.FIRST_NAMES[coAuthor] + "},\n" +
+                "  journal={" + BibtexEntryGenerator.JOURNALS[content % BibtexEntryGenerator.JOURNALS.length] + "},\n" +
+                "  volume={" + (content % 400) + "},\n" +
+                "  number={" + ((content % 12) + 1) + "},\n" +
+                "  pages={" + (content % 900) + "--" + ((content % 900) + 23) + "},\n" +
+                "  year={" + (1900 + (content % 120)) + "},\n" +
                 "  publisher={Wiley Online Library}\n" +
                 "}\n";
     }
 
+    private static String title(int content) {
+        StringBuilder title = new StringBuilder("Die");
+        int words = BibtexEntryGenerator.WORDS.length;
+        for (int k = 0, n = content; k < 5; k++, n = (n / words) + (k * 7919)) {
+            title.append(' ').append(BibtexEntryGenerator.WORDS[n % words]);
+        }
+        return title.toString();
+    }
+
 }
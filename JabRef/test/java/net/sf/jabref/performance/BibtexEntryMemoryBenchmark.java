@@ -0,0 +1,126 @@
+package net.sf.jabref.performance;
+
+import java.beans.VetoableChangeSupport;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.BibtexEntryTypes;
+import net.sf.jabref.FieldInterner;
+import net.sf.jabref.IdGenerator;
+
+/**
+ * Prints the heap used per entry for the field storage of BibtexEntry, compared
+ * to the previous layout (one HashMap and one VetoableChangeSupport per entry).
+ *
+ * Field names and values are copied for every entry, as the parser creates new
+ * strings for each of them. Run with a fixed heap size (e.g. -Xms1g -Xmx1g)
+ * for stable numbers.
+ */
+public class BibtexEntryMemoryBenchmark {
+
+    private static final int ENTRIES = 100000;
+
+    private static final String[][] FIELDS = {
+            {"title", "Die grundlage der allgemeinen relativit{\\\"a}tstheorie "},
+            {"author", "Einstein, Albert and "},
+            {"journal", "Annalen der Physik"},
+            {"volume", "354"},
+            {"number", "7"},
+            {"pages", "769--822"},
+            {"year", "1916"},
+            {"publisher", "Wiley Online Library"},
+            {"owner", "jabref"}
+    };
+
+
+    /**
+     * The per entry objects of the previous layout.
+     */
+    private static class HashMapEntry {
+
+        private final String id;
+
+        private final Map<String, String> fields = new HashMap<String, String>();
+
+        private final VetoableChangeSupport changeSupport = new VetoableChangeSupport(this);
+
+
+        public HashMapEntry(String id) {
+            this.id = id;
+        }
+    }
+
+
+    public static void main(String[] args) {
+        System.out.println("HashMap per entry (previous layout): "
+                + BibtexEntryMemoryBenchmark.measureHashMapEntries() + " bytes per entry");
+
+        FieldInterner.setValueDeduplication(false);
+        System.out.println("BibtexEntry, without shared values: "
+                + BibtexEntryMemoryBenchmark.measureBibtexEntries() + " bytes per entry");
+
+        FieldInterner.setValueDeduplication(true);
+        System.out.println("BibtexEntry, with shared values: "
+                + BibtexEntryMemoryBenchmark.measureBibtexEntries() + " bytes per entry");
+    }
+
+    /**
+     * Distinct titles and authors, repeating values for the other fields.
+     */
+    private static String getValue(int field, int entry) {
+        String value = BibtexEntryMemoryBenchmark.FIELDS[field][1];
+        return field < 2 ? value + entry : new String(value);
+    }
+
+    private static long measureHashMapEntries() {
+        long before = BibtexEntryMemoryBenchmark.usedMemory();
+        List<HashMapEntry> entries = new ArrayList<HashMapEntry>(BibtexEntryMemoryBenchmark.ENTRIES);
+        for (int i = 0; i < BibtexEntryMemoryBenchmark.ENTRIES; i++) {
+            HashMapEntry entry = new HashMapEntry(IdGenerator.next());
+            for (int f = 0; f < BibtexEntryMemoryBenchmark.FIELDS.length; f++) {
+                entry.fields.put(new String(BibtexEntryMemoryBenchmark.FIELDS[f][0]),
+                        BibtexEntryMemoryBenchmark.getValue(f, i));
+            }
+            entries.add(entry);
+        }
+        long after = BibtexEntryMemoryBenchmark.usedMemory();
+        if (entries.get(0).id == null) {
+            throw new IllegalStateException();
+        }
+        return (after - before) / entries.size();
+    }
+
+    private static long measureBibtexEntries() {
+        long before = BibtexEntryMemoryBenchmark.usedMemory();
+        List<BibtexEntry> entries = new ArrayList<BibtexEntry>(BibtexEntryMemoryBenchmark.ENTRIES);
+        for (int i = 0; i < BibtexEntryMemoryBenchmark.ENTRIES; i++) {
+            BibtexEntry entry = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+            for (int f = 0; f < BibtexEntryMemoryBenchmark.FIELDS.length; f++) {
+                entry.setField(new String(BibtexEntryMemoryBenchmark.FIELDS[f][0]),
+                        BibtexEntryMemoryBenchmark.getValue(f, i));
+            }
+            entries.add(entry);
+        }
+        long after = BibtexEntryMemoryBenchmark.usedMemory();
+        if (entries.get(0).getId() == null) {
+            throw new IllegalStateException();
+        }
+        return (after - before) / entries.size();
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+                // Just measure now.
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
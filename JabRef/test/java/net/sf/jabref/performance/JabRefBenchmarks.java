@@ -0,0 +1,201 @@
+package net.sf.jabref.performance;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.DuplicateCheck;
+import net.sf.jabref.EntrySorter;
+import net.sf.jabref.FieldComparator;
+import net.sf.jabref.Globals;
+import net.sf.jabref.IdGenerator;
+import net.sf.jabref.JabRefPreferences;
+import net.sf.jabref.MetaData;
+import net.sf.jabref.export.FileActions;
+import net.sf.jabref.export.SaveException;
+import net.sf.jabref.export.SaveSession;
+import net.sf.jabref.export.layout.Layout;
+import net.sf.jabref.export.layout.LayoutHelper;
+import net.sf.jabref.imports.BibtexParser;
+import net.sf.jabref.imports.ParserResult;
+import net.sf.jabref.labelPattern.LabelPatternUtil;
+import net.sf.jabref.search.SearchRule;
+import net.sf.jabref.search.rules.ContainBasedSearchRule;
+import net.sf.jabref.search.rules.GrammarBasedSearchRule;
+import net.sf.jabref.search.rules.RegexBasedSearchRule;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks of loading, saving, searching, sorting, layout, key
+ * generation and duplicate detection on generated databases of 1k to 1M
+ * entries (see BibtexEntryGenerator).
+ *
+ * Run main() to measure all of them, with the allocation rate reported by the
+ * GC profiler. Single benchmarks or sizes can be selected through the usual
+ * JMH command line, e.g. "JabRefBenchmarks.parse -p entries=10000 -prof gc".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class JabRefBenchmarks {
+
+    private static final String LAYOUT = "\\bibtexkey: \\begin{author}\\format[AuthorLastFirst,HTMLChars]{\\author}\\end{author}"
+            + " (\\year). \\format[HTMLChars]{\\title}. \\begin{journal}<em>\\journal</em>\\end{journal}, \\volume(\\number):\\pages.\n";
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int entries;
+
+    private String bibtexString;
+
+    private BibtexDatabase database;
+
+    private MetaData metaData;
+
+    private List<BibtexEntry> entryList;
+
+    private Layout layout;
+
+    private SearchRule containRule;
+
+    private SearchRule regexRule;
+
+    private SearchRule grammarRule;
+
+    private BibtexEntry probe;
+
+    private File saveFile;
+
+    private int next = 0;
+
+
+    @Setup
+    public void setUp() throws Exception {
+        Globals.prefs = JabRefPreferences.getInstance();
+        bibtexString = new BibtexEntryGenerator().generateBibtexEntries(entries);
+        ParserResult result = BibtexParser.parse(new StringReader(bibtexString));
+        database = result.getDatabase();
+        metaData = result.getMetaData();
+        entryList = new ArrayList<BibtexEntry>(database.getEntries());
+        layout = new LayoutHelper(new StringReader(JabRefBenchmarks.LAYOUT)).getLayoutFromText(Globals.FORMATTER_PACKAGE);
+        containRule = new ContainBasedSearchRule(false);
+        regexRule = new RegexBasedSearchRule(false);
+        grammarRule = new GrammarBasedSearchRule(false, false);
+        probe = (BibtexEntry) entryList.get(entryList.size() / 2).clone();
+        saveFile = File.createTempFile("jabref", "benchmark.bib");
+    }
+
+    @TearDown
+    public void tearDown() {
+        saveFile.delete();
+    }
+
+    private BibtexEntry nextEntry() {
+        BibtexEntry entry = entryList.get(next);
+        next = (next + 1) % entryList.size();
+        return entry;
+    }
+
+    @Benchmark
+    public ParserResult parse() throws IOException {
+        return BibtexParser.parse(new StringReader(bibtexString));
+    }
+
+    @Benchmark
+    public void save() throws SaveException {
+        SaveSession session = FileActions.saveDatabase(database, metaData, saveFile, Globals.prefs,
+                false, false, "UTF8", true);
+        // Only the writing is measured, not replacing the file:
+        session.cancel();
+    }
+
+    @Benchmark
+    public int containSearch() {
+        return search(containRule, "relativit{\\\"a}tstheorie einstein");
+    }
+
+    @Benchmark
+    public int regexSearch() {
+        return search(regexRule, "quant.*theory");
+    }
+
+    @Benchmark
+    public int grammarSearch() {
+        return search(grammarRule, "author = curie and title = quantum");
+    }
+
+    private int search(SearchRule rule, String query) {
+        // As in the search dialog, the query is parsed once per search:
+        rule.validateSearchStrings(query);
+        int hits = 0;
+        for (BibtexEntry entry : entryList) {
+            if (rule.applyRule(query, entry)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public EntrySorter sort() {
+        EntrySorter sorter = database.getSorter(new FieldComparator("author"));
+        database.removeDatabaseChangeListener(sorter);
+        return sorter;
+    }
+
+    @Benchmark
+    public String layout() {
+        return layout.doLayout(nextEntry(), database);
+    }
+
+    @Benchmark
+    public BibtexEntry makeLabel() {
+        // Generate the key for a copy that is not in the database (as for an
+        // imported entry), so the database stays the same:
+        BibtexEntry entry = (BibtexEntry) nextEntry().clone();
+        entry.setId(IdGenerator.next());
+        return LabelPatternUtil.makeLabel(metaData, database, entry);
+    }
+
+    @Benchmark
+    public BibtexEntry containsDuplicate() {
+        return DuplicateCheck.containsDuplicate(database, probe);
+    }
+
+    @Benchmark
+    public boolean isDuplicate() {
+        return DuplicateCheck.isDuplicate(probe, nextEntry());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(JabRefBenchmarks.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,117 @@
+package net.sf.jabref.search;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import net.sf.jabref.BibtexDatabase;
+import net.sf.jabref.BibtexEntry;
+import net.sf.jabref.BibtexEntryTypes;
+import net.sf.jabref.Globals;
+import net.sf.jabref.IdGenerator;
+import net.sf.jabref.JabRefPreferences;
+import net.sf.jabref.groups.structure.GroupHierarchyType;
+import net.sf.jabref.groups.structure.KeywordGroup;
+import net.sf.jabref.util.Util;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeywordIndexTest {
+
+    private BibtexDatabase database;
+
+    private BibtexEntry fish;
+
+    private BibtexEntry chips;
+
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+        database = new BibtexDatabase();
+        fish = makeBibtexEntry("Marine finfish, larviculture; Europe");
+        chips = makeBibtexEntry("Fish and chips, Europe");
+        database.insertEntry(fish);
+        database.insertEntry(chips);
+    }
+
+    private static BibtexEntry makeBibtexEntry(String keywords) {
+        BibtexEntry e = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        e.setField("keywords", keywords);
+        return e;
+    }
+
+    @Test
+    public void testKeywordsAsUtilSplitsThem() {
+        KeywordIndex index = database.getKeywordIndex();
+        for (BibtexEntry entry : database.getEntries()) {
+            Assert.assertEquals(Util.getSeparatedKeywords(entry),
+                    index.getKeywords(entry, "keywords", Globals.SEPARATING_CHARS_NOSPACE));
+        }
+        Assert.assertEquals(Arrays.asList("Marine finfish", "larviculture", "Europe"),
+                index.getKeywords(fish, "keywords", Globals.SEPARATING_CHARS_NOSPACE));
+        Assert.assertEquals(4, index.getKeywords("keywords", Globals.SEPARATING_CHARS_NOSPACE).size());
+    }
+
+    @Test
+    public void testKeywordsFollowChanges() {
+        KeywordIndex index = database.getKeywordIndex();
+        Assert.assertTrue(index.getKeywords("keywords", ",").contains("larviculture; Europe"));
+        fish.setField("keywords", "Asia, Europe");
+        Assert.assertEquals(Arrays.asList("Asia", "Europe"), index.getKeywords(fish, "keywords", ","));
+        Assert.assertFalse(index.getKeywords("keywords", ",").contains("larviculture; Europe"));
+        database.removeEntry(chips.getId());
+        Set<String> keywords = index.getKeywords("keywords", ",");
+        Assert.assertEquals(2, keywords.size());
+        Assert.assertTrue(keywords.contains("Asia"));
+        Assert.assertTrue(keywords.contains("Europe"));
+    }
+
+    @Test
+    public void testWordCandidatesContainKeywordGroupHits() {
+        KeywordIndex index = database.getKeywordIndex();
+        String[] expressions = {"fish", "FISH", "finfish", "fish and", "Europe;", "marine finfish", "chips, europe"};
+        for (String expression : expressions) {
+            for (boolean caseSensitive : new boolean[] {false, true}) {
+                KeywordGroup group = new KeywordGroup("Test", "keywords", expression, caseSensitive, false,
+                        GroupHierarchyType.INDEPENDENT);
+                Set<BibtexEntry> candidates = index.getWordCandidates("keywords", expression);
+                for (BibtexEntry entry : database.getEntries()) {
+                    if (group.contains(entry)) {
+                        Assert.assertTrue(expression, candidates.contains(entry));
+                    }
+                }
+            }
+        }
+        Assert.assertEquals(1, index.getWordCandidates("keywords", "fish").size());
+        Assert.assertNull(index.getWordCandidates("keywords", ";"));
+        chips.setField("keywords", "Potatoes");
+        Assert.assertTrue(index.getWordCandidates("keywords", "fish").isEmpty());
+    }
+
+    @Test
+    public void testUnusedIndexesAreDropped() {
+        KeywordIndex index = database.getKeywordIndex();
+        index.getKeywords(fish, "keywords", Globals.SEPARATING_CHARS_NOSPACE);
+        index.getKeywords("keywords", ",");
+        index.getKeywords("abstract", ";");
+        index.getKeywords("title", " ");
+        index.getKeywords("keywords", ";");
+        Assert.assertEquals(0, index.getWordIndexCount());
+        Assert.assertEquals(4, index.getKeywordIndexCount());
+        index.getKeywords(fish, "keywords", Globals.SEPARATING_CHARS_NOSPACE);
+        index.getKeywords("author", " ");
+        Assert.assertEquals(4, index.getKeywordIndexCount());
+        Assert.assertEquals(Arrays.asList("Marine finfish", "larviculture", "Europe"),
+                index.getKeywords(fish, "keywords", Globals.SEPARATING_CHARS_NOSPACE));
+
+        index.getWordCandidates("keywords", "fish");
+        index.getWordCandidates("title", "fish");
+        Assert.assertEquals(2, index.getWordIndexCount());
+        index.retainWordIndexes(Collections.singleton("keywords"));
+        Assert.assertEquals(1, index.getWordIndexCount());
+        Assert.assertEquals(1, index.getWordCandidates("keywords", "fish").size());
+    }
+}
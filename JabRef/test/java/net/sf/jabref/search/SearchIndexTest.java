@@ -0,0 +1,146 @@
+package net.sf.jabref.search;
+
+import net.sf.jabref.*;
+import net.sf.jabref.search.rules.ContainBasedSearchRule;
+import net.sf.jabref.search.rules.GrammarBasedSearchRule;
+import net.sf.jabref.search.rules.RegexBasedSearchRule;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Set;
+
+public class SearchIndexTest {
+
+    private BibtexDatabase database;
+
+    private BibtexEntry shields;
+
+    private BibtexEntry smith;
+
+
+    @Before
+    public void setUp() {
+        Globals.prefs = JabRefPreferences.getInstance();
+        database = new BibtexDatabase();
+        shields = makeBibtexEntry("Kevin Shields", "Marine finfish larviculture in {E}urope");
+        smith = makeBibtexEntry("John Smith", "Fish and \\emph{Chips}");
+        database.insertEntry(shields);
+        database.insertEntry(smith);
+    }
+
+    private static BibtexEntry makeBibtexEntry(String author, String title) {
+        BibtexEntry e = new BibtexEntry(IdGenerator.next(), BibtexEntryTypes.ARTICLE);
+        e.setField("author", author);
+        e.setField("title", title);
+        return e;
+    }
+
+    private void assertConsistentWithRule(SearchRule rule, String query) {
+        Assert.assertTrue(rule.validateSearchStrings(query));
+        Set<BibtexEntry> candidates = database.getSearchIndex().getCandidates(rule, query);
+        for (BibtexEntry entry : database.getEntries()) {
+            if (rule.applyRule(query, entry)) {
+                Assert.assertTrue(query, (candidates == null) || candidates.contains(entry));
+            }
+        }
+    }
+
+    @Test
+    public void testContainBasedCandidates() {
+        SearchRule rule = new ContainBasedSearchRule(false);
+
+        Set<BibtexEntry> candidates = database.getSearchIndex().getCandidates(rule, "fish");
+        Assert.assertEquals(2, candidates.size());
+
+        candidates = database.getSearchIndex().getCandidates(rule, "europe shields");
+        Assert.assertEquals(1, candidates.size());
+        Assert.assertTrue(candidates.contains(shields));
+
+        candidates = database.getSearchIndex().getCandidates(rule, "\"and chips\"");
+        Assert.assertEquals(1, candidates.size());
+        Assert.assertTrue(candidates.contains(smith));
+
+        Assert.assertTrue(database.getSearchIndex().getCandidates(rule, "nothing").isEmpty());
+        Assert.assertNull(database.getSearchIndex().getCandidates(rule, "- +"));
+
+        assertConsistentWithRule(rule, "larvi URO");
+        assertConsistentWithRule(new ContainBasedSearchRule(true), "Chips Fish");
+    }
+
+    @Test
+    public void testRegexBasedCandidates() {
+        SearchRule rule = new RegexBasedSearchRule(false);
+
+        Set<BibtexEntry> candidates = database.getSearchIndex().getCandidates(rule, "chips");
+        Assert.assertEquals(1, candidates.size());
+        Assert.assertTrue(candidates.contains(smith));
+
+        // Regular expressions with special characters cannot be answered by the index:
+        Assert.assertNull(database.getSearchIndex().getCandidates(rule, "ch.ps"));
+
+        assertConsistentWithRule(rule, "kev.n europe");
+    }
+
+    @Test
+    public void testGrammarBasedCandidates() {
+        SearchRule rule = new GrammarBasedSearchRule(false, false);
+        String query = "author = smith or title = europe";
+        Assert.assertTrue(rule.validateSearchStrings(query));
+        Assert.assertEquals(2, database.getSearchIndex().getCandidates(rule, query).size());
+
+        query = "author = smith and title = europe";
+        Assert.assertTrue(rule.validateSearchStrings(query));
+        Assert.assertTrue(database.getSearchIndex().getCandidates(rule, query).isEmpty());
+
+        query = "not author = smith";
+        Assert.assertTrue(rule.validateSearchStrings(query));
+        Assert.assertNull(database.getSearchIndex().getCandidates(rule, query));
+
+        assertConsistentWithRule(rule, "entrytype = article and title = \"in {E}urope\"");
+    }
+
+    @Test
+    public void testIndexFollowsChanges() {
+        SearchIndex index = database.getSearchIndex();
+        Assert.assertTrue(index.getCandidates("Jones").isEmpty());
+
+        smith.setField("author", "John Jones");
+        Assert.assertTrue(index.getCandidates("Jones").contains(smith));
+        Assert.assertTrue(index.getCandidates("Smith").isEmpty());
+
+        BibtexEntry jones = makeBibtexEntry("Jane Jones", "Chips");
+        database.insertEntry(jones);
+        Assert.assertEquals(2, index.getCandidates("jones").size());
+
+        database.removeEntry(smith.getId());
+        Assert.assertEquals(1, index.getCandidates("jones").size());
+        Assert.assertTrue(index.getCandidates("jones").contains(jones));
+    }
+
+    @Test
+    public void testSubstringsOfTokens() {
+        SearchIndex index = database.getSearchIndex();
+        Assert.assertTrue(index.getCandidates("hield").contains(shields));
+        Assert.assertEquals(1, index.getCandidates("hield").size());
+        Assert.assertEquals(2, index.getCandidates("ish").size());
+        Assert.assertTrue(index.getCandidates("title", "urop").contains(shields));
+        Assert.assertTrue(index.getCandidates("author", "urop").isEmpty());
+        // Terms shorter than a trigram do not restrict the candidates:
+        Assert.assertNull(index.getCandidates("fi"));
+        Assert.assertEquals(1, index.getCandidates("fi chip").size());
+    }
+
+    @Test
+    public void testTokenInSeveralFields() {
+        SearchIndex index = database.getSearchIndex();
+        smith.setField("note", "More fish");
+        smith.setField("title", "Chips");
+        Assert.assertTrue(index.getCandidates("fish").contains(smith));
+        Assert.assertFalse(index.getCandidates("title", "fish").contains(smith));
+        smith.clearField("note");
+        Assert.assertFalse(index.getCandidates("fish").contains(smith));
+        Assert.assertTrue(index.getCandidates("fish").contains(shields));
+    }
+}
@@ -0,0 +1,67 @@
+package net.sf.jabref.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LruCacheTest {
+
+    @Test
+    public void testCountsHitsAndMisses() {
+        LruCache<String, String> cache = new LruCache<String, String>(1000);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals("1", cache.putIfAbsent("a", "1"));
+        Assert.assertEquals("1", cache.putIfAbsent("a", "2"));
+        Assert.assertEquals("1", cache.get("a"));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testIsBounded() {
+        LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>(100);
+        for (int i = 0; i < 10000; i++) {
+            cache.putIfAbsent(i, i);
+        }
+        Assert.assertTrue(cache.size() <= cache.getMaximumSize());
+        Assert.assertEquals(10000 - cache.size(), cache.getEvictionCount());
+    }
+
+    @Test
+    public void testKeepsRecentlyUsedValues() {
+        LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>(100);
+        cache.putIfAbsent(0, 0);
+        for (int i = 1; i < 10000; i++) {
+            cache.putIfAbsent(i, i);
+            Assert.assertEquals(Integer.valueOf(0), cache.get(0));
+        }
+        cache.clear();
+        Assert.assertNull(cache.get(0));
+    }
+
+    @Test
+    public void testMaximumSizeIsExact() {
+        for (int maximumSize : new int[] {0, 1, 3, 100, 1001}) {
+            LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>(maximumSize);
+            Assert.assertEquals(maximumSize, cache.getMaximumSize());
+            for (int i = 0; i < 10000; i++) {
+                cache.putIfAbsent(i, i);
+            }
+            Assert.assertTrue(cache.size() <= maximumSize);
+        }
+    }
+
+    @Test
+    public void testShrinksWhenMaximumSizeIsLowered() {
+        LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>(1000);
+        for (int i = 0; i < 1000; i++) {
+            cache.putIfAbsent(i, i);
+        }
+        long evictions = cache.getEvictionCount();
+        int size = cache.size();
+        cache.setMaximumSize(10);
+        Assert.assertEquals(10, cache.getMaximumSize());
+        Assert.assertTrue(cache.size() <= 10);
+        Assert.assertEquals(size - cache.size(), cache.getEvictionCount() - evictions);
+    }
+}